@@ -7,6 +7,7 @@ import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 
+import com.syncup.algorithms.RecommendationEngine;
 import com.syncup.data.DataManager;
 import com.syncup.utils.StyleManager;
 
@@ -48,6 +49,9 @@ public class Main extends Application {
             // Inicializar el gestor de datos
             DataManager.getInstance().initialize();
             
+            // Construir el motor de recomendaciones en segundo plano mientras se muestra el login
+            RecommendationEngine.getInstance().iniciarCalentamiento();
+            
             // Cargar la pantalla de login
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login.fxml"));
             Parent root = loader.load();
@@ -0,0 +1,96 @@
+package com.syncup.algorithms;
+
+import com.syncup.models.Cancion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reordenamiento por relevancia marginal máxima (MMR) para repartir artistas y géneros.
+ * <p>
+ * La relevancia de cada candidata sale de su posición en la lista de entrada
+ * ({@code 1 - i/n}). En cada paso se elige la candidata que maximiza
+ * {@code λ·relevancia - (1-λ)·redundancia}, donde la redundancia es la similitud máxima
+ * con lo ya elegido: {@code similitudArtista} si su artista ya aparece,
+ * {@code similitudGenero} si solo coincide el género, 0 en otro caso. Artistas y géneros
+ * se traducen a ordinales locales una sola vez, así que cada paso es un recorrido de
+ * arreglos y el coste total es O(k·n), pensado para listas de decenas de candidatas.
+ */
+public class DiversificacionMMR implements EtapaPostRanking {
+
+    /** Peso de la relevancia frente a la diversidad (1 = sin diversificar) */
+    private final double lambda;
+
+    /** Similitud entre dos canciones del mismo artista */
+    private final double similitudArtista;
+
+    /** Similitud entre dos canciones del mismo género y distinto artista */
+    private final double similitudGenero;
+
+    /**
+     * Crea la etapa con los valores por defecto (λ = 0.5, artista 1.0, género 0.5).
+     */
+    public DiversificacionMMR() {
+        this(0.5, 1.0, 0.5);
+    }
+
+    /**
+     * @param lambda Peso de la relevancia entre 0 y 1
+     * @param similitudArtista Similitud por artista compartido
+     * @param similitudGenero Similitud por género compartido
+     */
+    public DiversificacionMMR(double lambda, double similitudArtista, double similitudGenero) {
+        if (lambda < 0 || lambda > 1) {
+            throw new IllegalArgumentException("lambda debe estar entre 0 y 1");
+        }
+        this.lambda = lambda;
+        this.similitudArtista = similitudArtista;
+        this.similitudGenero = similitudGenero;
+    }
+
+    @Override
+    public List<Cancion> aplicar(String usuarioId, String contexto, List<Cancion> candidatas, int limite) {
+        int n = candidatas.size();
+        int k = Math.max(0, Math.min(limite, n));
+        int[] artista = new int[n];
+        int[] genero = new int[n];
+        Map<String, Integer> artistas = new HashMap<>();
+        Map<String, Integer> generos = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Cancion c = candidatas.get(i);
+            artista[i] = artistas.computeIfAbsent(clave(c.getArtista()), x -> artistas.size());
+            genero[i] = generos.computeIfAbsent(clave(c.getGenero()), x -> generos.size());
+        }
+
+        boolean[] tomada = new boolean[n];
+        boolean[] artistaUsado = new boolean[artistas.size()];
+        boolean[] generoUsado = new boolean[generos.size()];
+        List<Cancion> res = new ArrayList<>(k);
+        for (int paso = 0; paso < k; paso++) {
+            int mejor = -1;
+            double mejorPuntaje = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (tomada[i]) continue;
+                double redundancia = artistaUsado[artista[i]] ? similitudArtista
+                    : generoUsado[genero[i]] ? similitudGenero : 0.0;
+                double puntaje = lambda * (1.0 - (double) i / n) - (1 - lambda) * redundancia;
+                if (puntaje > mejorPuntaje) {
+                    mejorPuntaje = puntaje;
+                    mejor = i;
+                }
+            }
+            tomada[mejor] = true;
+            artistaUsado[artista[mejor]] = true;
+            generoUsado[genero[mejor]] = true;
+            res.add(candidatas.get(mejor));
+        }
+        return res;
+    }
+
+    private static String clave(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,38 @@
+package com.syncup.algorithms;
+
+import com.syncup.models.Cancion;
+
+import java.util.List;
+
+/**
+ * Etapa que reordena o recorta una lista de recomendaciones ya puntuada, justo antes
+ * de entregarla al usuario (diversificación, mezcla, reglas de negocio...).
+ * <p>
+ * Las implementaciones deben ser deterministas para una misma entrada: el resultado
+ * se cachea y debe poder reproducirse en pruebas y mediciones.
+ */
+@FunctionalInterface
+public interface EtapaPostRanking {
+
+    /**
+     * Aplica la etapa.
+     *
+     * @param usuarioId ID del usuario destinatario
+     * @param contexto Clave del tipo de lista (por ejemplo "weekly" o "radio:&lt;cancionId&gt;")
+     * @param candidatas Canciones en orden de relevancia descendente (no se modifica)
+     * @param limite Número máximo de canciones a devolver
+     * @return Nueva lista con como mucho {@code limite} canciones
+     */
+    List<Cancion> aplicar(String usuarioId, String contexto, List<Cancion> candidatas, int limite);
+
+    /**
+     * Encadena otra etapa que recibe la salida de esta.
+     *
+     * @param siguiente Etapa posterior
+     * @return Etapa compuesta
+     */
+    default EtapaPostRanking luego(EtapaPostRanking siguiente) {
+        return (usuarioId, contexto, candidatas, limite) ->
+            siguiente.aplicar(usuarioId, contexto, aplicar(usuarioId, contexto, candidatas, limite), limite);
+    }
+}
@@ -0,0 +1,51 @@
+package com.syncup.algorithms;
+
+/**
+ * Fuente de candidatas del {@link PipelineRecomendacion}.
+ * <p>
+ * Un generador puede aportar de dos formas, según le resulte más barato:
+ * <ul>
+ *   <li>Dispersa: escribe directamente en el acumulador las pocas posiciones que conoce
+ *       (por ejemplo, las favoritas de los usuarios vecinos).</li>
+ *   <li>Por canción: devuelve una {@link FuncionPuntaje} que el pipeline evalúa junto con
+ *       las de los demás generadores en una única pasada sobre el catálogo.</li>
+ * </ul>
+ * Los puntajes deberían estar normalizados en [0, 1] para que los pesos del pipeline
+ * sean comparables. Las implementaciones se comparten entre hilos y no deben guardar
+ * estado de una solicitud.
+ */
+public interface GeneradorCandidatos {
+
+    /**
+     * Puntaje de una canción identificada por su posición en el {@link IndiceCatalogo}.
+     */
+    @FunctionalInterface
+    interface FuncionPuntaje {
+        double puntuar(int posicion);
+    }
+
+    /**
+     * @return Nombre corto del generador (clave de su peso y de su histograma)
+     */
+    String getNombre();
+
+    /**
+     * Aporta puntajes de forma dispersa.
+     *
+     * @param solicitud Solicitud en curso
+     * @param puntajes Acumulador denso indexado por posición en el catálogo
+     * @param peso Peso del generador, ya aplicado por el llamador a cada aporte
+     */
+    default void aportarDispersos(SolicitudRecomendacion solicitud, double[] puntajes, double peso) {
+    }
+
+    /**
+     * Prepara el puntaje por canción de una solicitud.
+     *
+     * @param solicitud Solicitud en curso
+     * @return Función de puntaje por posición, o null si el generador es solo disperso
+     */
+    default FuncionPuntaje porCancion(SolicitudRecomendacion solicitud) {
+        return null;
+    }
+}
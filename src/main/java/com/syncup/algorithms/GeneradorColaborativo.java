@@ -0,0 +1,46 @@
+package com.syncup.algorithms;
+
+import com.syncup.structures.GrafoDeSimilitud.UsuarioSimilar;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Candidatas de filtrado colaborativo: las favoritas de los usuarios más similares,
+ * ponderadas por su similitud. El aporte de cada canción es la fracción de la
+ * similitud total de los vecinos que la tienen en favoritos, en [0, 1].
+ */
+public class GeneradorColaborativo implements GeneradorCandidatos {
+
+    /** Devuelve los vecinos de un usuario por ID (lista vacía si aún no hay grafo) */
+    private final Function<String, List<UsuarioSimilar>> vecinos;
+
+    /**
+     * @param vecinos Consulta de usuarios similares
+     */
+    public GeneradorColaborativo(Function<String, List<UsuarioSimilar>> vecinos) {
+        this.vecinos = vecinos;
+    }
+
+    @Override
+    public String getNombre() {
+        return "colaborativo";
+    }
+
+    @Override
+    public void aportarDispersos(SolicitudRecomendacion solicitud, double[] puntajes, double peso) {
+        List<UsuarioSimilar> similares = vecinos.apply(solicitud.getUsuario().getId());
+        double total = 0;
+        for (UsuarioSimilar s : similares) total += s.similitud;
+        if (total <= 0) return;
+
+        IndiceCatalogo indice = solicitud.getIndice();
+        double factor = peso / total;
+        for (UsuarioSimilar s : similares) {
+            for (int ordinal : s.usuario.getOrdinalesFavoritos()) {
+                int pos = indice.posicionDeOrdinal(ordinal);
+                if (pos >= 0) puntajes[pos] += s.similitud * factor;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.syncup.algorithms;
+
+/**
+ * Candidatas por contenido: afinidad de cada canción con los géneros y artistas de las
+ * favoritas del usuario ({@code 2·género + 3·artista}, normalizado por el número de
+ * favoritas). Se evalúa dentro de la pasada única sobre el catálogo.
+ */
+public class GeneradorContenido implements GeneradorCandidatos {
+
+    @Override
+    public String getNombre() {
+        return "contenido";
+    }
+
+    @Override
+    public FuncionPuntaje porCancion(SolicitudRecomendacion solicitud) {
+        int favoritas = solicitud.getPropias().length;
+        if (favoritas == 0) return null;
+
+        IndiceCatalogo indice = solicitud.getIndice();
+        int[] perfilGenero = solicitud.getPerfilGenero();
+        int[] perfilArtista = solicitud.getPerfilArtista();
+        double escala = 1.0 / (5.0 * favoritas);
+        return pos -> (perfilGenero[indice.generoDe(pos)] * 2.0 + perfilArtista[indice.artistaDe(pos)] * 3.0) * escala;
+    }
+}
@@ -0,0 +1,29 @@
+package com.syncup.algorithms;
+
+/**
+ * Candidatas de los géneros que el usuario declaró como favoritos en su perfil: aporta
+ * 1 a cada canción de esos géneros. Cubre a los usuarios sin favoritas ni vecinos.
+ */
+public class GeneradorGenerosFavoritos implements GeneradorCandidatos {
+
+    @Override
+    public String getNombre() {
+        return "generos-favoritos";
+    }
+
+    @Override
+    public FuncionPuntaje porCancion(SolicitudRecomendacion solicitud) {
+        IndiceCatalogo indice = solicitud.getIndice();
+        boolean[] declarado = new boolean[indice.getNumeroGeneros()];
+        boolean alguno = false;
+        for (String genero : solicitud.getUsuario().getGenerosFavoritos()) {
+            int o = indice.ordinalGenero(genero);
+            if (o >= 0) {
+                declarado[o] = true;
+                alguno = true;
+            }
+        }
+        if (!alguno) return null;
+        return pos -> declarado[indice.generoDe(pos)] ? 1.0 : 0.0;
+    }
+}
@@ -0,0 +1,23 @@
+package com.syncup.algorithms;
+
+/**
+ * Candidatas por popularidad y tendencias: reproducciones, favoritos y calificación de
+ * cada canción (términos precalculados en el índice), normalizados por el máximo del
+ * catálogo. Se evalúa dentro de la pasada única sobre el catálogo.
+ */
+public class GeneradorPopularidad implements GeneradorCandidatos {
+
+    @Override
+    public String getNombre() {
+        return "popularidad";
+    }
+
+    @Override
+    public FuncionPuntaje porCancion(SolicitudRecomendacion solicitud) {
+        IndiceCatalogo indice = solicitud.getIndice();
+        double max = indice.getMaxPopularidad();
+        if (max <= 0) return null;
+        double escala = 1.0 / max;
+        return pos -> indice.popularidadDe(pos) * escala;
+    }
+}
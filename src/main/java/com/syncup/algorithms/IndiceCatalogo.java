@@ -0,0 +1,237 @@
+package com.syncup.algorithms;
+
+import com.syncup.models.Cancion;
+import com.syncup.models.Ordinales;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Índices de solo lectura sobre el catálogo, compartidos entre peticiones y entre los
+ * hilos de un lote: el ranking global de popularidad y las canciones de cada género y
+ * de cada artista, ya ordenadas por popularidad. Con ellos, "las N más populares que
+ * cumplen X" es un recorrido corto de una lista en lugar de filtrar y ordenar todo el
+ * catálogo en cada llamada.
+ * <p>
+ * Además guarda por posición (orden de popularidad) las características que usa la
+ * puntuación por contenido: ordinal de género, ordinal de artista y el término de
+ * popularidad con sus logaritmos ya calculados. Puntuar el catálogo para un usuario es
+ * entonces un recorrido de arreglos primitivos sin crear objetos por candidato
+ * (ver {@link PipelineRecomendacion}).
+ * <p>
+ * Es una instantánea: se construye una vez y se reemplaza cuando cambia el catálogo.
+ */
+public class IndiceCatalogo {
+
+    /** Versión del catálogo con la que se construyó */
+    private final long versionCatalogo;
+
+    /** Instante de construcción en milisegundos */
+    private final long creadoEn;
+
+    /** Todas las canciones en orden de popularidad descendente */
+    private final List<Cancion> porPopularidad;
+
+    /** Canciones por género (en minúsculas) en orden de popularidad */
+    private final Map<String, List<Cancion>> porGenero;
+
+    /** Canciones por artista principal o colaborador (en minúsculas) en orden de popularidad */
+    private final Map<String, List<Cancion>> porArtista;
+
+    /** Posición en {@link #porPopularidad} por ordinal de canción (-1 si no está indexada) */
+    private final int[] posicionPorOrdinal;
+
+    /** Ordinal de cada género y de cada artista principal (claves en minúsculas) */
+    private final Map<String, Integer> ordinalGenero;
+    private final Map<String, Integer> ordinalArtista;
+
+    /** Ordinal de género y de artista principal de cada posición */
+    private final int[] generoDe;
+    private final int[] artistaDe;
+
+    /** Término de popularidad del puntaje por contenido de cada posición */
+    private final double[] popularidadDe;
+
+    /** Máximo de {@link #popularidadDe} */
+    private final double maxPopularidad;
+
+    /**
+     * Construye los índices a partir de una copia del catálogo.
+     *
+     * @param canciones Canciones del catálogo
+     * @param versionCatalogo Versión del catálogo a la que corresponde la copia
+     */
+    public IndiceCatalogo(Collection<Cancion> canciones, long versionCatalogo) {
+        this.versionCatalogo = versionCatalogo;
+        this.creadoEn = System.currentTimeMillis();
+
+        List<Cancion> orden = new ArrayList<>(canciones);
+        double[] puntaje = new double[orden.size()];
+        Integer[] idx = new Integer[orden.size()];
+        for (int i = 0; i < idx.length; i++) { idx[i] = i; puntaje[i] = orden.get(i).calcularPuntajePopularidad(); }
+        Arrays.sort(idx, (a, b) -> Double.compare(puntaje[b], puntaje[a]));
+        List<Cancion> ordenadas = new ArrayList<>(idx.length);
+        for (Integer i : idx) ordenadas.add(orden.get(i));
+        this.porPopularidad = Collections.unmodifiableList(ordenadas);
+
+        Map<String, List<Cancion>> generos = new java.util.HashMap<>();
+        Map<String, List<Cancion>> artistas = new java.util.HashMap<>();
+        for (Cancion c : ordenadas) {
+            generos.computeIfAbsent(clave(c.getGenero()), k -> new ArrayList<>()).add(c);
+            artistas.computeIfAbsent(clave(c.getArtista()), k -> new ArrayList<>()).add(c);
+            for (String colaborador : c.getArtistasColaboradores()) {
+                List<Cancion> l = artistas.computeIfAbsent(clave(colaborador), k -> new ArrayList<>());
+                if (l.isEmpty() || l.get(l.size() - 1) != c) l.add(c);
+            }
+        }
+        this.porGenero = generos;
+        this.porArtista = artistas;
+
+        int n = ordenadas.size();
+        int maxOrdinal = -1;
+        for (Cancion c : ordenadas) maxOrdinal = Math.max(maxOrdinal, c.getOrdinal());
+        this.posicionPorOrdinal = new int[maxOrdinal + 1];
+        java.util.Arrays.fill(posicionPorOrdinal, -1);
+        this.ordinalGenero = new java.util.HashMap<>();
+        this.ordinalArtista = new java.util.HashMap<>();
+        this.generoDe = new int[n];
+        this.artistaDe = new int[n];
+        this.popularidadDe = new double[n];
+        double max = 0;
+        for (int i = 0; i < n; i++) {
+            Cancion c = ordenadas.get(i);
+            posicionPorOrdinal[c.getOrdinal()] = i;
+            generoDe[i] = ordinalGenero.computeIfAbsent(clave(c.getGenero()), k -> ordinalGenero.size());
+            artistaDe[i] = ordinalArtista.computeIfAbsent(clave(c.getArtista()), k -> ordinalArtista.size());
+            popularidadDe[i] = Math.log(1 + c.getReproducciones()) * 0.1
+                + Math.log(1 + c.getNumeroFavoritos()) * 0.2
+                + c.getCalificacionPromedio() * 0.5;
+            max = Math.max(max, popularidadDe[i]);
+        }
+        this.maxPopularidad = max;
+    }
+
+    private static String clave(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return Todas las canciones en orden de popularidad descendente (inmutable)
+     */
+    public List<Cancion> getPorPopularidad() {
+        return porPopularidad;
+    }
+
+    /**
+     * @param genero Género (sin distinguir mayúsculas)
+     * @return Canciones del género en orden de popularidad, o lista vacía
+     */
+    public List<Cancion> getPorGenero(String genero) {
+        return Collections.unmodifiableList(porGenero.getOrDefault(clave(genero), Collections.emptyList()));
+    }
+
+    /**
+     * @param artista Artista principal o colaborador (sin distinguir mayúsculas)
+     * @return Canciones del artista en orden de popularidad, o lista vacía
+     */
+    public List<Cancion> getPorArtista(String artista) {
+        return Collections.unmodifiableList(porArtista.getOrDefault(clave(artista), Collections.emptyList()));
+    }
+
+    /**
+     * Toma las primeras canciones de una lista ordenada que no estén excluidas.
+     *
+     * @param fuente Lista ordenada por preferencia
+     * @param excluidas IDs a omitir
+     * @param limite Número máximo de canciones
+     * @return Hasta {@code limite} canciones de la fuente
+     */
+    public static List<Cancion> primeras(List<Cancion> fuente, Set<String> excluidas, int limite) {
+        return primeras(fuente, excluidas::contains, limite);
+    }
+
+    /**
+     * Variante de {@link #primeras(List, Set, int)} con un criterio de exclusión arbitrario,
+     * para excluir sin copiar a un conjunto (por ejemplo, las favoritas de un usuario).
+     *
+     * @param fuente Lista ordenada por preferencia
+     * @param excluida Devuelve true para los IDs a omitir
+     * @param limite Número máximo de canciones
+     * @return Hasta {@code limite} canciones de la fuente
+     */
+    public static List<Cancion> primeras(List<Cancion> fuente, Predicate<String> excluida, int limite) {
+        List<Cancion> res = new ArrayList<>(Math.max(0, Math.min(limite, fuente.size())));
+        for (Cancion c : fuente) {
+            if (res.size() >= limite) break;
+            if (!excluida.test(c.getId())) res.add(c);
+        }
+        return res;
+    }
+
+    /**
+     * @param cancionId ID de la canción
+     * @return Posición de la canción en el orden de popularidad, o -1 si no está indexada
+     */
+    public int posicion(String cancionId) {
+        return posicionDeOrdinal(Ordinales.CANCIONES.buscar(cancionId));
+    }
+
+    /**
+     * @param ordinal Ordinal global de la canción ({@link Ordinales#CANCIONES})
+     * @return Posición de la canción en el orden de popularidad, o -1 si no está indexada
+     */
+    public int posicionDeOrdinal(int ordinal) {
+        return ordinal >= 0 && ordinal < posicionPorOrdinal.length ? posicionPorOrdinal[ordinal] : -1;
+    }
+
+    /**
+     * @param posicion Posición en el orden de popularidad
+     * @return Canción en esa posición
+     */
+    public Cancion getCancion(int posicion) {
+        return porPopularidad.get(posicion);
+    }
+
+    /**
+     * @param genero Género (sin distinguir mayúsculas)
+     * @return Ordinal del género, o -1 si ninguna canción lo tiene
+     */
+    public int ordinalGenero(String genero) {
+        Integer o = ordinalGenero.get(clave(genero));
+        return o == null ? -1 : o;
+    }
+
+    /** @return Ordinal de género de la canción en una posición */
+    public int generoDe(int posicion) { return generoDe[posicion]; }
+
+    /** @return Ordinal de artista principal de la canción en una posición */
+    public int artistaDe(int posicion) { return artistaDe[posicion]; }
+
+    /** @return Término de popularidad (logaritmos ya aplicados) de la canción en una posición */
+    public double popularidadDe(int posicion) { return popularidadDe[posicion]; }
+
+    /** @return Mayor término de popularidad del catálogo, para normalizar */
+    public double getMaxPopularidad() { return maxPopularidad; }
+
+    public int getNumeroGeneros() { return ordinalGenero.size(); }
+    public int getNumeroArtistas() { return ordinalArtista.size(); }
+
+    /**
+     * Indica si el índice ya no refleja el catálogo: cambió su versión o pasó el tiempo
+     * máximo (la popularidad varía con las reproducciones).
+     *
+     * @param versionActual Versión actual del catálogo
+     * @param maxEdadMillis Edad máxima tolerada
+     * @return true si conviene reconstruirlo
+     */
+    public boolean estaObsoleto(long versionActual, long maxEdadMillis) {
+        return versionActual != versionCatalogo || System.currentTimeMillis() - creadoEn > maxEdadMillis;
+    }
+
+    /**
+     * @return Número de canciones indexadas
+     */
+    public int size() {
+        return porPopularidad.size();
+    }
+}
@@ -0,0 +1,66 @@
+package com.syncup.algorithms;
+
+import com.syncup.models.Cancion;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mezcla reproducible de una lista de recomendaciones.
+ * <p>
+ * La semilla se deriva del usuario, del contexto y de la semana ISO en curso, de modo
+ * que el mismo usuario ve el mismo orden durante toda la semana (y la cache sigue siendo
+ * coherente) pero un orden distinto la semana siguiente. Tanto {@link String#hashCode()}
+ * como {@link Random} están especificados, así que el orden es el mismo en cualquier JVM.
+ */
+public class MezclaSemanal implements EtapaPostRanking {
+
+    private final Clock reloj;
+
+    /**
+     * Crea una mezcla basada en la fecha del sistema.
+     */
+    public MezclaSemanal() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param reloj Reloj del que se toma la semana (fijo en pruebas)
+     */
+    public MezclaSemanal(Clock reloj) {
+        this.reloj = reloj;
+    }
+
+    @Override
+    public List<Cancion> aplicar(String usuarioId, String contexto, List<Cancion> candidatas, int limite) {
+        List<Cancion> res = new ArrayList<>(candidatas.subList(0, Math.min(limite, candidatas.size())));
+        Collections.shuffle(res, new Random(semilla(usuarioId, contexto)));
+        return res;
+    }
+
+    /**
+     * Calcula la semilla de la semana actual para un usuario y contexto.
+     *
+     * @param usuarioId ID del usuario
+     * @param contexto Clave del tipo de lista
+     * @return Semilla de 64 bits
+     */
+    public long semilla(String usuarioId, String contexto) {
+        LocalDate hoy = LocalDate.now(reloj);
+        long semana = hoy.get(IsoFields.WEEK_BASED_YEAR) * 100L + hoy.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+        long h = 1125899906842597L;
+        h = 31 * h + usuarioId.hashCode();
+        h = 31 * h + contexto.hashCode();
+        h = 31 * h + semana;
+        // Mezcla final para que semanas consecutivas no den semillas casi iguales
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
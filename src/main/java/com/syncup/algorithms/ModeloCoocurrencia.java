@@ -0,0 +1,199 @@
+package com.syncup.algorithms;
+
+import com.syncup.models.Ordinales;
+import com.syncup.models.Usuario;
+import com.syncup.structures.MapaIntFloat;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Modelo de similitud ítem-ítem basado en co-ocurrencia de favoritos.
+ * <p>
+ * Dos canciones son similares si los mismos usuarios las marcan como favoritas.
+ * Para cada canción se guarda una fila dispersa con el número de usuarios que la
+ * comparten con cada otra canción, y a partir de ella sus N vecinos por similitud
+ * coseno: {@code c(i,j) / sqrt(n(i) * n(j))}. El modelo no depende del usuario que
+ * pide la radio, así que los vecinos de una canción se calculan una sola vez.
+ * <p>
+ * La construcción inicial se reparte por canción entre los núcleos; después se
+ * mantiene de forma incremental con {@link #registrarFavorito} y
+ * {@link #removerFavorito}, que solo marcan como obsoletas las filas afectadas.
+ * <p>
+ * Las filas se indexan directamente por el ordinal global de la canción
+ * ({@link Ordinales#CANCIONES}), así que no hay mapas de IDs propios.
+ */
+public class ModeloCoocurrencia {
+
+    /** Número de vecinos que se guardan por canción */
+    private final int vecinosPorCancion;
+
+    /** Fila de co-ocurrencias y vecinos de cada canción por ordinal (null si nadie la marcó) */
+    private FilaCancion[] filas = new FilaCancion[0];
+
+    /** Número de filas no nulas */
+    private int numeroCanciones;
+
+    /**
+     * Datos de una canción: co-ocurrencias dispersas, número de usuarios que la tienen
+     * en favoritos y sus vecinos top-N (recalculados bajo demanda si la fila cambió).
+     */
+    private static final class FilaCancion {
+        MapaIntFloat coocurrencias = new MapaIntFloat(8);
+        int usuarios;
+        int[] vecinos = new int[0];
+        float[] similitudes = new float[0];
+        boolean obsoleta = true;
+    }
+
+    /**
+     * @param vecinosPorCancion Número N de vecinos a conservar por canción
+     */
+    public ModeloCoocurrencia(int vecinosPorCancion) {
+        this.vecinosPorCancion = vecinosPorCancion;
+    }
+
+    /**
+     * Construye el modelo completo a partir de los favoritos de todos los usuarios.
+     * Primero se arma un índice invertido canción → usuarios; después cada fila se
+     * calcula en paralelo recorriendo los favoritos de esos usuarios.
+     *
+     * @param usuarios Usuarios con sus canciones favoritas
+     */
+    public synchronized void construir(Collection<Usuario> usuarios) {
+        List<int[]> favoritos = new ArrayList<>(usuarios.size());
+        int n = 0;
+        for (Usuario u : usuarios) {
+            int[] fav = u.getOrdinalesFavoritos();
+            favoritos.add(fav);
+            if (fav.length > 0) n = Math.max(n, fav[fav.length - 1] + 1);
+        }
+        filas = new FilaCancion[n];
+        numeroCanciones = 0;
+
+        int[] grado = new int[n + 1];
+        for (int[] fav : favoritos) for (int c : fav) grado[c + 1]++;
+        for (int i = 0; i < n; i++) grado[i + 1] += grado[i];
+        int[] cursor = Arrays.copyOf(grado, n);
+        int[] usuariosDe = new int[grado[n]];
+        for (int u = 0; u < favoritos.size(); u++) for (int c : favoritos.get(u)) usuariosDe[cursor[c]++] = u;
+
+        for (int i = 0; i < n; i++) {
+            if (grado[i + 1] > grado[i]) {
+                filas[i] = new FilaCancion();
+                numeroCanciones++;
+            }
+        }
+
+        IntStream.range(0, n).filter(i -> filas[i] != null).parallel().forEach(i -> {
+            FilaCancion fila = filas[i];
+            fila.usuarios = grado[i + 1] - grado[i];
+            fila.coocurrencias = new MapaIntFloat(Math.max(8, fila.usuarios * 4));
+            for (int k = grado[i]; k < grado[i + 1]; k++) {
+                for (int j : favoritos.get(usuariosDe[k])) if (j != i) fila.coocurrencias.sumar(j, 1f);
+            }
+        });
+        IntStream.range(0, n).filter(i -> filas[i] != null).parallel().forEach(this::recalcularVecinos);
+    }
+
+    /**
+     * Actualiza el modelo cuando un usuario agrega una canción a favoritos.
+     * Debe llamarse con el favorito ya agregado al usuario.
+     *
+     * @param usuario Usuario que marcó la canción
+     * @param cancionId ID de la canción agregada
+     */
+    public synchronized void registrarFavorito(Usuario usuario, String cancionId) {
+        aplicarCambio(usuario, cancionId, 1f);
+    }
+
+    /**
+     * Actualiza el modelo cuando un usuario quita una canción de favoritos.
+     * Debe llamarse con el favorito ya eliminado del usuario.
+     *
+     * @param usuario Usuario que desmarcó la canción
+     * @param cancionId ID de la canción eliminada
+     */
+    public synchronized void removerFavorito(Usuario usuario, String cancionId) {
+        int i = Ordinales.CANCIONES.buscar(cancionId);
+        if (fila(i, false) == null) return;
+        aplicarCambio(usuario, cancionId, -1f);
+    }
+
+    private void aplicarCambio(Usuario usuario, String cancionId, float delta) {
+        int i = Ordinales.CANCIONES.ordinal(cancionId);
+        FilaCancion fila = fila(i, true);
+        fila.usuarios += (int) delta;
+        fila.obsoleta = true;
+        for (int j : usuario.getOrdinalesFavoritos()) {
+            if (j == i) continue;
+            fila.coocurrencias.sumar(j, delta);
+            FilaCancion otra = fila(j, true);
+            otra.coocurrencias.sumar(i, delta);
+            otra.obsoleta = true;
+        }
+    }
+
+    /**
+     * Devuelve las canciones más similares a una canción semilla.
+     *
+     * @param cancionId ID de la canción semilla
+     * @param limite Número máximo de canciones (como mucho N)
+     * @return IDs de canciones ordenados por similitud descendente
+     */
+    public synchronized List<String> cancionesSimilares(String cancionId, int limite) {
+        int i = Ordinales.CANCIONES.buscar(cancionId);
+        FilaCancion fila = fila(i, false);
+        if (fila == null) return new ArrayList<>();
+        if (fila.obsoleta) recalcularVecinos(i);
+        List<String> res = new ArrayList<>(Math.min(limite, fila.vecinos.length));
+        for (int k = 0; k < fila.vecinos.length && k < limite; k++) res.add(Ordinales.CANCIONES.valor(fila.vecinos[k]));
+        return res;
+    }
+
+    /**
+     * Selecciona los N vecinos de mayor similitud coseno de una fila. Las filas que se
+     * quedaron sin usuarios tras quitar favoritos se omiten (su coseno sería NaN o infinito).
+     */
+    private void recalcularVecinos(int i) {
+        FilaCancion fila = filas[i];
+        int n = vecinosPorCancion;
+        int[] top = new int[n];
+        float[] sim = new float[n];
+        int[] tam = {0};
+        if (fila.usuarios > 0) fila.coocurrencias.forEach((j, c) -> {
+            FilaCancion otra = filas[j];
+            if (c <= 0f || otra == null || otra.usuarios <= 0) return;
+            float s = (float) (c / Math.sqrt((double) fila.usuarios * otra.usuarios));
+            int t = tam[0];
+            if (t == n && s <= sim[n - 1]) return;
+            int p = t == n ? n - 1 : t++;
+            while (p > 0 && sim[p - 1] < s) { sim[p] = sim[p - 1]; top[p] = top[p - 1]; p--; }
+            sim[p] = s; top[p] = j;
+            tam[0] = t;
+        });
+        fila.vecinos = Arrays.copyOf(top, tam[0]);
+        fila.similitudes = Arrays.copyOf(sim, tam[0]);
+        fila.obsoleta = false;
+    }
+
+    private FilaCancion fila(int ordinal, boolean crear) {
+        if (ordinal < 0) return null;
+        if (ordinal >= filas.length) {
+            if (!crear) return null;
+            filas = Arrays.copyOf(filas, Math.max(ordinal + 1, filas.length * 2));
+        }
+        if (filas[ordinal] == null && crear) {
+            filas[ordinal] = new FilaCancion();
+            numeroCanciones++;
+        }
+        return filas[ordinal];
+    }
+
+    /**
+     * @return Número de canciones con al menos un favorito registrado
+     */
+    public synchronized int getNumeroCanciones() {
+        return numeroCanciones;
+    }
+}
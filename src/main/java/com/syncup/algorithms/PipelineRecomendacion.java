@@ -0,0 +1,203 @@
+package com.syncup.algorithms;
+
+import com.syncup.models.Cancion;
+import com.syncup.models.Usuario;
+import com.syncup.structures.HistogramaLatencia;
+import com.syncup.structures.SeleccionTopK;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pipeline de recomendación por etapas: generación de candidatas, fusión ponderada,
+ * selección top-K y post-ranking.
+ * <ol>
+ *   <li>Cada {@link GeneradorCandidatos} aporta, con su peso, a un acumulador denso
+ *       indexado por posición en el {@link IndiceCatalogo}: los dispersos escriben sus
+ *       posiciones directamente y los "por canción" entregan una función de puntaje.</li>
+ *   <li>Una única pasada sobre el catálogo suma las funciones por canción al acumulador,
+ *       salta las favoritas del usuario y ofrece cada candidata a una selección top-K
+ *       primitiva de {@code limite · factorCandidatos} elementos.</li>
+ *   <li>La {@link EtapaPostRanking} diversifica y ordena las candidatas y recorta al límite.</li>
+ * </ol>
+ * Cada etapa registra su duración en un {@link HistogramaLatencia}. Para los generadores
+ * por canción solo se mide la preparación; su evaluación cuenta en la pasada única.
+ * Los pesos pueden cambiarse en caliente; la instancia es segura para hilos.
+ */
+public class PipelineRecomendacion {
+
+    /**
+     * Generador registrado con su peso y su histograma.
+     */
+    private static final class Etapa {
+        final GeneradorCandidatos generador;
+        final HistogramaLatencia latencia;
+        volatile double peso;
+
+        Etapa(GeneradorCandidatos generador, double peso) {
+            this.generador = generador;
+            this.peso = peso;
+            this.latencia = new HistogramaLatencia(generador.getNombre());
+        }
+    }
+
+    private final List<Etapa> etapas = new CopyOnWriteArrayList<>();
+    private final int factorCandidatos;
+    private volatile EtapaPostRanking postRanking;
+
+    private final HistogramaLatencia latenciaPasada = new HistogramaLatencia("pasada-catalogo");
+    private final HistogramaLatencia latenciaPostRanking = new HistogramaLatencia("post-ranking");
+    private final HistogramaLatencia latenciaTotal = new HistogramaLatencia("total");
+
+    /**
+     * @param factorCandidatos Candidatas seleccionadas por cada canción pedida, para dar
+     *                         margen al post-ranking (al menos 1)
+     * @param postRanking Etapa final
+     */
+    public PipelineRecomendacion(int factorCandidatos, EtapaPostRanking postRanking) {
+        this.factorCandidatos = Math.max(1, factorCandidatos);
+        this.postRanking = postRanking;
+    }
+
+    /**
+     * Registra un generador de candidatas.
+     *
+     * @param generador Generador (su nombre debe ser único en el pipeline)
+     * @param peso Peso inicial (0 lo desactiva)
+     * @return Este pipeline, para encadenar
+     */
+    public PipelineRecomendacion agregarGenerador(GeneradorCandidatos generador, double peso) {
+        if (buscar(generador.getNombre()) != null) {
+            throw new IllegalArgumentException("Generador duplicado: " + generador.getNombre());
+        }
+        etapas.add(new Etapa(generador, peso));
+        return this;
+    }
+
+    /**
+     * Cambia el peso de un generador.
+     *
+     * @param nombre Nombre del generador
+     * @param peso Nuevo peso (0 lo desactiva)
+     */
+    public void setPeso(String nombre, double peso) {
+        Etapa etapa = buscar(nombre);
+        if (etapa == null) {
+            throw new IllegalArgumentException("Generador desconocido: " + nombre);
+        }
+        etapa.peso = peso;
+    }
+
+    /**
+     * @param nombre Nombre del generador
+     * @return Peso actual del generador
+     */
+    public double getPeso(String nombre) {
+        Etapa etapa = buscar(nombre);
+        if (etapa == null) {
+            throw new IllegalArgumentException("Generador desconocido: " + nombre);
+        }
+        return etapa.peso;
+    }
+
+    private Etapa buscar(String nombre) {
+        for (Etapa etapa : etapas) {
+            if (etapa.generador.getNombre().equals(nombre)) return etapa;
+        }
+        return null;
+    }
+
+    /**
+     * @param postRanking Nueva etapa final
+     */
+    public void setPostRanking(EtapaPostRanking postRanking) {
+        this.postRanking = postRanking;
+    }
+
+    /**
+     * Ejecuta el pipeline para un usuario.
+     *
+     * @param usuario Usuario destinatario
+     * @param indice Índice de catálogo a usar
+     * @param contexto Clave del tipo de lista (se pasa al post-ranking)
+     * @param limite Número máximo de canciones
+     * @return Lista inmutable de canciones recomendadas
+     */
+    public List<Cancion> recomendar(Usuario usuario, IndiceCatalogo indice, String contexto, int limite) {
+        long inicio = System.nanoTime();
+        long t = inicio;
+        SolicitudRecomendacion solicitud = new SolicitudRecomendacion(usuario, indice, contexto, limite);
+        int n = indice.size();
+        double[] puntajes = new double[n];
+
+        // 1. Generación: aportes dispersos y preparación de las funciones por canción
+        List<Etapa> activas = etapas;
+        GeneradorCandidatos.FuncionPuntaje[] funciones = new GeneradorCandidatos.FuncionPuntaje[activas.size()];
+        double[] pesos = new double[activas.size()];
+        int m = 0;
+        for (Etapa etapa : activas) {
+            double peso = etapa.peso;
+            if (peso <= 0) continue;
+            etapa.generador.aportarDispersos(solicitud, puntajes, peso);
+            GeneradorCandidatos.FuncionPuntaje f = etapa.generador.porCancion(solicitud);
+            if (f != null) {
+                funciones[m] = f;
+                pesos[m++] = peso;
+            }
+            t = etapa.latencia.registrarDesde(t);
+        }
+
+        // 2. Fusión y selección en una sola pasada
+        int[] propias = solicitud.getPropias();
+        int siguientePropia = 0;
+        SeleccionTopK top = new SeleccionTopK(Math.min(limite * factorCandidatos, n));
+        for (int i = 0; i < n; i++) {
+            if (siguientePropia < propias.length && propias[siguientePropia] == i) {
+                siguientePropia++;
+                continue;
+            }
+            double p = puntajes[i];
+            for (int j = 0; j < m; j++) p += pesos[j] * funciones[j].puntuar(i);
+            if (p > 0) top.ofrecer(i, p);
+        }
+        int[] elegidas = top.extraerOrdenados();
+        List<Cancion> candidatas = new ArrayList<>(elegidas.length);
+        for (int pos : elegidas) candidatas.add(indice.getCancion(pos));
+        t = latenciaPasada.registrarDesde(t);
+
+        // 3. Post-ranking
+        List<Cancion> resultado = postRanking.aplicar(usuario.getId(), contexto, candidatas, limite);
+        latenciaPostRanking.registrarDesde(t);
+        latenciaTotal.registrarDesde(inicio);
+        return List.copyOf(resultado);
+    }
+
+    /**
+     * @return Histogramas de cada generador y de las etapas comunes, en orden de ejecución
+     */
+    public List<HistogramaLatencia> getHistogramas() {
+        List<HistogramaLatencia> lista = new ArrayList<>();
+        for (Etapa etapa : etapas) lista.add(etapa.latencia);
+        lista.add(latenciaPasada);
+        lista.add(latenciaPostRanking);
+        lista.add(latenciaTotal);
+        return lista;
+    }
+
+    /**
+     * Obtiene pesos y latencias por etapa en texto.
+     *
+     * @return String con una línea por etapa
+     */
+    public String getEstadisticas() {
+        StringBuilder sb = new StringBuilder("Pipeline de recomendación:\n");
+        for (Etapa etapa : etapas) {
+            sb.append(String.format("  [peso %.2f] %s%n", etapa.peso, etapa.latencia));
+        }
+        sb.append("  ").append(latenciaPasada).append('\n');
+        sb.append("  ").append(latenciaPostRanking).append('\n');
+        sb.append("  ").append(latenciaTotal).append('\n');
+        return sb.toString();
+    }
+}
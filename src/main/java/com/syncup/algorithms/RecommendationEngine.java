@@ -2,10 +2,23 @@ package com.syncup.algorithms;
 
 import com.syncup.models.Usuario;
 import com.syncup.models.Cancion;
+import com.syncup.structures.CacheLRU;
 import com.syncup.structures.GrafoDeSimilitud;
+import com.syncup.structures.TablaVecinos;
 import com.syncup.data.DataManager;
+import com.syncup.data.EventoCatalogo;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 /**
@@ -19,60 +32,272 @@ import java.util.stream.Collectors;
  */
 public class RecommendationEngine {
     
-    /** Grafo de similitud para recomendaciones colaborativas */
-    private GrafoDeSimilitud grafoDeSimilitud;
+    /** Instancia única compartida por todas las sesiones */
+    private static RecommendationEngine instance;
+    
+    /**
+     * Estructuras derivadas de los datos (grafo y modelo ítem-ítem). Se reemplazan
+     * completas al reconstruir, así que quien lee una versión la ve consistente mientras
+     * la siguiente se calcula en segundo plano. Es null hasta el primer calentamiento.
+     */
+    private volatile EstadoMotor estado;
     
     /** Gestor de datos del sistema */
     private DataManager dataManager;
     
-    /** Cache de recomendaciones recientes */
-    private HashMap<String, CacheRecomendaciones> cacheRecomendaciones;
+    /** Cache concurrente y acotada de recomendaciones recientes */
+    private final CacheLRU<String, List<Cancion>> cacheRecomendaciones;
+    
+    /** Índices de popularidad, género y artista compartidos entre peticiones */
+    private volatile IndiceCatalogo indiceCatalogo;
+    
+    /** Generación, fusión, selección y post-ranking del Descubrimiento Semanal */
+    private final PipelineRecomendacion pipelineDescubrimiento;
+    
+    /** Etapa final de las radios: solo mezcla semanal, la radio busca afinidad y no variedad */
+    private volatile EtapaPostRanking postRankingRadio = new MezclaSemanal();
+    
+    /** Hilo en segundo plano para construir y reconstruir el estado */
+    private final ExecutorService constructor;
+    
+    /** Se completa cuando el primer estado está disponible */
+    private final CompletableFuture<Void> listo = new CompletableFuture<>();
+    
+    /** Reconstrucción en curso (para no encolar varias a la vez); null si no hay ninguna */
+    private final AtomicReference<CompletableFuture<Void>> reconstruccion = new AtomicReference<>();
+    
+    /**
+     * Reconstrucción pedida mientras otra estaba en curso: arranca al terminar aquella, así
+     * que incluye los cambios que la pidieron. Varias peticiones comparten la misma.
+     */
+    private CompletableFuture<Void> reconstruccionPendiente;
+
+    /**
+     * Usuarios cuyas aristas del grafo esperan recalcularse en el hilo constructor; varios
+     * cambios seguidos del mismo usuario comparten un solo recálculo.
+     */
+    private final Set<String> usuariosPendientes = java.util.concurrent.ConcurrentHashMap.newKeySet();
     
     /** Tiempo de vida del cache en millisegundos (30 minutos) */
     private static final long CACHE_TTL = 30 * 60 * 1000;
     
+    /** Edad máxima del índice de catálogo antes de reordenar por popularidad (5 minutos) */
+    private static final long INDICE_MAX_EDAD = 5 * 60 * 1000;
+
+    /** En el modo mapeado, canciones del archivo (las más populares) que entran al índice de catálogo */
+    private static final int INDICE_MAX_MAPEADAS = 20_000;
+    
+    /** Candidatas seleccionadas por cada canción pedida, para dar margen a la diversificación */
+    private static final int FACTOR_CANDIDATOS = 2;
+    
+    /** Número máximo de listas de recomendaciones cacheadas */
+    private static final int CACHE_MAX_ENTRADAS = 1000;
+    
     /** Número máximo de recomendaciones por defecto */
     private static final int MAX_RECOMENDACIONES_DEFAULT = 20;
     
     /** Número de usuarios similares a considerar */
     private static final int USUARIOS_SIMILARES_LIMITE = 15;
     
+    /** Canciones similares que se conservan por canción en el modelo ítem-ítem */
+    private static final int VECINOS_POR_CANCION = 50;
+    
+    /** Tabla de vecinos precalculada, persistida junto a users.json */
+    private static final Path ARCHIVO_TABLA_VECINOS = Path.of("src/main/resources", "data", "vecinos.knn");
+    
+    /**
+     * Obtiene el motor compartido. La primera llamada no construye nada; el estado se
+     * calcula en segundo plano con {@link #iniciarCalentamiento()} o, si nadie lo inició,
+     * en la primera petición de recomendaciones.
+     * 
+     * @return Instancia única del motor
+     */
+    public static synchronized RecommendationEngine getInstance() {
+        if (instance == null) instance = new RecommendationEngine();
+        return instance;
+    }
+    
     /**
      * Constructor del motor de recomendaciones.
      */
-    public RecommendationEngine() {
-        this.grafoDeSimilitud = new GrafoDeSimilitud();
+    private RecommendationEngine() {
         this.dataManager = DataManager.getInstance();
-        this.cacheRecomendaciones = new HashMap<>();
-        
-        inicializarSistema();
+        this.cacheRecomendaciones = new CacheLRU<>(CACHE_MAX_ENTRADAS, CACHE_TTL);
+        this.constructor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "syncup-recomendaciones");
+            t.setDaemon(true);
+            return t;
+        });
+        // Diversidad por artista/género y mezcla semanal como etapa final
+        this.pipelineDescubrimiento = new PipelineRecomendacion(FACTOR_CANDIDATOS,
+                new DiversificacionMMR().luego(new MezclaSemanal()))
+            .agregarGenerador(new GeneradorColaborativo(this::usuariosSimilares), 0.6)
+            .agregarGenerador(new GeneradorContenido(), 0.3)
+            .agregarGenerador(new GeneradorPopularidad(), 0.1)
+            .agregarGenerador(new GeneradorGenerosFavoritos(), 0.05);
+        dataManager.getEventos().suscribir(this::alCambiarCatalogo);
+    }
+    
+    /**
+     * Lanza en segundo plano la construcción del estado si aún no existe. Es seguro
+     * llamarlo varias veces.
+     * 
+     * @return Futuro que se completa cuando el motor está listo
+     */
+    public CompletableFuture<Void> iniciarCalentamiento() {
+        synchronized (this) {
+            if (estado == null && reconstruccion.get() == null) programarReconstruccion();
+        }
+        return listo;
     }
     
     /**
-     * Inicializa el sistema de recomendaciones cargando datos y construyendo índices.
+     * @return true si el motor ya tiene un estado completo para recomendar
      */
-    private void inicializarSistema() {
+    public boolean isListo() {
+        return estado != null;
+    }
+    
+    /**
+     * @return true si se está calculando un estado nuevo en segundo plano
+     */
+    public boolean isReconstruyendo() {
+        return reconstruccion.get() != null;
+    }
+    
+    /**
+     * @return Futuro que se completa cuando el primer estado está disponible
+     */
+    public CompletableFuture<Void> getListo() {
+        return listo;
+    }
+    
+    /**
+     * Encola una reconstrucción; el estado actual sigue sirviendo mientras tanto. Si ya hay
+     * una en curso, puede haber leído los datos antes del cambio que motiva esta llamada,
+     * así que se encadena otra a continuación en lugar de devolver la que está en curso.
+     * 
+     * @return Futuro que se completa cuando se publica un estado que incluye los datos actuales
+     */
+    private synchronized CompletableFuture<Void> programarReconstruccion() {
+        if (reconstruccion.get() == null) return lanzarReconstruccion();
+        if (reconstruccionPendiente == null) reconstruccionPendiente = new CompletableFuture<>();
+        return reconstruccionPendiente;
+    }
+    
+    /** Arranca una reconstrucción en el hilo constructor; se llama con el monitor tomado. */
+    private CompletableFuture<Void> lanzarReconstruccion() {
+        CompletableFuture<Void> futuro = new CompletableFuture<>();
+        reconstruccion.set(futuro);
+        constructor.execute(() -> {
+            Throwable error = null;
+            try {
+                estado = construirEstado();
+                cacheRecomendaciones.invalidarTodo();
+                listo.complete(null);
+            } catch (RuntimeException | Error ex) {
+                error = ex;
+                System.err.println("Error construyendo el motor de recomendaciones: " + ex);
+            }
+            terminarReconstruccion(futuro);
+            if (error == null) futuro.complete(null); else futuro.completeExceptionally(error);
+        });
+        return futuro;
+    }
+    
+    /**
+     * Retira la reconstrucción terminada (solo si sigue siendo la vigente) y arranca la
+     * pendiente, si alguien la pidió mientras tanto.
+     */
+    private synchronized void terminarReconstruccion(CompletableFuture<Void> terminada) {
+        if (!reconstruccion.compareAndSet(terminada, null)) return;
+        CompletableFuture<Void> pendiente = reconstruccionPendiente;
+        if (pendiente == null) return;
+        reconstruccionPendiente = null;
+        lanzarReconstruccion().whenComplete((r, ex) -> {
+            if (ex != null) pendiente.completeExceptionally(ex); else pendiente.complete(null);
+        });
+    }
+    
+    /**
+     * Construye un estado nuevo cargando datos y construyendo índices.
+     * 
+     * @return Estado listo para publicarse
+     */
+    private EstadoMotor construirEstado() {
         System.out.println("Inicializando motor de recomendaciones...");
+        long inicio = System.currentTimeMillis();
+        GrafoDeSimilitud grafo = new GrafoDeSimilitud();
+        ModeloCoocurrencia modelo = new ModeloCoocurrencia(VECINOS_POR_CANCION);
         
         // Cargar usuarios en el grafo
         List<Usuario> usuarios = dataManager.getAllUsuarios();
         for (Usuario usuario : usuarios) {
-            grafoDeSimilitud.agregarUsuario(usuario);
+            grafo.agregarUsuario(usuario);
         }
         
-        // Cargar canciones en el grafo
-        List<Cancion> canciones = dataManager.getAllCanciones();
+        // Cargar canciones en el grafo; en el modo mapeado solo las favoritas, que son las
+        // únicas que el grafo consulta, para no decodificar el archivo entero
+        List<Cancion> canciones = dataManager.isCatalogoMapeado() ? cancionesFavoritas(usuarios) : dataManager.getAllCanciones();
         for (Cancion cancion : canciones) {
-            grafoDeSimilitud.agregarCancion(cancion);
+            grafo.agregarCancion(cancion);
         }
         
         // Calcular similitudes iniciales
         if (!usuarios.isEmpty()) {
-            grafoDeSimilitud.calcularSimilitudes();
+            grafo.calcularSimilitudes();
+            prepararTablaVecinos(grafo);
         }
         
-        System.out.println("Motor de recomendaciones inicializado.");
-        System.out.println(grafoDeSimilitud.getEstadisticas());
+        // Modelo ítem-ítem para radios
+        modelo.construir(usuarios);
+        
+        System.out.println("Motor de recomendaciones inicializado en " + (System.currentTimeMillis() - inicio) + " ms.");
+        System.out.println(grafo.getEstadisticas());
+        return new EstadoMotor(grafo, modelo);
+    }
+    
+    /** @return Canciones favoritas de algún usuario, sin repetir */
+    private List<Cancion> cancionesFavoritas(List<Usuario> usuarios) {
+        Map<String, Cancion> favoritas = new LinkedHashMap<>();
+        for (Usuario u : usuarios) {
+            for (String id : u.getVistaCancionesFavoritas()) {
+                if (favoritas.containsKey(id)) continue;
+                Cancion c = dataManager.getCancionById(id);
+                if (c != null) favoritas.put(id, c);
+            }
+        }
+        return new ArrayList<>(favoritas.values());
+    }
+    
+    /**
+     * Obtiene el estado vigente, iniciando el calentamiento si nadie lo hizo.
+     * 
+     * @return Estado actual o null si todavía se está construyendo
+     */
+    private EstadoMotor estadoActual() {
+        EstadoMotor e = estado;
+        if (e == null) iniciarCalentamiento();
+        return e;
+    }
+    
+    /**
+     * Reutiliza la tabla de vecinos persistida si sigue siendo válida para los datos
+     * actuales; si no, la recalcula en paralelo y la guarda para el próximo arranque.
+     */
+    private void prepararTablaVecinos(GrafoDeSimilitud grafo) {
+        if (grafo.adoptarTablaVecinos(TablaVecinos.cargar(ARCHIVO_TABLA_VECINOS))) {
+            System.out.println("Tabla de vecinos cargada desde " + ARCHIVO_TABLA_VECINOS);
+            return;
+        }
+        long inicio = System.currentTimeMillis();
+        TablaVecinos tabla = grafo.construirTablaVecinos(USUARIOS_SIMILARES_LIMITE);
+        System.out.println("Tabla de vecinos calculada en " + (System.currentTimeMillis() - inicio) + " ms");
+        try {
+            tabla.guardar(ARCHIVO_TABLA_VECINOS);
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar la tabla de vecinos: " + e.getMessage());
+        }
     }
     
     /**
@@ -98,46 +323,108 @@ public class RecommendationEngine {
             return new ArrayList<>();
         }
         
-        // Verificar cache
-        CacheRecomendaciones cache = cacheRecomendaciones.get(usuarioId + "_weekly");
-        if (cache != null && !cache.isExpired()) {
-            return cache.recomendaciones.subList(0, Math.min(limite, cache.recomendaciones.size()));
+        // Mientras el motor se calienta se devuelven resultados parciales sin cachearlos
+        if (estadoActual() == null) {
+            return calcularDescubrimientoSemanal(usuario, limite, true);
         }
         
-        System.out.println("Generando Descubrimiento Semanal para: " + usuario.getUsername());
-        
-        List<Cancion> recomendaciones = new ArrayList<>();
-        
-        // 1. Recomendaciones basadas en filtrado colaborativo (60%)
-        List<Cancion> colaborativas = obtenerRecomendacionesColaborativas(usuarioId, (int)(limite * 0.6));
-        recomendaciones.addAll(colaborativas);
-        
-        // 2. Recomendaciones basadas en contenido (30%)
-        List<Cancion> contenido = obtenerRecomendacionesBasadasEnContenido(usuarioId, (int)(limite * 0.3));
-        agregarSinDuplicados(recomendaciones, contenido);
-        
-        // 3. Recomendaciones por popularidad y tendencias (10%)
-        List<Cancion> populares = obtenerRecomendacionesPopulares(usuarioId, (int)(limite * 0.1));
-        agregarSinDuplicados(recomendaciones, populares);
-        
-        // Completar con recomendaciones adicionales si es necesario
-        if (recomendaciones.size() < limite) {
-            List<Cancion> adicionales = obtenerRecomendacionesAdicionales(usuarioId, usuario, limite - recomendaciones.size());
-            agregarSinDuplicados(recomendaciones, adicionales);
+        // La cache coalesce peticiones concurrentes del mismo usuario en un solo cálculo
+        List<Cancion> recomendaciones = cacheRecomendaciones.obtener(usuarioId + "_weekly",
+            () -> calcularDescubrimientoSemanal(usuario, limite, true));
+        return List.copyOf(recomendaciones.subList(0, Math.min(limite, recomendaciones.size())));
+    }
+    
+    /**
+     * Genera el Descubrimiento Semanal de muchos usuarios a la vez. Los IDs se reparten
+     * entre los núcleos disponibles; todos los hilos comparten el mismo índice de catálogo
+     * y el mismo estado del motor, y cada resultado se guarda en la cache y se entrega al
+     * sumidero en cuanto está listo, sin acumular el lote completo en memoria.
+     * <p>
+     * Si el motor aún se está calentando, espera a que termine.
+     * 
+     * @param usuarioIds IDs de los usuarios a procesar
+     * @param limite Número máximo de canciones por usuario
+     * @param sumidero Destino de los resultados (se invoca desde varios hilos)
+     * @return Resumen del lote con tiempo total y usuarios por segundo
+     */
+    public ResultadoLote generarDescubrimientoSemanalLote(Collection<String> usuarioIds, int limite,
+                                                          SumideroRecomendaciones sumidero) {
+        long inicio = System.currentTimeMillis();
+        getListo().join();
+        indiceCatalogo();
+        
+        List<String> ids = new ArrayList<>(usuarioIds);
+        int hilos = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), ids.size()));
+        AtomicInteger procesados = new AtomicInteger();
+        AtomicInteger omitidos = new AtomicInteger();
+        AtomicInteger errores = new AtomicInteger();
+        
+        ExecutorService pool = Executors.newFixedThreadPool(hilos, r -> {
+            Thread t = new Thread(r, "syncup-recomendaciones-lote");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> tareas = new ArrayList<>(hilos);
+            for (int h = 0; h < hilos; h++) {
+                // Particiones contiguas: cada hilo recorre su tramo de la lista sin coordinarse
+                List<String> tramo = ids.subList(ids.size() * h / hilos, ids.size() * (h + 1) / hilos);
+                tareas.add(pool.submit(() -> {
+                    for (String usuarioId : tramo) {
+                        Usuario usuario = dataManager.getUsuarioById(usuarioId);
+                        if (usuario == null) {
+                            omitidos.incrementAndGet();
+                            continue;
+                        }
+                        try {
+                            List<Cancion> recomendaciones = calcularDescubrimientoSemanal(usuario, limite, false);
+                            cacheRecomendaciones.put(usuarioId + "_weekly", recomendaciones);
+                            sumidero.aceptar(usuarioId, recomendaciones);
+                            procesados.incrementAndGet();
+                        } catch (RuntimeException ex) {
+                            errores.incrementAndGet();
+                            System.err.println("Error generando recomendaciones para " + usuarioId + ": " + ex.getMessage());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Error en el lote de recomendaciones", ex.getCause());
+        } finally {
+            pool.shutdownNow();
         }
         
-        // Mezclar para variedad
-        Collections.shuffle(recomendaciones);
-        
-        // Limitar al número solicitado
-        if (recomendaciones.size() > limite) {
-            recomendaciones = recomendaciones.subList(0, limite);
+        ResultadoLote resultado = new ResultadoLote(procesados.get(), omitidos.get(), errores.get(),
+            System.currentTimeMillis() - inicio);
+        System.out.println(resultado);
+        return resultado;
+    }
+    
+    /**
+     * Calcula el Descubrimiento Semanal sin pasar por la cache.
+     * 
+     * @param usuario Usuario destino
+     * @param limite Número máximo de canciones
+     * @param registrar Si se escribe el progreso en consola (desactivado en lotes)
+     * @return Lista inmutable de canciones recomendadas
+     */
+    private List<Cancion> calcularDescubrimientoSemanal(Usuario usuario, int limite, boolean registrar) {
+        String usuarioId = usuario.getId();
+        if (registrar) {
+            System.out.println("Generando Descubrimiento Semanal para: " + usuario.getUsername());
         }
         
-        // Guardar en cache
-        cacheRecomendaciones.put(usuarioId + "_weekly", new CacheRecomendaciones(new ArrayList<>(recomendaciones)));
+        // Colaborativo, contenido, popularidad y géneros declarados en una sola pasada
+        List<Cancion> recomendaciones = pipelineDescubrimiento.recomendar(usuario, indiceCatalogo(), "weekly", limite);
         
-        System.out.println("Descubrimiento Semanal generado: " + recomendaciones.size() + " canciones");
+        if (registrar) {
+            System.out.println("Descubrimiento Semanal generado: " + recomendaciones.size() + " canciones");
+        }
         return recomendaciones;
     }
     
@@ -165,17 +452,30 @@ public class RecommendationEngine {
         Set<String> cancionesUsadas = new HashSet<>();
         cancionesUsadas.add(cancionSemilla.getId());
         
-        // 1. Agregar canciones del mismo artista (20%)
+        // 1. Canciones que suelen estar en favoritos junto a la semilla (30%)
+        EstadoMotor e = estadoActual();
+        List<String> similares = e != null
+            ? e.modelo.cancionesSimilares(cancionSemilla.getId(), (int)(limite * 0.3))
+            : Collections.emptyList();
+        for (String id : similares) {
+            Cancion cancion = dataManager.getCancionById(id);
+            if (cancion != null && !cancionesUsadas.contains(id)) {
+                radioPlaylist.add(cancion);
+                cancionesUsadas.add(id);
+            }
+        }
+        
+        // 2. Agregar canciones del mismo artista (20%)
         List<Cancion> delMismoArtista = encontrarCancionesDelMismoArtista(cancionSemilla, (int)(limite * 0.2));
         for (Cancion cancion : delMismoArtista) {
-            if (!cancionesUsadas.contains(cancion.getId())) {
+            if (!cancionesUsadas.contains(cancion.getId()) && radioPlaylist.size() < limite) {
                 radioPlaylist.add(cancion);
                 cancionesUsadas.add(cancion.getId());
             }
         }
         
-        // 2. Agregar canciones del mismo género (40%)
-        List<Cancion> delMismoGenero = encontrarCancionesDelMismoGenero(cancionSemilla, usuario, (int)(limite * 0.4));
+        // 3. Agregar canciones del mismo género (30%)
+        List<Cancion> delMismoGenero = encontrarCancionesDelMismoGenero(cancionSemilla, usuario, (int)(limite * 0.3));
         for (Cancion cancion : delMismoGenero) {
             if (!cancionesUsadas.contains(cancion.getId()) && radioPlaylist.size() < limite) {
                 radioPlaylist.add(cancion);
@@ -183,8 +483,8 @@ public class RecommendationEngine {
             }
         }
         
-        // 3. Agregar recomendaciones colaborativas (30%)
-        List<Cancion> colaborativas = obtenerRecomendacionesColaborativas(usuarioId, (int)(limite * 0.3));
+        // 4. Agregar recomendaciones colaborativas (20%)
+        List<Cancion> colaborativas = obtenerRecomendacionesColaborativas(usuarioId, (int)(limite * 0.2));
         for (Cancion cancion : colaborativas) {
             if (!cancionesUsadas.contains(cancion.getId()) && radioPlaylist.size() < limite) {
                 radioPlaylist.add(cancion);
@@ -192,7 +492,7 @@ public class RecommendationEngine {
             }
         }
         
-        // 4. Completar con canciones populares si es necesario (10%)
+        // 5. Completar con canciones populares si es necesario
         if (radioPlaylist.size() < limite) {
             List<Cancion> populares = obtenerCancionesPopulares(limite - radioPlaylist.size());
             for (Cancion cancion : populares) {
@@ -203,8 +503,8 @@ public class RecommendationEngine {
             }
         }
         
-        // Mezclar manteniendo cierta coherencia
-        Collections.shuffle(radioPlaylist);
+        // Mezclar de forma reproducible manteniendo cierta coherencia
+        radioPlaylist = postRankingRadio.aplicar(usuarioId, "radio:" + cancionSemilla.getId(), radioPlaylist, limite);
         
         System.out.println("Radio personalizada generada: " + radioPlaylist.size() + " canciones");
         return radioPlaylist;
@@ -218,144 +518,35 @@ public class RecommendationEngine {
      * @return Lista de recomendaciones colaborativas
      */
     private List<Cancion> obtenerRecomendacionesColaborativas(String usuarioId, int limite) {
-        return grafoDeSimilitud.obtenerRecomendaciones(usuarioId, limite);
-    }
-    
-    /**
-     * Obtiene recomendaciones basadas en el contenido de las canciones favoritas del usuario.
-     * 
-     * @param usuarioId ID del usuario
-     * @param limite Número máximo de recomendaciones
-     * @return Lista de recomendaciones basadas en contenido
-     */
-    private List<Cancion> obtenerRecomendacionesBasadasEnContenido(String usuarioId, int limite) {
-        Usuario usuario = dataManager.getUsuarioById(usuarioId);
-        if (usuario == null) {
+        EstadoMotor e = estadoActual();
+        if (e == null) {
             return new ArrayList<>();
         }
-        
-        List<Cancion> recomendaciones = new ArrayList<>();
-        Set<String> cancionesPropias = new HashSet<>(usuario.getCancionesFavoritas());
-        
-        // Analizar patrones en canciones favoritas
-        Map<String, Integer> generosPopulares = new HashMap<>();
-        Map<String, Integer> artistasPopulares = new HashMap<>();
-        
-        for (String cancionId : usuario.getCancionesFavoritas()) {
-            Cancion cancion = dataManager.getCancionById(cancionId);
-            if (cancion != null) {
-                generosPopulares.put(cancion.getGenero(), 
-                    generosPopulares.getOrDefault(cancion.getGenero(), 0) + 1);
-                artistasPopulares.put(cancion.getArtista(), 
-                    artistasPopulares.getOrDefault(cancion.getArtista(), 0) + 1);
-            }
-        }
-        
-        // Encontrar canciones similares
-        List<Cancion> todasLasCanciones = dataManager.getAllCanciones();
-        List<CancionPuntuada> candidatas = new ArrayList<>();
-        
-        for (Cancion cancion : todasLasCanciones) {
-            if (!cancionesPropias.contains(cancion.getId())) {
-                double puntaje = calcularPuntajeContenido(cancion, generosPopulares, artistasPopulares);
-                if (puntaje > 0) {
-                    candidatas.add(new CancionPuntuada(cancion, puntaje));
-                }
-            }
-        }
-        
-        // Ordenar por puntaje y tomar las mejores
-        candidatas.sort((a, b) -> Double.compare(b.puntaje, a.puntaje));
-        
-        for (int i = 0; i < Math.min(limite, candidatas.size()); i++) {
-            recomendaciones.add(candidatas.get(i).cancion);
-        }
-        
-        return recomendaciones;
-    }
-    
-    /**
-     * Calcula el puntaje de contenido para una canción.
-     * 
-     * @param cancion Canción a evaluar
-     * @param generosPopulares Mapa de géneros populares del usuario
-     * @param artistasPopulares Mapa de artistas populares del usuario
-     * @return Puntaje de la canción
-     */
-    private double calcularPuntajeContenido(Cancion cancion, Map<String, Integer> generosPopulares, 
-                                           Map<String, Integer> artistasPopulares) {
-        double puntaje = 0.0;
-        
-        // Puntaje por género
-        Integer frecuenciaGenero = generosPopulares.get(cancion.getGenero());
-        if (frecuenciaGenero != null) {
-            puntaje += frecuenciaGenero * 2.0;
-        }
-        
-        // Puntaje por artista
-        Integer frecuenciaArtista = artistasPopulares.get(cancion.getArtista());
-        if (frecuenciaArtista != null) {
-            puntaje += frecuenciaArtista * 3.0;
+        e.lock.readLock().lock();
+        try {
+            return e.grafo.obtenerRecomendaciones(usuarioId, limite);
+        } finally {
+            e.lock.readLock().unlock();
         }
-        
-        // Puntaje por popularidad general
-        puntaje += Math.log(1 + cancion.getReproducciones()) * 0.1;
-        puntaje += Math.log(1 + cancion.getNumeroFavoritos()) * 0.2;
-        puntaje += cancion.getCalificacionPromedio() * 0.5;
-        
-        return puntaje;
     }
     
     /**
-     * Obtiene recomendaciones basadas en popularidad y tendencias.
+     * Obtiene los usuarios más similares según el grafo vigente.
      * 
      * @param usuarioId ID del usuario
-     * @param limite Número máximo de recomendaciones
-     * @return Lista de recomendaciones populares
+     * @return Vecinos con su similitud, o lista vacía si el motor aún se está preparando
      */
-    private List<Cancion> obtenerRecomendacionesPopulares(String usuarioId, int limite) {
-        Usuario usuario = dataManager.getUsuarioById(usuarioId);
-        if (usuario == null) {
-            return new ArrayList<>();
+    private List<GrafoDeSimilitud.UsuarioSimilar> usuariosSimilares(String usuarioId) {
+        EstadoMotor e = estadoActual();
+        if (e == null) {
+            return Collections.emptyList();
         }
-        
-        Set<String> cancionesPropias = new HashSet<>(usuario.getCancionesFavoritas());
-        
-        return dataManager.getAllCanciones().stream()
-            .filter(cancion -> !cancionesPropias.contains(cancion.getId()))
-            .sorted((a, b) -> Double.compare(b.calcularPuntajePopularidad(), a.calcularPuntajePopularidad()))
-            .limit(limite)
-            .collect(Collectors.toList());
-    }
-    
-    /**
-     * Obtiene recomendaciones adicionales para completar la lista.
-     * 
-     * @param usuarioId ID del usuario
-     * @param usuario Objeto usuario
-     * @param limite Número máximo de recomendaciones
-     * @return Lista de recomendaciones adicionales
-     */
-    private List<Cancion> obtenerRecomendacionesAdicionales(String usuarioId, Usuario usuario, int limite) {
-        Set<String> cancionesPropias = new HashSet<>(usuario.getCancionesFavoritas());
-        List<String> generosFavoritos = usuario.getGenerosFavoritos();
-        
-        List<Cancion> adicionales = new ArrayList<>();
-        
-        // Buscar canciones de géneros favoritos
-        for (String genero : generosFavoritos) {
-            List<Cancion> delGenero = dataManager.getAllCanciones().stream()
-                .filter(cancion -> !cancionesPropias.contains(cancion.getId()))
-                .filter(cancion -> cancion.getGenero().equalsIgnoreCase(genero))
-                .sorted((a, b) -> Double.compare(b.calcularPuntajePopularidad(), a.calcularPuntajePopularidad()))
-                .limit(limite / Math.max(1, generosFavoritos.size()))
-                .collect(Collectors.toList());
-            
-            adicionales.addAll(delGenero);
-            if (adicionales.size() >= limite) break;
+        e.lock.readLock().lock();
+        try {
+            return e.grafo.encontrarUsuariosSimilares(usuarioId, USUARIOS_SIMILARES_LIMITE);
+        } finally {
+            e.lock.readLock().unlock();
         }
-        
-        return adicionales.subList(0, Math.min(limite, adicionales.size()));
     }
     
     /**
@@ -366,13 +557,8 @@ public class RecommendationEngine {
      * @return Lista de canciones del mismo artista
      */
     private List<Cancion> encontrarCancionesDelMismoArtista(Cancion cancionSemilla, int limite) {
-        return dataManager.getAllCanciones().stream()
-            .filter(cancion -> !cancion.getId().equals(cancionSemilla.getId()))
-            .filter(cancion -> cancion.getArtista().equalsIgnoreCase(cancionSemilla.getArtista()) ||
-                              cancion.getArtistasColaboradores().contains(cancionSemilla.getArtista()))
-            .sorted((a, b) -> Double.compare(b.calcularPuntajePopularidad(), a.calcularPuntajePopularidad()))
-            .limit(limite)
-            .collect(Collectors.toList());
+        return IndiceCatalogo.primeras(indiceCatalogo().getPorArtista(cancionSemilla.getArtista()),
+            Collections.singleton(cancionSemilla.getId()), limite);
     }
     
     /**
@@ -384,15 +570,9 @@ public class RecommendationEngine {
      * @return Lista de canciones del mismo género
      */
     private List<Cancion> encontrarCancionesDelMismoGenero(Cancion cancionSemilla, Usuario usuario, int limite) {
-        Set<String> cancionesPropias = new HashSet<>(usuario.getCancionesFavoritas());
-        
-        return dataManager.getAllCanciones().stream()
-            .filter(cancion -> !cancion.getId().equals(cancionSemilla.getId()))
-            .filter(cancion -> !cancionesPropias.contains(cancion.getId()))
-            .filter(cancion -> cancion.getGenero().equalsIgnoreCase(cancionSemilla.getGenero()))
-            .sorted((a, b) -> Double.compare(b.calcularPuntajePopularidad(), a.calcularPuntajePopularidad()))
-            .limit(limite)
-            .collect(Collectors.toList());
+        String semillaId = cancionSemilla.getId();
+        return IndiceCatalogo.primeras(indiceCatalogo().getPorGenero(cancionSemilla.getGenero()),
+            id -> id.equals(semillaId) || usuario.esCancionFavorita(id), limite);
     }
     
     /**
@@ -402,52 +582,171 @@ public class RecommendationEngine {
      * @return Lista de canciones populares
      */
     private List<Cancion> obtenerCancionesPopulares(int limite) {
-        return dataManager.getAllCanciones().stream()
-            .sorted((a, b) -> Double.compare(b.calcularPuntajePopularidad(), a.calcularPuntajePopularidad()))
-            .limit(limite)
-            .collect(Collectors.toList());
+        return IndiceCatalogo.primeras(indiceCatalogo().getPorPopularidad(), Collections.emptySet(), limite);
     }
     
     /**
-     * Agrega canciones a una lista sin duplicados.
+     * Obtiene el índice de catálogo vigente, reconstruyéndolo si el catálogo cambió o si
+     * envejeció demasiado. Si dos hilos lo reconstruyen a la vez, ambos resultados son
+     * válidos y gana el último. En el modo mapeado cubre la capa en memoria y las
+     * {@value #INDICE_MAX_MAPEADAS} canciones más populares del archivo.
      * 
-     * @param destino Lista destino
-     * @param fuente Lista fuente
+     * @return Índice compartido
      */
-    private void agregarSinDuplicados(List<Cancion> destino, List<Cancion> fuente) {
-        Set<String> idsExistentes = destino.stream()
-            .map(Cancion::getId)
-            .collect(Collectors.toSet());
-        
-        for (Cancion cancion : fuente) {
-            if (!idsExistentes.contains(cancion.getId())) {
-                destino.add(cancion);
-                idsExistentes.add(cancion.getId());
-            }
+    private IndiceCatalogo indiceCatalogo() {
+        IndiceCatalogo indice = indiceCatalogo;
+        long version = dataManager.getVersionCatalogo();
+        if (indice == null || indice.estaObsoleto(version, INDICE_MAX_EDAD)) {
+            indice = new IndiceCatalogo(dataManager.getCatalogoAcotado(INDICE_MAX_MAPEADAS), version);
+            indiceCatalogo = indice;
         }
+        return indice;
     }
     
     /**
-     * Actualiza el sistema de recomendaciones con nuevos datos.
+     * Aplica de forma incremental un cambio publicado por el {@link DataManager}: los
+     * favoritos actualizan el modelo ítem-ítem y las aristas del usuario en el grafo,
+     * los usuarios nuevos entran al grafo y las bajas o ediciones de canciones descartan
+     * las listas cacheadas que podrían contenerlas. El índice de catálogo se renueva
+     * solo por la versión del catálogo.
+     * <p>
+     * Se ejecuta en el hilo que publica (a menudo el de la interfaz), así que aquí solo se
+     * hace lo barato: el delta del modelo ítem-ítem, que depende del orden de los eventos.
+     * El recálculo de las aristas del usuario (una similitud contra cada usuario, y a veces
+     * la compactación del grafo) se deriva al hilo constructor con
+     * {@link #programarActualizacionUsuario}.
+     * <p>
+     * Mientras se construye un estado (el primero o uno posterior), esa construcción pudo
+     * leer los datos antes del cambio, y al publicarse reemplaza al estado donde se aplicó;
+     * en ese caso se encadena otra construcción, que lo incluye (varios cambios seguidos
+     * comparten la misma).
+     * 
+     * @param evento Evento recibido del bus
      */
-    public void actualizarSistema() {
-        System.out.println("Actualizando sistema de recomendaciones...");
-        
-        // Limpiar cache
-        cacheRecomendaciones.clear();
-        
-        // Reinicializar grafo
-        grafoDeSimilitud = new GrafoDeSimilitud();
-        inicializarSistema();
-        
-        System.out.println("Sistema de recomendaciones actualizado.");
+    private void alCambiarCatalogo(EventoCatalogo evento) {
+        EstadoMotor e = estado;
+        if (reconstruccion.get() != null) programarReconstruccion();
+        switch (evento.getTipo()) {
+            case CANCION_AGREGADA:
+                if (e != null) {
+                    conCandadoEscritura(e, () -> e.grafo.agregarCancion(evento.getCancion()));
+                }
+                break;
+            case CANCION_ELIMINADA:
+            case CANCION_ACTUALIZADA:
+                cacheRecomendaciones.invalidarTodo();
+                break;
+            case USUARIO_AGREGADO:
+            case USUARIO_ACTUALIZADO:
+                if (e != null) programarActualizacionUsuario(evento.getUsuario());
+                cacheRecomendaciones.invalidar(evento.getUsuario().getId() + "_weekly");
+                break;
+            case USUARIO_ELIMINADO:
+                cacheRecomendaciones.invalidar(evento.getUsuario().getId() + "_weekly");
+                break;
+            case FAVORITO_AGREGADO:
+            case FAVORITO_ELIMINADO:
+                Usuario usuario = evento.getUsuario();
+                if (e != null && evento.getCancion() != null) {
+                    String cancionId = evento.getCancion().getId();
+                    if (evento.getTipo() == EventoCatalogo.Tipo.FAVORITO_AGREGADO) {
+                        e.modelo.registrarFavorito(usuario, cancionId);
+                    } else {
+                        e.modelo.removerFavorito(usuario, cancionId);
+                    }
+                    programarActualizacionUsuario(usuario);
+                }
+                cacheRecomendaciones.invalidar(usuario.getId() + "_weekly");
+                break;
+            default:
+                break;
+        }
     }
     
     /**
-     * Limpia el cache de recomendaciones expirado.
+     * Recalcula en el hilo constructor las aristas de un usuario en el estado vigente al
+     * ejecutarse. Si el usuario ya estaba pendiente no se encola otra vez: el recálculo lee
+     * sus favoritos de ese momento, que incluyen todos los cambios anteriores.
+     */
+    private void programarActualizacionUsuario(Usuario usuario) {
+        if (!usuariosPendientes.add(usuario.getId())) return;
+        constructor.execute(() -> {
+            usuariosPendientes.remove(usuario.getId());
+            EstadoMotor e = estado;
+            if (e == null) return;
+            conCandadoEscritura(e, () -> {
+                e.grafo.agregarUsuario(usuario);
+                e.grafo.actualizarUsuario(usuario.getId());
+            });
+            cacheRecomendaciones.invalidar(usuario.getId() + "_weekly");
+        });
+    }
+    
+    private static void conCandadoEscritura(EstadoMotor e, Runnable accion) {
+        e.lock.writeLock().lock();
+        try {
+            accion.run();
+        } finally {
+            e.lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Actualiza el sistema de recomendaciones con nuevos datos. La reconstrucción corre
+     * en segundo plano y el estado anterior sigue respondiendo hasta que termina. Si ya
+     * había una en curso, el futuro devuelto es el de la siguiente, que arranca después.
+     * 
+     * @return Futuro que se completa cuando el nuevo estado está publicado
+     */
+    public CompletableFuture<Void> actualizarSistema() {
+        System.out.println("Actualizando sistema de recomendaciones en segundo plano...");
+        return programarReconstruccion();
+    }
+    
+    /**
+     * Limpia el cache de recomendaciones expirado. La cache ya se purga sola en segundo
+     * plano; este método fuerza una purga inmediata.
      */
     public void limpiarCacheExpirado() {
-        cacheRecomendaciones.entrySet().removeIf(entry -> entry.getValue().isExpired());
+        cacheRecomendaciones.purgarExpiradas();
+    }
+    
+    /**
+     * Reemplaza la etapa final del Descubrimiento Semanal y descarta las listas cacheadas.
+     * 
+     * @param etapa Nueva etapa de post-ranking
+     */
+    public void setPostRankingDescubrimiento(EtapaPostRanking etapa) {
+        pipelineDescubrimiento.setPostRanking(Objects.requireNonNull(etapa));
+        cacheRecomendaciones.invalidarTodo();
+    }
+    
+    /**
+     * Ajusta el peso de un generador del Descubrimiento Semanal ("colaborativo",
+     * "contenido", "popularidad" o "generos-favoritos") y descarta las listas cacheadas.
+     * 
+     * @param generador Nombre del generador
+     * @param peso Nuevo peso (0 lo desactiva)
+     */
+    public void setPesoGenerador(String generador, double peso) {
+        pipelineDescubrimiento.setPeso(generador, peso);
+        cacheRecomendaciones.invalidarTodo();
+    }
+    
+    /**
+     * @return Pipeline del Descubrimiento Semanal, para consultar pesos y latencias
+     */
+    public PipelineRecomendacion getPipelineDescubrimiento() {
+        return pipelineDescubrimiento;
+    }
+    
+    /**
+     * Reemplaza la etapa final de las radios personalizadas.
+     * 
+     * @param etapa Nueva etapa de post-ranking
+     */
+    public void setPostRankingRadio(EtapaPostRanking etapa) {
+        this.postRankingRadio = Objects.requireNonNull(etapa);
     }
     
     /**
@@ -456,46 +755,85 @@ public class RecommendationEngine {
      * @return String con estadísticas
      */
     public String getEstadisticas() {
+        EstadoMotor e = estado;
         return String.format(
             "=== Motor de Recomendaciones - Estadísticas ===\n" +
             "%s\n" +
-            "Entradas en cache: %d\n" +
+            "%s\n" +
+            "%s" +
             "Algoritmos disponibles: Colaborativo, Contenido, Popularidad\n" +
-            "Estado: Operativo",
-            grafoDeSimilitud.getEstadisticas(),
-            cacheRecomendaciones.size()
+            "Estado: %s",
+            e != null ? e.grafo.getEstadisticas() : "=== Grafo de Similitud ===\n(en construcción)",
+            cacheRecomendaciones.getEstadisticas(),
+            pipelineDescubrimiento.getEstadisticas(),
+            e == null ? "Calentando" : isReconstruyendo() ? "Operativo (reconstruyendo)" : "Operativo"
         );
     }
     
     // Clases auxiliares
     
     /**
-     * Clase para almacenar recomendaciones en cache.
+     * Estructuras derivadas de una construcción. Los campos no cambian, pero su contenido
+     * sí: los eventos lo actualizan de forma incremental. El candado protege al grafo de
+     * esas actualizaciones mientras otros hilos lo consultan; el modelo ítem-ítem se
+     * sincroniza por su cuenta.
      */
-    private static class CacheRecomendaciones {
-        final List<Cancion> recomendaciones;
-        final long timestamp;
-        
-        CacheRecomendaciones(List<Cancion> recomendaciones) {
-            this.recomendaciones = recomendaciones;
-            this.timestamp = System.currentTimeMillis();
-        }
-        
-        boolean isExpired() {
-            return (System.currentTimeMillis() - timestamp) > CACHE_TTL;
+    private static final class EstadoMotor {
+        final GrafoDeSimilitud grafo;
+        final ModeloCoocurrencia modelo;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        
+        EstadoMotor(GrafoDeSimilitud grafo, ModeloCoocurrencia modelo) {
+            this.grafo = grafo;
+            this.modelo = modelo;
         }
     }
     
     /**
-     * Clase auxiliar para canciones con puntaje.
+     * Destino de los resultados de un lote de recomendaciones. Las implementaciones
+     * deben ser seguras para hilos: se invoca en paralelo desde los hilos del lote.
+     */
+    @FunctionalInterface
+    public interface SumideroRecomendaciones {
+        /**
+         * @param usuarioId ID del usuario
+         * @param recomendaciones Lista inmutable de canciones recomendadas
+         */
+        void aceptar(String usuarioId, List<Cancion> recomendaciones);
+    }
+    
+    /**
+     * Resumen de la ejecución de un lote de recomendaciones.
      */
-    private static class CancionPuntuada {
-        final Cancion cancion;
-        final double puntaje;
+    public static class ResultadoLote {
+        private final int usuariosProcesados;
+        private final int usuariosOmitidos;
+        private final int errores;
+        private final long duracionMs;
+        
+        public ResultadoLote(int usuariosProcesados, int usuariosOmitidos, int errores, long duracionMs) {
+            this.usuariosProcesados = usuariosProcesados;
+            this.usuariosOmitidos = usuariosOmitidos;
+            this.errores = errores;
+            this.duracionMs = duracionMs;
+        }
+        
+        public int getUsuariosProcesados() { return usuariosProcesados; }
+        public int getUsuariosOmitidos() { return usuariosOmitidos; }
+        public int getErrores() { return errores; }
+        public long getDuracionMs() { return duracionMs; }
+        
+        /**
+         * @return Usuarios procesados por segundo
+         */
+        public double getUsuariosPorSegundo() {
+            return usuariosProcesados * 1000.0 / Math.max(1, duracionMs);
+        }
         
-        CancionPuntuada(Cancion cancion, double puntaje) {
-            this.cancion = cancion;
-            this.puntaje = puntaje;
+        @Override
+        public String toString() {
+            return String.format("Lote de recomendaciones: %d usuarios en %d ms (%.1f usuarios/s), %d omitidos, %d errores",
+                usuariosProcesados, duracionMs, getUsuariosPorSegundo(), usuariosOmitidos, errores);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.syncup.algorithms;
+
+import com.syncup.models.Usuario;
+
+import java.util.Arrays;
+
+/**
+ * Datos de una petición de recomendaciones compartidos por todos los generadores del
+ * {@link PipelineRecomendacion}: el usuario, el índice de catálogo vigente, las
+ * posiciones de sus favoritas y su perfil denso de géneros y artistas (calculado la
+ * primera vez que se pide). Vive lo que dura la petición y la usa un solo hilo.
+ */
+public class SolicitudRecomendacion {
+
+    private final Usuario usuario;
+    private final IndiceCatalogo indice;
+    private final String contexto;
+    private final int limite;
+
+    /** Posiciones de las favoritas en el índice, ordenadas y sin repetir */
+    private final int[] propias;
+
+    private int[] perfilGenero;
+    private int[] perfilArtista;
+
+    /**
+     * @param usuario Usuario destinatario
+     * @param indice Índice de catálogo a usar durante toda la petición
+     * @param contexto Clave del tipo de lista (por ejemplo "weekly")
+     * @param limite Número de canciones pedidas
+     */
+    public SolicitudRecomendacion(Usuario usuario, IndiceCatalogo indice, String contexto, int limite) {
+        this.usuario = usuario;
+        this.indice = indice;
+        this.contexto = contexto;
+        this.limite = limite;
+
+        int[] favoritas = usuario.getOrdinalesFavoritos();
+        int[] pos = new int[favoritas.length];
+        int n = 0;
+        for (int o : favoritas) {
+            int p = indice.posicionDeOrdinal(o);
+            if (p >= 0) pos[n++] = p;
+        }
+        Arrays.sort(pos, 0, n);
+        int unicos = 0;
+        for (int i = 0; i < n; i++) {
+            if (unicos == 0 || pos[unicos - 1] != pos[i]) pos[unicos++] = pos[i];
+        }
+        this.propias = Arrays.copyOf(pos, unicos);
+    }
+
+    public Usuario getUsuario() { return usuario; }
+    public IndiceCatalogo getIndice() { return indice; }
+    public String getContexto() { return contexto; }
+    public int getLimite() { return limite; }
+
+    /**
+     * @return Posiciones de las favoritas, ordenadas (no modificar)
+     */
+    public int[] getPropias() {
+        return propias;
+    }
+
+    /**
+     * @param posicion Posición en el índice
+     * @return true si la canción ya es favorita del usuario
+     */
+    public boolean esPropia(int posicion) {
+        return Arrays.binarySearch(propias, posicion) >= 0;
+    }
+
+    /**
+     * @return Número de favoritas de cada ordinal de género (no modificar)
+     */
+    public int[] getPerfilGenero() {
+        if (perfilGenero == null) construirPerfil();
+        return perfilGenero;
+    }
+
+    /**
+     * @return Número de favoritas de cada ordinal de artista principal (no modificar)
+     */
+    public int[] getPerfilArtista() {
+        if (perfilArtista == null) construirPerfil();
+        return perfilArtista;
+    }
+
+    private void construirPerfil() {
+        int[] generos = new int[indice.getNumeroGeneros()];
+        int[] artistas = new int[indice.getNumeroArtistas()];
+        for (int p : propias) {
+            generos[indice.generoDe(p)]++;
+            artistas[indice.artistaDe(p)]++;
+        }
+        perfilGenero = generos;
+        perfilArtista = artistas;
+    }
+}
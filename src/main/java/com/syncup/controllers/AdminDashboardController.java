@@ -17,6 +17,7 @@ import javafx.stage.Stage;
 
 import com.syncup.models.Usuario;
 import com.syncup.models.Cancion;
+import com.syncup.data.BusEventosCatalogo;
 import com.syncup.data.DataManager;
 import com.syncup.data.UserRepository;
 import com.syncup.data.MetricsService;
@@ -27,7 +28,7 @@ import com.syncup.utils.StyleManager;
 import java.io.File;
 import java.net.URL;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.ResourceBundle;
 
 public class AdminDashboardController implements Initializable {
@@ -71,16 +72,25 @@ public class AdminDashboardController implements Initializable {
     private ReportService reportService;
     private BulkDataLoader bulkDataLoader;
 
+    /** Refresca las gráficas cuando cambia el catálogo; una sola actualización pendiente a la vez */
+    private BusEventosCatalogo.OyenteCatalogo oyenteCatalogo;
+    private final AtomicBoolean graficosPendientes = new AtomicBoolean();
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         dataManager = DataManager.getInstance();
-        userRepository = new UserRepository();
+        userRepository = UserRepository.getInstance();
         metricsService = new MetricsService();
         reportService = new ReportService();
         bulkDataLoader = new BulkDataLoader();
         if (loadingIndicator != null) loadingIndicator.setVisible(false);
         if (bulkLoadProgress != null) bulkLoadProgress.setVisible(false);
         setupTables();
+        oyenteCatalogo = dataManager.getEventos().suscribir(ev -> {
+            if (ev.esDeCancion() && graficosPendientes.compareAndSet(false, true)) {
+                Platform.runLater(() -> { graficosPendientes.set(false); generarGraficos(); });
+            }
+        });
     }
 
     private void setupTables() {
@@ -145,21 +155,23 @@ public class AdminDashboardController implements Initializable {
     @FXML private void handleBulkLoad() {
         if (selectedBulkFile == null) { mostrarError("Selecciona archivo"); return; }
         if (bulkLoadProgress != null) bulkLoadProgress.setVisible(true);
-        Task<BulkDataLoader.ResultadoCargaMasiva> t = new Task<>(){ @Override protected BulkDataLoader.ResultadoCargaMasiva call(){ String adminId = currentUser != null ? currentUser.getId() : "admin"; return bulkDataLoader.cargarCancionesMasivas(selectedBulkFile.getAbsolutePath(), adminId); } };
-        t.setOnSucceeded(e -> { if (bulkLoadResultsArea!=null) bulkLoadResultsArea.setText(t.getValue().mensaje); if (bulkLoadProgress != null) bulkLoadProgress.setVisible(false); cargarCatalogo(); actualizarMetricas(); generarGraficos(); }); new Thread(t).start();
+        // El cargador informa la fracción leída tras cada bloque; updateProgress la lleva al hilo de JavaFX
+        Task<BulkDataLoader.ResultadoCargaMasiva> t = new Task<>(){ @Override protected BulkDataLoader.ResultadoCargaMasiva call(){ String adminId = currentUser != null ? currentUser.getId() : "admin"; return bulkDataLoader.cargarCancionesMasivas(selectedBulkFile.getAbsolutePath(), adminId, f -> updateProgress(f, 1)); } };
+        if (bulkLoadProgress != null) bulkLoadProgress.progressProperty().bind(t.progressProperty());
+        t.setOnSucceeded(e -> { if (bulkLoadResultsArea!=null) bulkLoadResultsArea.setText(t.getValue().mensaje); if (bulkLoadProgress != null) { bulkLoadProgress.progressProperty().unbind(); bulkLoadProgress.setVisible(false); } cargarCatalogo(); actualizarMetricas(); generarGraficos(); }); new Thread(t).start();
     }
 
     @FXML private void handleRefreshMetrics() { actualizarMetricas(); generarGraficos(); }
 
-    @FXML private void handleLogout() { try { FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login.fxml")); Parent root = loader.load(); Scene scene = new Scene(root, 1200, 800); StyleManager.applySpotifyTheme(scene); Stage stage = (Stage) (logoutButton != null ? logoutButton.getScene().getWindow() : statusLabel.getScene().getWindow()); stage.setScene(scene); stage.setTitle("SyncUp - Login"); stage.centerOnScreen(); System.out.println("Admin \"" + currentUser.getUsername() + "\" cerró sesión"); } catch (Exception ex) { System.err.println("Error volviendo al login: " + ex); mostrarError("Error cerrando sesión"); } }
+    @FXML private void handleLogout() { dataManager.getEventos().desuscribir(oyenteCatalogo); try { FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login.fxml")); Parent root = loader.load(); Scene scene = new Scene(root, 1200, 800); StyleManager.applySpotifyTheme(scene); Stage stage = (Stage) (logoutButton != null ? logoutButton.getScene().getWindow() : statusLabel.getScene().getWindow()); stage.setScene(scene); stage.setTitle("SyncUp - Login"); stage.centerOnScreen(); System.out.println("Admin \"" + currentUser.getUsername() + "\" cerró sesión"); } catch (Exception ex) { System.err.println("Error volviendo al login: " + ex); mostrarError("Error cerrando sesión"); } }
 
     private void actualizarMetricas() {
         int total = metricsService.getTotalUsers();
         int activos = metricsService.getActiveUsers();
         int admins = metricsService.getAdminUsers();
         if (totalUsersLabel!=null) totalUsersLabel.setText(String.valueOf(total));
-        if (totalSongsLabel!=null) totalSongsLabel.setText(String.valueOf(dataManager.getAllCanciones().size()));
-        if (systemStatsArea!=null) systemStatsArea.setText("Usuarios totales:"+total+"\nUsuarios activos:"+activos+"\nAdmins:"+admins+"\nCanciones:"+dataManager.getAllCanciones().size());
+        if (totalSongsLabel!=null) totalSongsLabel.setText(String.valueOf(dataManager.getNumeroCanciones()));
+        if (systemStatsArea!=null) systemStatsArea.setText("Usuarios totales:"+total+"\nUsuarios activos:"+activos+"\nAdmins:"+admins+"\nCanciones:"+dataManager.getNumeroCanciones());
         
         // KPIs visibles en UI si existen labels dedicados
         if (activeUsersLabel!=null) activeUsersLabel.setText(String.valueOf(activos));
@@ -168,15 +180,15 @@ public class AdminDashboardController implements Initializable {
 
     private void generarGraficos() {
         if (genreDistributionChart != null) {
-            Map<String, Long> m = dataManager.getAllCanciones().stream().collect(Collectors.groupingBy(Cancion::getGenero, Collectors.counting()));
+            Map<String, Long> m = dataManager.getResumenCatalogo().getConteoPorGenero();
             ObservableList<PieChart.Data> data = FXCollections.observableArrayList();
             for (Map.Entry<String, Long> e : m.entrySet()) data.add(new PieChart.Data(e.getKey(), e.getValue()));
             genreDistributionChart.setData(data);
         }
         if (popularArtistsChart != null) {
-            Map<String, Long> a = dataManager.getAllCanciones().stream().collect(Collectors.groupingBy(Cancion::getArtista, Collectors.counting()));
+            Map<String, Long> a = dataManager.getResumenCatalogo().getArtistasPrincipales(10);
             XYChart.Series<String, Number> s = new XYChart.Series<>();
-            a.entrySet().stream().limit(10).forEach(e -> s.getData().add(new XYChart.Data<>(e.getKey(), e.getValue())));
+            a.entrySet().forEach(e -> s.getData().add(new XYChart.Data<>(e.getKey(), e.getValue())));
             popularArtistsChart.getData().clear(); popularArtistsChart.getData().add(s);
         }
     }
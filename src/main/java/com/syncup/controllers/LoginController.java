@@ -28,7 +28,7 @@ public class LoginController implements Initializable {
     @FXML private Button registerButton;
     @FXML private Label errorLabel;
 
-    private final UserRepository userRepo = new UserRepository();
+    private final UserRepository userRepo = UserRepository.getInstance();
     private DataManager dataManager;
 
     @Override
@@ -35,6 +35,8 @@ import java.util.ResourceBundle;
 import java.util.stream.Collectors;
 
 public class UserDashboardController implements Initializable {
+    /** Canciones del archivo mapeado que se listan en la tabla (las más populares) */
+    private static final int MAX_CANCIONES_TABLA = 2000;
     @FXML private Button logoutButton; @FXML private Button btnProfileTop;
     @FXML private TextField searchField; @FXML private Button searchButton; @FXML private Button generateDiscoveryButton;
     @FXML private TableView<Cancion> songsTable; @FXML private TableColumn<Cancion,String> titleColumn; @FXML private TableColumn<Cancion,String> artistColumn; @FXML private TableColumn<Cancion,String> genreColumn; @FXML private TableColumn<Cancion,Integer> yearColumn; @FXML private TableColumn<Cancion,Void> coverColumn; @FXML private TableColumn<Cancion,String> descColumn;
@@ -55,7 +57,7 @@ public class UserDashboardController implements Initializable {
 
     @Override public void initialize(URL location, ResourceBundle resources){ 
         dataManager=DataManager.getInstance(); 
-        recommendationEngine=new RecommendationEngine(); 
+        recommendationEngine=RecommendationEngine.getInstance(); 
         if(loadingIndicator!=null) loadingIndicator.setVisible(false); 
         
         // Apply Spotify theme to current scene if available
@@ -146,7 +148,7 @@ public class UserDashboardController implements Initializable {
 
     private void actualizarUI(){ if(currentUser==null) return; Platform.runLater(()->{ if(welcomeLabel!=null) welcomeLabel.setText("¡Bienvenido, "+currentUser.getNombreCompleto()+"!"); if(userStatsLabel!=null){ String stats=String.format("Favoritas: %d | Usuario: %s", currentUser.getNumeroCancionesFavoritas(), currentUser.getUsername()); userStatsLabel.setText(stats);} }); }
 
-    private void cargarCanciones(){ if(songsTable==null) return; Task<ObservableList<Cancion>> t=new Task<>(){ @Override protected ObservableList<Cancion> call(){ return FXCollections.observableArrayList(dataManager.getAllCanciones()); } }; t.setOnSucceeded(e-> songsTable.setItems(t.getValue())); new Thread(t).start(); }
+    private void cargarCanciones(){ if(songsTable==null) return; Task<ObservableList<Cancion>> t=new Task<>(){ @Override protected ObservableList<Cancion> call(){ return FXCollections.observableArrayList(dataManager.getCatalogoAcotado(MAX_CANCIONES_TABLA)); } }; t.setOnSucceeded(e-> songsTable.setItems(t.getValue())); new Thread(t).start(); }
 
     private void cargarFavoritos(){ if(currentUser==null||favoritesTable==null) return; Task<ObservableList<Cancion>> t=new Task<>(){ @Override protected ObservableList<Cancion> call(){ List<Cancion> fav=new ArrayList<>(); for(String id: currentUser.getCancionesFavoritas()){ Cancion c=dataManager.getCancionById(id); if(c!=null) fav.add(c);} return FXCollections.observableArrayList(fav);} }; t.setOnSucceeded(e-> favoritesTable.setItems(t.getValue())); new Thread(t).start(); }
 
@@ -161,10 +163,10 @@ public class UserDashboardController implements Initializable {
 
     private void toggleViews(VBox toShow){ if(catalogPane!=null){ catalogPane.setVisible(false); catalogPane.setManaged(false);} if(favoritesPane!=null){ favoritesPane.setVisible(false); favoritesPane.setManaged(false);} if(profilePane!=null){ profilePane.setVisible(false); profilePane.setManaged(false);} if(toShow!=null){ toShow.setVisible(true); toShow.setManaged(true);} }
 
-    @FXML private void handleSearch(){ if(searchField==null||songsTable==null) return; String q=searchField.getText().trim().toLowerCase(); if(q.isEmpty()){ cargarCanciones(); return; } List<Cancion> res = dataManager.getAllCanciones().stream().filter(c-> c.getTitulo().toLowerCase().contains(q)||c.getArtista().toLowerCase().contains(q)||c.getGenero().toLowerCase().contains(q)).collect(Collectors.toList()); songsTable.setItems(FXCollections.observableArrayList(res)); }
-    @FXML private void handleGenerateDiscovery(){ if(currentUser==null) return; Task<List<Cancion>> t=new Task<>(){ @Override protected List<Cancion> call(){ return recommendationEngine.generarDescubrimientoSemanal(currentUser.getId(),20);} }; t.setOnSucceeded(e->{ List<Cancion> recs=t.getValue(); if(songsTable!=null) songsTable.setItems(FXCollections.observableArrayList(recs)); currentQueue=recs; currentIndex=-1;}); new Thread(t).start(); }
+    @FXML private void handleSearch(){ if(searchField==null||songsTable==null) return; String q=searchField.getText().trim().toLowerCase(); if(q.isEmpty()){ cargarCanciones(); return; } List<Cancion> res = dataManager.streamCanciones().filter(c-> c.getTitulo().toLowerCase().contains(q)||c.getArtista().toLowerCase().contains(q)||c.getGenero().toLowerCase().contains(q)).collect(Collectors.toList()); songsTable.setItems(FXCollections.observableArrayList(res)); }
+    @FXML private void handleGenerateDiscovery(){ if(currentUser==null) return; boolean parcial=!recommendationEngine.isListo(); Task<List<Cancion>> t=new Task<>(){ @Override protected List<Cancion> call(){ return recommendationEngine.generarDescubrimientoSemanal(currentUser.getId(),20);} }; t.setOnSucceeded(e->{ List<Cancion> recs=t.getValue(); if(songsTable!=null) songsTable.setItems(FXCollections.observableArrayList(recs)); currentQueue=recs; currentIndex=-1; if(parcial){ setStatus("Recomendaciones parciales: el motor aún se está preparando"); recommendationEngine.getListo().thenRun(()->Platform.runLater(this::handleGenerateDiscovery)); } else setStatus(""); }); new Thread(t).start(); }
 
-    @FXML private void handleAddToFavorites(){ if(currentUser==null||songsTable==null) return; Cancion sel=songsTable.getSelectionModel().getSelectedItem(); if(sel==null){ setStatus("Selecciona una canción"); return;} boolean ok=currentUser.agregarCancionFavorita(sel.getId()); if(ok){ setStatus("Añadida a favoritos"); cargarFavoritos(); actualizarUI(); } else setStatus("Ya estaba en favoritos"); }
+    @FXML private void handleAddToFavorites(){ if(currentUser==null||songsTable==null) return; Cancion sel=songsTable.getSelectionModel().getSelectedItem(); if(sel==null){ setStatus("Selecciona una canción"); return;} boolean ok=dataManager.agregarFavorito(currentUser.getId(), sel.getId()); if(ok){ setStatus("Añadida a favoritos"); cargarFavoritos(); actualizarUI(); } else setStatus("Ya estaba en favoritos"); }
 
     @FXML private void handlePlayPause(){ if(currentIndex<0 && songsTable!=null && songsTable.getItems()!=null && !songsTable.getItems().isEmpty()){ startPlaybackFrom(songsTable.getItems().get(0), songsTable.getItems()); return;} isPlaying=!isPlaying; btnPlayPause.setText(isPlaying?"⏸":"▶"); if(isPlaying) startTimer(); else stopTimer(); }
     @FXML private void handleNext(){ if(currentQueue==null||currentQueue.isEmpty()) return; currentIndex=(currentIndex+1)%currentQueue.size(); applySong(currentQueue.get(currentIndex)); }
@@ -0,0 +1,97 @@
+package com.syncup.data;
+
+import com.syncup.models.Cancion;
+import com.syncup.models.Usuario;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bus de eventos de cambios del catálogo y de los usuarios.
+ * <p>
+ * Los oyentes viven en una {@link CopyOnWriteArrayList}: publicar solo recorre una
+ * instantánea del arreglo, sin bloqueos, y suscribirse o desuscribirse (poco frecuente)
+ * copia la lista. Cada evento se entrega de forma síncrona en el hilo que publica, en
+ * orden de suscripción, así que los oyentes deben ser rápidos y derivar a otro hilo el
+ * trabajo pesado. Una excepción de un oyente se registra y no impide la entrega al resto.
+ */
+public class BusEventosCatalogo {
+
+    /**
+     * Receptor de eventos del catálogo.
+     */
+    @FunctionalInterface
+    public interface OyenteCatalogo {
+        void alCambiar(EventoCatalogo evento);
+    }
+
+    private final CopyOnWriteArrayList<OyenteCatalogo> oyentes = new CopyOnWriteArrayList<>();
+    private final AtomicLong secuencia = new AtomicLong();
+
+    /**
+     * Registra un oyente.
+     *
+     * @param oyente Oyente a registrar
+     * @return El mismo oyente, para poder desuscribirlo después
+     */
+    public OyenteCatalogo suscribir(OyenteCatalogo oyente) {
+        oyentes.add(oyente);
+        return oyente;
+    }
+
+    /**
+     * Elimina un oyente registrado.
+     *
+     * @param oyente Oyente devuelto por {@link #suscribir}
+     * @return true si estaba registrado
+     */
+    public boolean desuscribir(OyenteCatalogo oyente) {
+        return oyentes.remove(oyente);
+    }
+
+    /**
+     * Publica un evento de canción.
+     *
+     * @param tipo Tipo de cambio
+     * @param cancion Canción afectada (nueva versión en actualizaciones)
+     * @param anterior Versión reemplazada, o null
+     */
+    public void publicarCancion(EventoCatalogo.Tipo tipo, Cancion cancion, Cancion anterior) {
+        publicar(new EventoCatalogo(secuencia.incrementAndGet(), tipo, cancion, anterior, null));
+    }
+
+    /**
+     * Publica un evento de usuario.
+     *
+     * @param tipo Tipo de cambio
+     * @param usuario Usuario afectado
+     * @param cancion Canción relacionada (en eventos de favoritos), o null
+     */
+    public void publicarUsuario(EventoCatalogo.Tipo tipo, Usuario usuario, Cancion cancion) {
+        publicar(new EventoCatalogo(secuencia.incrementAndGet(), tipo, cancion, null, usuario));
+    }
+
+    private void publicar(EventoCatalogo evento) {
+        for (OyenteCatalogo oyente : oyentes) {
+            try {
+                oyente.alCambiar(evento);
+            } catch (RuntimeException e) {
+                System.err.println("Error en oyente del catálogo (" + evento + "): " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Número de eventos publicados
+     */
+    public long getEventosPublicados() {
+        return secuencia.get();
+    }
+
+    /**
+     * @return Número de oyentes registrados
+     */
+    public int getNumeroOyentes() {
+        return oyentes.size();
+    }
+}
@@ -1,11 +1,19 @@
 package com.syncup.data;
 
 import com.syncup.models.Cancion;
+import com.syncup.models.CatalogoColumnar;
 import com.syncup.models.Usuario;
+import com.syncup.persistence.ArbolBMas;
+import com.syncup.persistence.CatalogoMapeado;
+import com.syncup.persistence.DiarioRelaciones;
+import com.syncup.persistence.InstantaneaBinaria;
+import com.syncup.persistence.RegistrosKv;
 import com.syncup.structures.GrafoSocial;
 import com.syncup.structures.HashMap;
 import com.syncup.structures.TrieAutocompletado;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -17,11 +25,55 @@ public class DataManager {
     private HashMap<String, Usuario> usuariosByUsername = new HashMap<>();
     private HashMap<String, Cancion> cancionesById = new HashMap<>();
 
+    /** Campos numéricos de las canciones del catálogo, por columnas (recorridos analíticos) */
+    private final CatalogoColumnar catalogoColumnar = new CatalogoColumnar();
+
+    /**
+     * En el modo mapeado, canciones del archivo que se decodifican bajo demanda; null en el
+     * modo normal. cancionesById actúa entonces como capa en memoria por encima: altas y
+     * cambios de la sesión. Los tries, el resumen y el catálogo columnar cubren solo esa capa.
+     */
+    private CatalogoMapeado catalogoMapeado;
+    /** IDs del archivo mapeado que no deben leerse de él (eliminados o reemplazados en memoria) */
+    private final Set<String> sombreadasMapeado = java.util.concurrent.ConcurrentHashMap.newKeySet();
+
+    /** En el modo kv, árbol con una clave "c/{id}" por canción; null en los demás modos */
+    private ArbolBMas catalogoKv;
+    /**
+     * Huella del último registro escrito en el árbol por canción: los contadores cambian sin
+     * evento, y al guardar solo se reescriben las canciones cuyo registro ya no coincide.
+     */
+    private final Map<String, Long> huellasKv = new java.util.concurrent.ConcurrentHashMap<>();
+
+    /** Favoritas, seguidos y playlists anotados como deltas; null si no se pudo abrir */
+    private DiarioRelaciones relaciones;
+
     private TrieAutocompletado trieTitulos = new TrieAutocompletado();
     private TrieAutocompletado trieArtistas = new TrieAutocompletado();
     private TrieAutocompletado trieGeneros = new TrieAutocompletado();
 
     private GrafoSocial grafoSocial = new GrafoSocial();
+
+    /**
+     * Palabras de las altas de un lote pendientes de llevar a los tries, contadas para
+     * insertar cada palabra distinta una sola vez (los géneros y artistas se repiten mucho).
+     */
+    private static final class ConteoTries {
+        final Map<String,Integer> titulos = new java.util.HashMap<>(), artistas = new java.util.HashMap<>(), generos = new java.util.HashMap<>();
+        void contar(Cancion c){ titulos.merge(c.getTitulo(), 1, Integer::sum); artistas.merge(c.getArtista(), 1, Integer::sum); generos.merge(c.getGenero(), 1, Integer::sum); }
+    }
+
+    /** Conteo del lote que está cargando addCanciones en este hilo; null fuera de un lote */
+    private final ThreadLocal<ConteoTries> triesDelLote = new ThreadLocal<>();
+
+    /** Se incrementa con cada alta o baja de canción; permite detectar índices derivados obsoletos */
+    private final java.util.concurrent.atomic.AtomicLong versionCatalogo = new java.util.concurrent.atomic.AtomicLong();
+
+    /** Publica cada alta, baja o actualización de canciones y usuarios a los índices derivados */
+    private final BusEventosCatalogo eventos = new BusEventosCatalogo();
+
+    /** Conteos por género y artista mantenidos con los eventos (gráficas de administración) */
+    private final ResumenCatalogo resumenCatalogo = new ResumenCatalogo();
     
     // Integración con persistencia
     private UserRepository userRepository;
@@ -31,36 +83,83 @@ public class DataManager {
     private static final String DEMO_USERNAME = "demo";
     private static final String DEMO_PASSWORD = "demo";
 
+    /** Instantánea binaria del catálogo (se escribe en saveAllData y se lee al iniciar) */
+    private static final Path ARCHIVO_CATALOGO = Path.of("src/main/resources", "data", "catalogo.bin");
+    /** Catálogo mapeado en memoria para el modo perezoso */
+    private static final Path ARCHIVO_CATALOGO_MAPEADO = Path.of("src/main/resources", "data", "catalogo.map");
+    /** Modo perezoso del catálogo, activado con -Dsyncup.catalogo=mapeado */
+    private static final boolean MODO_MAPEADO = "mapeado".equals(System.getProperty("syncup.catalogo"));
+    /** Catálogo en el almacén clave-valor embebido para el modo kv */
+    private static final Path ARCHIVO_CATALOGO_KV = Path.of("src/main/resources", "data", "catalogo.kv");
+    /** Diario de deltas de relaciones de usuarios ("fav+", "sig+", "pl+"...) */
+    private static final Path ARCHIVO_RELACIONES = Path.of("src/main/resources", "data", "relaciones.journal");
+    /** Modo kv del catálogo, activado con -Dsyncup.catalogo=kv */
+    private static final boolean MODO_KV = "kv".equals(System.getProperty("syncup.catalogo"));
+    private static final String PREFIJO_CANCION_KV = "c/";
+
     private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
 
     public static synchronized DataManager getInstance() { if (instance == null) instance = new DataManager(); return instance; }
 
     private DataManager() {
-        this.userRepository = new UserRepository();
+        this.userRepository = UserRepository.getInstance();
+        eventos.suscribir(this::actualizarTries);
+        eventos.suscribir(resumenCatalogo);
     }
 
     public void initialize() { 
         loadPersistedUsers();
         createDefaultUsers(); 
+        loadPersistedSongs();
         loadSampleSongs(); 
-        rebuildTries(); 
+    }
+
+    /**
+     * Carga el catálogo guardado por {@link #saveAllData()}; si falta o está dañado se
+     * arranca con las canciones de ejemplo.
+     */
+    private void loadPersistedSongs() {
+        if (MODO_MAPEADO) { abrirCatalogoMapeado(); return; }
+        if (MODO_KV) { abrirCatalogoKv(); return; }
+        cargarInstantaneaCatalogo();
+    }
+
+    private void cargarInstantaneaCatalogo() {
+        try {
+            // Las filas se reservan directamente en el catálogo columnar compartido
+            InstantaneaBinaria.Contenido contenido = InstantaneaBinaria.leer(ARCHIVO_CATALOGO, catalogoColumnar);
+            if (contenido == null) return;
+            for (Cancion c : contenido.getCanciones()) if (!addCancion(c)) catalogoColumnar.desvincular(c);
+            System.out.println("Catálogo cargado: " + contenido.getCanciones().size() + " canciones");
+        } catch (IOException e) {
+            System.err.println("Error cargando el catálogo persistido: " + e.getMessage());
+        }
     }
     
     /**
      * Carga usuarios persistidos desde el UserRepository y los sincroniza con el DataManager
      */
     private void loadPersistedUsers() {
-        // Cargar todos los usuarios persistidos y agregarlos a las estructuras de datos
-        // Esto asegura que usuarios creados previamente estén disponibles
+        // El UserRepository ya carga sus usuarios en su constructor; aquí se reproducen las
+        // relaciones y se suben a memoria los usuarios que tienen alguna, para que el grafo
+        // social y las recomendaciones arranquen con ellas
         try {
-            // El UserRepository ya carga automáticamente en su constructor
-            // Podemos usar sus métodos para obtener usuarios existentes si los necesitamos
+            relaciones = new DiarioRelaciones(ARCHIVO_RELACIONES);
+            int cargados = 0;
+            for (String id : relaciones.getUsuarios()) {
+                Optional<Usuario> u = userRepository.findById(id);
+                if (u.isPresent() && addUsuarioToMemory(u.get())) cargados++;
+            }
+            System.out.println("Relaciones reproducidas: " + cargados + " usuarios en memoria");
         } catch (Exception e) {
             System.err.println("Error cargando usuarios persistidos: " + e.getMessage());
         }
     }
 
-    private void rebuildTries(){ trieTitulos.clear(); trieArtistas.clear(); trieGeneros.clear(); for(Cancion c: cancionesById.values()){ trieTitulos.insert(c.getTitulo()); trieArtistas.insert(c.getArtista()); trieGeneros.insert(c.getGenero()); } }
+    /** Aplica a los tries el delta de cada evento de canción en lugar de reconstruirlos */
+    private void actualizarTries(EventoCatalogo e){ switch(e.getTipo()){ case CANCION_AGREGADA: indexarEnTries(e.getCancion()); break; case CANCION_ELIMINADA: desindexarDeTries(e.getCancion()); break; case CANCION_ACTUALIZADA: desindexarDeTries(e.getCancionAnterior()); indexarEnTries(e.getCancion()); break; default: break; } }
+    private void indexarEnTries(Cancion c){ ConteoTries lote=triesDelLote.get(); if(lote!=null){ lote.contar(c); return; } trieTitulos.insert(c.getTitulo()); trieArtistas.insert(c.getArtista()); trieGeneros.insert(c.getGenero()); }
+    private void desindexarDeTries(Cancion c){ trieTitulos.remove(c.getTitulo()); trieArtistas.remove(c.getArtista()); trieGeneros.remove(c.getGenero()); }
 
     private void createDefaultUsers(){ 
         // Verificar si admin existe en persistencia primero
@@ -108,11 +207,105 @@ public class DataManager {
         if(u==null || usuariosByUsername.containsKey(u.getUsername())) return false; 
         usuariosById.put(u.getId(),u); 
         usuariosByUsername.put(u.getUsername(),u); 
+        if(relaciones!=null) relaciones.aplicar(u);
         grafoSocial.agregarUsuario(u); 
+        // Conectar con los que ya están en memoria; los demás se conectan al subir ellos
+        for(String otro: u.getVistaUsuariosSeguidos()) grafoSocial.conectarUsuarios(u.getId(), otro);
+        for(String otro: u.getVistaSeguidores()) grafoSocial.conectarUsuarios(u.getId(), otro);
+        eventos.publicarUsuario(EventoCatalogo.Tipo.USUARIO_AGREGADO, u, null);
         return true; 
     }
 
-    private void loadSampleSongs(){ if(!cancionesById.isEmpty()) return; // base existente
+    /**
+     * Mapea la generación vigente de catalogo.map (creándola desde catalogo.bin la primera
+     * vez). Abrirlo no decodifica ninguna canción.
+     */
+    private void abrirCatalogoMapeado() {
+        try {
+            catalogoMapeado = CatalogoMapeado.abrir(ARCHIVO_CATALOGO_MAPEADO);
+            if (catalogoMapeado == null) {
+                InstantaneaBinaria.Contenido contenido = InstantaneaBinaria.leer(ARCHIVO_CATALOGO);
+                if (contenido == null) return;
+                CatalogoMapeado.escribirGeneracion(ARCHIVO_CATALOGO_MAPEADO, contenido.getCanciones());
+                catalogoMapeado = CatalogoMapeado.abrir(ARCHIVO_CATALOGO_MAPEADO);
+            }
+            System.out.println("Catálogo mapeado: " + catalogoMapeado.size() + " canciones");
+        } catch (IOException e) {
+            System.err.println("Error abriendo el catálogo mapeado: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Carga las canciones de catalogo.kv (la primera vez, de catalogo.bin) y desde entonces
+     * anota en el árbol cada alta, baja o cambio publicado en el bus, sin confirmar;
+     * {@link #saveAllData()} los confirma con un solo fsync.
+     */
+    private void abrirCatalogoKv() {
+        try {
+            catalogoKv = ArbolBMas.abrir(ARCHIVO_CATALOGO_KV);
+        } catch (IOException e) {
+            System.err.println("Error abriendo el catálogo kv, se usa catalogo.bin: " + e.getMessage());
+            cargarInstantaneaCatalogo();
+            return;
+        }
+        if (catalogoKv.size() == 0) {
+            // Lo cargado desde la instantánea llega al árbol por los eventos de alta
+            eventos.suscribir(this::anotarEnCatalogoKv);
+            cargarInstantaneaCatalogo();
+            return;
+        }
+        int[] n = {0};
+        try {
+            catalogoKv.recorrerPrefijo(PREFIJO_CANCION_KV, (k, v) -> {
+                Cancion c = RegistrosKv.cancion(v, catalogoColumnar);
+                if (addCancion(c)) { huellasKv.put(c.getId(), huella(v)); n[0]++; } else catalogoColumnar.desvincular(c);
+                return true;
+            });
+            System.out.println("Catálogo kv cargado: " + n[0] + " canciones");
+        } catch (IOException e) {
+            System.err.println("Error cargando el catálogo kv: " + e.getMessage());
+        }
+        eventos.suscribir(this::anotarEnCatalogoKv);
+    }
+
+    private void anotarEnCatalogoKv(EventoCatalogo e) {
+        ArbolBMas.Lote lote = new ArbolBMas.Lote();
+        Cancion c = e.getCancion(), anterior = e.getCancionAnterior();
+        switch (e.getTipo()) {
+            case CANCION_ACTUALIZADA:
+                if (anterior != null && !anterior.getId().equals(c.getId())) quitarDeKv(lote, anterior);
+                ponerEnKv(lote, c);
+                break;
+            case CANCION_AGREGADA: ponerEnKv(lote, c); break;
+            case CANCION_ELIMINADA: quitarDeKv(lote, c); break;
+            default: return;
+        }
+        try { catalogoKv.aplicar(lote); } catch (IOException ex) { System.err.println("Error anotando en el catálogo kv: " + ex.getMessage()); }
+    }
+
+    private void ponerEnKv(ArbolBMas.Lote lote, Cancion c) {
+        byte[] registro = RegistrosKv.cancion(c);
+        lote.poner(PREFIJO_CANCION_KV + c.getId(), registro);
+        huellasKv.put(c.getId(), huella(registro));
+    }
+
+    private void quitarDeKv(ArbolBMas.Lote lote, Cancion c) {
+        lote.quitar(PREFIJO_CANCION_KV + c.getId());
+        huellasKv.remove(c.getId());
+    }
+
+    /** FNV-1a de 64 bits del registro; una colisión solo retrasaría la escritura de una canción */
+    private static long huella(byte[] registro) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : registro) { h ^= b & 0xff; h *= 0x100000001b3L; }
+        return h;
+    }
+
+    /** @return La canción del archivo mapeado con ese ID, si no está sombreada en memoria */
+    private Cancion getCancionMapeada(String id){ return catalogoMapeado==null || id==null || sombreadasMapeado.contains(id) ? null : catalogoMapeado.obtener(id); }
+    private boolean existeMapeada(String id){ return catalogoMapeado!=null && id!=null && !sombreadasMapeado.contains(id) && catalogoMapeado.contiene(id); }
+
+    private void loadSampleSongs(){ if(getNumeroCanciones()>0) return; // base existente
         addSong("Bohemian Rhapsody","Queen","A Night at the Opera","Rock",1975,355,
                 "https://www.thisdayinmusic.com/wp-content/uploads/2018/07/Bohemian-Rhapsody.jpg",
                 "EMI Records · Álbum: A Night at the Opera (1975) · Prod. Roy Thomas Baker");
@@ -162,6 +355,7 @@ public class DataManager {
         if(ADMIN_USERNAME.equals(u.getUsername())) return false; 
         usuariosById.remove(id); 
         usuariosByUsername.remove(u.getUsername()); 
+        eventos.publicarUsuario(EventoCatalogo.Tipo.USUARIO_ELIMINADO, u, null);
         return true; 
     }
     
@@ -169,6 +363,50 @@ public class DataManager {
     public Usuario getUsuarioByUsername(String username){ return usuariosByUsername.get(username);} 
     public List<Usuario> getAllUsuarios(){ return new ArrayList<>(usuariosById.values()); }
 
+    /**
+     * Notifica que los datos de un usuario cambiaron (perfil, seguidos...) para que los
+     * índices derivados se actualicen.
+     */
+    public void notificarUsuarioActualizado(Usuario u){ if(u!=null && usuariosById.containsKey(u.getId())) eventos.publicarUsuario(EventoCatalogo.Tipo.USUARIO_ACTUALIZADO, u, null); }
+
+    /**
+     * Agrega una canción a los favoritos de un usuario y publica el cambio.
+     * @return true si se agregó; false si no existe el usuario o la canción, o ya era favorita
+     */
+    public boolean agregarFavorito(String usuarioId, String cancionId){ Usuario u=usuariosById.get(usuarioId); Cancion c=getCancionById(cancionId); if(u==null||c==null||!u.agregarCancionFavorita(cancionId)) return false; if(relaciones!=null) relaciones.agregarFavorita(usuarioId, cancionId); userRepository.agregarFavorita(usuarioId, cancionId); eventos.publicarUsuario(EventoCatalogo.Tipo.FAVORITO_AGREGADO, u, c); return true; }
+
+    /**
+     * Quita una canción de los favoritos de un usuario y publica el cambio.
+     * @return true si se quitó
+     */
+    public boolean quitarFavorito(String usuarioId, String cancionId){ Usuario u=usuariosById.get(usuarioId); if(u==null||!u.removerCancionFavorita(cancionId)) return false; if(relaciones!=null) relaciones.quitarFavorita(usuarioId, cancionId); userRepository.quitarFavorita(usuarioId, cancionId); eventos.publicarUsuario(EventoCatalogo.Tipo.FAVORITO_ELIMINADO, u, getCancionById(cancionId)); return true; }
+
+    /**
+     * Hace que un usuario siga a otro: actualiza ambos, los conecta en el grafo social y
+     * anota el delta.
+     * @return true si empezó a seguirlo; false si falta alguno, es él mismo o ya lo seguía
+     */
+    public synchronized boolean seguirUsuario(String seguidorId, String seguidoId){ Usuario a=usuariosById.get(seguidorId), b=usuariosById.get(seguidoId); if(a==null||b==null||!a.seguirUsuario(seguidoId)) return false; b.agregarSeguidor(seguidorId); grafoSocial.conectarUsuarios(seguidorId, seguidoId); if(relaciones!=null) relaciones.seguir(seguidorId, seguidoId); notificarUsuarioActualizado(a); notificarUsuarioActualizado(b); return true; }
+
+    /**
+     * Deja de seguir a un usuario; el grafo social (no dirigido) solo los desconecta si
+     * ninguno sigue ya al otro.
+     * @return true si lo seguía
+     */
+    public synchronized boolean dejarDeSeguir(String seguidorId, String seguidoId){ Usuario a=usuariosById.get(seguidorId), b=usuariosById.get(seguidoId); if(a==null||!a.dejarDeSeguir(seguidoId)) return false; if(b!=null){ b.removerSeguidor(seguidorId); if(!b.getVistaUsuariosSeguidos().contains(seguidorId)) grafoSocial.desconectarUsuarios(seguidorId, seguidoId); notificarUsuarioActualizado(b); } if(relaciones!=null) relaciones.dejarDeSeguir(seguidorId, seguidoId); notificarUsuarioActualizado(a); return true; }
+
+    /**
+     * Agrega una playlist (por nombre) a un usuario y anota el delta.
+     * @return true si se agregó; false si no existe el usuario o ya la tenía
+     */
+    public synchronized boolean agregarPlaylist(String usuarioId, String nombre){ Usuario u=usuariosById.get(usuarioId); if(u==null||nombre==null) return false; List<String> l=u.getPlaylists(); if(l.contains(nombre)) return false; l.add(nombre); u.setPlaylists(l); if(relaciones!=null) relaciones.agregarPlaylist(usuarioId, nombre); notificarUsuarioActualizado(u); return true; }
+
+    /**
+     * Quita una playlist de un usuario y anota el delta.
+     * @return true si la tenía
+     */
+    public synchronized boolean quitarPlaylist(String usuarioId, String nombre){ Usuario u=usuariosById.get(usuarioId); if(u==null) return false; List<String> l=u.getPlaylists(); if(!l.remove(nombre)) return false; u.setPlaylists(l); if(relaciones!=null) relaciones.quitarPlaylist(usuarioId, nombre); notificarUsuarioActualizado(u); return true; }
+
     /**
      * Crea un nuevo usuario CON PERSISTENCIA GARANTIZADA
      * Este método ahora asegura que todos los usuarios creados se guarden permanentemente
@@ -222,7 +460,8 @@ public class DataManager {
                 if(!usuariosByUsername.containsKey(u.getUsername())) {
                     addUsuarioToMemory(u);
                 }
-                return u;
+                // Devolver la instancia en memoria: es la que reciben los eventos y los índices
+                return usuariosByUsername.get(u.getUsername());
             }
         }
         
@@ -232,10 +471,66 @@ public class DataManager {
     }
 
     // Canciones
-    public boolean addCancion(Cancion c){ if(c==null||cancionesById.containsKey(c.getId())) return false; cancionesById.put(c.getId(),c); trieTitulos.insert(c.getTitulo()); trieArtistas.insert(c.getArtista()); trieGeneros.insert(c.getGenero()); return true; }
-    public boolean removeCancion(String id){ return cancionesById.remove(id)!=null; }
-    public Cancion getCancionById(String id){ return cancionesById.get(id);} 
-    public List<Cancion> getAllCanciones(){ return new ArrayList<>(cancionesById.values()); }
+    public boolean addCancion(Cancion c){ if(c==null||cancionesById.containsKey(c.getId())||existeMapeada(c.getId())) return false; catalogoColumnar.vincular(c); cancionesById.put(c.getId(),c); versionCatalogo.incrementAndGet(); eventos.publicarCancion(EventoCatalogo.Tipo.CANCION_AGREGADA, c, null); return true; }
+    /**
+     * Agrega un lote de canciones (carga masiva). Cada alta publica su evento como en
+     * {@link #addCancion}, pero la tabla por ID y el catálogo columnar crecen una sola vez
+     * para todo el lote y los tries se actualizan al final, una inserción por palabra distinta.
+     * @return Número de canciones agregadas
+     */
+    public int addCanciones(List<Cancion> lote){ if(lote==null||lote.isEmpty()) return 0; cancionesById.asegurarCapacidad(cancionesById.size()+lote.size()); catalogoColumnar.reservarFilas(lote.size()); ConteoTries conteo=new ConteoTries(); triesDelLote.set(conteo); int n=0; try{ for(Cancion c: lote) if(addCancion(c)) n++; } finally{ triesDelLote.remove(); conteo.titulos.forEach(trieTitulos::insert); conteo.artistas.forEach(trieArtistas::insert); conteo.generos.forEach(trieGeneros::insert); } return n; }
+    public boolean removeCancion(String id){ Cancion c=cancionesById.remove(id); if(c!=null) catalogoColumnar.desvincular(c); else if((c=getCancionMapeada(id))!=null) sombreadasMapeado.add(id); if(c==null) return false; versionCatalogo.incrementAndGet(); eventos.publicarCancion(EventoCatalogo.Tipo.CANCION_ELIMINADA, c, null); return true; }
+    /** Reemplaza una canción existente (mismo ID) y publica la versión anterior y la nueva */
+    public boolean updateCancion(Cancion c){ if(c==null) return false; Cancion anterior=cancionesById.get(c.getId()); if(anterior==null && (anterior=getCancionMapeada(c.getId()))!=null){ sombreadasMapeado.add(c.getId()); catalogoColumnar.vincular(c); } else if(anterior==null) return false; else if(anterior!=c){ catalogoColumnar.desvincular(anterior); catalogoColumnar.vincular(c); } cancionesById.put(c.getId(),c); versionCatalogo.incrementAndGet(); eventos.publicarCancion(EventoCatalogo.Tipo.CANCION_ACTUALIZADA, c, anterior); return true; }
+    public long getVersionCatalogo(){ return versionCatalogo.get(); }
+    public BusEventosCatalogo getEventos(){ return eventos; }
+    public ResumenCatalogo getResumenCatalogo(){ return resumenCatalogo; }
+    public CatalogoColumnar getCatalogoColumnar(){ return catalogoColumnar; }
+    public Cancion getCancionById(String id){ Cancion c=cancionesById.get(id); return c!=null? c: getCancionMapeada(id); }
+
+    /**
+     * En el modo mapeado decodifica también todas las canciones del archivo (copias nuevas,
+     * sin pasar por la cache de canciones calientes), así que la lista crece con el
+     * catálogo: los índices usan {@link #getCatalogoAcotado} y los recorridos
+     * {@link #streamCanciones()}.
+     */
+    public List<Cancion> getAllCanciones(){ List<Cancion> l=new ArrayList<>(cancionesById.values()); if(catalogoMapeado!=null){ for(int r=0;r<catalogoMapeado.size();r++){ if(!sombreadasMapeado.contains(catalogoMapeado.getId(r))) l.add(catalogoMapeado.decodificar(r)); } } return l; }
+
+    /** @return true si el catálogo se lee bajo demanda de un archivo mapeado */
+    public boolean isCatalogoMapeado(){ return catalogoMapeado!=null; }
+
+    /**
+     * Canciones para índices y listados que no deben crecer con el catálogo. Fuera del modo
+     * mapeado es el catálogo entero; en él, la capa en memoria más las maxMapeadas
+     * canciones más populares del archivo, elegidas recorriendo solo sus contadores.
+     */
+    public List<Cancion> getCatalogoAcotado(int maxMapeadas){
+        if(catalogoMapeado==null) return getAllCanciones();
+        List<Cancion> l=new ArrayList<>(cancionesById.values());
+        for(int r: catalogoMapeado.masPopulares(maxMapeadas+sombreadasMapeado.size())){
+            if(l.size()>=cancionesById.size()+maxMapeadas) break;
+            if(!sombreadasMapeado.contains(catalogoMapeado.getId(r))) l.add(catalogoMapeado.decodificar(r));
+        }
+        return l;
+    }
+
+    /**
+     * Recorre el catálogo sin copiarlo en una lista. En el modo mapeado cada canción del
+     * archivo se decodifica al llegar a ella y solo queda en memoria si quien recorre la retiene.
+     */
+    public java.util.stream.Stream<Cancion> streamCanciones(){
+        java.util.stream.Stream<Cancion> memoria=new ArrayList<>(cancionesById.values()).stream();
+        CatalogoMapeado m=catalogoMapeado;
+        if(m==null) return memoria;
+        return java.util.stream.Stream.concat(memoria, java.util.stream.IntStream.range(0, m.size())
+            .filter(r-> !sombreadasMapeado.contains(m.getId(r))).mapToObj(m::decodificar));
+    }
+
+    /** @return Número de canciones, incluidas las del archivo mapeado, sin decodificarlas */
+    public int getNumeroCanciones(){ return cancionesById.size() + (catalogoMapeado==null? 0: catalogoMapeado.size() - sombreadasMapeado.size()); }
+
+    /** @return Uso de la cache del catálogo mapeado, o null en el modo normal */
+    public String getEstadisticasCatalogoMapeado(){ return catalogoMapeado==null? null: catalogoMapeado.getEstadisticas(); }
 
     // Autocompletado
     public List<String> getSugerenciasTitulos(String p){ return trieTitulos.getSuggestions(p);} 
@@ -243,16 +538,52 @@ public class DataManager {
     public List<String> getSugerenciasGeneros(String p){ return trieGeneros.getSuggestions(p);}    
 
     /**
-     * Guarda todos los datos (actualmente solo persistimos usuarios automáticamente)
+     * Guarda todos los datos: fuerza al disco el diario de usuarios y escribe la instantánea
+     * binaria del catálogo.
      */
     public void saveAllData() {
-        // Los usuarios se guardan automáticamente en UserRepository.create()
-        // En el futuro podrías agregar persistencia para canciones aquí
+        // Los usuarios se anotan en el diario en UserRepository.create(); aquí se fuerza al disco
+        userRepository.sincronizar();
+        if (relaciones != null) {
+            try { relaciones.sincronizar().join(); }
+            catch (java.util.concurrent.CompletionException e) { System.err.println("Error sincronizando relaciones: " + e.getCause()); }
+        }
+        try {
+            // En el modo mapeado se escribe una generación nueva de catalogo.map sin tocar la
+            // mapeada, que sigue siendo válida hasta el próximo arranque con los cambios de la
+            // sesión en la capa en memoria
+            if (MODO_MAPEADO) CatalogoMapeado.escribirGeneracion(ARCHIVO_CATALOGO_MAPEADO, getAllCanciones());
+            else if (catalogoKv != null) guardarCatalogoKv();
+            else InstantaneaBinaria.escribir(ARCHIVO_CATALOGO, null, getAllCanciones());
+        } catch (IOException e) {
+            System.err.println("Error guardando el catálogo: " + e.getMessage());
+        }
     }
 
+    /**
+     * Las altas y bajas ya están aplicadas en el árbol; los contadores (reproducciones,
+     * favoritos, calificaciones) cambian sin evento, así que se codifica cada canción y solo
+     * las que difieren de su huella entran en el lote, que se confirma una vez.
+     */
+    private void guardarCatalogoKv() throws IOException {
+        ArbolBMas.Lote lote = new ArbolBMas.Lote();
+        for (Cancion c : getAllCanciones()) {
+            byte[] registro = RegistrosKv.cancion(c);
+            long h = huella(registro);
+            Long anterior = huellasKv.put(c.getId(), h);
+            if (anterior == null || anterior != h) lote.poner(PREFIJO_CANCION_KV + c.getId(), registro);
+        }
+        catalogoKv.escribir(lote);
+    }
+
+    /** @return Estado del diario de favoritas, seguidos y playlists */
+    public String getEstadisticasRelaciones() { return relaciones == null ? "Diario de relaciones no abierto" : relaciones.getEstadisticas(); }
+    /** @return Estado del árbol del catálogo en el modo kv */
+    public String getEstadisticasCatalogoKv() { return catalogoKv == null ? "Catálogo kv no activo" : catalogoKv.getEstadisticas(); }
+
     public String getSystemStats() { 
         int totalUsers = Math.max(usuariosById.size(), getUserCountFromPersistence());
-        return "Usuarios:" + totalUsers + "\n" + "Canciones:" + cancionesById.size(); 
+        return "Usuarios:" + totalUsers + "\n" + "Canciones:" + getNumeroCanciones(); 
     }
     
     /**
@@ -274,6 +605,6 @@ public class DataManager {
     public int getSeguidosCount(String userId){ return grafoSocial.getSeguidos(userId).size(); }
     public List<Usuario> getSeguidores(String userId){ return new ArrayList<>(grafoSocial.getSeguidores(userId)); }
     public List<Usuario> getSeguidos(String userId){ return new ArrayList<>(grafoSocial.getSeguidos(userId)); }
-    public List<String> getAlbumsByUser(String userId){ Usuario u=usuariosById.get(userId); if(u==null) return Collections.emptyList(); List<String> albums=new ArrayList<>(); for(String cid:u.getCancionesFavoritas()){ Cancion c=cancionesById.get(cid); if(c!=null && c.getAlbum()!=null && !c.getAlbum().isEmpty()) albums.add(c.getAlbum()); } if(albums.isEmpty()){ albums.addAll(cancionesById.values().stream().map(Cancion::getAlbum).filter(a->a!=null && !a.isEmpty()).distinct().limit(5).collect(Collectors.toList())); } return albums; }
-    public String getCoverUrl(String cancionId){ Cancion c=cancionesById.get(cancionId); return c!=null? c.getCoverUrl():null; }
+    public List<String> getAlbumsByUser(String userId){ Usuario u=usuariosById.get(userId); if(u==null) return Collections.emptyList(); List<String> albums=new ArrayList<>(); for(String cid:u.getVistaCancionesFavoritas()){ Cancion c=getCancionById(cid); if(c!=null && c.getAlbum()!=null && !c.getAlbum().isEmpty()) albums.add(c.getAlbum()); } if(albums.isEmpty()){ albums.addAll(cancionesById.values().stream().map(Cancion::getAlbum).filter(a->a!=null && !a.isEmpty()).distinct().limit(5).collect(Collectors.toList())); } return albums; }
+    public String getCoverUrl(String cancionId){ Cancion c=getCancionById(cancionId); return c!=null? c.getCoverUrl():null; }
 }
\ No newline at end of file
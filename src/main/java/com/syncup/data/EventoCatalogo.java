@@ -0,0 +1,61 @@
+package com.syncup.data;
+
+import com.syncup.models.Cancion;
+import com.syncup.models.Usuario;
+
+/**
+ * Cambio en el catálogo o en los usuarios publicado por {@link DataManager} a través del
+ * {@link BusEventosCatalogo}. Es inmutable; los objetos que referencia son los mismos
+ * que guarda el {@code DataManager}.
+ */
+public final class EventoCatalogo {
+
+    /**
+     * Tipo de cambio.
+     */
+    public enum Tipo {
+        CANCION_AGREGADA, CANCION_ELIMINADA, CANCION_ACTUALIZADA,
+        USUARIO_AGREGADO, USUARIO_ELIMINADO, USUARIO_ACTUALIZADO,
+        FAVORITO_AGREGADO, FAVORITO_ELIMINADO
+    }
+
+    private final long secuencia;
+    private final Tipo tipo;
+    private final Cancion cancion;
+    private final Cancion cancionAnterior;
+    private final Usuario usuario;
+
+    EventoCatalogo(long secuencia, Tipo tipo, Cancion cancion, Cancion cancionAnterior, Usuario usuario) {
+        this.secuencia = secuencia;
+        this.tipo = tipo;
+        this.cancion = cancion;
+        this.cancionAnterior = cancionAnterior;
+        this.usuario = usuario;
+    }
+
+    /** @return Número de orden del evento, único y creciente en el orden de publicación */
+    public long getSecuencia() { return secuencia; }
+
+    public Tipo getTipo() { return tipo; }
+
+    /** @return Canción afectada (la nueva versión en actualizaciones), o null en eventos de usuario */
+    public Cancion getCancion() { return cancion; }
+
+    /** @return Versión reemplazada en {@code CANCION_ACTUALIZADA}, null en otro caso */
+    public Cancion getCancionAnterior() { return cancionAnterior; }
+
+    /** @return Usuario afectado, o null en eventos de canción */
+    public Usuario getUsuario() { return usuario; }
+
+    /** @return true si el evento es de canción (alta, baja o actualización) */
+    public boolean esDeCancion() {
+        return tipo == Tipo.CANCION_AGREGADA || tipo == Tipo.CANCION_ELIMINADA || tipo == Tipo.CANCION_ACTUALIZADA;
+    }
+
+    @Override
+    public String toString() {
+        return "EventoCatalogo{#" + secuencia + " " + tipo
+            + (cancion != null ? " cancion=" + cancion.getId() : "")
+            + (usuario != null ? " usuario=" + usuario.getId() : "") + "}";
+    }
+}
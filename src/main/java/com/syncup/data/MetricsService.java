@@ -9,7 +9,7 @@ public class MetricsService {
 
     public MetricsService() {
         this.dataManager = DataManager.getInstance();
-        this.userRepository = new UserRepository();
+        this.userRepository = UserRepository.getInstance();
     }
 
     /**
@@ -24,16 +24,16 @@ public class MetricsService {
      * Usuarios activos (con isActivo=true). Si no hay bandera de activo, asumir todos activos.
      */
     public int getActiveUsers() {
-        return (int) dataManager.getAllUsuarios().stream().filter(Usuario::isActivo).count();
+        return userRepository.contar(Usuario::isActivo);
     }
 
     /**
      * Número de administradores (isEsAdmin=true)
      */
     public int getAdminUsers() {
-        return (int) dataManager.getAllUsuarios().stream().filter(Usuario::isEsAdmin).count();
+        return userRepository.contar(Usuario::isEsAdmin);
     }
 
-    // Como el repositorio no expone listado completo, usamos aproximación basada en DataManager
-    private int userRepositoryCountApprox() { return dataManager.getAllUsuarios().size(); }
+    // Conteo del motor de usuarios compartido
+    private int userRepositoryCountApprox() { return userRepository.count(); }
 }
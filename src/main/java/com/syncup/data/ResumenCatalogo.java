@@ -0,0 +1,77 @@
+package com.syncup.data;
+
+import com.syncup.models.Cancion;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Número de canciones por género y por artista, mantenido con los eventos del
+ * {@link BusEventosCatalogo} en lugar de agrupar todo el catálogo en cada consulta.
+ * Lo usan las gráficas del panel de administración.
+ */
+public class ResumenCatalogo implements BusEventosCatalogo.OyenteCatalogo {
+
+    private final ConcurrentHashMap<String, LongAdder> porGenero = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> porArtista = new ConcurrentHashMap<>();
+
+    @Override
+    public void alCambiar(EventoCatalogo evento) {
+        switch (evento.getTipo()) {
+            case CANCION_AGREGADA:
+                sumar(evento.getCancion(), 1);
+                break;
+            case CANCION_ELIMINADA:
+                sumar(evento.getCancion(), -1);
+                break;
+            case CANCION_ACTUALIZADA:
+                sumar(evento.getCancionAnterior(), -1);
+                sumar(evento.getCancion(), 1);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void sumar(Cancion c, int delta) {
+        if (c == null) return;
+        ajustar(porGenero, c.getGenero(), delta);
+        ajustar(porArtista, c.getArtista(), delta);
+    }
+
+    private static void ajustar(ConcurrentHashMap<String, LongAdder> mapa, String clave, int delta) {
+        if (clave == null) return;
+        mapa.computeIfAbsent(clave, k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * @return Canciones por género (solo géneros con al menos una)
+     */
+    public Map<String, Long> getConteoPorGenero() {
+        return ordenar(porGenero, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param limite Número máximo de artistas
+     * @return Los artistas con más canciones, de mayor a menor
+     */
+    public Map<String, Long> getArtistasPrincipales(int limite) {
+        return ordenar(porArtista, limite);
+    }
+
+    private static Map<String, Long> ordenar(ConcurrentHashMap<String, LongAdder> mapa, int limite) {
+        List<Map.Entry<String, Long>> entradas = mapa.entrySet().stream()
+            .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+            .filter(e -> e.getValue() > 0)
+            .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+            .limit(limite)
+            .collect(Collectors.toList());
+        Map<String, Long> res = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : entradas) res.put(e.getKey(), e.getValue());
+        return res;
+    }
+}
@@ -1,98 +1,192 @@
 package com.syncup.data;
 
 import com.syncup.models.Usuario;
-import com.syncup.persistence.JsonDataStore;
+import com.syncup.persistence.InMemoryUserStore;
+import com.syncup.persistence.JsonUserStore;
+import com.syncup.persistence.KvUserStore;
+import com.syncup.persistence.SnapshotUserStore;
+import com.syncup.persistence.UserStore;
 import com.syncup.utils.PasswordHasher;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
+/**
+ * Repositorio persistente de usuarios sobre un {@link UserStore} intercambiable.
+ * <p>
+ * El repositorio valida, calcula las contraseñas y mantiene los índices por username y
+ * email, globales y concurrentes: un alta reserva su username y su email con
+ * {@code putIfAbsent}, sin candado global, y el motor solo bloquea lo que guarda (en
+ * {@link SnapshotUserStore}, un fragmento). Con {@link KvUserStore} los índices son claves
+ * del árbol y el repositorio no guarda ninguno en memoria. La espera a que un cambio
+ * llegue al disco ocurre fuera de cualquier candado.
+ * <p>
+ * El proceso comparte una sola instancia ({@link #getInstance()}); su motor se elige con
+ * -Dsyncup.usuarios=json|kv|memoria (por defecto, instantánea binaria con diario) o se
+ * reemplaza con {@link #usarAlmacen(UserStore)} en pruebas y mediciones.
+ */
 public class UserRepository {
-    private final JsonDataStore store;
-    private final Map<String, Usuario> byId = new LinkedHashMap<>();
-    private final Map<String, String> usernameToId = new HashMap<>();
-    private final Map<String, String> emailToId = new HashMap<>();
-    private long counter = 1;
+    private static final Path BASE = Path.of("src/main/resources");
+
+    private static UserRepository instance;
+
+    private final UserStore store;
+    private final ConcurrentHashMap<String, String> usernameToId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> emailToId = new ConcurrentHashMap<>();
+    private final AtomicLong counter = new AtomicLong(1);
+
+    /**
+     * Repositorio compartido del proceso. Todas las vistas deben usar esta instancia: los
+     * motores persistentes admiten un único escritor.
+     */
+    public static synchronized UserRepository getInstance() { if (instance == null) instance = new UserRepository(); return instance; }
+
+    /**
+     * Reemplaza el repositorio compartido por uno sobre el motor indicado y cierra el
+     * anterior. Debe llamarse antes de que DataManager tome la instancia compartida.
+     *
+     * @return El nuevo repositorio compartido
+     */
+    public static synchronized UserRepository usarAlmacen(UserStore almacen) {
+        if (instance != null) instance.cerrar();
+        instance = new UserRepository(almacen);
+        return instance;
+    }
+
+    /** Motor por defecto según -Dsyncup.usuarios */
+    private static UserStore crearAlmacen(){
+        String motor = System.getProperty("syncup.usuarios", "");
+        if ("json".equals(motor)) return new JsonUserStore(BASE);
+        if ("memoria".equals(motor)) return new InMemoryUserStore();
+        if ("kv".equals(motor)) return new KvUserStore(BASE);
+        return new SnapshotUserStore(BASE);
+    }
 
     public UserRepository(){
-        this.store = new JsonDataStore(Path.of("src/main/resources"));
-        try{ load(); }catch(IOException e){ System.err.println("Error cargando usuarios: "+e); }
-    }
-
-    private synchronized void load() throws IOException {
-        List<Map<String,Object>> raw = store.loadUsers();
-        byId.clear(); usernameToId.clear(); emailToId.clear(); counter=1;
-        for(Map<String,Object> m: raw){
-            String id = String.valueOf(m.getOrDefault("id",""));
-            String username = String.valueOf(m.getOrDefault("username",""));
-            String email = String.valueOf(m.getOrDefault("email",""));
-            String name = String.valueOf(m.getOrDefault("name",""));
-            String hash = String.valueOf(m.getOrDefault("passwordHash",""));
-            // NUEVO: cargar flag de admin desde persistencia
-            Boolean isAdmin = (Boolean) m.getOrDefault("isAdmin", false);
-            
-            if(id.isBlank()||username.isBlank()) continue;
-            Usuario u = new Usuario(id, username, hash, name, email);
-            u.setPasswordHash(hash);
-            u.setEsAdmin(isAdmin != null && isAdmin); // establecer rol desde persistencia
-            
-            byId.put(id, u);
-            usernameToId.put(username.toLowerCase(Locale.ROOT), id);
-            if(email!=null && !email.isBlank()) emailToId.put(email.toLowerCase(Locale.ROOT), id);
-            try{ long n = Long.parseLong(id.replace("u_","")); if(n>=counter) counter=n+1; }catch(Exception ignored){}
-        }
+        this(crearAlmacen());
+    }
+
+    /**
+     * @param store Motor de almacenamiento; el repositorio lo carga al construirse
+     */
+    public UserRepository(UserStore store){
+        this.store = store;
+        try{ store.cargar(this::indexar); }catch(IOException e){ System.err.println("Error cargando usuarios: "+e); }
+    }
+
+    private void indexar(Usuario u){
+        String id = u.getId(), email = u.getEmail();
+        if(store.guardaIndices()){ avanzarContador(id); return; }
+        usernameToId.put(u.getUsername().toLowerCase(Locale.ROOT), id);
+        if(email!=null && !email.isBlank()) emailToId.put(email.toLowerCase(Locale.ROOT), id);
+        avanzarContador(id);
+    }
+
+    private void avanzarContador(String id){
+        try{ long n = Long.parseLong(id.replace("u_","")); counter.accumulateAndGet(n+1, Math::max); }catch(Exception ignored){}
+    }
+
+    private String idPorUsername(String username){
+        return store.guardaIndices()? store.idPorUsername(username): usernameToId.get(username.toLowerCase(Locale.ROOT));
+    }
+
+    private String idPorEmail(String email){
+        return store.guardaIndices()? store.idPorEmail(email): emailToId.get(email.toLowerCase(Locale.ROOT));
+    }
+
+    /** Registra (sin esperar) el fallo de una escritura que nadie aguarda. */
+    private static void registrarFallo(CompletableFuture<Void> escrito){
+        escrito.whenComplete((r, e) -> { if(e!=null) System.err.println("Error guardando usuarios: "+e); });
     }
 
-    private synchronized void save(){
-        try{
-            List<Map<String,Object>> out = new ArrayList<>();
-            for(Usuario u: byId.values()){
-                Map<String,Object> m = new LinkedHashMap<>();
-                m.put("id", u.getId());
-                m.put("username", u.getUsername());
-                m.put("email", u.getEmail());
-                m.put("name", u.getNombreCompleto());
-                m.put("passwordHash", u.getPasswordHash()!=null? u.getPasswordHash(): "");
-                // NUEVO: persistir rol de admin
-                m.put("isAdmin", u.isEsAdmin());
-                out.add(m);
-            }
-            store.saveUsers(out);
-        }catch(Exception e){ System.err.println("Error guardando usuarios: "+e); }
-    }
-
-    public synchronized Optional<Usuario> findByUsernameOrEmail(String userOrEmail){
+    /** Espera (sin candados) a que un cambio llegue al disco; un fallo se registra y no se propaga. */
+    private static void esperar(CompletableFuture<Void> escrito){
+        try{ escrito.join(); }catch(CompletionException e){ System.err.println("Error guardando usuarios: "+e.getCause()); }
+    }
+
+    /**
+     * Espera a que todo lo guardado esté en el disco (por ejemplo, al cerrar la aplicación).
+     */
+    public void sincronizar(){
+        try{ store.sincronizar().join(); }catch(CompletionException e){ System.err.println("Error sincronizando usuarios: "+e.getCause()); }
+    }
+
+    /** Escribe lo pendiente y cierra el motor. */
+    public void cerrar(){
+        try{ store.close(); }catch(IOException e){ System.err.println("Error cerrando usuarios: "+e); }
+    }
+
+    /**
+     * @return Resumen de las escrituras del motor (en el binario, por fragmento)
+     */
+    public String getEstadisticasDiario(){ return store.getEstadisticas(); }
+
+    /** @return Motor de almacenamiento en uso */
+    public UserStore getStore(){ return store; }
+
+    /** @return Número de usuarios persistidos */
+    public int count(){ return store.size(); }
+
+    /**
+     * Página de usuarios en orden de ID para las vistas de administración; con el motor kv
+     * es un recorrido por rango del árbol.
+     *
+     * @param despuesDe Último ID de la página anterior (null: primera página)
+     */
+    public List<Usuario> listar(String despuesDe, int limite){ return store.listar(despuesDe, limite); }
+
+    /** @return Usuarios guardados que cumplen el filtro, contados por el motor en una pasada */
+    public int contar(Predicate<Usuario> filtro){ return store.contar(filtro); }
+
+    /**
+     * Lleva al motor una favorita añadida, sin esperar al disco; con el motor kv es una
+     * clave nueva del árbol.
+     */
+    public void agregarFavorita(String id, String cancion){ registrarFallo(store.agregarFavorita(id, cancion)); }
+
+    /** Lleva al motor una favorita quitada, sin esperar al disco. */
+    public void quitarFavorita(String id, String cancion){ registrarFallo(store.quitarFavorita(id, cancion)); }
+
+    private Optional<Usuario> porId(String id){
+        return id==null? Optional.empty(): Optional.ofNullable(store.get(id));
+    }
+
+    public Optional<Usuario> findById(String id){ return porId(id); }
+
+    public Optional<Usuario> findByUsernameOrEmail(String userOrEmail){
         if(userOrEmail==null) return Optional.empty();
-        String key = userOrEmail.toLowerCase(Locale.ROOT);
-        String id = usernameToId.get(key);
-        if(id==null) id = emailToId.get(key);
-        return id==null? Optional.empty(): Optional.ofNullable(byId.get(id));
+        String id = idPorUsername(userOrEmail);
+        if(id==null) id = idPorEmail(userOrEmail);
+        return porId(id);
     }
 
-    public synchronized Optional<Usuario> findByUsername(String username){
+    public Optional<Usuario> findByUsername(String username){
         if(username==null) return Optional.empty();
-        String id = usernameToId.get(username.toLowerCase(Locale.ROOT));
-        return id==null? Optional.empty(): Optional.ofNullable(byId.get(id));
+        return porId(idPorUsername(username));
     }
 
-    public synchronized Optional<Usuario> findByEmail(String email){
+    public Optional<Usuario> findByEmail(String email){
         if(email==null) return Optional.empty();
-        String id = emailToId.get(email.toLowerCase(Locale.ROOT));
-        return id==null? Optional.empty(): Optional.ofNullable(byId.get(id));
+        return porId(idPorEmail(email));
     }
 
     /**
      * Crea un nuevo usuario con rol especificado
      */
-    public synchronized Usuario create(String name, String username, String email, String rawPassword){
+    public Usuario create(String name, String username, String email, String rawPassword){
         return create(name, username, email, rawPassword, false);
     }
     
     /**
      * Crea un nuevo usuario con rol especificado (admin o usuario normal)
      */
-    public synchronized Usuario create(String name, String username, String email, String rawPassword, boolean isAdmin){
+    public Usuario create(String name, String username, String email, String rawPassword, boolean isAdmin){
         if(username==null || username.isBlank() || username.contains(" ") || username.length()<3)
             throw new IllegalArgumentException("Username inválido");
         if(email!=null && !email.isBlank() && !email.contains("@"))
@@ -100,39 +194,49 @@ public class UserRepository {
         if(rawPassword==null || rawPassword.length()<6)
             throw new IllegalArgumentException("Contraseña muy corta");
 
+        // Reserva atómica del username y del email: de dos altas con el mismo nombre solo
+        // una gana, sin depender de los candados del motor. Un motor con índices propios
+        // rechaza los repetidos al guardar
+        String id = String.format("u_%04d", counter.getAndIncrement());
         String ukey = username.toLowerCase(Locale.ROOT);
-        if(usernameToId.containsKey(ukey))
+        String ekey = email==null || email.isBlank() || store.guardaIndices()? null: email.toLowerCase(Locale.ROOT);
+        if(!store.guardaIndices() && usernameToId.putIfAbsent(ukey, id)!=null)
             throw new IllegalStateException("Ya existe un usuario con ese username");
-        if(email!=null && !email.isBlank() && emailToId.containsKey(email.toLowerCase(Locale.ROOT)))
+        if(ekey!=null && emailToId.putIfAbsent(ekey, id)!=null){
+            usernameToId.remove(ukey, id);
             throw new IllegalStateException("Ya existe un usuario con ese email");
+        }
 
-        String id = String.format("u_%04d", counter++);
         String hash = PasswordHasher.sha256(rawPassword);
         Usuario u = new Usuario(id, username, hash, name==null?"":name, email==null?"":email);
         u.setPasswordHash(hash);
         u.setEsAdmin(isAdmin); // establecer rol
-        
-        byId.put(id, u);
-        usernameToId.put(ukey, id);
-        if(email!=null && !email.isBlank()) emailToId.put(email.toLowerCase(Locale.ROOT), id);
-        save(); // persistir con rol incluido
+        CompletableFuture<Void> escrito;
+        try{ escrito = store.guardar(u); } // persistir con rol incluido
+        catch(RuntimeException e){
+            // El motor no guardó el usuario: se liberan sus reservas. Si lo aceptó, un fallo
+            // posterior llega por el futuro y las reservas se conservan
+            usernameToId.remove(ukey, id);
+            if(ekey!=null) emailToId.remove(ekey, id);
+            throw e;
+        }
+        esperar(escrito);
         return u;
     }
     
     /**
      * Actualiza el rol de admin de un usuario existente
      */
-    public synchronized boolean updateAdminRole(String username, boolean isAdmin) {
-        Optional<Usuario> userOpt = findByUsername(username);
-        if (userOpt.isEmpty()) return false;
-        
-        Usuario user = userOpt.get();
-        user.setEsAdmin(isAdmin);
-        save(); // persistir cambio de rol
+    public boolean updateAdminRole(String username, boolean isAdmin) {
+        String id = username==null? null: idPorUsername(username);
+        if (id == null) return false;
+        CompletableFuture<Void> escrito = store.modificar(id, u -> u.setEsAdmin(isAdmin)); // persistir cambio de rol
+        if (escrito == null) return false;
+        esperar(escrito);
         return true;
     }
 
-    public synchronized boolean authenticate(String userOrEmail, String rawPassword){
+    public boolean authenticate(String userOrEmail, String rawPassword){
         Optional<Usuario> ou = findByUsernameOrEmail(userOrEmail);
         if(ou.isEmpty()) return false;
         String calc = PasswordHasher.sha256(rawPassword);
@@ -144,7 +248,7 @@ public class UserRepository {
     /**
      * Método especial para credenciales de administrador hardcodeadas
      */
-    public synchronized boolean isAdminCredentials(String username, String password) {
+    public boolean isAdminCredentials(String username, String password) {
         return "admin".equals(username) && "admin123".equals(password);
     }
-}
\ No newline at end of file
+}
@@ -2,34 +2,53 @@ package com.syncup.models;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
+/**
+ * Canción del catálogo.
+ * <p>
+ * Los textos (título, álbum, URLs...) viven en el objeto; los campos numéricos, la fecha
+ * de alta y los ordinales de género y artista viven en una fila de un
+ * {@link CatalogoColumnar}. Mientras la canción no está en el catálogo de
+ * {@code DataManager} los guarda en un pequeño objeto propio, así que puede crearse y
+ * modificarse igual que antes.
+ */
 public class Cancion {
     private String id;
     private String titulo;
-    private String artista;
     private String album;
-    private String genero;
-    private int anio;
-    private int duracionSegundos;
-    private LocalDate fechaAgregado;
-    private long reproducciones;
-    private long numeroFavoritos;
-    private List<String> artistasColaboradores;
+    private List<String> artistasColaboradores = Collections.emptyList();
     private String rutaArchivo;
     private String urlImagenAlbum;
     private String coverUrl; // url de carátula
     private String descripcion; // NUEVO: créditos / disquera / álbum
-    private double calificacionPromedio;
-    private int numeroCalificaciones;
     private boolean disponible;
     private boolean contenidoExplicito;
+    /** Ordinal interno del ID (ver {@link Ordinales}) */
+    private int ordinal;
+    /**
+     * Ubicación de los campos numéricos (fila de un catálogo o campos propios). Es un objeto
+     * inmutable que se reemplaza entero al entrar o salir de un catálogo, así que cada
+     * lectura toma almacén y fila de la misma ubicación.
+     */
+    private volatile FilaCancion campos;
 
-    public Cancion(String id, String titulo, String artista, String album, String genero, int anio, int duracionSegundos) {
-        this.id = id; this.titulo = titulo; this.artista = artista; this.album = album; this.genero = genero; this.anio = anio; this.duracionSegundos = duracionSegundos;
-        this.fechaAgregado = LocalDate.now(); this.reproducciones = 0; this.numeroFavoritos = 0; this.artistasColaboradores = new ArrayList<>();
-        this.rutaArchivo = ""; this.urlImagenAlbum = ""; this.coverUrl = ""; this.descripcion = ""; this.calificacionPromedio = 0.0; this.numeroCalificaciones = 0; this.disponible = true; this.contenidoExplicito = false;
+    public Cancion(String id, String titulo, String artista, String album, String genero, int anio, int duracionSegundos) { this(null, id, titulo, artista, album, genero, anio, duracionSegundos); }
+
+    /**
+     * Crea la canción directamente en una fila de un catálogo compartido, sin pasar por
+     * campos propios (cargas masivas). Si la canción no llega a registrarse, debe
+     * devolverse con {@link CatalogoColumnar#desvincular}.
+     *
+     * @param catalogo Catálogo donde reservar la fila, o null para una canción suelta
+     */
+    public Cancion(CatalogoColumnar catalogo, String id, String titulo, String artista, String album, String genero, int anio, int duracionSegundos) {
+        this.campos = catalogo == null ? new FilaCancion.Suelta() : catalogo.nuevaFila(this);
+        setId(id); this.titulo = titulo; setArtista(artista); this.album = album; setGenero(genero); setAnio(anio); setDuracionSegundos(duracionSegundos);
+        setFechaAgregado(LocalDate.now());
+        this.rutaArchivo = ""; this.urlImagenAlbum = ""; this.coverUrl = ""; this.descripcion = ""; this.disponible = true; this.contenidoExplicito = false;
     }
 
     public Cancion(String titulo, String artista, String genero, int anio) { this(generateId(titulo, artista), titulo, artista, "", genero, anio, 0); }
@@ -39,50 +58,86 @@ public class Cancion {
         return "song_" + base + "_" + System.currentTimeMillis();
     }
 
-    public void reproducir() { this.reproducciones++; }
-    public void marcarComoFavorita() { this.numeroFavoritos++; }
-    public void desmarcarComoFavorita() { if (this.numeroFavoritos > 0) this.numeroFavoritos--; }
+    // Contadores sin bloqueos: seguros con reproducciones y calificaciones concurrentes (ver CatalogoColumnar)
+    public void reproducir() { campos.sumarReproducciones(1); }
+    public void marcarComoFavorita() { campos.sumarFavoritos(1); }
+    public void desmarcarComoFavorita() { FilaCancion f = campos; if (f.getFavoritos() > 0) f.sumarFavoritos(-1); }
 
     public void agregarCalificacion(int calificacion) {
         if (calificacion >= 1 && calificacion <= 5) {
-            double totalPuntos = this.calificacionPromedio * this.numeroCalificaciones;
-            this.numeroCalificaciones++;
-            this.calificacionPromedio = (totalPuntos + calificacion) / this.numeroCalificaciones;
+            campos.agregarCalificacion(calificacion);
         }
     }
 
-    public boolean agregarArtistaColaborador(String artistaColaborador) { if (!artistasColaboradores.contains(artistaColaborador)) { artistasColaboradores.add(artistaColaborador); return true; } return false; }
+    /**
+     * Lectura de los contadores de actividad; el promedio y el número de calificaciones
+     * provienen de la misma lectura atómica.
+     */
+    public Contadores getContadores() { FilaCancion f = campos; long cal = f.getCalificaciones(); return new Contadores(f.getReproducciones(), f.getFavoritos(), CatalogoColumnar.promedio(cal), CatalogoColumnar.conteo(cal)); }
+
+    public boolean agregarArtistaColaborador(String artistaColaborador) { if (!artistasColaboradores.contains(artistaColaborador)) { if (artistasColaboradores.isEmpty()) artistasColaboradores = new ArrayList<>(2); artistasColaboradores.add(Ordinales.ARTISTAS.canonico(artistaColaborador)); return true; } return false; }
     public boolean removerArtistaColaborador(String artistaColaborador) { return artistasColaboradores.remove(artistaColaborador); }
 
-    public String getDuracionFormateada() { int minutos = duracionSegundos / 60; int segundos = duracionSegundos % 60; return String.format("%d:%02d", minutos, segundos); }
+    public String getDuracionFormateada() { int duracionSegundos = getDuracionSegundos(); int minutos = duracionSegundos / 60; int segundos = duracionSegundos % 60; return String.format("%d:%02d", minutos, segundos); }
 
-    public List<String> getTodosLosArtistas() { List<String> t = new ArrayList<>(); t.add(artista); t.addAll(artistasColaboradores); return t; }
+    public List<String> getTodosLosArtistas() { List<String> t = new ArrayList<>(); t.add(getArtista()); t.addAll(artistasColaboradores); return t; }
 
-    public boolean coincideConBusqueda(String termino) { if (termino == null || termino.trim().isEmpty()) return true; String s = termino.toLowerCase(); return titulo.toLowerCase().contains(s) || artista.toLowerCase().contains(s) || album.toLowerCase().contains(s) || genero.toLowerCase().contains(s) || artistasColaboradores.stream().anyMatch(a -> a.toLowerCase().contains(s)); }
+    public boolean coincideConBusqueda(String termino) { if (termino == null || termino.trim().isEmpty()) return true; String s = termino.toLowerCase(); return titulo.toLowerCase().contains(s) || getArtista().toLowerCase().contains(s) || album.toLowerCase().contains(s) || getGenero().toLowerCase().contains(s) || artistasColaboradores.stream().anyMatch(a -> a.toLowerCase().contains(s)); }
 
-    public double calcularPuntajePopularidad() { return (reproducciones * 1.0) + (numeroFavoritos * 2.0) + (calificacionPromedio * 100.0); }
+    public double calcularPuntajePopularidad() { return campos.puntajePopularidad(); }
 
-    public String getId() { return id; } public void setId(String id) { this.id = id; }
+    public String getId() { return id; } public void setId(String id) { this.id = id; this.ordinal = Ordinales.CANCIONES.ordinal(id); }
     public String getTitulo() { return titulo; } public void setTitulo(String titulo) { this.titulo = titulo; }
-    public String getArtista() { return artista; } public void setArtista(String artista) { this.artista = artista; }
+    public String getArtista() { int o = getOrdinalArtista(); return o < 0 ? null : Ordinales.ARTISTAS.valor(o); } public void setArtista(String artista) { campos.setArtista(Ordinales.ARTISTAS.ordinal(artista)); }
     public String getAlbum() { return album; } public void setAlbum(String album) { this.album = album; }
-    public String getGenero() { return genero; } public void setGenero(String genero) { this.genero = genero; }
-    public int getAnio() { return anio; } public void setAnio(int anio) { this.anio = anio; }
-    public int getDuracionSegundos() { return duracionSegundos; } public void setDuracionSegundos(int duracionSegundos) { this.duracionSegundos = duracionSegundos; }
-    public LocalDate getFechaAgregado() { return fechaAgregado; } public void setFechaAgregado(LocalDate fechaAgregado) { this.fechaAgregado = fechaAgregado; }
-    public long getReproducciones() { return reproducciones; } public void setReproducciones(long reproducciones) { this.reproducciones = reproducciones; }
-    public long getNumeroFavoritos() { return numeroFavoritos; } public void setNumeroFavoritos(long numeroFavoritos) { this.numeroFavoritos = numeroFavoritos; }
-    public List<String> getArtistasColaboradores() { return new ArrayList<>(artistasColaboradores); } public void setArtistasColaboradores(List<String> artistasColaboradores) { this.artistasColaboradores = new ArrayList<>(artistasColaboradores); }
+    public String getGenero() { int o = getOrdinalGenero(); return o < 0 ? null : Ordinales.GENEROS.valor(o); } public void setGenero(String genero) { campos.setGenero(Ordinales.GENEROS.ordinal(genero)); }
+    public int getAnio() { return campos.getAnio(); } public void setAnio(int anio) { campos.setAnio(anio); }
+    public int getDuracionSegundos() { return campos.getDuracion(); } public void setDuracionSegundos(int duracionSegundos) { campos.setDuracion(duracionSegundos); }
+    public LocalDate getFechaAgregado() { return campos.getFechaAgregado(); } public void setFechaAgregado(LocalDate fechaAgregado) { campos.setFechaAgregado(fechaAgregado); }
+    public long getReproducciones() { return campos.getReproducciones(); } public void setReproducciones(long reproducciones) { campos.setReproducciones(reproducciones); }
+    public long getNumeroFavoritos() { return campos.getFavoritos(); } public void setNumeroFavoritos(long numeroFavoritos) { campos.setFavoritos(numeroFavoritos); }
+    public List<String> getArtistasColaboradores() { return new ArrayList<>(artistasColaboradores); } public void setArtistasColaboradores(List<String> artistasColaboradores) { if (artistasColaboradores.isEmpty()) { this.artistasColaboradores = Collections.emptyList(); return; } this.artistasColaboradores = new ArrayList<>(artistasColaboradores.size()); for (String a : artistasColaboradores) this.artistasColaboradores.add(Ordinales.ARTISTAS.canonico(a)); }
     public String getRutaArchivo() { return rutaArchivo; } public void setRutaArchivo(String rutaArchivo) { this.rutaArchivo = rutaArchivo; }
     public String getUrlImagenAlbum() { return urlImagenAlbum; } public void setUrlImagenAlbum(String urlImagenAlbum) { this.urlImagenAlbum = urlImagenAlbum; }
     public String getCoverUrl() { return coverUrl; } public void setCoverUrl(String coverUrl) { this.coverUrl = coverUrl; }
     public String getDescripcion() { return descripcion; } public void setDescripcion(String descripcion) { this.descripcion = descripcion; }
-    public double getCalificacionPromedio() { return calificacionPromedio; } public void setCalificacionPromedio(double calificacionPromedio) { this.calificacionPromedio = calificacionPromedio; }
-    public int getNumeroCalificaciones() { return numeroCalificaciones; } public void setNumeroCalificaciones(int numeroCalificaciones) { this.numeroCalificaciones = numeroCalificaciones; }
+    public double getCalificacionPromedio() { return CatalogoColumnar.promedio(campos.getCalificaciones()); } public void setCalificacionPromedio(double calificacionPromedio) { campos.setCalificacion(calificacionPromedio); }
+    public int getNumeroCalificaciones() { return CatalogoColumnar.conteo(campos.getCalificaciones()); } public void setNumeroCalificaciones(int numeroCalificaciones) { campos.setNumeroCalificaciones(numeroCalificaciones); }
+    /** Reemplaza promedio y número de calificaciones a la vez (con cero calificaciones el promedio se conserva) */
+    public void setCalificaciones(double calificacionPromedio, int numeroCalificaciones) { campos.setCalificaciones(calificacionPromedio, numeroCalificaciones); }
     public boolean isDisponible() { return disponible; } public void setDisponible(boolean disponible) { this.disponible = disponible; }
+    /** Ordinales internos (-1 si el valor es null); no son estables entre ejecuciones */
+    public int getOrdinal() { return ordinal; }
+    public int getOrdinalArtista() { return campos.getArtista(); }
+    public int getOrdinalGenero() { return campos.getGenero(); }
+    /** @return Catálogo columnar que guarda los campos numéricos de la canción, o null si no está en ninguno */
+    public CatalogoColumnar getCatalogo() { return campos.getCatalogo(); }
+    FilaCancion getCampos() { return campos; }
+    void ubicar(FilaCancion campos) { this.campos = campos; }
     public boolean isContenidoExplicito() { return contenidoExplicito; } public void setContenidoExplicito(boolean contenidoExplicito) { this.contenidoExplicito = contenidoExplicito; }
 
     @Override public boolean equals(Object o) { if (this == o) return true; if (o == null || getClass() != o.getClass()) return false; Cancion cancion = (Cancion) o; return Objects.equals(id, cancion.id); }
     @Override public int hashCode() { return Objects.hash(id); }
-    @Override public String toString() { return "Cancion{" + "id='" + id + '\'' + ", titulo='" + titulo + '\'' + ", artista='" + artista + '\'' + ", album='" + album + '\'' + ", genero='" + genero + '\'' + ", anio=" + anio + ", duracion='" + getDuracionFormateada() + '\'' + ", reproducciones=" + reproducciones + ", favoritos=" + numeroFavoritos + ", calificacion=" + String.format("%.1f", calificacionPromedio) + ", disponible=" + disponible + '}'; }
+    @Override public String toString() { return "Cancion{" + "id='" + id + '\'' + ", titulo='" + titulo + '\'' + ", artista='" + getArtista() + '\'' + ", album='" + album + '\'' + ", genero='" + getGenero() + '\'' + ", anio=" + getAnio() + ", duracion='" + getDuracionFormateada() + '\'' + ", reproducciones=" + getReproducciones() + ", favoritos=" + getNumeroFavoritos() + ", calificacion=" + String.format("%.1f", getCalificacionPromedio()) + ", disponible=" + disponible + '}'; }
+
+    /**
+     * Valores de los contadores de actividad de una canción en un instante.
+     */
+    public static final class Contadores {
+        private final long reproducciones;
+        private final long favoritos;
+        private final double calificacionPromedio;
+        private final int numeroCalificaciones;
+
+        Contadores(long reproducciones, long favoritos, double calificacionPromedio, int numeroCalificaciones) {
+            this.reproducciones = reproducciones; this.favoritos = favoritos; this.calificacionPromedio = calificacionPromedio; this.numeroCalificaciones = numeroCalificaciones;
+        }
+
+        public long getReproducciones() { return reproducciones; }
+        public long getFavoritos() { return favoritos; }
+        public double getCalificacionPromedio() { return calificacionPromedio; }
+        public int getNumeroCalificaciones() { return numeroCalificaciones; }
+        /** @return Mismo cálculo que {@link Cancion#calcularPuntajePopularidad()} sobre estos valores */
+        public double getPuntajePopularidad() { return reproducciones * 1.0 + favoritos * 2.0 + calificacionPromedio * 100.0; }
+    }
 }
@@ -0,0 +1,411 @@
+package com.syncup.models;
+
+import com.syncup.structures.RegistroOrdinales;
+import com.syncup.structures.SeleccionTopK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Almacén columnar de los campos numéricos de las canciones.
+ * <p>
+ * Año, duración, fecha de alta, reproducciones, favoritos y calificación se guardan en
+ * arreglos primitivos, y el género y el artista principal como ordinales de diccionario
+ * ({@link Ordinales#GENEROS}, {@link Ordinales#ARTISTAS}). Cada {@link Cancion} es una
+ * vista ligera sobre una fila: conserva sus textos (título, álbum, URLs...) y lee el
+ * resto de aquí, así que los recorridos analíticos (conteos por género, filtros por año,
+ * ranking de popularidad) tocan solo las columnas que necesitan.
+ * <p>
+ * Las columnas se reservan por páginas de tamaño fijo que nunca se reubican al crecer, de
+ * modo que una escritura concurrente con el crecimiento no se pierde. Las filas liberadas
+ * se reutilizan; los recorridos omiten las filas sin canción.
+ * <p>
+ * Una canción que no pertenece a ningún catálogo guarda estos campos en un objeto propio
+ * ({@link FilaCancion.Suelta}). {@link #vincular} la mueve a este catálogo y
+ * {@link #desvincular} la devuelve a un objeto propio, de modo que la instancia sigue
+ * siendo válida después de salir del catálogo. La canción publica la nueva ubicación de
+ * una vez, así que un lector concurrente ve la anterior o la nueva completa; una escritura
+ * concurrente con el traslado puede perderse.
+ * <p>
+ * Los contadores que cambian con la actividad de los usuarios no usan bloqueos:
+ * <ul>
+ *   <li>Reproducciones y favoritos se suman con CAS sobre la columna; si el CAS falla por
+ *       contención, la fila pasa a sumar en un {@link LongAdder} propio (la misma idea de
+ *       base más celdas de {@code LongAdder}, pero solo para las filas calientes).</li>
+ *   <li>La suma y el número de calificaciones se empaquetan en un único {@code long}, así
+ *       que cada calificación es un solo CAS y el promedio leído siempre es coherente. Sin
+ *       calificaciones, la suma guarda el promedio fijado con el setter (como si hubiera
+ *       una), para que no se pierda; la primera calificación real lo reemplaza.</li>
+ * </ul>
+ */
+public final class CatalogoColumnar {
+
+    private static final int TAMANO_PAGINA = 1024;
+
+    /** Bits bajos del long de calificaciones reservados para el número de calificaciones */
+    private static final int BITS_CONTEO = 26;
+    private static final long MAX_CONTEO = (1L << BITS_CONTEO) - 1;
+    /** La suma de calificaciones se guarda en centésimas de punto */
+    private static final double ESCALA_SUMA = 100.0;
+
+    /**
+     * Columna de contadores: base atómica por fila más un {@link LongAdder} opcional para
+     * las filas con contención.
+     */
+    private static final class Contadores {
+        final AtomicLongArray base;
+        final AtomicReferenceArray<LongAdder> celdas;
+
+        Contadores(int n) {
+            base = new AtomicLongArray(n);
+            celdas = new AtomicReferenceArray<>(n);
+        }
+
+        void sumar(int i, long delta) {
+            LongAdder celda = celdas.get(i);
+            if (celda != null) {
+                celda.add(delta);
+                return;
+            }
+            long v = base.get(i);
+            if (base.compareAndSet(i, v, v + delta)) return;
+            // Contención: a partir de ahora esta fila suma en su propio LongAdder
+            celdas.compareAndSet(i, null, new LongAdder());
+            celdas.get(i).add(delta);
+        }
+
+        long get(int i) {
+            LongAdder celda = celdas.get(i);
+            return celda == null ? base.get(i) : base.get(i) + celda.sum();
+        }
+
+        void set(int i, long valor) {
+            celdas.set(i, null);
+            base.set(i, valor);
+        }
+    }
+
+    /**
+     * Columnas de un bloque contiguo de filas.
+     */
+    private static final class Pagina {
+        final int[] anio, duracion, genero, artista, diaAgregado;
+        final Contadores reproducciones, favoritos;
+        /** Suma (en centésimas) y número de calificaciones empaquetados */
+        final AtomicLongArray calificaciones;
+        final Cancion[] duenos;
+
+        Pagina(int n) {
+            anio = new int[n]; duracion = new int[n]; genero = new int[n]; artista = new int[n];
+            diaAgregado = new int[n];
+            reproducciones = new Contadores(n); favoritos = new Contadores(n);
+            calificaciones = new AtomicLongArray(n);
+            duenos = new Cancion[n];
+        }
+    }
+
+    private final int tamanoPagina = TAMANO_PAGINA;
+    private final int desplazamiento = Integer.numberOfTrailingZeros(TAMANO_PAGINA);
+    private final int mascara = TAMANO_PAGINA - 1;
+
+    private volatile Pagina[] paginas = new Pagina[0];
+    /** Cota superior exclusiva de las filas usadas alguna vez */
+    private volatile int usadas;
+    private int[] libres = new int[0];
+    private int numeroLibres;
+    private int ocupadas;
+
+    /**
+     * Crea un catálogo compartido vacío.
+     */
+    public CatalogoColumnar() {
+    }
+
+    /**
+     * Fila de este catálogo vista como ubicación de una canción. Es inmutable: el traslado
+     * de una canción crea otra.
+     */
+    static final class Fila extends FilaCancion {
+        private final CatalogoColumnar catalogo;
+        private final int fila;
+
+        private Fila(CatalogoColumnar catalogo, int fila) {
+            this.catalogo = catalogo;
+            this.fila = fila;
+        }
+
+        private Pagina pagina() { return catalogo.pagina(fila); }
+        private int i() { return fila & catalogo.mascara; }
+
+        @Override int getAnio() { return pagina().anio[i()]; }
+        @Override void setAnio(int v) { pagina().anio[i()] = v; }
+        @Override int getDuracion() { return pagina().duracion[i()]; }
+        @Override void setDuracion(int v) { pagina().duracion[i()] = v; }
+        @Override int getGenero() { return pagina().genero[i()]; }
+        @Override void setGenero(int v) { pagina().genero[i()] = v; }
+        @Override int getArtista() { return pagina().artista[i()]; }
+        @Override void setArtista(int v) { pagina().artista[i()] = v; }
+        @Override int getDiaAgregado() { return pagina().diaAgregado[i()]; }
+        @Override void setDiaAgregado(int v) { pagina().diaAgregado[i()] = v; }
+        @Override long getReproducciones() { return pagina().reproducciones.get(i()); }
+        @Override void setReproducciones(long v) { pagina().reproducciones.set(i(), v); }
+        @Override void sumarReproducciones(long d) { pagina().reproducciones.sumar(i(), d); }
+        @Override long getFavoritos() { return Math.max(0, pagina().favoritos.get(i())); }
+        @Override void setFavoritos(long v) { pagina().favoritos.set(i(), v); }
+        @Override void sumarFavoritos(long d) { pagina().favoritos.sumar(i(), d); }
+        @Override long getCalificaciones() { return pagina().calificaciones.get(i()); }
+        @Override boolean casCalificaciones(long esperado, long nuevo) { return pagina().calificaciones.compareAndSet(i(), esperado, nuevo); }
+        @Override CatalogoColumnar getCatalogo() { return catalogo; }
+
+        /** Lee los contadores de una sola vez (ver {@link CatalogoColumnar#puntaje}). */
+        @Override double puntajePopularidad() { return puntaje(pagina(), i()); }
+    }
+
+    // ---- Gestión de filas ----
+
+    /** Reserva una fila para una canción creada directamente en este catálogo. */
+    FilaCancion nuevaFila(Cancion dueno) {
+        return new Fila(this, reservar(dueno));
+    }
+
+    private synchronized int reservar(Cancion dueno) {
+        int fila;
+        if (numeroLibres > 0) {
+            fila = libres[--numeroLibres];
+        } else {
+            fila = usadas;
+            if ((fila >>> desplazamiento) == paginas.length) {
+                Pagina[] p = Arrays.copyOf(paginas, paginas.length + 1);
+                p[p.length - 1] = new Pagina(tamanoPagina);
+                paginas = p;
+            }
+            usadas = fila + 1;
+        }
+        pagina(fila).duenos[fila & mascara] = dueno;
+        ocupadas++;
+        return fila;
+    }
+
+    /**
+     * Crea de una vez las páginas necesarias para tantas filas más, de modo que un lote de
+     * altas no copie el arreglo de páginas una vez por página.
+     *
+     * @param adicionales Filas que se van a reservar
+     */
+    public synchronized void reservarFilas(int adicionales) {
+        int necesarias = usadas + Math.max(0, adicionales - numeroLibres);
+        int n = (necesarias + tamanoPagina - 1) >>> desplazamiento;
+        if (n <= paginas.length) return;
+        Pagina[] p = Arrays.copyOf(paginas, n);
+        for (int i = paginas.length; i < n; i++) p[i] = new Pagina(tamanoPagina);
+        paginas = p;
+    }
+
+    private void liberar(int fila) {
+        pagina(fila).duenos[fila & mascara] = null;
+        if (numeroLibres == libres.length) libres = Arrays.copyOf(libres, Math.max(8, numeroLibres * 2));
+        libres[numeroLibres++] = fila;
+        ocupadas--;
+    }
+
+    /**
+     * Mueve una canción a este catálogo. No hace nada si ya estaba en él.
+     *
+     * @param cancion Canción a incorporar
+     * @throws IllegalStateException si la canción pertenece a otro catálogo compartido
+     */
+    public synchronized void vincular(Cancion cancion) {
+        FilaCancion origen = cancion.getCampos();
+        if (origen.getCatalogo() == this) return;
+        if (origen.getCatalogo() != null) {
+            throw new IllegalStateException("La canción " + cancion.getId() + " ya pertenece a otro catálogo");
+        }
+        Fila destino = new Fila(this, reservar(cancion));
+        destino.copiarDe(origen);
+        cancion.ubicar(destino);
+    }
+
+    /**
+     * Saca una canción de este catálogo y le devuelve campos propios con sus valores.
+     *
+     * @param cancion Canción a retirar
+     * @return true si estaba en este catálogo
+     */
+    public synchronized boolean desvincular(Cancion cancion) {
+        FilaCancion anterior = cancion.getCampos();
+        if (anterior.getCatalogo() != this) return false;
+        FilaCancion.Suelta destino = new FilaCancion.Suelta();
+        destino.copiarDe(anterior);
+        cancion.ubicar(destino);
+        liberar(((Fila) anterior).fila);
+        return true;
+    }
+
+    private Pagina pagina(int fila) {
+        return paginas[fila >>> desplazamiento];
+    }
+
+    // ---- Calificaciones empaquetadas ----
+
+    static int conteo(long calificaciones) { return (int) (calificaciones & MAX_CONTEO); }
+
+    static double promedio(long calificaciones) {
+        int n = conteo(calificaciones);
+        return (calificaciones >>> BITS_CONTEO) / ESCALA_SUMA / Math.max(1, n);
+    }
+
+    /** Con cero calificaciones se guarda el promedio tal cual (número tratado como 1). */
+    static long empaquetar(double promedio, long numero) {
+        long suma = Math.max(0, Math.round(promedio * Math.max(1, numero) * ESCALA_SUMA));
+        return (suma << BITS_CONTEO) | Math.min(Math.max(0, numero), MAX_CONTEO);
+    }
+
+    /**
+     * @return El valor empaquetado con una calificación más, o el mismo si ya tiene el
+     *         máximo de calificaciones. La primera reemplaza un promedio fijado sin ellas.
+     */
+    static long sumarCalificacion(long v, int calificacion) {
+        int n = conteo(v);
+        if (n == MAX_CONTEO) return v;
+        long delta = ((long) (calificacion * ESCALA_SUMA) << BITS_CONTEO) + 1;
+        return n == 0 ? delta : v + delta;
+    }
+
+    private static double puntaje(Pagina pg, int i) {
+        return pg.reproducciones.get(i) * 1.0 + Math.max(0, pg.favoritos.get(i)) * 2.0
+            + promedio(pg.calificaciones.get(i)) * 100.0;
+    }
+
+    // ---- Recorridos analíticos ----
+
+    /**
+     * @return Número de canciones en el catálogo
+     */
+    public synchronized int size() {
+        return ocupadas;
+    }
+
+    /**
+     * Cuenta las canciones por género recorriendo solo la columna de géneros.
+     *
+     * @return Conteo por nombre de género
+     */
+    public Map<String, Integer> contarPorGenero() {
+        return contar(true);
+    }
+
+    /**
+     * Cuenta las canciones por artista principal recorriendo solo la columna de artistas.
+     *
+     * @return Conteo por nombre de artista
+     */
+    public Map<String, Integer> contarPorArtista() {
+        return contar(false);
+    }
+
+    private Map<String, Integer> contar(boolean porGenero) {
+        RegistroOrdinales dic = porGenero ? Ordinales.GENEROS : Ordinales.ARTISTAS;
+        int[] conteo = new int[dic.size()];
+        Pagina[] ps = paginas;
+        int n = usadas;
+        for (int p = 0; p < ps.length; p++) {
+            Pagina pg = ps[p];
+            int[] col = porGenero ? pg.genero : pg.artista;
+            int hasta = Math.min(tamanoPagina, n - p * tamanoPagina);
+            for (int i = 0; i < hasta; i++) {
+                int o = col[i];
+                if (pg.duenos[i] == null || o < 0) continue;
+                if (o >= conteo.length) conteo = Arrays.copyOf(conteo, Math.max(o + 1, conteo.length * 2));
+                conteo[o]++;
+            }
+        }
+        Map<String, Integer> res = new HashMap<>();
+        for (int o = 0; o < conteo.length; o++) {
+            if (conteo[o] > 0) res.put(dic.valor(o), conteo[o]);
+        }
+        return res;
+    }
+
+    /**
+     * Canciones cuyo año está en un rango, recorriendo solo la columna de años.
+     *
+     * @param anioInicio Año mínimo (inclusive)
+     * @param anioFin Año máximo (inclusive)
+     * @return Canciones del rango, en orden de fila
+     */
+    public List<Cancion> filtrarPorAnio(int anioInicio, int anioFin) {
+        List<Cancion> res = new ArrayList<>();
+        Pagina[] ps = paginas;
+        int n = usadas;
+        for (int p = 0; p < ps.length; p++) {
+            Pagina pg = ps[p];
+            int hasta = Math.min(tamanoPagina, n - p * tamanoPagina);
+            for (int i = 0; i < hasta; i++) {
+                int a = pg.anio[i];
+                if (a >= anioInicio && a <= anioFin) {
+                    Cancion c = pg.duenos[i];
+                    if (c != null) res.add(c);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Las canciones con mayor {@link Cancion#calcularPuntajePopularidad()}, calculado sobre
+     * las columnas de reproducciones, favoritos y calificación.
+     *
+     * @param limite Número máximo de canciones
+     * @return Canciones en orden de popularidad descendente
+     */
+    public List<Cancion> masPopulares(int limite) {
+        if (limite <= 0) return new ArrayList<>();
+        Pagina[] ps = paginas;
+        int n = usadas;
+        SeleccionTopK top = new SeleccionTopK(limite);
+        top.reiniciar(limite);
+        for (int p = 0; p < ps.length; p++) {
+            Pagina pg = ps[p];
+            int hasta = Math.min(tamanoPagina, n - p * tamanoPagina);
+            for (int i = 0; i < hasta; i++) {
+                if (pg.duenos[i] == null) continue;
+                top.ofrecer(p * tamanoPagina + i, puntaje(pg, i));
+            }
+        }
+        int[] filas = top.extraerOrdenados();
+        List<Cancion> res = new ArrayList<>(filas.length);
+        for (int f : filas) {
+            Cancion c = pagina(f).duenos[f & mascara];
+            if (c != null) res.add(c);
+        }
+        return res;
+    }
+
+    /**
+     * @return Suma de reproducciones de todas las canciones del catálogo
+     */
+    public long totalReproducciones() {
+        long total = 0;
+        Pagina[] ps = paginas;
+        int n = usadas;
+        for (int p = 0; p < ps.length; p++) {
+            Pagina pg = ps[p];
+            int hasta = Math.min(tamanoPagina, n - p * tamanoPagina);
+            for (int i = 0; i < hasta; i++) {
+                if (pg.duenos[i] != null) total += pg.reproducciones.get(i);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CatalogoColumnar{canciones=%d, paginas=%d}", size(), paginas.length);
+    }
+}
@@ -0,0 +1,137 @@
+package com.syncup.models;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Campos numéricos de una {@link Cancion}: una fila de un {@link CatalogoColumnar} o, si
+ * la canción no está en ninguno, los de un objeto propio ({@link Suelta}).
+ * <p>
+ * Cada instancia es una ubicación fija: la canción publica una nueva en un campo
+ * volátil al entrar o salir de un catálogo, así que un lector nunca combina el almacén
+ * de una ubicación con la fila de otra. Las calificaciones siguen el empaquetado de
+ * {@link CatalogoColumnar} en ambos casos.
+ */
+abstract class FilaCancion {
+
+    static final int SIN_FECHA = Integer.MIN_VALUE;
+
+    abstract int getAnio();
+    abstract void setAnio(int v);
+    abstract int getDuracion();
+    abstract void setDuracion(int v);
+    abstract int getGenero();
+    abstract void setGenero(int v);
+    abstract int getArtista();
+    abstract void setArtista(int v);
+    /** @return Día de alta (época) o {@link #SIN_FECHA} */
+    abstract int getDiaAgregado();
+    abstract void setDiaAgregado(int v);
+    abstract long getReproducciones();
+    abstract void setReproducciones(long v);
+    abstract void sumarReproducciones(long d);
+    abstract long getFavoritos();
+    abstract void setFavoritos(long v);
+    abstract void sumarFavoritos(long d);
+    /** @return Suma y número de calificaciones empaquetados */
+    abstract long getCalificaciones();
+    abstract boolean casCalificaciones(long esperado, long nuevo);
+
+    /** @return Catálogo compartido de la fila, o null si es una fila suelta */
+    abstract CatalogoColumnar getCatalogo();
+
+    LocalDate getFechaAgregado() {
+        int d = getDiaAgregado();
+        return d == SIN_FECHA ? null : LocalDate.ofEpochDay(d);
+    }
+
+    void setFechaAgregado(LocalDate fecha) {
+        setDiaAgregado(fecha == null ? SIN_FECHA : (int) fecha.toEpochDay());
+    }
+
+    /** Suma una calificación con un único CAS; se ignora si se llegó al máximo de calificaciones. */
+    void agregarCalificacion(int calificacion) {
+        long v, n;
+        do {
+            v = getCalificaciones();
+            n = CatalogoColumnar.sumarCalificacion(v, calificacion);
+        } while (n != v && !casCalificaciones(v, n));
+    }
+
+    /** Reemplaza el promedio y el número de calificaciones a la vez. */
+    void setCalificaciones(double promedio, int numero) {
+        long v;
+        do {
+            v = getCalificaciones();
+        } while (!casCalificaciones(v, CatalogoColumnar.empaquetar(promedio, numero)));
+    }
+
+    /** Reemplaza el promedio conservando el número de calificaciones. */
+    void setCalificacion(double promedio) {
+        long v;
+        do {
+            v = getCalificaciones();
+        } while (!casCalificaciones(v, CatalogoColumnar.empaquetar(promedio, CatalogoColumnar.conteo(v))));
+    }
+
+    /** Reemplaza el número de calificaciones conservando el promedio. */
+    void setNumeroCalificaciones(int numero) {
+        long v;
+        do {
+            v = getCalificaciones();
+        } while (!casCalificaciones(v, CatalogoColumnar.empaquetar(CatalogoColumnar.promedio(v), numero)));
+    }
+
+    double puntajePopularidad() {
+        return getReproducciones() * 1.0 + Math.max(0, getFavoritos()) * 2.0
+            + CatalogoColumnar.promedio(getCalificaciones()) * 100.0;
+    }
+
+    /** Copia todos los campos de otra ubicación (al mover una canción). */
+    void copiarDe(FilaCancion o) {
+        setAnio(o.getAnio());
+        setDuracion(o.getDuracion());
+        setGenero(o.getGenero());
+        setArtista(o.getArtista());
+        setDiaAgregado(o.getDiaAgregado());
+        setReproducciones(o.getReproducciones());
+        setFavoritos(o.getFavoritos());
+        long v;
+        do {
+            v = getCalificaciones();
+        } while (!casCalificaciones(v, o.getCalificaciones()));
+    }
+
+    /**
+     * Campos de una canción fuera de cualquier catálogo: un solo objeto, con los contadores
+     * actualizados por CAS sobre sus propios campos.
+     */
+    static final class Suelta extends FilaCancion {
+        private static final AtomicLongFieldUpdater<Suelta> REPRODUCCIONES = AtomicLongFieldUpdater.newUpdater(Suelta.class, "reproducciones");
+        private static final AtomicLongFieldUpdater<Suelta> FAVORITOS = AtomicLongFieldUpdater.newUpdater(Suelta.class, "favoritos");
+        private static final AtomicLongFieldUpdater<Suelta> CALIFICACIONES = AtomicLongFieldUpdater.newUpdater(Suelta.class, "calificaciones");
+
+        private int anio, duracion, genero, artista, diaAgregado;
+        private volatile long reproducciones, favoritos, calificaciones;
+
+        @Override int getAnio() { return anio; }
+        @Override void setAnio(int v) { anio = v; }
+        @Override int getDuracion() { return duracion; }
+        @Override void setDuracion(int v) { duracion = v; }
+        @Override int getGenero() { return genero; }
+        @Override void setGenero(int v) { genero = v; }
+        @Override int getArtista() { return artista; }
+        @Override void setArtista(int v) { artista = v; }
+        @Override int getDiaAgregado() { return diaAgregado; }
+        @Override void setDiaAgregado(int v) { diaAgregado = v; }
+        @Override long getReproducciones() { return reproducciones; }
+        @Override void setReproducciones(long v) { reproducciones = v; }
+        @Override void sumarReproducciones(long d) { REPRODUCCIONES.getAndAdd(this, d); }
+        @Override long getFavoritos() { return Math.max(0, favoritos); }
+        @Override void setFavoritos(long v) { favoritos = v; }
+        @Override void sumarFavoritos(long d) { FAVORITOS.getAndAdd(this, d); }
+        @Override long getCalificaciones() { return calificaciones; }
+        @Override boolean casCalificaciones(long esperado, long nuevo) { return CALIFICACIONES.compareAndSet(this, esperado, nuevo); }
+        @Override CatalogoColumnar getCatalogo() { return null; }
+    }
+}
@@ -0,0 +1,29 @@
+package com.syncup.models;
+
+import com.syncup.structures.RegistroOrdinales;
+
+/**
+ * Registros de ordinales compartidos por todo el proceso para los identificadores de
+ * canciones y usuarios y para los nombres de artistas y géneros.
+ * <p>
+ * La API pública sigue trabajando con cadenas; los ordinales son un detalle interno
+ * para que grafos, índices y modelos usen arreglos de enteros.
+ */
+public final class Ordinales {
+
+    public static final RegistroOrdinales CANCIONES = new RegistroOrdinales("canciones");
+    public static final RegistroOrdinales USUARIOS = new RegistroOrdinales("usuarios");
+    public static final RegistroOrdinales ARTISTAS = new RegistroOrdinales("artistas");
+    public static final RegistroOrdinales GENEROS = new RegistroOrdinales("géneros");
+
+    private Ordinales() {
+    }
+
+    /**
+     * @return Número de cadenas registradas por cada registro
+     */
+    public static String getEstadisticas() {
+        return String.format("Ordinales: %d canciones, %d usuarios, %d artistas, %d géneros",
+            CANCIONES.size(), USUARIOS.size(), ARTISTAS.size(), GENEROS.size());
+    }
+}
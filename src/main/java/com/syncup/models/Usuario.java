@@ -2,13 +2,22 @@ package com.syncup.models;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Clase que representa un usuario del sistema SyncUp.
  * Implementa funcionalidades para gestión de perfil, favoritos y red social.
  * RF-015, RF-016, RF-017: equals y hashCode basados en username para indexación eficiente.
+ * <p>
+ * Favoritas, seguidos y seguidores se guardan en conjuntos con orden de inserción, así que
+ * agregar, quitar y consultar son O(1). Los getters de lista devuelven copias; los métodos
+ * {@code getVista...} devuelven vistas de solo lectura sin copiar, para los recorridos frecuentes.
+ * Los cambios y las copias de los conjuntos toman el monitor del usuario, así que copiarlo
+ * (por ejemplo, para una instantánea) no choca con un cambio concurrente.
  */
 public class Usuario {
 
@@ -21,16 +30,28 @@ public class Usuario {
     private String nombreCompleto;
     private String email;
     private LocalDateTime fechaRegistro;
-    private List<String> cancionesFavoritas;
-    private List<String> usuariosSeguidos;
-    private List<String> seguidores;
+    private final Set<String> cancionesFavoritas = new LinkedHashSet<>();
+    private final Set<String> usuariosSeguidos = new LinkedHashSet<>();
+    private final Set<String> seguidores = new LinkedHashSet<>();
+    private final Set<String> vistaFavoritas = Collections.unmodifiableSet(cancionesFavoritas);
+    private final Set<String> vistaSeguidos = Collections.unmodifiableSet(usuariosSeguidos);
+    private final Set<String> vistaSeguidores = Collections.unmodifiableSet(seguidores);
     private List<String> playlists;
     private List<String> generosFavoritos;
     private boolean activo;
     private boolean esAdmin;
+    /** Ordinal interno del ID (ver {@link Ordinales}) */
+    private int ordinal;
+    /**
+     * Ordinales ordenados de favoritas y géneros favoritos; null si hay que recalcularlos. Se
+     * calculan y se anulan bajo el monitor del usuario, así que un cálculo nunca publica un
+     * arreglo anterior a un cambio de las favoritas o de los géneros.
+     */
+    private volatile int[] ordinalesFavoritos;
+    private volatile int[] ordinalesGeneros;
 
     public Usuario(String id, String username, String passwordOrHash, String nombreCompleto, String email) {
-        this.id = id;
+        setId(id);
         this.username = username;
         // Mantener compatibilidad: si parece hash (empieza por "sha256:"), guardarlo en passwordHash; si no, en password
         if(passwordOrHash!=null && passwordOrHash.startsWith("sha256:")){
@@ -43,9 +64,6 @@ public class Usuario {
         this.nombreCompleto = nombreCompleto;
         this.email = email;
         this.fechaRegistro = LocalDateTime.now();
-        this.cancionesFavoritas = new ArrayList<>();
-        this.usuariosSeguidos = new ArrayList<>();
-        this.seguidores = new ArrayList<>();
         this.playlists = new ArrayList<>();
         this.generosFavoritos = new ArrayList<>();
         this.activo = true;
@@ -56,20 +74,22 @@ public class Usuario {
 
     private static String generateId(String username) { return "user_" + username + "_" + System.currentTimeMillis(); }
 
-    public boolean agregarCancionFavorita(String cancionId) { if (!cancionesFavoritas.contains(cancionId)) { cancionesFavoritas.add(cancionId); return true; } return false; }
-    public boolean removerCancionFavorita(String cancionId) { return cancionesFavoritas.remove(cancionId); }
-    public boolean esCancionFavorita(String cancionId) { return cancionesFavoritas.contains(cancionId); }
-    public boolean seguirUsuario(String usuarioId) { if (!usuariosSeguidos.contains(usuarioId) && !usuarioId.equals(this.id)) { usuariosSeguidos.add(usuarioId); return true; } return false; }
-    public boolean dejarDeSeguir(String usuarioId) { return usuariosSeguidos.remove(usuarioId); }
-    public boolean agregarSeguidor(String usuarioId) { if (!seguidores.contains(usuarioId) && !usuarioId.equals(this.id)) { seguidores.add(usuarioId); return true; } return false; }
-    public boolean removerSeguidor(String usuarioId) { return seguidores.remove(usuarioId); }
+    public synchronized boolean agregarCancionFavorita(String cancionId) { if (cancionesFavoritas.add(cancionId)) { ordinalesFavoritos = null; return true; } return false; }
+    public synchronized boolean removerCancionFavorita(String cancionId) { boolean ok = cancionesFavoritas.remove(cancionId); if (ok) ordinalesFavoritos = null; return ok; }
+    public synchronized boolean esCancionFavorita(String cancionId) { return cancionesFavoritas.contains(cancionId); }
+    public synchronized boolean seguirUsuario(String usuarioId) { return !usuarioId.equals(this.id) && usuariosSeguidos.add(usuarioId); }
+    public synchronized boolean dejarDeSeguir(String usuarioId) { return usuariosSeguidos.remove(usuarioId); }
+    public synchronized boolean agregarSeguidor(String usuarioId) { return !usuarioId.equals(this.id) && seguidores.add(usuarioId); }
+    public synchronized boolean removerSeguidor(String usuarioId) { return seguidores.remove(usuarioId); }
     public int getNumeroCancionesFavoritas() { return cancionesFavoritas.size(); }
     public int getNumeroSeguidos() { return usuariosSeguidos.size(); }
     public int getNumeroSeguidores() { return seguidores.size(); }
 
     // Getters/Setters
     public String getId() { return id; }
-    public void setId(String id) { this.id = id; }
+    public void setId(String id) { this.id = id; this.ordinal = Ordinales.USUARIOS.ordinal(id); }
+    /** @return Ordinal interno del ID (-1 si es null); no es estable entre ejecuciones */
+    public int getOrdinal() { return ordinal; }
     public String getUsername() { return username; }
     public void setUsername(String username) { this.username = username; }
     public String getPassword() { return password; }
@@ -82,16 +102,29 @@ public class Usuario {
     public void setEmail(String email) { this.email = email; }
     public LocalDateTime getFechaRegistro() { return fechaRegistro; }
     public void setFechaRegistro(LocalDateTime fechaRegistro) { this.fechaRegistro = fechaRegistro; }
-    public List<String> getCancionesFavoritas() { return new ArrayList<>(cancionesFavoritas); }
-    public void setCancionesFavoritas(List<String> cancionesFavoritas) { this.cancionesFavoritas = new ArrayList<>(cancionesFavoritas); }
-    public List<String> getUsuariosSeguidos() { return new ArrayList<>(usuariosSeguidos); }
-    public void setUsuariosSeguidos(List<String> usuariosSeguidos) { this.usuariosSeguidos = new ArrayList<>(usuariosSeguidos); }
-    public List<String> getSeguidores() { return new ArrayList<>(seguidores); }
-    public void setSeguidores(List<String> seguidores) { this.seguidores = new ArrayList<>(seguidores); }
+    /** @return Copia modificable de las favoritas en orden de inserción */
+    public synchronized List<String> getCancionesFavoritas() { return new ArrayList<>(cancionesFavoritas); }
+    /** @return Vista de solo lectura de las favoritas (refleja cambios posteriores; no copiar para recorrer) */
+    public Set<String> getVistaCancionesFavoritas() { return vistaFavoritas; }
+    public synchronized void setCancionesFavoritas(List<String> cancionesFavoritas) { this.cancionesFavoritas.clear(); this.cancionesFavoritas.addAll(cancionesFavoritas); ordinalesFavoritos = null; }
+    /** @return Ordinales de las favoritas en orden ascendente y sin repetidos (compartido: no modificar) */
+    public int[] getOrdinalesFavoritos() { int[] o = ordinalesFavoritos; return o != null ? o : calcularOrdinalesFavoritos(); }
+    private synchronized int[] calcularOrdinalesFavoritos() { if (ordinalesFavoritos == null) ordinalesFavoritos = Ordinales.CANCIONES.ordinalesOrdenados(cancionesFavoritas); return ordinalesFavoritos; }
+    public synchronized List<String> getUsuariosSeguidos() { return new ArrayList<>(usuariosSeguidos); }
+    /** @return Vista de solo lectura de los usuarios seguidos */
+    public Set<String> getVistaUsuariosSeguidos() { return vistaSeguidos; }
+    public synchronized void setUsuariosSeguidos(List<String> usuariosSeguidos) { this.usuariosSeguidos.clear(); this.usuariosSeguidos.addAll(usuariosSeguidos); }
+    public synchronized List<String> getSeguidores() { return new ArrayList<>(seguidores); }
+    /** @return Vista de solo lectura de los seguidores */
+    public Set<String> getVistaSeguidores() { return vistaSeguidores; }
+    public synchronized void setSeguidores(List<String> seguidores) { this.seguidores.clear(); this.seguidores.addAll(seguidores); }
     public List<String> getPlaylists() { return new ArrayList<>(playlists); }
     public void setPlaylists(List<String> playlists) { this.playlists = new ArrayList<>(playlists); }
     public List<String> getGenerosFavoritos() { return new ArrayList<>(generosFavoritos); }
-    public void setGenerosFavoritos(List<String> generosFavoritos) { this.generosFavoritos = new ArrayList<>(generosFavoritos); }
+    public synchronized void setGenerosFavoritos(List<String> generosFavoritos) { this.generosFavoritos = new ArrayList<>(generosFavoritos); ordinalesGeneros = null; }
+    /** @return Ordinales de los géneros favoritos en orden ascendente y sin repetidos (compartido: no modificar) */
+    public int[] getOrdinalesGenerosFavoritos() { int[] o = ordinalesGeneros; return o != null ? o : calcularOrdinalesGeneros(); }
+    private synchronized int[] calcularOrdinalesGeneros() { if (ordinalesGeneros == null) ordinalesGeneros = Ordinales.GENEROS.ordinalesOrdenados(generosFavoritos); return ordinalesGeneros; }
     public boolean isActivo() { return activo; }
     public void setActivo(boolean activo) { this.activo = activo; }
     public boolean isEsAdmin() { return esAdmin; }
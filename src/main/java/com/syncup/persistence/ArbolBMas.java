@@ -0,0 +1,720 @@
+package com.syncup.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * Almacén clave-valor embebido sobre un árbol B+ en un solo archivo: claves de texto
+ * ordenadas, valores binarios, escrituras por lotes y recorridos por rango, sin servicios
+ * externos.
+ * <p>
+ * El archivo se divide en páginas de {@value #TAM_PAGINA} bytes y nunca se sobrescribe una
+ * página de la versión confirmada (copia en escritura): un cambio copia en memoria la hoja
+ * y sus ancestros, y {@link #confirmar()} escribe esas páginas en huecos que dejaron
+ * versiones anteriores o al final, hace fsync y solo entonces apunta la cabecera a la
+ * raíz nueva. Las páginas 0 y 1 son dos cabeceras alternas con
+ * número de secuencia y CRC32; al abrir gana la válida más reciente, así que un corte a
+ * mitad de una confirmación deja el árbol anterior intacto. Por la copia en escritura las
+ * hojas no se enlazan entre sí: los rangos se recorren descendiendo desde la raíz.
+ * <p>
+ * Los valores de más de {@value #MAX_EN_LINEA} bytes se guardan en páginas contiguas
+ * aparte. La lista de páginas libres vive en memoria: las que quedan sin reutilizar al
+ * cerrar se pierden hasta que, cuando superan a las vivas, el archivo se reescribe
+ * compacto. Las bajas no fusionan nodos; la compactación vuelve a llenarlos.
+ * <p>
+ * Lecturas concurrentes entre sí; las escrituras toman el candado exclusivo.
+ */
+public final class ArbolBMas implements Closeable {
+    /** "BPT1" */
+    private static final int MAGIC = 0x42505431;
+    private static final int VERSION = 1;
+
+    static final int TAM_PAGINA = 4096;
+    /** Longitud máxima de una clave en bytes UTF-8 */
+    static final int MAX_CLAVE = 256;
+    /** Valores más largos se guardan fuera de la hoja */
+    static final int MAX_EN_LINEA = 512;
+    private static final int PAGINAS_CACHE = 4096;
+    /** Por debajo de este tamaño (en páginas) no se compacta */
+    private static final long MIN_PAGINAS_COMPACTAR = 256;
+
+    private static final byte HOJA = 1;
+    private static final byte INTERNO = 2;
+    private static final int BYTES_CABECERA = 4 + 4 + 8 + 8 + 8 + 8 + 8 + 4;
+
+    private final Path archivo;
+    private FileChannel canal;
+    private final ReentrantReadWriteLock candado = new ReentrantReadWriteLock();
+    /** Nodos confirmados ya decodificados, por página; son inmutables */
+    private final Map<Long, Nodo> cache = new LinkedHashMap<Long, Nodo>(256, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Long, Nodo> e) { return size() > PAGINAS_CACHE; }
+    };
+
+    /** Raíz de un árbol sin claves confirmadas */
+    private static final Long VACIO = -1L;
+
+    /** Raíz: Long (página confirmada o {@link #VACIO}) o Nodo con cambios sin confirmar */
+    private Object raiz;
+    private long secuencia;
+    private long total;
+    private long finPaginas;
+    private long paginasMuertas;
+    private long confirmaciones;
+    private long paginasEscritas;
+    private long compactaciones;
+    /** Páginas sin uso que se pueden reutilizar, y las liberadas desde la última confirmación */
+    private final BitSet libres = new BitSet();
+    private final BitSet liberadas = new BitSet();
+
+    /**
+     * Lote de altas, reemplazos y bajas que se aplica y confirma de una vez.
+     */
+    public static final class Lote {
+        private final List<String> claves = new ArrayList<>();
+        private final List<byte[]> valores = new ArrayList<>();
+
+        public Lote poner(String clave, byte[] valor) {
+            validarClave(clave);
+            claves.add(clave);
+            valores.add(Objects.requireNonNull(valor, "valor"));
+            return this;
+        }
+
+        public Lote quitar(String clave) {
+            claves.add(Objects.requireNonNull(clave, "clave"));
+            valores.add(null);
+            return this;
+        }
+
+        public int size() { return claves.size(); }
+        public boolean isEmpty() { return claves.isEmpty(); }
+    }
+
+    private static final class Nodo {
+        final boolean hoja;
+        /** Página donde está confirmado, o -1 si solo existe en memoria */
+        long pagina = -1;
+        final List<String> claves;
+        /** Hoja: valores y primera página de los que viven fuera de ella (o -1) */
+        final List<byte[]> valores;
+        final List<Long> externos;
+        /** Interno: Long (página) o Nodo sin confirmar, uno más que claves */
+        final List<Object> hijos;
+        /** Bytes que ocupa serializado; se mantiene con cada cambio */
+        int bytes;
+
+        Nodo(boolean hoja, int capacidad) {
+            this.hoja = hoja;
+            this.claves = new ArrayList<>(capacidad);
+            this.valores = hoja ? new ArrayList<>(capacidad) : null;
+            this.externos = hoja ? new ArrayList<>(capacidad) : null;
+            this.hijos = hoja ? null : new ArrayList<>(capacidad + 1);
+            this.bytes = 1 + 2 + (hoja ? 0 : 8);
+        }
+
+        Nodo copia() {
+            Nodo c = new Nodo(hoja, claves.size() + 1);
+            c.claves.addAll(claves);
+            if (hoja) { c.valores.addAll(valores); c.externos.addAll(externos); }
+            else c.hijos.addAll(hijos);
+            c.bytes = bytes;
+            return c;
+        }
+
+        int bytesEntrada(int i) {
+            int b = 2 + longitudUtf8(claves.get(i));
+            if (!hoja) return b + 8;
+            int v = valores.get(i).length;
+            return b + 4 + (v > MAX_EN_LINEA ? 8 : v);
+        }
+
+        void recalcular() {
+            bytes = 1 + 2 + (hoja ? 0 : 8);
+            for (int i = 0; i < claves.size(); i++) bytes += bytesEntrada(i);
+        }
+    }
+
+    /** Resultado de dividir un nodo: la clave que sube al padre y la mitad derecha. */
+    private static final class Division {
+        final String separador;
+        final Nodo derecho;
+
+        Division(String separador, Nodo derecho) {
+            this.separador = separador;
+            this.derecho = derecho;
+        }
+    }
+
+    private ArbolBMas(Path archivo) {
+        this.archivo = archivo;
+    }
+
+    /**
+     * Abre el árbol del archivo, o lo crea vacío si no existe.
+     *
+     * @throws IOException Si el archivo existe pero ninguna cabecera es válida
+     */
+    public static ArbolBMas abrir(Path archivo) throws IOException {
+        ArbolBMas a = new ArbolBMas(archivo);
+        a.abrirCanal();
+        return a;
+    }
+
+    private void abrirCanal() throws IOException {
+        if (archivo.getParent() != null) Files.createDirectories(archivo.getParent());
+        boolean nuevo = !Files.exists(archivo) || Files.size(archivo) == 0;
+        canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        synchronized (cache) { cache.clear(); }
+        libres.clear();
+        liberadas.clear();
+        if (nuevo) {
+            secuencia = 0; total = 0; paginasMuertas = 0; finPaginas = 2;
+            raiz = VACIO;
+            escribirCabecera();
+            return;
+        }
+        ByteBuffer[] slots = { leerCabecera(0), leerCabecera(1) };
+        ByteBuffer mejor = null;
+        long mejorSecuencia = -1;
+        for (ByteBuffer b : slots) {
+            if (b == null || !cabeceraValida(b)) continue;
+            long s = b.getLong(8);
+            if (s > mejorSecuencia) { mejorSecuencia = s; mejor = b; }
+        }
+        if (mejor == null) { canal.close(); throw new IOException("Cabecera inválida en " + archivo); }
+        secuencia = mejor.getLong(8);
+        raiz = mejor.getLong(16);
+        total = mejor.getLong(24);
+        finPaginas = mejor.getLong(32);
+        paginasMuertas = mejor.getLong(40);
+    }
+
+    private static boolean cabeceraValida(ByteBuffer b) {
+        if (b.getInt(0) != MAGIC || b.getInt(4) != VERSION) return false;
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, BYTES_CABECERA - 4);
+        return (int) crc.getValue() == b.getInt(BYTES_CABECERA - 4);
+    }
+
+    /** @return La cabecera de la ranura, o null si el archivo termina antes */
+    private ByteBuffer leerCabecera(int ranura) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(BYTES_CABECERA);
+        long pos = (long) ranura * TAM_PAGINA;
+        while (b.hasRemaining()) {
+            if (canal.read(b, pos + b.position()) < 0) return null;
+        }
+        return b.flip();
+    }
+
+    /** @return La página completa, o null si el archivo termina antes */
+    private ByteBuffer leerPagina(long pagina) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(TAM_PAGINA);
+        long pos = pagina * TAM_PAGINA;
+        while (b.hasRemaining()) {
+            int n = canal.read(b, pos + b.position());
+            if (n < 0) return null;
+        }
+        return b.flip();
+    }
+
+    // ---- Lecturas ----
+
+    /** @return El valor de la clave, o null si no existe */
+    public byte[] get(String clave) throws IOException {
+        candado.readLock().lock();
+        try {
+            Nodo n = leer(raiz);
+            while (!n.hoja) n = leer(n.hijos.get(indiceHijo(n, clave)));
+            int i = Collections.binarySearch(n.claves, clave);
+            return i >= 0 ? n.valores.get(i) : null;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recorre en orden las claves de [desde, hasta) con sus valores.
+     *
+     * @param desde Primera clave incluida (null: desde el principio)
+     * @param hasta Primera clave excluida (null: hasta el final)
+     * @param visitante Recibe cada clave y valor; devuelve false para detener el recorrido
+     */
+    public void recorrer(String desde, String hasta, BiPredicate<String, byte[]> visitante) throws IOException {
+        candado.readLock().lock();
+        try {
+            recorrer(raiz, desde, hasta, visitante);
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    /** Recorre en orden las claves que empiezan por el prefijo. */
+    public void recorrerPrefijo(String prefijo, BiPredicate<String, byte[]> visitante) throws IOException {
+        recorrer(prefijo, prefijo + Character.MAX_VALUE, visitante);
+    }
+
+    private boolean recorrer(Object ref, String desde, String hasta, BiPredicate<String, byte[]> visitante) throws IOException {
+        Nodo n = leer(ref);
+        if (n.hoja) {
+            int i = 0;
+            if (desde != null) { i = Collections.binarySearch(n.claves, desde); if (i < 0) i = -i - 1; }
+            for (; i < n.claves.size(); i++) {
+                String k = n.claves.get(i);
+                if (hasta != null && k.compareTo(hasta) >= 0) return false;
+                if (!visitante.test(k, n.valores.get(i))) return false;
+            }
+            return true;
+        }
+        for (int i = desde == null ? 0 : indiceHijo(n, desde); i < n.hijos.size(); i++) {
+            if (i > 0 && hasta != null && n.claves.get(i - 1).compareTo(hasta) >= 0) return false;
+            if (!recorrer(n.hijos.get(i), desde, hasta, visitante)) return false;
+        }
+        return true;
+    }
+
+    /** @return Número de claves */
+    public long size() {
+        candado.readLock().lock();
+        try { return total; } finally { candado.readLock().unlock(); }
+    }
+
+    // ---- Escrituras ----
+
+    /** Pone una clave y confirma. */
+    public void poner(String clave, byte[] valor) throws IOException {
+        escribir(new Lote().poner(clave, valor));
+    }
+
+    /** Quita una clave y confirma. */
+    public void quitar(String clave) throws IOException {
+        escribir(new Lote().quitar(clave));
+    }
+
+    /** Aplica el lote y lo confirma con un solo fsync. */
+    public void escribir(Lote lote) throws IOException {
+        candado.writeLock().lock();
+        try {
+            aplicarSinCandado(lote);
+            confirmar();
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Aplica el lote en memoria sin llevarlo al disco: las lecturas ya lo ven, pero no es
+     * durable hasta {@link #confirmar()}. Permite agrupar lotes de varios hilos en una sola
+     * confirmación.
+     */
+    public void aplicar(Lote lote) throws IOException {
+        candado.writeLock().lock();
+        try {
+            aplicarSinCandado(lote);
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    private void aplicarSinCandado(Lote lote) throws IOException {
+        for (int i = 0; i < lote.claves.size(); i++) {
+            byte[] v = lote.valores.get(i);
+            if (v == null) quitarEnMemoria(lote.claves.get(i));
+            else ponerEnMemoria(lote.claves.get(i), v);
+        }
+    }
+
+    private void ponerEnMemoria(String clave, byte[] valor) throws IOException {
+        Nodo r = mutable(raiz);
+        raiz = r;
+        Division d = insertar(r, clave, valor);
+        if (d != null) {
+            Nodo nueva = new Nodo(false, 1);
+            nueva.claves.add(d.separador);
+            nueva.hijos.add(r);
+            nueva.hijos.add(d.derecho);
+            nueva.recalcular();
+            raiz = nueva;
+        }
+    }
+
+    private Division insertar(Nodo n, String clave, byte[] valor) throws IOException {
+        if (n.hoja) {
+            int i = Collections.binarySearch(n.claves, clave);
+            if (i >= 0) {
+                liberarExterno(n, i);
+                n.bytes -= n.bytesEntrada(i);
+                n.valores.set(i, valor);
+                n.externos.set(i, -1L);
+            } else {
+                i = -i - 1;
+                n.claves.add(i, clave);
+                n.valores.add(i, valor);
+                n.externos.add(i, -1L);
+                total++;
+            }
+            n.bytes += n.bytesEntrada(i);
+        } else {
+            int i = indiceHijo(n, clave);
+            Nodo h = mutable(n.hijos.get(i));
+            n.hijos.set(i, h);
+            Division d = insertar(h, clave, valor);
+            if (d != null) {
+                n.claves.add(i, d.separador);
+                n.hijos.add(i + 1, d.derecho);
+                n.bytes += n.bytesEntrada(i);
+            }
+        }
+        return n.bytes > TAM_PAGINA ? dividir(n) : null;
+    }
+
+    /**
+     * Parte el nodo por la mitad de sus bytes. Con claves de hasta {@value #MAX_CLAVE}
+     * bytes y valores en línea de hasta {@value #MAX_EN_LINEA}, ambas mitades caben en una
+     * página.
+     */
+    private static Division dividir(Nodo n) {
+        int mitad = n.bytes / 2, acumulado = 0, m = 0;
+        while (m < n.claves.size() - 1 && acumulado + n.bytesEntrada(m) <= mitad) acumulado += n.bytesEntrada(m++);
+        if (m == 0) m = 1;
+        int cuantas = n.claves.size();
+        if (n.hoja) {
+            Nodo d = new Nodo(true, cuantas - m);
+            d.claves.addAll(n.claves.subList(m, cuantas));
+            d.valores.addAll(n.valores.subList(m, cuantas));
+            d.externos.addAll(n.externos.subList(m, cuantas));
+            n.claves.subList(m, cuantas).clear();
+            n.valores.subList(m, cuantas).clear();
+            n.externos.subList(m, cuantas).clear();
+            n.recalcular();
+            d.recalcular();
+            return new Division(d.claves.get(0), d);
+        }
+        // En un nodo interno la clave del medio sube al padre
+        String separador = n.claves.get(m);
+        Nodo d = new Nodo(false, cuantas - m - 1);
+        d.claves.addAll(n.claves.subList(m + 1, cuantas));
+        d.hijos.addAll(n.hijos.subList(m + 1, cuantas + 1));
+        n.claves.subList(m, cuantas).clear();
+        n.hijos.subList(m + 1, cuantas + 1).clear();
+        n.recalcular();
+        d.recalcular();
+        return new Division(separador, d);
+    }
+
+    private void quitarEnMemoria(String clave) throws IOException {
+        // Sin la clave no se copia ningún nodo
+        Nodo n = leer(raiz);
+        while (!n.hoja) n = leer(n.hijos.get(indiceHijo(n, clave)));
+        if (Collections.binarySearch(n.claves, clave) < 0) return;
+
+        n = mutable(raiz);
+        raiz = n;
+        while (!n.hoja) {
+            int i = indiceHijo(n, clave);
+            Nodo h = mutable(n.hijos.get(i));
+            n.hijos.set(i, h);
+            n = h;
+        }
+        int i = Collections.binarySearch(n.claves, clave);
+        liberarExterno(n, i);
+        n.bytes -= n.bytesEntrada(i);
+        n.claves.remove(i);
+        n.valores.remove(i);
+        n.externos.remove(i);
+        total--;
+    }
+
+    private void liberarExterno(Nodo hoja, int i) {
+        long primera = hoja.externos.get(i);
+        if (primera < 0) return;
+        int paginas = paginasPara(hoja.valores.get(i).length);
+        liberadas.set((int) primera, (int) primera + paginas);
+        paginasMuertas += paginas;
+    }
+
+    /** Hijo de un nodo interno que cubre la clave: el i-ésimo cubre [claves[i-1], claves[i]). */
+    private static int indiceHijo(Nodo n, String clave) {
+        int i = Collections.binarySearch(n.claves, clave);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /** @return El nodo listo para modificarse: el mismo si no está confirmado, si no una copia */
+    private Nodo mutable(Object ref) throws IOException {
+        Nodo n = leer(ref);
+        if (n.pagina < 0) return n;
+        liberadas.set((int) n.pagina);
+        paginasMuertas++;
+        return n.copia();
+    }
+
+    private Nodo leer(Object ref) throws IOException {
+        if (ref instanceof Nodo) return (Nodo) ref;
+        long pagina = (Long) ref;
+        if (pagina == VACIO) return new Nodo(true, 0);
+        synchronized (cache) {
+            Nodo n = cache.get(pagina);
+            if (n != null) return n;
+        }
+        Nodo n = decodificar(pagina);
+        synchronized (cache) { cache.put(pagina, n); }
+        return n;
+    }
+
+    // ---- Confirmación ----
+
+    /**
+     * Lleva al disco todo lo aplicado: escribe los nodos nuevos, hace fsync y después
+     * escribe la cabecera alterna con la raíz nueva (y otro fsync).
+     */
+    public void confirmar() throws IOException {
+        candado.writeLock().lock();
+        try {
+            if (!(raiz instanceof Nodo)) return;
+            TreeMap<Long, ByteBuffer> paginas = new TreeMap<>();
+            raiz = escribirNodo((Nodo) raiz, paginas);
+            escribirPaginas(paginas);
+            canal.force(false);
+            escribirCabecera();
+            // Lo liberado por esta confirmación ya no lo usa la versión durable
+            libres.or(liberadas);
+            liberadas.clear();
+            confirmaciones++;
+            paginasEscritas += paginas.size();
+            long perdidas = paginasMuertas - libres.cardinality();
+            long vivas = finPaginas - 2 - paginasMuertas;
+            if (finPaginas >= MIN_PAGINAS_COMPACTAR && perdidas > vivas) compactarSinCandado();
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Página para un nodo nuevo: la primera libre de versiones anteriores o una al final.
+     */
+    private long asignarPagina() {
+        int libre = libres.nextSetBit(0);
+        if (libre < 0) return finPaginas++;
+        libres.clear(libre);
+        paginasMuertas--;
+        return libre;
+    }
+
+    /** Escribe las páginas en orden, con una escritura por cada tramo de páginas consecutivas. */
+    private void escribirPaginas(TreeMap<Long, ByteBuffer> paginas) throws IOException {
+        List<ByteBuffer> tramo = new ArrayList<>();
+        long inicio = -1, anterior = -2;
+        for (Map.Entry<Long, ByteBuffer> e : paginas.entrySet()) {
+            if (e.getKey() != anterior + 1 && !tramo.isEmpty()) { escribirTramo(inicio, tramo); tramo.clear(); }
+            if (tramo.isEmpty()) inicio = e.getKey();
+            tramo.add(e.getValue());
+            anterior = e.getKey();
+        }
+        if (!tramo.isEmpty()) escribirTramo(inicio, tramo);
+    }
+
+    private void escribirTramo(long pagina, List<ByteBuffer> tramo) throws IOException {
+        ByteBuffer[] b = tramo.toArray(new ByteBuffer[0]);
+        long restante = (long) b.length * TAM_PAGINA;
+        canal.position(pagina * TAM_PAGINA);
+        while (restante > 0) restante -= canal.write(b);
+    }
+
+    /** Serializa el nodo y sus descendientes sin confirmar (en postorden). @return Su página */
+    private Long escribirNodo(Nodo n, Map<Long, ByteBuffer> paginas) {
+        if (n.hoja) {
+            for (int i = 0; i < n.claves.size(); i++) {
+                byte[] v = n.valores.get(i);
+                if (v.length <= MAX_EN_LINEA || n.externos.get(i) >= 0) continue;
+                // Los valores externos ocupan páginas contiguas al final del archivo
+                long primera = finPaginas;
+                int cuantas = paginasPara(v.length);
+                finPaginas += cuantas;
+                for (int j = 0; j < cuantas; j++) {
+                    ByteBuffer pg = ByteBuffer.allocate(TAM_PAGINA);
+                    pg.put(v, j * TAM_PAGINA, Math.min(TAM_PAGINA, v.length - j * TAM_PAGINA)).clear();
+                    paginas.put(primera + j, pg);
+                }
+                n.externos.set(i, primera);
+            }
+        } else {
+            for (int i = 0; i < n.hijos.size(); i++) {
+                Object h = n.hijos.get(i);
+                if (h instanceof Nodo) n.hijos.set(i, escribirNodo((Nodo) h, paginas));
+            }
+        }
+        ByteBuffer b = ByteBuffer.allocate(TAM_PAGINA);
+        b.put(n.hoja ? HOJA : INTERNO);
+        b.putShort((short) n.claves.size());
+        for (int i = 0; i < n.claves.size(); i++) {
+            byte[] k = n.claves.get(i).getBytes(StandardCharsets.UTF_8);
+            b.putShort((short) k.length).put(k);
+            if (n.hoja) {
+                byte[] v = n.valores.get(i);
+                b.putInt(v.length);
+                if (v.length > MAX_EN_LINEA) b.putLong(n.externos.get(i));
+                else b.put(v);
+            } else {
+                b.putLong((Long) n.hijos.get(i));
+            }
+        }
+        if (!n.hoja) b.putLong((Long) n.hijos.get(n.claves.size()));
+        b.clear();
+
+        n.pagina = asignarPagina();
+        paginas.put(n.pagina, b);
+        synchronized (cache) { cache.put(n.pagina, n); }
+        return n.pagina;
+    }
+
+    private Nodo decodificar(long pagina) throws IOException {
+        ByteBuffer b = leerPagina(pagina);
+        if (b == null) throw new IOException("Página " + pagina + " fuera de " + archivo);
+        byte tipo = b.get();
+        if (tipo != HOJA && tipo != INTERNO) throw new IOException("Página " + pagina + " dañada en " + archivo);
+        int n = b.getShort() & 0xFFFF;
+        Nodo nodo = new Nodo(tipo == HOJA, n);
+        for (int i = 0; i < n; i++) {
+            byte[] k = new byte[b.getShort() & 0xFFFF];
+            b.get(k);
+            nodo.claves.add(new String(k, StandardCharsets.UTF_8));
+            if (nodo.hoja) {
+                byte[] v = new byte[b.getInt()];
+                if (v.length > MAX_EN_LINEA) {
+                    long externo = b.getLong();
+                    leerExterno(externo, v);
+                    nodo.externos.add(externo);
+                } else {
+                    b.get(v);
+                    nodo.externos.add(-1L);
+                }
+                nodo.valores.add(v);
+            } else {
+                nodo.hijos.add(b.getLong());
+            }
+        }
+        if (!nodo.hoja) nodo.hijos.add(b.getLong());
+        nodo.bytes = b.position();
+        nodo.pagina = pagina;
+        return nodo;
+    }
+
+    private void leerExterno(long pagina, byte[] destino) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(destino);
+        long pos = pagina * TAM_PAGINA;
+        while (b.hasRemaining()) {
+            if (canal.read(b, pos + b.position()) < 0) throw new IOException("Valor truncado en " + archivo);
+        }
+    }
+
+    private void escribirCabecera() throws IOException {
+        secuencia++;
+        ByteBuffer b = ByteBuffer.allocate(BYTES_CABECERA);
+        b.putInt(MAGIC).putInt(VERSION).putLong(secuencia).putLong((Long) raiz)
+            .putLong(total).putLong(finPaginas).putLong(paginasMuertas);
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, BYTES_CABECERA - 4);
+        b.putInt((int) crc.getValue()).flip();
+        long pos = (secuencia % 2) * TAM_PAGINA;
+        while (b.hasRemaining()) pos += canal.write(b, pos);
+        canal.force(false);
+    }
+
+    // ---- Compactación ----
+
+    /**
+     * Reescribe el árbol en un archivo nuevo solo con las páginas vivas y lo reemplaza de
+     * forma atómica.
+     */
+    public void compactar() throws IOException {
+        candado.writeLock().lock();
+        try {
+            confirmar();
+            compactarSinCandado();
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    private void compactarSinCandado() throws IOException {
+        Path tmp = archivo.resolveSibling(archivo.getFileName().toString() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try (ArbolBMas nuevo = abrir(tmp)) {
+            Lote[] lote = { new Lote() };
+            IOException[] error = new IOException[1];
+            recorrer(raiz, null, null, (k, v) -> {
+                lote[0].poner(k, v);
+                if (lote[0].size() < 10_000) return true;
+                try { nuevo.escribir(lote[0]); } catch (IOException ex) { error[0] = ex; return false; }
+                lote[0] = new Lote();
+                return true;
+            });
+            if (error[0] != null) throw error[0];
+            nuevo.escribir(lote[0]);
+        }
+        canal.close();
+        ReemplazoDurable.reemplazar(tmp, archivo);
+        long anteriorConfirmaciones = confirmaciones, anteriorEscritas = paginasEscritas;
+        abrirCanal();
+        confirmaciones = anteriorConfirmaciones;
+        paginasEscritas = anteriorEscritas;
+        compactaciones++;
+    }
+
+    /** @return Claves, páginas del archivo (vivas y muertas) y confirmaciones hechas */
+    public String getEstadisticas() {
+        candado.readLock().lock();
+        try {
+            return String.format("%s: %d claves, %d páginas (%d muertas), %d confirmaciones, %d páginas escritas, %d compactaciones",
+                archivo.getFileName(), total, finPaginas, paginasMuertas, confirmaciones, paginasEscritas, compactaciones);
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    /** Confirma lo pendiente y cierra el archivo. */
+    @Override
+    public void close() throws IOException {
+        candado.writeLock().lock();
+        try {
+            if (!canal.isOpen()) return;
+            confirmar();
+            canal.close();
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    // ---- Utilidades ----
+
+    private static void validarClave(String clave) {
+        Objects.requireNonNull(clave, "clave");
+        if (longitudUtf8(clave) > MAX_CLAVE) throw new IllegalArgumentException("Clave de más de " + MAX_CLAVE + " bytes");
+    }
+
+    private static int paginasPara(int bytes) {
+        return (bytes + TAM_PAGINA - 1) / TAM_PAGINA;
+    }
+
+    /** Bytes UTF-8 de una cadena sin codificarla */
+    private static int longitudUtf8(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n++;
+            else if (c < 0x800) n += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) { n += 4; i++; }
+            else n += 3;
+        }
+        return n;
+    }
+}
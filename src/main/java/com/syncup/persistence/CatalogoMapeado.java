@@ -0,0 +1,456 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Cancion;
+import com.syncup.structures.CacheLRU;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Catálogo de canciones en un archivo mapeado en memoria, decodificado bajo demanda.
+ * <p>
+ * Abrir el catálogo solo mapea el archivo y valida la cabecera, así que el arranque no
+ * depende del número de canciones. Formato (big-endian):
+ * <pre>
+ *   cabecera   int MAGIC ("CMP1"), int versión, int registros, int ancho de registro,
+ *              int capacidad del índice, int reservado, long inicio de las cadenas
+ *   índice     capacidad x int: número de registro + 1 (0 = libre), direccionamiento
+ *              abierto por el hash del ID
+ *   registros  registros x ANCHO bytes, de ancho fijo
+ *   cadenas    bytes UTF-8 sin repetidos
+ * </pre>
+ * Cada registro guarda sus textos como pares (desplazamiento, longitud) en la región de
+ * cadenas y el resto de campos en posiciones fijas, de modo que el registro i está en
+ * una dirección calculable y {@link #obtener(String)} cuesta una sonda en el índice y una
+ * decodificación. Las canciones decodificadas pasan por una {@link CacheLRU} pequeña; la
+ * memoria usada crece con el conjunto de trabajo, no con el catálogo.
+ * <p>
+ * El archivo es de solo lectura: las canciones devueltas son copias desacopladas y sus
+ * cambios no vuelven al archivo (para eso se escribe una generación nueva con
+ * {@link #escribirGeneracion}). No lleva suma de control, que obligaría a leerlo entero al
+ * abrir; la copia con verificación es {@link InstantaneaBinaria}. Aun así cada
+ * desplazamiento se comprueba contra el tamaño del mapeo antes de seguirlo, y un archivo
+ * truncado o dañado se informa como error de formato ({@link UncheckedIOException} en las
+ * lecturas bajo demanda).
+ */
+public final class CatalogoMapeado implements Closeable {
+
+    /** Identificador del formato ("CMP1") */
+    private static final int MAGIC = 0x434D5031;
+    private static final int VERSION = 1;
+
+    private static final int CABECERA = 32;
+    /** Ancho de cada registro en bytes */
+    private static final int ANCHO = 128;
+
+    // Posiciones dentro del registro: 10 textos (desplazamiento y longitud) y campos fijos
+    private static final int T_ID = 0, T_TITULO = 1, T_ARTISTA = 2, T_ALBUM = 3, T_GENERO = 4,
+        T_RUTA = 5, T_IMAGEN = 6, T_COVER = 7, T_DESCRIPCION = 8, T_COLABORADORES = 9;
+    private static final int P_ANIO = 80, P_DURACION = 84, P_DIA = 88, P_NUM_CALIFICACIONES = 92,
+        P_REPRODUCCIONES = 96, P_FAVORITOS = 104, P_CALIFICACION = 112, P_FLAGS = 120;
+
+    private static final int SIN_FECHA = Integer.MIN_VALUE;
+    /** Separador de los artistas colaboradores dentro de su texto */
+    private static final char SEPARADOR = '\u001F';
+
+    private static final int CACHE_MAX_ENTRADAS = 4096;
+    private static final long CACHE_TTL = 10 * 60 * 1000L;
+
+    private final MappedByteBuffer buf;
+    private final int registros;
+    private final int capacidad;
+    private final int inicioRegistros;
+    private final int inicioCadenas;
+    private final CacheLRU<String, Cancion> cache = new CacheLRU<>(CACHE_MAX_ENTRADAS, CACHE_TTL);
+
+    private CatalogoMapeado(MappedByteBuffer buf, Path archivo) throws IOException {
+        this.buf = buf;
+        if (buf.limit() < CABECERA || buf.getInt(0) != MAGIC) throw new IOException("No es un catálogo mapeado: " + archivo.getFileName());
+        if (buf.getInt(4) != VERSION) throw new IOException("Versión de catálogo no soportada: " + buf.getInt(4));
+        if (buf.getInt(12) != ANCHO) throw new IOException("Ancho de registro inesperado en " + archivo.getFileName());
+        this.registros = buf.getInt(8);
+        this.capacidad = buf.getInt(16);
+        long registrosDesde = CABECERA + 4L * capacidad;
+        long cadenas = buf.getLong(24);
+        if (registros < 0 || capacidad <= 0 || Integer.bitCount(capacidad) != 1 || registros >= capacidad
+            || cadenas != registrosDesde + (long) registros * ANCHO || cadenas > buf.limit()) {
+            throw new IOException("Cabecera inconsistente en " + archivo.getFileName());
+        }
+        this.inicioRegistros = (int) registrosDesde;
+        this.inicioCadenas = (int) cadenas;
+    }
+
+    /**
+     * Mapea un catálogo escrito con {@link #escribir}, o la generación vigente si se guardó
+     * con {@link #escribirGeneracion}.
+     *
+     * @param archivo Archivo del catálogo
+     * @return El catálogo, o null si el archivo no existe
+     * @throws IOException Si no se puede mapear o la cabecera no es válida
+     */
+    public static CatalogoMapeado abrir(Path archivo) throws IOException {
+        archivo = vigente(archivo);
+        if (!Files.exists(archivo)) return null;
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) throw new IOException("Catálogo demasiado grande para un solo mapeo: " + archivo);
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return new CatalogoMapeado(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()), archivo);
+        }
+    }
+
+    /**
+     * @return Número de canciones del archivo
+     */
+    public int size() {
+        return registros;
+    }
+
+    /**
+     * Busca una canción por ID, decodificándola si no está en la cache.
+     *
+     * @param id ID de la canción
+     * @return La canción, o null si no está en el archivo
+     */
+    public Cancion obtener(String id) {
+        if (id == null) return null;
+        return cache.obtener(id, () -> {
+            int r = buscar(id);
+            return r < 0 ? null : decodificar(r);
+        });
+    }
+
+    /**
+     * @param id ID de la canción
+     * @return true si el archivo contiene la canción (sin decodificarla)
+     */
+    public boolean contiene(String id) {
+        return id != null && buscar(id) >= 0;
+    }
+
+    /**
+     * @param registro Número de registro, de 0 a {@link #size()} - 1
+     * @return ID de la canción del registro (sin decodificar el resto)
+     */
+    public String getId(int registro) {
+        return texto(base(registro), T_ID);
+    }
+
+    /**
+     * Decodifica un registro sin pasar por la cache (recorridos completos, que si no
+     * desalojarían el conjunto de trabajo).
+     *
+     * @param registro Número de registro, de 0 a {@link #size()} - 1
+     * @return Copia nueva de la canción
+     */
+    public Cancion decodificar(int registro) {
+        int b = base(registro);
+        Cancion c = new Cancion(texto(b, T_ID), texto(b, T_TITULO), texto(b, T_ARTISTA), texto(b, T_ALBUM),
+            texto(b, T_GENERO), buf.getInt(b + P_ANIO), buf.getInt(b + P_DURACION));
+        c.setRutaArchivo(texto(b, T_RUTA));
+        c.setUrlImagenAlbum(texto(b, T_IMAGEN));
+        c.setCoverUrl(texto(b, T_COVER));
+        c.setDescripcion(texto(b, T_DESCRIPCION));
+        int dia = buf.getInt(b + P_DIA);
+        c.setFechaAgregado(dia == SIN_FECHA ? null : LocalDate.ofEpochDay(dia));
+        c.setReproducciones(buf.getLong(b + P_REPRODUCCIONES));
+        c.setNumeroFavoritos(buf.getLong(b + P_FAVORITOS));
+        c.setCalificaciones(buf.getDouble(b + P_CALIFICACION), buf.getInt(b + P_NUM_CALIFICACIONES));
+        int flags = buf.getInt(b + P_FLAGS);
+        c.setDisponible((flags & 1) != 0);
+        c.setContenidoExplicito((flags & 2) != 0);
+        String colaboradores = texto(b, T_COLABORADORES);
+        if (colaboradores != null && !colaboradores.isEmpty()) {
+            c.setArtistasColaboradores(Arrays.asList(colaboradores.split(String.valueOf(SEPARADOR))));
+        }
+        return c;
+    }
+
+    /**
+     * Elige los registros de mayor popularidad recorriendo solo sus contadores, sin
+     * decodificar textos ni crear canciones: la memoria usada depende de {@code n}, no del
+     * tamaño del archivo. La popularidad es la de {@link Cancion#calcularPuntajePopularidad()}.
+     *
+     * @param n Número máximo de registros
+     * @return Números de registro, de mayor a menor popularidad
+     */
+    public int[] masPopulares(int n) {
+        n = Math.max(0, Math.min(n, registros));
+        // Montículo de mínimos acotado: en la raíz, el menos popular de los elegidos
+        double[] puntaje = new double[n];
+        int[] registro = new int[n];
+        int tam = 0;
+        for (int r = 0; r < registros; r++) {
+            int b = inicioRegistros + r * ANCHO;
+            double p = buf.getLong(b + P_REPRODUCCIONES) + Math.max(0, buf.getLong(b + P_FAVORITOS)) * 2.0
+                + buf.getDouble(b + P_CALIFICACION) * 100.0;
+            if (tam < n) {
+                int i = tam++;
+                while (i > 0 && puntaje[(i - 1) / 2] > p) {
+                    puntaje[i] = puntaje[(i - 1) / 2];
+                    registro[i] = registro[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                puntaje[i] = p;
+                registro[i] = r;
+            } else if (n > 0 && p > puntaje[0]) {
+                hundir(puntaje, registro, tam, p, r);
+            }
+        }
+        // Vaciar el montículo deja los registros de menor a mayor popularidad
+        int[] res = new int[tam];
+        for (int k = tam - 1; k >= 0; k--) {
+            res[k] = registro[0];
+            hundir(puntaje, registro, k, puntaje[k], registro[k]);
+        }
+        return res;
+    }
+
+    /** Coloca (p, r) en la raíz de un montículo de mínimos de tamaño tam y lo hunde. */
+    private static void hundir(double[] puntaje, int[] registro, int tam, double p, int r) {
+        int i = 0;
+        while (true) {
+            int h = 2 * i + 1;
+            if (h >= tam) break;
+            if (h + 1 < tam && puntaje[h + 1] < puntaje[h]) h++;
+            if (puntaje[h] >= p) break;
+            puntaje[i] = puntaje[h];
+            registro[i] = registro[h];
+            i = h;
+        }
+        if (tam > 0) {
+            puntaje[i] = p;
+            registro[i] = r;
+        }
+    }
+
+    /**
+     * @return Aciertos y fallos de la cache de canciones decodificadas
+     */
+    public String getEstadisticas() {
+        return "Catálogo mapeado: " + registros + " canciones; " + cache.getEstadisticas();
+    }
+
+    @Override
+    public void close() {
+        cache.cerrar();
+    }
+
+    // ---- Lectura ----
+
+    private int base(int registro) {
+        if (registro < 0 || registro >= registros) throw new IndexOutOfBoundsException("Registro " + registro + " de " + registros);
+        return inicioRegistros + registro * ANCHO;
+    }
+
+    private int buscar(String id) {
+        byte[] clave = id.getBytes(StandardCharsets.UTF_8);
+        int mascara = capacidad - 1;
+        // Con un índice válido siempre hay un hueco; el límite de sondas evita un ciclo sin fin si no
+        for (int i = mezclar(id.hashCode()) & mascara, sondas = 0; sondas < capacidad; i = (i + 1) & mascara, sondas++) {
+            int r = buf.getInt(CABECERA + 4 * i) - 1;
+            if (r < 0) return -1;
+            if (r >= registros) throw danado("entrada " + i + " del índice apunta al registro " + r);
+            if (igual(base(r), clave)) return r;
+        }
+        throw danado("índice sin huecos");
+    }
+
+    private boolean igual(int b, byte[] clave) {
+        int off = buf.getInt(b + 8 * T_ID), len = buf.getInt(b + 8 * T_ID + 4);
+        if (len != clave.length) return false;
+        int p = cadena(off, len);
+        for (int i = 0; i < len; i++) {
+            if (buf.get(p + i) != clave[i]) return false;
+        }
+        return true;
+    }
+
+    private String texto(int b, int campo) {
+        int off = buf.getInt(b + 8 * campo);
+        if (off == -1) return null;
+        int len = buf.getInt(b + 8 * campo + 4);
+        int p = cadena(off, len);
+        byte[] bytes = new byte[len];
+        // Copia sobre un duplicado: la posición del búfer compartido no se toca
+        ByteBuffer d = buf.duplicate();
+        d.position(p);
+        d.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** @return Posición absoluta de un texto, comprobado contra el tamaño del mapeo */
+    private int cadena(int off, int len) {
+        if (off < 0 || len < 0 || (long) inicioCadenas + off + len > buf.limit()) {
+            throw danado("texto fuera del archivo (desplazamiento " + off + ", longitud " + len + ")");
+        }
+        return inicioCadenas + off;
+    }
+
+    private static UncheckedIOException danado(String detalle) {
+        return new UncheckedIOException(new IOException("Catálogo mapeado dañado: " + detalle));
+    }
+
+    private static int mezclar(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    // ---- Escritura ----
+
+    /**
+     * Escribe un catálogo mapeable mediante escritura atómica (archivo temporal y reemplazo).
+     *
+     * @param archivo Archivo destino
+     * @param canciones Canciones a guardar (IDs únicos)
+     * @throws IOException Si falla la escritura o el archivo superaría 2 GB
+     */
+    public static void escribir(Path archivo, Collection<Cancion> canciones) throws IOException {
+        if (archivo.getParent() != null) Files.createDirectories(archivo.getParent());
+        int n = canciones.size();
+        int capacidad = Integer.highestOneBit(Math.max(2, n * 2 - 1)) << 1;
+
+        // Primera pasada: región de cadenas sin repetidos (texto -> desplazamiento y
+        // longitud empaquetados) e índice por ID
+        Map<String, Long> referencias = new HashMap<>();
+        List<byte[]> cadenas = new ArrayList<>();
+        long tamanoCadenas = 0;
+        int[] indice = new int[capacidad];
+        int mascara = capacidad - 1;
+        int r = 0;
+        for (Cancion c : canciones) {
+            for (String t : textos(c)) {
+                if (t == null || referencias.containsKey(t)) continue;
+                byte[] bytes = t.getBytes(StandardCharsets.UTF_8);
+                referencias.put(t, (tamanoCadenas << 32) | bytes.length);
+                cadenas.add(bytes);
+                tamanoCadenas += bytes.length;
+            }
+            int i = mezclar(c.getId().hashCode()) & mascara;
+            while (indice[i] != 0) i = (i + 1) & mascara;
+            indice[i] = ++r;
+        }
+        long inicioCadenas = CABECERA + 4L * capacidad + (long) n * ANCHO;
+        if (inicioCadenas + tamanoCadenas > Integer.MAX_VALUE) throw new IOException("Catálogo demasiado grande para un solo mapeo");
+
+        Path tmp = archivo.resolveSibling(archivo.getFileName().toString() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(ANCHO);
+            out.writeInt(capacidad);
+            out.writeInt(0);
+            out.writeLong(inicioCadenas);
+            for (int v : indice) out.writeInt(v);
+            // Segunda pasada: registros de ancho fijo
+            for (Cancion c : canciones) {
+                for (String t : textos(c)) {
+                    Long ref = t == null ? null : referencias.get(t);
+                    out.writeInt(ref == null ? -1 : (int) (ref >>> 32));
+                    out.writeInt(ref == null ? 0 : (int) (long) ref);
+                }
+                out.writeInt(c.getAnio());
+                out.writeInt(c.getDuracionSegundos());
+                LocalDate fecha = c.getFechaAgregado();
+                out.writeInt(fecha == null ? SIN_FECHA : (int) fecha.toEpochDay());
+                Cancion.Contadores k = c.getContadores();
+                out.writeInt(k.getNumeroCalificaciones());
+                out.writeLong(k.getReproducciones());
+                out.writeLong(k.getFavoritos());
+                out.writeDouble(k.getCalificacionPromedio());
+                out.writeInt((c.isDisponible() ? 1 : 0) | (c.isContenidoExplicito() ? 2 : 0));
+                out.writeInt(0); // relleno hasta ANCHO
+            }
+            for (byte[] b : cadenas) out.write(b);
+        }
+        ReemplazoDurable.reemplazar(tmp, archivo);
+    }
+
+    /**
+     * Escribe el catálogo en un archivo de generación nueva ("catalogo.map.N") y publica su
+     * nombre en el manifiesto ("catalogo.map.actual"). El archivo que pueda estar mapeado no
+     * se reemplaza: en Windows un archivo mapeado no puede renombrarse encima, y un mapeo
+     * abierto sigue leyendo su generación, que nunca cambia. Las generaciones anteriores se
+     * borran si se puede; la que siga mapeada en Windows se borra en un guardado posterior.
+     *
+     * @param archivo Archivo base del catálogo
+     * @param canciones Canciones a guardar (IDs únicos)
+     * @return Archivo de la generación escrita
+     * @throws IOException Si falla la escritura del archivo o del manifiesto
+     */
+    public static Path escribirGeneracion(Path archivo, Collection<Cancion> canciones) throws IOException {
+        Path actual = vigente(archivo);
+        String base = archivo.getFileName().toString();
+        long generacion = actual.equals(archivo) ? 1 : Long.parseLong(actual.getFileName().toString().substring(base.length() + 1)) + 1;
+        Path nuevo = archivo.resolveSibling(base + "." + generacion);
+        escribir(nuevo, canciones);
+        ReemplazoDurable.escribirTexto(manifiesto(archivo), nuevo.getFileName().toString());
+        borrarGeneracionesAnteriores(archivo, nuevo);
+        return nuevo;
+    }
+
+    /**
+     * @param archivo Archivo base del catálogo
+     * @return Generación que indica el manifiesto, o el propio archivo si no hay manifiesto
+     * @throws IOException Si el manifiesto no se puede leer o no nombra una generación
+     */
+    static Path vigente(Path archivo) throws IOException {
+        Path m = manifiesto(archivo);
+        if (!Files.exists(m)) return archivo;
+        String nombre = Files.readString(m, StandardCharsets.UTF_8).trim();
+        if (!esGeneracion(archivo, nombre)) throw new IOException("Manifiesto de catálogo inválido: " + m.getFileName());
+        return archivo.resolveSibling(nombre);
+    }
+
+    private static Path manifiesto(Path archivo) {
+        return archivo.resolveSibling(archivo.getFileName().toString() + ".actual");
+    }
+
+    private static boolean esGeneracion(Path archivo, String nombre) {
+        return nombre.matches(Pattern.quote(archivo.getFileName().toString()) + "\\.\\d{1,18}");
+    }
+
+    private static void borrarGeneracionesAnteriores(Path archivo, Path vigente) {
+        Path dir = archivo.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> s = Files.newDirectoryStream(dir, archivo.getFileName().toString() + "*")) {
+            for (Path p : s) {
+                String nombre = p.getFileName().toString();
+                if (p.getFileName().equals(vigente.getFileName()) || !(nombre.equals(archivo.getFileName().toString()) || esGeneracion(archivo, nombre))) continue;
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    // Sigue mapeada (Windows): se intenta de nuevo en el próximo guardado
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudieron listar las generaciones del catálogo: " + e.getMessage());
+        }
+    }
+
+    /** Textos de una canción en el orden de los campos del registro. */
+    private static String[] textos(Cancion c) {
+        return new String[]{c.getId(), c.getTitulo(), c.getArtista(), c.getAlbum(), c.getGenero(), c.getRutaArchivo(),
+            c.getUrlImagenAlbum(), c.getCoverUrl(), c.getDescripcion(),
+            String.join(String.valueOf(SEPARADOR), c.getArtistasColaboradores())};
+    }
+}
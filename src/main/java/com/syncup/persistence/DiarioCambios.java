@@ -0,0 +1,355 @@
+package com.syncup.persistence;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Diario de cambios de solo anexado (un objeto JSON por línea) con escritura agrupada.
+ * <p>
+ * Un único hilo escritor atiende una cola de operaciones. Toma de golpe todo lo que haya
+ * en la cola, escribe los registros y hace un solo {@code fsync} para el lote; después
+ * completa los futuros de cada registro. Así, una ráfaga de altas concurrentes cuesta una
+ * sincronización con el disco en lugar de una por alta, y quien anota no bloquea a nadie
+ * mientras espera: solo espera su propio futuro.
+ * <p>
+ * La rotación y el vaciado también pasan por la cola, de modo que quedan ordenados con
+ * los registros: todo lo anotado antes de {@link #rotar()} va al diario apartado
+ * ({@code <archivo>.old}) y todo lo posterior al nuevo. Al arrancar se reproduce primero
+ * el apartado (si quedó de una compactación interrumpida) y después el actual. Una
+ * última línea incompleta (caída a mitad de escritura) se ignora; una línea dañada en
+ * medio del diario se informa y se salta, sin perder los registros que la siguen.
+ * <p>
+ * Cada registro se serializa completo antes de pasar al archivo, así que un registro
+ * que falla al serializarse no deja media línea; solo falla su futuro. Cualquier otro
+ * error inesperado hace fallar los futuros de su lote, y el hilo sigue atendiendo.
+ */
+public class DiarioCambios implements Closeable {
+
+    /** Máximo de operaciones por lote */
+    private static final int MAX_LOTE = 4096;
+
+    private final Path archivo;
+    private final Path anterior;
+    private final BlockingQueue<Operacion> cola = new LinkedBlockingQueue<>();
+    private final Thread escritorHilo;
+
+    // Solo los usa el hilo escritor
+    private FileChannel canal;
+    private Writer escritor;
+    private final StringWriter linea = new StringWriter(256);
+
+    private final AtomicLong entradas = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+    private final AtomicLong registrosEscritos = new AtomicLong();
+    private volatile boolean cerrado;
+    /** Última operación que atiende el hilo escritor; la encola {@link #close()} */
+    private volatile Operacion fin;
+
+    /**
+     * Operación encolada para el hilo escritor: un registro o una operación de control.
+     */
+    private static final class Operacion {
+        final Map<String, Object> registro;
+        final Control control;
+        final CompletableFuture<Object> futuro = new CompletableFuture<>();
+
+        Operacion(Map<String, Object> registro, Control control) {
+            this.registro = registro;
+            this.control = control;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Control {
+        Object ejecutar() throws IOException;
+    }
+
+    /**
+     * Abre (o crea) el diario y arranca su hilo escritor.
+     *
+     * @param archivo Ruta del diario
+     */
+    public DiarioCambios(Path archivo) throws IOException {
+        this.archivo = archivo;
+        this.anterior = archivo.resolveSibling(archivo.getFileName() + ".old");
+        abrir();
+        this.entradas.set(contarLineas(archivo));
+        this.escritorHilo = new Thread(this::atender, "diario-" + archivo.getFileName());
+        escritorHilo.setDaemon(true);
+        escritorHilo.start();
+    }
+
+    private void abrir() throws IOException {
+        canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // Una última línea incompleta se cierra para que el siguiente registro no se pegue a ella
+        if (!terminaEnLinea(archivo)) canal.write(ByteBuffer.wrap(new byte[]{'\n'}));
+        escritor = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(canal), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encola un registro.
+     *
+     * @param registro Registro a anexar
+     * @return Futuro que se completa cuando el registro está en el disco (o falla con la
+     *         excepción de E/S)
+     */
+    public CompletableFuture<Void> anotar(Map<String, Object> registro) {
+        entradas.incrementAndGet();
+        return encolar(new Operacion(registro, null)).thenApply(x -> null);
+    }
+
+    /**
+     * @return Futuro que se completa cuando todo lo anotado antes está en el disco
+     */
+    public CompletableFuture<Void> sincronizar() {
+        return encolar(new Operacion(null, () -> null)).thenApply(x -> null);
+    }
+
+    /**
+     * Aparta el diario actual para compactarlo y empieza uno vacío, después de escribir lo
+     * ya encolado.
+     *
+     * @return Futuro con false si todavía queda un diario apartado sin descartar
+     */
+    public CompletableFuture<Boolean> rotar() {
+        return encolar(new Operacion(null, () -> {
+            if (Files.exists(anterior)) return false;
+            escritor.close();
+            Files.move(archivo, anterior, StandardCopyOption.ATOMIC_MOVE);
+            abrir();
+            entradas.set(0);
+            return true;
+        })).thenApply(Boolean.class::cast);
+    }
+
+    /**
+     * Vacía el diario actual y borra el apartado, una vez escrita una instantánea con todo
+     * su contenido.
+     */
+    public CompletableFuture<Void> reiniciar() {
+        return encolar(new Operacion(null, () -> {
+            canal.truncate(0);
+            canal.force(false);
+            entradas.set(0);
+            Files.deleteIfExists(anterior);
+            return null;
+        })).thenApply(x -> null);
+    }
+
+    /**
+     * Borra el diario apartado por {@link #rotar()}, una vez escrita la instantánea que lo incluye.
+     */
+    public void descartarAnterior() throws IOException {
+        Files.deleteIfExists(anterior);
+    }
+
+    /**
+     * @return Registros anotados en el diario actual (desde la última rotación)
+     */
+    public long getEntradas() {
+        return entradas.get();
+    }
+
+    /**
+     * @return true si queda un diario apartado por {@link #rotar()} sin descartar
+     */
+    public boolean tieneAnterior() {
+        return Files.exists(anterior);
+    }
+
+    /**
+     * @return true si hay registros que no están en ninguna instantánea (diario actual o apartado)
+     */
+    public boolean tieneRegistros() {
+        return entradas.get() > 0 || Files.exists(anterior);
+    }
+
+    /**
+     * @return Registros escritos, sincronizaciones con el disco y media de registros por sincronización
+     */
+    public String getEstadisticas() {
+        long l = lotes.get(), r = registrosEscritos.get();
+        return String.format("Diario %s: %d registros en %d fsync (%.1f por fsync)",
+            archivo.getFileName(), r, l, l == 0 ? 0.0 : (double) r / l);
+    }
+
+    /**
+     * Reproduce el diario apartado (si existe) y después el actual, en orden. Debe usarse
+     * al arrancar, antes de anotar.
+     *
+     * @param consumidor Receptor de cada registro
+     * @return Número de registros reproducidos
+     */
+    public long reproducir(Consumer<Map<String, Object>> consumidor) throws IOException {
+        return reproducir(anterior, consumidor) + reproducir(archivo, consumidor);
+    }
+
+    // ---- Hilo escritor ----
+
+    private synchronized CompletableFuture<Object> encolar(Operacion op) {
+        if (cerrado) {
+            op.futuro.completeExceptionally(new IOException("Diario cerrado: " + archivo));
+        } else {
+            cola.add(op);
+        }
+        return op.futuro;
+    }
+
+    private void atender() {
+        List<Operacion> lote = new ArrayList<>();
+        List<Operacion> escritas = new ArrayList<>();
+        while (true) {
+            try {
+                lote.add(cola.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            cola.drainTo(lote, MAX_LOTE - 1);
+            try {
+                atender(lote, escritas);
+            } catch (RuntimeException e) {
+                System.err.println("Error inesperado en el diario " + archivo.getFileName() + ": " + e);
+                for (Operacion op : lote) op.futuro.completeExceptionally(e);
+            }
+            // Tras fin no se encola nada más: el hilo termina cuando ya lo atendió
+            boolean terminado = lote.get(lote.size() - 1) == fin;
+            escritas.clear();
+            lote.clear();
+            if (terminado) break;
+        }
+    }
+
+    private void atender(List<Operacion> lote, List<Operacion> escritas) {
+        for (Operacion op : lote) {
+            if (op.registro != null) {
+                try {
+                    linea.getBuffer().setLength(0);
+                    new EscritorJson(linea).valor(op.registro);
+                    linea.write('\n');
+                    escritor.write(linea.getBuffer().toString());
+                    escritas.add(op);
+                } catch (IOException | RuntimeException e) {
+                    op.futuro.completeExceptionally(e);
+                }
+            } else {
+                // Las operaciones de control ven en el disco todo lo anterior
+                confirmar(escritas);
+                try {
+                    op.futuro.complete(op.control.ejecutar());
+                } catch (IOException | RuntimeException e) {
+                    op.futuro.completeExceptionally(e);
+                }
+            }
+        }
+        confirmar(escritas);
+    }
+
+    /** Vuelca y sincroniza lo escrito y completa sus futuros (un fsync por llamada). */
+    private void confirmar(List<Operacion> escritas) {
+        if (escritas.isEmpty()) return;
+        try {
+            escritor.flush();
+            canal.force(false);
+            lotes.incrementAndGet();
+            registrosEscritos.addAndGet(escritas.size());
+            for (Operacion op : escritas) op.futuro.complete(null);
+        } catch (IOException e) {
+            for (Operacion op : escritas) op.futuro.completeExceptionally(e);
+        }
+        escritas.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long reproducir(Path ruta, Consumer<Map<String, Object>> consumidor) throws IOException {
+        if (!Files.exists(ruta)) return 0;
+        long n = 0, numeroLinea = 0, lineaDanada = 0;
+        try (BufferedReader in = Files.newBufferedReader(ruta, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = in.readLine()) != null) {
+                numeroLinea++;
+                if (linea.isBlank()) continue;
+                // Si hay algo detrás, la línea dañada anterior no era la última
+                if (lineaDanada > 0) {
+                    System.err.println("Registro dañado en la línea " + lineaDanada + " de " + ruta.getFileName() + ", se omite");
+                    lineaDanada = 0;
+                }
+                Object registro;
+                try {
+                    registro = new LectorJson(new StringReader(linea)).leerValor();
+                } catch (LectorJson.ErrorFormato e) {
+                    lineaDanada = numeroLinea;
+                    continue;
+                }
+                if (registro instanceof Map) {
+                    consumidor.accept((Map<String, Object>) registro);
+                    n++;
+                }
+            }
+        }
+        if (lineaDanada > 0) System.err.println("Registro incompleto al final de " + ruta.getFileName() + ", se ignora");
+        return n;
+    }
+
+    private static boolean terminaEnLinea(Path ruta) throws IOException {
+        try (FileChannel lectura = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            long tamano = lectura.size();
+            if (tamano == 0) return true;
+            ByteBuffer ultimo = ByteBuffer.allocate(1);
+            return lectura.read(ultimo, tamano - 1) == 1 && ultimo.get(0) == '\n';
+        }
+    }
+
+    private static long contarLineas(Path ruta) throws IOException {
+        try (java.util.stream.Stream<String> lineas = Files.lines(ruta, StandardCharsets.UTF_8)) {
+            return lineas.filter(l -> !l.isBlank()).count();
+        }
+    }
+
+    /**
+     * Escribe lo pendiente, detiene el hilo escritor y cierra el archivo.
+     */
+    @Override
+    public void close() throws IOException {
+        Operacion fin = new Operacion(null, () -> {
+            escritor.close();
+            return null;
+        });
+        synchronized (this) {
+            if (cerrado) return;
+            // Bajo el mismo candado que encolar(): fin es siempre la última operación de la cola
+            cerrado = true;
+            this.fin = fin;
+            cola.add(fin);
+        }
+        try {
+            fin.futuro.join();
+            escritorHilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (java.util.concurrent.CompletionException e) {
+            throw new IOException("Error cerrando el diario " + archivo, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Usuario;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Relaciones de los usuarios (favoritas, seguidos y playlists) guardadas como registros
+ * delta en un {@link DiarioCambios}: cada clic anota una línea corta, por ejemplo
+ * {@code {"op":"fav+","u":"user_1","o":"song_7"}}, en lugar de reescribir el usuario.
+ * <p>
+ * Al abrir se reproduce el diario y se queda, por usuario, el último cambio de cada
+ * relación (agregada o quitada, en el orden del último cambio). {@link #aplicar(Usuario)}
+ * lo lleva al usuario cuando entra en memoria. "sig+" se anota una vez, en el que sigue, y
+ * al reproducirse llena también los seguidores del seguido.
+ * <p>
+ * Cuando el diario acumula muchos más registros que relaciones vigentes se compacta: se
+ * aparta y se anota en el nuevo el estado neto, de modo que lo anotado después queda detrás.
+ * Si al abrir queda un diario apartado (compactación interrumpida), su estado se funde en
+ * el actual y se borra.
+ */
+public class DiarioRelaciones implements Closeable {
+    public static final String FAVORITA_AGREGADA = "fav+";
+    public static final String FAVORITA_QUITADA = "fav-";
+    public static final String SEGUIDO_AGREGADO = "sig+";
+    public static final String SEGUIDO_QUITADO = "sig-";
+    public static final String PLAYLIST_AGREGADA = "pl+";
+    public static final String PLAYLIST_QUITADA = "pl-";
+
+    /** Registros mínimos del diario antes de plantear una compactación */
+    static final long UMBRAL_COMPACTACION = 10_000;
+
+    /**
+     * Último cambio de cada relación de un usuario: true si quedó agregada, false si quitada.
+     */
+    private static final class Relaciones {
+        final Map<String, Boolean> favoritas = new LinkedHashMap<>();
+        final Map<String, Boolean> seguidos = new LinkedHashMap<>();
+        final Map<String, Boolean> seguidores = new LinkedHashMap<>();
+        final Map<String, Boolean> playlists = new LinkedHashMap<>();
+    }
+
+    private final DiarioCambios diario;
+    private final Map<String, Relaciones> porUsuario = new HashMap<>();
+    /** Relaciones distintas anotadas (sin contar los seguidores, que se derivan de "sig") */
+    private long vigentes;
+    private long reproducidos;
+    private int compactaciones;
+    /** Registros del diario actual antes de reintentar una compactación que no pudo rotar */
+    private long aplazadaHasta;
+
+    /**
+     * Abre el diario y reproduce sus registros.
+     *
+     * @param archivo Ruta del diario (p. ej. data/relaciones.journal)
+     */
+    public DiarioRelaciones(Path archivo) throws IOException {
+        diario = new DiarioCambios(archivo);
+        reproducidos = diario.reproducir(r -> aplicar(String.valueOf(r.get("op")), (String) r.get("u"), (String) r.get("o")));
+        if (diario.tieneAnterior()) {
+            // El estado neto va detrás de lo ya reproducido, así que el apartado sobra
+            anotarEstadoNeto();
+            try { diario.sincronizar().join(); }
+            catch (CompletionException e) { throw new IOException("Error fundiendo el diario de relaciones apartado", e.getCause()); }
+            diario.descartarAnterior();
+        }
+    }
+
+    public CompletableFuture<Void> agregarFavorita(String usuarioId, String cancionId){ return anotar(FAVORITA_AGREGADA, usuarioId, cancionId); }
+    public CompletableFuture<Void> quitarFavorita(String usuarioId, String cancionId){ return anotar(FAVORITA_QUITADA, usuarioId, cancionId); }
+    public CompletableFuture<Void> seguir(String seguidorId, String seguidoId){ return anotar(SEGUIDO_AGREGADO, seguidorId, seguidoId); }
+    public CompletableFuture<Void> dejarDeSeguir(String seguidorId, String seguidoId){ return anotar(SEGUIDO_QUITADO, seguidorId, seguidoId); }
+    public CompletableFuture<Void> agregarPlaylist(String usuarioId, String nombre){ return anotar(PLAYLIST_AGREGADA, usuarioId, nombre); }
+    public CompletableFuture<Void> quitarPlaylist(String usuarioId, String nombre){ return anotar(PLAYLIST_QUITADA, usuarioId, nombre); }
+
+    /**
+     * Anota un cambio sin esperar al disco; un fallo de escritura solo se informa.
+     *
+     * @return Futuro que se completa cuando el registro está en el disco
+     */
+    private synchronized CompletableFuture<Void> anotar(String op, String usuarioId, String objetoId){
+        aplicar(op, usuarioId, objetoId);
+        CompletableFuture<Void> escrito = diario.anotar(registro(op, usuarioId, objetoId));
+        escrito.exceptionally(e -> { System.err.println("Error anotando " + op + " de " + usuarioId + ": " + e); return null; });
+        if (diario.getEntradas() >= Math.max(umbral(), aplazadaHasta)) compactar();
+        return escrito;
+    }
+
+    private long umbral(){ return Math.max(UMBRAL_COMPACTACION, 2 * vigentes); }
+
+    private static Map<String, Object> registro(String op, String usuarioId, String objetoId){
+        Map<String, Object> r = new LinkedHashMap<>();
+        r.put("op", op);
+        r.put("u", usuarioId);
+        r.put("o", objetoId);
+        return r;
+    }
+
+    private void aplicar(String op, String usuarioId, String objetoId){
+        if (usuarioId == null || objetoId == null) return;
+        switch (op) {
+            case FAVORITA_AGREGADA: vigentes += marcar(relaciones(usuarioId).favoritas, objetoId, true); break;
+            case FAVORITA_QUITADA: vigentes += marcar(relaciones(usuarioId).favoritas, objetoId, false); break;
+            case SEGUIDO_AGREGADO:
+            case SEGUIDO_QUITADO:
+                boolean sigue = SEGUIDO_AGREGADO.equals(op);
+                vigentes += marcar(relaciones(usuarioId).seguidos, objetoId, sigue);
+                marcar(relaciones(objetoId).seguidores, usuarioId, sigue);
+                break;
+            case PLAYLIST_AGREGADA: vigentes += marcar(relaciones(usuarioId).playlists, objetoId, true); break;
+            case PLAYLIST_QUITADA: vigentes += marcar(relaciones(usuarioId).playlists, objetoId, false); break;
+            default: break;
+        }
+    }
+
+    private Relaciones relaciones(String usuarioId){ return porUsuario.computeIfAbsent(usuarioId, k -> new Relaciones()); }
+
+    /**
+     * Deja el último cambio al final, como quedaría al reproducir los registros en orden.
+     * @return 1 si la relación no estaba anotada, 0 si ya lo estaba
+     */
+    private static int marcar(Map<String, Boolean> m, String clave, boolean agregada){ boolean nueva = m.remove(clave) == null; m.put(clave, agregada); return nueva ? 1 : 0; }
+
+    /**
+     * Lleva al usuario las relaciones anotadas: agrega y quita favoritas, seguidos,
+     * seguidores y playlists sobre lo que ya traiga del almacén.
+     *
+     * @return true si el usuario tenía relaciones anotadas
+     */
+    public synchronized boolean aplicar(Usuario u){
+        Relaciones r = porUsuario.get(u.getId());
+        if (r == null) return false;
+        r.favoritas.forEach((c, agregada) -> { if (agregada) u.agregarCancionFavorita(c); else u.removerCancionFavorita(c); });
+        r.seguidos.forEach((s, agregado) -> { if (agregado) u.seguirUsuario(s); else u.dejarDeSeguir(s); });
+        r.seguidores.forEach((s, agregado) -> { if (agregado) u.agregarSeguidor(s); else u.removerSeguidor(s); });
+        if (!r.playlists.isEmpty()) {
+            List<String> playlists = u.getPlaylists();
+            r.playlists.forEach((p, agregada) -> { playlists.remove(p); if (agregada) playlists.add(p); });
+            u.setPlaylists(playlists);
+        }
+        return true;
+    }
+
+    /** @return IDs de los usuarios con alguna relación anotada */
+    public synchronized Set<String> getUsuarios(){ return new HashSet<>(porUsuario.keySet()); }
+
+    /**
+     * Aparta el diario y anota en el nuevo el estado neto. Todo va por la cola del diario con
+     * el candado tomado, así que lo que se anote después queda detrás del estado neto; el
+     * diario apartado se descarta cuando ese estado está en el disco.
+     * <p>
+     * Mientras siga el apartado de la compactación anterior no se puede rotar; en ese caso
+     * se espera otro umbral completo en lugar de volver a anotar el estado neto en cada
+     * cambio.
+     */
+    private void compactar(){
+        if (diario.tieneAnterior()) {
+            aplazar();
+            return;
+        }
+        aplazadaHasta = 0;
+        CompletableFuture<Boolean> rotado = diario.rotar();
+        anotarEstadoNeto();
+        compactaciones++;
+        // Si apareció un apartado no se rotó: el estado neto va detrás y se reproduce igual
+        rotado.thenCombine(diario.sincronizar(), (r, x) -> r).thenAccept(r -> {
+            if (!r) {
+                synchronized (this) { aplazar(); }
+                return;
+            }
+            try { diario.descartarAnterior(); }
+            catch (IOException e) { System.err.println("Error descartando el diario de relaciones apartado: " + e); }
+        }).exceptionally(e -> { System.err.println("Error compactando el diario de relaciones: " + e); return null; });
+    }
+
+    private void aplazar(){ aplazadaHasta = diario.getEntradas() + umbral(); }
+
+    private void anotarEstadoNeto(){
+        porUsuario.forEach((id, r) -> {
+            r.favoritas.forEach((c, agregada) -> diario.anotar(registro(agregada ? FAVORITA_AGREGADA : FAVORITA_QUITADA, id, c)));
+            r.seguidos.forEach((s, agregado) -> diario.anotar(registro(agregado ? SEGUIDO_AGREGADO : SEGUIDO_QUITADO, id, s)));
+            r.playlists.forEach((p, agregada) -> diario.anotar(registro(agregada ? PLAYLIST_AGREGADA : PLAYLIST_QUITADA, id, p)));
+        });
+    }
+
+    /** @return Futuro que se completa cuando todo lo anotado está en el disco */
+    public CompletableFuture<Void> sincronizar(){ return diario.sincronizar(); }
+
+    public synchronized String getEstadisticas(){
+        return String.format("%s%n%d usuarios con relaciones, %d vigentes; %d reproducidos al abrir, %d compactaciones",
+            diario.getEstadisticas(), porUsuario.size(), vigentes, reproducidos, compactaciones);
+    }
+
+    @Override
+    public void close() throws IOException {
+        diario.close();
+    }
+}
@@ -0,0 +1,178 @@
+package com.syncup.persistence;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Escritor JSON en flujo sobre un {@link Writer}.
+ * <p>
+ * Escribe cada token directamente en el destino (conviene que sea un
+ * {@link java.io.BufferedWriter}), sin construir el documento en memoria. Coloca las
+ * comas y los dos puntos según el anidamiento y escapa las cadenas por completo:
+ * comillas, barra invertida, caracteres de control y los separadores U+2028/U+2029.
+ */
+public final class EscritorJson implements Closeable, Flushable {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    /** Por nivel: true si todavía no se escribió ningún elemento */
+    private boolean[] primero = new boolean[16];
+    private int profundidad;
+    /** true justo después de un nombre de campo: el valor no lleva coma */
+    private boolean trasNombre;
+
+    public EscritorJson(Writer out) {
+        this.out = out;
+    }
+
+    public EscritorJson iniciarObjeto() throws IOException {
+        separar();
+        out.write('{');
+        apilar();
+        return this;
+    }
+
+    public EscritorJson finObjeto() throws IOException {
+        profundidad--;
+        out.write('}');
+        return this;
+    }
+
+    public EscritorJson iniciarArreglo() throws IOException {
+        separar();
+        out.write('[');
+        apilar();
+        return this;
+    }
+
+    public EscritorJson finArreglo() throws IOException {
+        profundidad--;
+        out.write(']');
+        return this;
+    }
+
+    /**
+     * Escribe el nombre del siguiente campo del objeto actual.
+     */
+    public EscritorJson nombre(String nombre) throws IOException {
+        separar();
+        cadena(nombre);
+        out.write(':');
+        trasNombre = true;
+        return this;
+    }
+
+    public EscritorJson valor(String valor) throws IOException {
+        separar();
+        if (valor == null) out.write("null");
+        else cadena(valor);
+        return this;
+    }
+
+    public EscritorJson valor(long valor) throws IOException {
+        separar();
+        out.write(Long.toString(valor));
+        return this;
+    }
+
+    public EscritorJson valor(double valor) throws IOException {
+        separar();
+        // NaN e infinito no existen en JSON
+        out.write(Double.isFinite(valor) ? Double.toString(valor) : "null");
+        return this;
+    }
+
+    public EscritorJson valor(boolean valor) throws IOException {
+        separar();
+        out.write(valor ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Escribe un valor arbitrario: {@link Map}, {@link Iterable}, {@link Number},
+     * {@link Boolean}, null o cualquier otro objeto como cadena.
+     */
+    public EscritorJson valor(Object valor) throws IOException {
+        if (valor == null || valor instanceof String) return valor((String) valor);
+        if (valor instanceof Boolean) return valor(((Boolean) valor).booleanValue());
+        if (valor instanceof Long || valor instanceof Integer || valor instanceof Short || valor instanceof Byte) {
+            return valor(((Number) valor).longValue());
+        }
+        if (valor instanceof Number) return valor(((Number) valor).doubleValue());
+        if (valor instanceof Map) {
+            iniciarObjeto();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) valor).entrySet()) {
+                nombre(String.valueOf(e.getKey()));
+                valor(e.getValue());
+            }
+            return finObjeto();
+        }
+        if (valor instanceof Iterable) {
+            iniciarArreglo();
+            for (Object o : (Iterable<?>) valor) valor(o);
+            return finArreglo();
+        }
+        return valor(String.valueOf(valor));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void separar() throws IOException {
+        if (trasNombre) {
+            trasNombre = false;
+            return;
+        }
+        if (profundidad == 0) return;
+        if (primero[profundidad - 1]) primero[profundidad - 1] = false;
+        else out.write(',');
+    }
+
+    private void apilar() {
+        if (profundidad == primero.length) primero = Arrays.copyOf(primero, profundidad * 2);
+        primero[profundidad++] = true;
+    }
+
+    private void cadena(String s) throws IOException {
+        out.write('"');
+        int inicio = 0;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            String reemplazo;
+            if (c == '"') reemplazo = "\\\"";
+            else if (c == '\\') reemplazo = "\\\\";
+            else if (c == '\n') reemplazo = "\\n";
+            else if (c == '\r') reemplazo = "\\r";
+            else if (c == '\t') reemplazo = "\\t";
+            else if (c < 0x20 || c == '\u2028' || c == '\u2029') reemplazo = null;
+            else continue;
+            // Copia en bloque el tramo anterior que no necesitaba escape
+            if (i > inicio) out.write(s, inicio, i - inicio);
+            if (reemplazo != null) {
+                out.write(reemplazo);
+            } else {
+                out.write("\\u");
+                out.write(HEX[(c >> 12) & 0xF]);
+                out.write(HEX[(c >> 8) & 0xF]);
+                out.write(HEX[(c >> 4) & 0xF]);
+                out.write(HEX[c & 0xF]);
+            }
+            inicio = i + 1;
+        }
+        if (n > inicio) out.write(s, inicio, n - inicio);
+        out.write('"');
+    }
+}
@@ -0,0 +1,248 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Usuario;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Fragmento de {@link SnapshotUserStore}: los usuarios cuyo ID cae en él por hash, con su
+ * propio candado (el monitor del fragmento), su índice por ID y sus archivos
+ * (fragmento-NN.bin como instantánea y fragmento-NN.journal como diario).
+ * <p>
+ * Dos operaciones sobre fragmentos distintos no comparten candado ni diario, así que se
+ * ejecutan en paralelo, y cada diario agrupa en un fsync solo los registros de su fragmento.
+ */
+final class FragmentoUsuarios {
+    /** Registros del diario que disparan una compactación del fragmento */
+    static final long UMBRAL_COMPACTACION = 1000;
+
+    private final int numero;
+    private final Path instantanea;
+    private final Path archivoDiario;
+    private final Executor compactador;
+    private final Map<String, Usuario> porId = new LinkedHashMap<>();
+    private DiarioCambios diario;
+    private boolean compactando;
+    /** Registros del diario actual antes de reintentar una compactación que no pudo completarse */
+    private long aplazadaHasta;
+
+    FragmentoUsuarios(int numero, Path dir, Executor compactador){
+        this.numero = numero;
+        String nombre = String.format("fragmento-%02d", numero);
+        this.instantanea = dir.resolve(nombre + ".bin");
+        this.archivoDiario = dir.resolve(nombre + ".journal");
+        this.compactador = compactador;
+    }
+
+    /**
+     * Carga la instantánea del fragmento y reproduce su diario; si el diario tenía registros
+     * escribe una instantánea nueva para no repetirlos en el siguiente arranque.
+     */
+    synchronized void cargar() throws IOException {
+        porId.clear();
+        InstantaneaBinaria.Contenido contenido = InstantaneaBinaria.leer(instantanea);
+        if (contenido != null) for (Usuario u : contenido.getUsuarios()) porId.put(u.getId(), u);
+        diario = new DiarioCambios(archivoDiario);
+        diario.reproducir(r -> aplicar(porId, r));
+        if (diario.tieneRegistros()) {
+            InstantaneaBinaria.escribir(instantanea, porId.values(), null);
+            diario.reiniciar().join();
+        }
+    }
+
+    /**
+     * Puebla el fragmento con usuarios migrados y escribe su primera instantánea.
+     */
+    synchronized void inicializar(Collection<Usuario> usuarios) throws IOException {
+        porId.clear();
+        for (Usuario u : usuarios) porId.put(u.getId(), u);
+        InstantaneaBinaria.escribir(instantanea, porId.values(), null);
+        diario = new DiarioCambios(archivoDiario);
+        diario.reiniciar().join();
+    }
+
+    synchronized Usuario get(String id){ return porId.get(id); }
+    synchronized int size(){ return porId.size(); }
+    synchronized List<Usuario> usuarios(){ return new ArrayList<>(porId.values()); }
+    synchronized List<Usuario> listar(String despuesDe, int limite){ return pagina(porId.values(), despuesDe, limite); }
+    synchronized int contar(Predicate<Usuario> filtro){ return (int) porId.values().stream().filter(filtro).count(); }
+
+    /**
+     * Guarda un usuario (alta o reemplazo) en memoria y encola su registro en el diario. Una
+     * vez en memoria no lanza: los fallos posteriores llegan por el futuro.
+     *
+     * @return Futuro que se completa cuando el registro está en el disco
+     */
+    synchronized CompletableFuture<Void> guardar(Usuario u){
+        Map<String,Object> registro = registro(u);
+        porId.put(u.getId(), u);
+        return anotar(registro);
+    }
+
+    /**
+     * Aplica un cambio a un usuario del fragmento con el candado tomado y lo encola en el diario.
+     *
+     * @return Futuro de la escritura, o null si el usuario no está en el fragmento
+     */
+    synchronized CompletableFuture<Void> modificar(String id, Consumer<Usuario> cambio){
+        Usuario u = porId.get(id);
+        if (u == null) return null;
+        cambio.accept(u);
+        return anotar(registro(u));
+    }
+
+    private static Map<String,Object> registro(Usuario u){
+        Map<String,Object> registro = new LinkedHashMap<>();
+        registro.put("op", "put");
+        registro.put("user", toMap(u));
+        return registro;
+    }
+
+    private CompletableFuture<Void> anotar(Map<String,Object> registro){
+        CompletableFuture<Void> escrito = diario.anotar(registro);
+        if (diario.getEntradas() >= Math.max(UMBRAL_COMPACTACION, aplazadaHasta)) compactar();
+        return escrito;
+    }
+
+    /**
+     * Aparta el diario y escribe en segundo plano una instantánea del fragmento. La copia se
+     * hace con el candado tomado, así que todo registro encolado antes de la rotación ya
+     * está en ella; la escritura no necesita el candado.
+     * <p>
+     * Nunca lanza: si la copia o la escritura fallan, o queda un diario apartado de una
+     * compactación anterior, se aplaza como en {@link DiarioRelaciones} en lugar de copiar el
+     * fragmento en cada registro.
+     */
+    private void compactar(){
+        if (compactando) return;
+        List<Usuario> copia = new ArrayList<>(porId.size());
+        try {
+            for (Usuario u : porId.values()) copia.add(copiar(u));
+        } catch (RuntimeException e) {
+            System.err.println("Error copiando el fragmento " + numero + " de usuarios: " + e);
+            aplazar();
+            return;
+        }
+        compactando = true;
+        aplazadaHasta = 0;
+        DiarioCambios d = diario;
+        d.rotar().thenAcceptAsync(rotado -> {
+            try {
+                // Con un diario apartado de una compactación fallida no se rota, pero la
+                // instantánea lo cubre igual y el diario actual se reproduce encima
+                InstantaneaBinaria.escribir(instantanea, copia, null);
+                d.descartarAnterior();
+                if (!rotado) synchronized (this) { aplazar(); }
+            } catch (IOException e) {
+                // El diario apartado se conserva y se reproduce en el siguiente arranque
+                System.err.println("Error compactando el fragmento " + numero + " de usuarios: " + e);
+                synchronized (this) { aplazar(); }
+            } finally {
+                synchronized (this) { compactando = false; }
+            }
+        }, compactador).exceptionally(e -> {
+            System.err.println("Error rotando el diario del fragmento " + numero + ": " + e);
+            synchronized (this) { aplazar(); compactando = false; }
+            return null;
+        });
+    }
+
+    private void aplazar(){ aplazadaHasta = diario.getEntradas() + UMBRAL_COMPACTACION; }
+
+    /** @return Futuro que se completa cuando todo lo anotado en el diario está en el disco */
+    synchronized CompletableFuture<Void> sincronizar(){
+        return diario == null ? CompletableFuture.completedFuture(null) : diario.sincronizar();
+    }
+
+    synchronized String getEstadisticas(){
+        return diario == null ? "Fragmento " + numero + " sin diario" : diario.getEstadisticas();
+    }
+
+    /** Cierra el diario tras escribir lo que tenga encolado. */
+    synchronized void close() throws IOException {
+        if (diario != null) diario.close();
+    }
+
+    // ---- Registros ----
+
+    /** Aplica un registro del diario: {"op":"put","user":{...}} reemplaza al usuario con ese id. */
+    static void aplicar(Map<String, Usuario> destino, Map<String,Object> registro){
+        Object user = registro.get("user");
+        if (!"put".equals(registro.get("op")) || !(user instanceof Map)) return;
+        @SuppressWarnings("unchecked") Usuario u = desdeMapa((Map<String,Object>) user);
+        if (u != null) destino.put(u.getId(), u);
+    }
+
+    static Map<String,Object> toMap(Usuario u){
+        Map<String,Object> m = new LinkedHashMap<>();
+        m.put("id", u.getId());
+        m.put("username", u.getUsername());
+        m.put("email", u.getEmail());
+        m.put("name", u.getNombreCompleto());
+        m.put("passwordHash", u.getPasswordHash()!=null? u.getPasswordHash(): "");
+        m.put("isAdmin", u.isEsAdmin());
+        m.put("active", u.isActivo());
+        m.put("favorites", u.getCancionesFavoritas());
+        m.put("following", u.getUsuariosSeguidos());
+        return m;
+    }
+
+    /** @return El usuario descrito por el mapa, o null si le falta el id o el username */
+    static Usuario desdeMapa(Map<String,Object> m){
+        String id = String.valueOf(m.getOrDefault("id",""));
+        String username = String.valueOf(m.getOrDefault("username",""));
+        String email = String.valueOf(m.getOrDefault("email",""));
+        String name = String.valueOf(m.getOrDefault("name",""));
+        String hash = String.valueOf(m.getOrDefault("passwordHash",""));
+        Boolean isAdmin = (Boolean) m.getOrDefault("isAdmin", false);
+        Boolean active = (Boolean) m.getOrDefault("active", true); // registros anteriores: activos
+
+        if(id.isBlank()||username.isBlank()) return null;
+        Usuario u = new Usuario(id, username, hash, name, email);
+        u.setPasswordHash(hash);
+        u.setEsAdmin(isAdmin != null && isAdmin); // establecer rol desde persistencia
+        u.setActivo(active == null || active);
+        u.setCancionesFavoritas(lista(m.get("favorites")));
+        u.setUsuariosSeguidos(lista(m.get("following")));
+        return u;
+    }
+
+    private static List<String> lista(Object valor){
+        if(!(valor instanceof List)) return Collections.emptyList();
+        List<String> l = new ArrayList<>();
+        for(Object o : (List<?>) valor) if(o!=null) l.add(String.valueOf(o));
+        return l;
+    }
+
+    /** @return Hasta limite usuarios con ID mayor que despuesDe (null: todos), en orden de ID */
+    static List<Usuario> pagina(Collection<Usuario> usuarios, String despuesDe, int limite){
+        // Montículo acotado con los limite menores IDs vistos: no ordena la colección entera
+        Comparator<Usuario> porIdAsc = Comparator.comparing(Usuario::getId);
+        PriorityQueue<Usuario> menores = new PriorityQueue<>(porIdAsc.reversed());
+        for (Usuario u : usuarios) {
+            if (limite <= 0 || (despuesDe != null && u.getId().compareTo(despuesDe) <= 0)) continue;
+            if (menores.size() < limite) menores.add(u);
+            else if (porIdAsc.compare(u, menores.peek()) < 0) { menores.poll(); menores.add(u); }
+        }
+        List<Usuario> l = new ArrayList<>(menores);
+        l.sort(porIdAsc);
+        return l;
+    }
+
+    /** Copia desacoplada de un usuario para escribirla fuera del candado. */
+    static Usuario copiar(Usuario u){
+        Usuario c = new Usuario(u.getId(), u.getUsername(), u.getPasswordHash(), u.getNombreCompleto(), u.getEmail());
+        c.setPasswordHash(u.getPasswordHash());
+        c.setEsAdmin(u.isEsAdmin());
+        c.setActivo(u.isActivo());
+        c.setCancionesFavoritas(u.getCancionesFavoritas());
+        c.setUsuariosSeguidos(u.getUsuariosSeguidos());
+        return c;
+    }
+}
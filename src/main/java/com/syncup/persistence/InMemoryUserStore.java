@@ -0,0 +1,44 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Usuario;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Motor de usuarios solo en memoria: nada llega al disco y todas las escrituras se
+ * completan al instante. Sirve para pruebas y para medir el repositorio sin E/S.
+ */
+public class InMemoryUserStore implements UserStore {
+    private static final CompletableFuture<Void> COMPLETADO = CompletableFuture.completedFuture(null);
+
+    private final ConcurrentHashMap<String, Usuario> porId = new ConcurrentHashMap<>();
+
+    public InMemoryUserStore(){ this(Collections.emptyList()); }
+
+    /** @param iniciales Usuarios que {@link #cargar} entregará, como si estuvieran persistidos */
+    public InMemoryUserStore(Collection<Usuario> iniciales){
+        for (Usuario u : iniciales) porId.put(u.getId(), u);
+    }
+
+    @Override public void cargar(Consumer<Usuario> destino){ porId.values().forEach(destino); }
+    @Override public Usuario get(String id){ return porId.get(id); }
+    @Override public int size(){ return porId.size(); }
+    @Override public List<Usuario> listar(String despuesDe, int limite){ return FragmentoUsuarios.pagina(porId.values(), despuesDe, limite); }
+    @Override public int contar(Predicate<Usuario> filtro){ return (int) porId.values().stream().filter(filtro).count(); }
+    @Override public CompletableFuture<Void> guardar(Usuario u){ porId.put(u.getId(), u); return COMPLETADO; }
+    @Override public CompletableFuture<Void> sincronizar(){ return COMPLETADO; }
+    @Override public String getEstadisticas(){ return "Usuarios en memoria: " + porId.size() + " (sin escrituras a disco)"; }
+    @Override public void close(){ }
+
+    @Override
+    public CompletableFuture<Void> modificar(String id, Consumer<Usuario> cambio){
+        Usuario u = porId.computeIfPresent(id, (k, v) -> { cambio.accept(v); return v; });
+        return u == null ? null : COMPLETADO;
+    }
+}
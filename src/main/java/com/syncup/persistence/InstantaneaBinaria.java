@@ -0,0 +1,369 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Cancion;
+import com.syncup.models.CatalogoColumnar;
+import com.syncup.models.Usuario;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Instantánea binaria de usuarios y canciones.
+ * <p>
+ * Formato (big-endian, versión 1):
+ * <pre>
+ *   int   MAGIC ("SNP1")
+ *   int   versión
+ *   int   número de cadenas, y por cadena: int longitud en bytes + bytes UTF-8
+ *   int   número de secciones, y por sección:
+ *         int tipo, int número de registros, long longitud en bytes, registros
+ *   long  CRC32 de todo lo anterior
+ * </pre>
+ * Los campos de texto de los registros son índices de 4 bytes en la tabla de cadenas
+ * (-1 = null), así que cada género, artista, álbum o ID repetido se guarda una sola vez.
+ * Al leer se comprueba la suma de control antes de interpretar nada, y una sección de un
+ * tipo desconocido se salta gracias a su longitud. Los archivos grandes se leen mapeados
+ * en memoria con {@link FileChannel#map}; los pequeños, con una sola lectura del canal
+ * (un archivo mapeado no se puede reemplazar en Windows mientras siga vivo el mapeo).
+ */
+public final class InstantaneaBinaria {
+
+    /** Identificador del formato binario ("SNP1") */
+    private static final int MAGIC = 0x534E5031;
+    private static final int VERSION = 1;
+
+    private static final int SECCION_USUARIOS = 1;
+    private static final int SECCION_CANCIONES = 2;
+
+    /** A partir de este tamaño el archivo se mapea en lugar de leerse al montón */
+    private static final long UMBRAL_MAPEO = 16L << 20;
+
+    private static final long SIN_FECHA = Long.MIN_VALUE;
+
+    private InstantaneaBinaria() {
+    }
+
+    /**
+     * Contenido leído de una instantánea. Una sección ausente queda como lista vacía.
+     */
+    public static final class Contenido {
+        private final List<Usuario> usuarios;
+        private final List<Cancion> canciones;
+
+        private Contenido(List<Usuario> usuarios, List<Cancion> canciones) {
+            this.usuarios = usuarios;
+            this.canciones = canciones;
+        }
+
+        public List<Usuario> getUsuarios() { return usuarios; }
+        public List<Cancion> getCanciones() { return canciones; }
+    }
+
+    /**
+     * Escribe una instantánea mediante escritura atómica (archivo temporal y reemplazo).
+     * Al volver, la instantánea ya está en el disco y el diario que cubre se puede vaciar.
+     *
+     * @param archivo Archivo destino
+     * @param usuarios Usuarios a guardar, o null para omitir la sección
+     * @param canciones Canciones a guardar, o null para omitir la sección
+     * @throws IOException Si falla la escritura
+     */
+    public static void escribir(Path archivo, Collection<Usuario> usuarios, Collection<Cancion> canciones) throws IOException {
+        if (archivo.getParent() != null) Files.createDirectories(archivo.getParent());
+
+        TablaCadenas tabla = new TablaCadenas();
+        long bytesUsuarios = 0, bytesCanciones = 0;
+        if (usuarios != null) {
+            for (Usuario u : usuarios) bytesUsuarios += tabla.registrarUsuario(u);
+        }
+        if (canciones != null) {
+            for (Cancion c : canciones) bytesCanciones += tabla.registrarCancion(c);
+        }
+
+        Path tmp = archivo.resolveSibling(archivo.getFileName().toString() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream archivoSalida = Files.newOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(archivoSalida, crc), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            tabla.escribir(out);
+            out.writeInt((usuarios != null ? 1 : 0) + (canciones != null ? 1 : 0));
+            if (usuarios != null) {
+                out.writeInt(SECCION_USUARIOS);
+                out.writeInt(usuarios.size());
+                out.writeLong(bytesUsuarios);
+                for (Usuario u : usuarios) escribirUsuario(out, tabla, u);
+            }
+            if (canciones != null) {
+                out.writeInt(SECCION_CANCIONES);
+                out.writeInt(canciones.size());
+                out.writeLong(bytesCanciones);
+                for (Cancion c : canciones) escribirCancion(out, tabla, c);
+            }
+            out.flush();
+            // La suma de control va fuera del flujo que la calcula
+            DataOutputStream fin = new DataOutputStream(archivoSalida);
+            fin.writeLong(crc.getValue());
+            fin.flush();
+        }
+        ReemplazoDurable.reemplazar(tmp, archivo);
+    }
+
+    /**
+     * Lee una instantánea completa.
+     *
+     * @param archivo Archivo origen
+     * @return Usuarios y canciones, o null si el archivo no existe
+     * @throws IOException Si falla la lectura o el archivo está dañado (suma de control,
+     *         versión o longitudes incorrectas)
+     */
+    public static Contenido leer(Path archivo) throws IOException {
+        return leer(archivo, null);
+    }
+
+    /**
+     * Lee una instantánea creando las canciones directamente en un catálogo compartido.
+     *
+     * @param archivo Archivo origen
+     * @param destino Catálogo donde reservar las filas de las canciones, o null para
+     *                crearlas en almacenes privados
+     * @return Usuarios y canciones, o null si el archivo no existe
+     * @throws IOException Si falla la lectura o el archivo está dañado
+     */
+    public static Contenido leer(Path archivo, CatalogoColumnar destino) throws IOException {
+        if (!Files.exists(archivo)) return null;
+        ByteBuffer buf;
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            if (tamano > Integer.MAX_VALUE) throw new IOException("Instantánea demasiado grande: " + archivo);
+            if (tamano >= UMBRAL_MAPEO) {
+                buf = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+            } else {
+                buf = ByteBuffer.allocate((int) tamano);
+                while (buf.hasRemaining() && canal.read(buf) >= 0) { }
+                buf.flip();
+            }
+        }
+        try {
+            return interpretar(buf, archivo, destino);
+        } catch (RuntimeException e) {
+            // Desbordes de búfer o índices fuera de rango: el archivo no es lo que dice ser
+            throw new IOException("Instantánea dañada " + archivo.getFileName() + ": " + e, e);
+        }
+    }
+
+    private static Contenido interpretar(ByteBuffer buf, Path archivo, CatalogoColumnar destino) throws IOException {
+        int n = buf.limit();
+        if (n < 16) throw new IOException("Instantánea truncada: " + archivo.getFileName());
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate().limit(n - 8));
+        if (crc.getValue() != buf.getLong(n - 8)) {
+            throw new IOException("Suma de control incorrecta en " + archivo.getFileName());
+        }
+        if (buf.getInt() != MAGIC) throw new IOException("No es una instantánea de SyncUp: " + archivo.getFileName());
+        int version = buf.getInt();
+        if (version != VERSION) throw new IOException("Versión de instantánea no soportada: " + version);
+
+        String[] cadenas = leerCadenas(buf);
+        List<Usuario> usuarios = Collections.emptyList();
+        List<Cancion> canciones = Collections.emptyList();
+        int secciones = buf.getInt();
+        for (int s = 0; s < secciones; s++) {
+            int tipo = buf.getInt();
+            int registros = buf.getInt();
+            long longitud = buf.getLong();
+            int fin = Math.toIntExact(buf.position() + longitud);
+            if (tipo == SECCION_USUARIOS) {
+                usuarios = new ArrayList<>(registros);
+                for (int i = 0; i < registros; i++) usuarios.add(leerUsuario(buf, cadenas));
+            } else if (tipo == SECCION_CANCIONES) {
+                canciones = new ArrayList<>(registros);
+                for (int i = 0; i < registros; i++) canciones.add(leerCancion(buf, cadenas, destino));
+            }
+            if (buf.position() != fin && (tipo == SECCION_USUARIOS || tipo == SECCION_CANCIONES)) {
+                throw new IOException("Longitud de sección incorrecta en " + archivo.getFileName());
+            }
+            buf.position(fin);
+        }
+        return new Contenido(usuarios, canciones);
+    }
+
+    private static String[] leerCadenas(ByteBuffer buf) {
+        int n = buf.getInt();
+        String[] cadenas = new String[n];
+        byte[] tmp = new byte[256];
+        for (int i = 0; i < n; i++) {
+            int len = buf.getInt();
+            if (buf.hasArray()) {
+                cadenas[i] = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+                buf.position(buf.position() + len);
+            } else {
+                if (len > tmp.length) tmp = new byte[Math.max(len, tmp.length * 2)];
+                buf.get(tmp, 0, len);
+                cadenas[i] = new String(tmp, 0, len, StandardCharsets.UTF_8);
+            }
+        }
+        return cadenas;
+    }
+
+    // ---- Registros ----
+    // Usuario: id, username, passwordHash, nombre, email (refs), byte flags,
+    //          int n + refs de favoritas, int n + refs de seguidos
+    // Canción: id, título, artista, álbum, género, ruta, url de imagen, carátula, descripción (refs),
+    //          int año, int duración, long día de alta, long reproducciones, long favoritos,
+    //          double calificación media, int número de calificaciones, byte flags,
+    //          int n + refs de colaboradores
+
+    private static final int BYTES_USUARIO = 5 * 4 + 1 + 4 + 4;
+    private static final int BYTES_CANCION = 9 * 4 + 4 + 4 + 8 + 8 + 8 + 8 + 4 + 1 + 4;
+
+    private static void escribirUsuario(DataOutputStream out, TablaCadenas t, Usuario u) throws IOException {
+        out.writeInt(t.ref(u.getId()));
+        out.writeInt(t.ref(u.getUsername()));
+        out.writeInt(t.ref(u.getPasswordHash()));
+        out.writeInt(t.ref(u.getNombreCompleto()));
+        out.writeInt(t.ref(u.getEmail()));
+        out.writeByte((u.isEsAdmin() ? 1 : 0) | (u.isActivo() ? 2 : 0));
+        escribirRefs(out, t, u.getVistaCancionesFavoritas());
+        escribirRefs(out, t, u.getVistaUsuariosSeguidos());
+    }
+
+    private static Usuario leerUsuario(ByteBuffer buf, String[] c) {
+        String id = cadena(buf, c), username = cadena(buf, c), hash = cadena(buf, c);
+        String nombre = cadena(buf, c), email = cadena(buf, c);
+        int flags = buf.get();
+        Usuario u = new Usuario(id, username, hash, nombre, email);
+        u.setPasswordHash(hash);
+        u.setEsAdmin((flags & 1) != 0);
+        u.setActivo((flags & 2) != 0);
+        u.setCancionesFavoritas(leerRefs(buf, c));
+        u.setUsuariosSeguidos(leerRefs(buf, c));
+        return u;
+    }
+
+    private static void escribirCancion(DataOutputStream out, TablaCadenas t, Cancion c) throws IOException {
+        out.writeInt(t.ref(c.getId()));
+        out.writeInt(t.ref(c.getTitulo()));
+        out.writeInt(t.ref(c.getArtista()));
+        out.writeInt(t.ref(c.getAlbum()));
+        out.writeInt(t.ref(c.getGenero()));
+        out.writeInt(t.ref(c.getRutaArchivo()));
+        out.writeInt(t.ref(c.getUrlImagenAlbum()));
+        out.writeInt(t.ref(c.getCoverUrl()));
+        out.writeInt(t.ref(c.getDescripcion()));
+        out.writeInt(c.getAnio());
+        out.writeInt(c.getDuracionSegundos());
+        LocalDate fecha = c.getFechaAgregado();
+        out.writeLong(fecha == null ? SIN_FECHA : fecha.toEpochDay());
+        Cancion.Contadores k = c.getContadores();
+        out.writeLong(k.getReproducciones());
+        out.writeLong(k.getFavoritos());
+        out.writeDouble(k.getCalificacionPromedio());
+        out.writeInt(k.getNumeroCalificaciones());
+        out.writeByte((c.isDisponible() ? 1 : 0) | (c.isContenidoExplicito() ? 2 : 0));
+        escribirRefs(out, t, c.getArtistasColaboradores());
+    }
+
+    private static Cancion leerCancion(ByteBuffer buf, String[] t, CatalogoColumnar destino) {
+        String id = cadena(buf, t), titulo = cadena(buf, t), artista = cadena(buf, t), album = cadena(buf, t);
+        String genero = cadena(buf, t), ruta = cadena(buf, t), imagen = cadena(buf, t), cover = cadena(buf, t);
+        String descripcion = cadena(buf, t);
+        int anio = buf.getInt(), duracion = buf.getInt();
+        Cancion c = destino == null ? new Cancion(id, titulo, artista, album, genero, anio, duracion)
+            : new Cancion(destino, id, titulo, artista, album, genero, anio, duracion);
+        c.setRutaArchivo(ruta);
+        c.setUrlImagenAlbum(imagen);
+        c.setCoverUrl(cover);
+        c.setDescripcion(descripcion);
+        long dia = buf.getLong();
+        c.setFechaAgregado(dia == SIN_FECHA ? null : LocalDate.ofEpochDay(dia));
+        c.setReproducciones(buf.getLong());
+        c.setNumeroFavoritos(buf.getLong());
+        double promedio = buf.getDouble();
+        c.setCalificaciones(promedio, buf.getInt());
+        int flags = buf.get();
+        c.setDisponible((flags & 1) != 0);
+        c.setContenidoExplicito((flags & 2) != 0);
+        List<String> colaboradores = leerRefs(buf, t);
+        if (!colaboradores.isEmpty()) c.setArtistasColaboradores(colaboradores);
+        return c;
+    }
+
+    private static void escribirRefs(DataOutputStream out, TablaCadenas t, Collection<String> valores) throws IOException {
+        out.writeInt(valores.size());
+        for (String v : valores) out.writeInt(t.ref(v));
+    }
+
+    private static List<String> leerRefs(ByteBuffer buf, String[] c) {
+        int n = buf.getInt();
+        if (n == 0) return Collections.emptyList();
+        List<String> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) l.add(cadena(buf, c));
+        return l;
+    }
+
+    private static String cadena(ByteBuffer buf, String[] c) {
+        int ref = buf.getInt();
+        return ref < 0 ? null : c[ref];
+    }
+
+    /**
+     * Tabla de cadenas sin repetidos; asigna los índices en una pasada previa para que las
+     * longitudes de las secciones se conozcan antes de escribirlas.
+     */
+    private static final class TablaCadenas {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<byte[]> bytes = new ArrayList<>();
+
+        int ref(String s) {
+            if (s == null) return -1;
+            Integer i = indices.get(s);
+            if (i != null) return i;
+            int nuevo = bytes.size();
+            indices.put(s, nuevo);
+            bytes.add(s.getBytes(StandardCharsets.UTF_8));
+            return nuevo;
+        }
+
+        long registrarUsuario(Usuario u) {
+            ref(u.getId()); ref(u.getUsername()); ref(u.getPasswordHash()); ref(u.getNombreCompleto()); ref(u.getEmail());
+            Collection<String> favoritas = u.getVistaCancionesFavoritas(), seguidos = u.getVistaUsuariosSeguidos();
+            for (String s : favoritas) ref(s);
+            for (String s : seguidos) ref(s);
+            return BYTES_USUARIO + 4L * (favoritas.size() + seguidos.size());
+        }
+
+        long registrarCancion(Cancion c) {
+            ref(c.getId()); ref(c.getTitulo()); ref(c.getArtista()); ref(c.getAlbum()); ref(c.getGenero());
+            ref(c.getRutaArchivo()); ref(c.getUrlImagenAlbum()); ref(c.getCoverUrl()); ref(c.getDescripcion());
+            List<String> colaboradores = c.getArtistasColaboradores();
+            for (String s : colaboradores) ref(s);
+            return BYTES_CANCION + 4L * colaboradores.size();
+        }
+
+        void escribir(DataOutputStream out) throws IOException {
+            out.writeInt(bytes.size());
+            for (byte[] b : bytes) {
+                out.writeInt(b.length);
+                out.write(b);
+            }
+        }
+    }
+}
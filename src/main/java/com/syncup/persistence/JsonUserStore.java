@@ -0,0 +1,110 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Usuario;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Motor de usuarios sobre data/users.json: cada cambio reescribe el archivo completo, así
+ * que solo conviene para pocos usuarios o cuando se quiere un archivo legible.
+ * <p>
+ * La reescritura ocurre en un hilo propio y se agrupa: los cambios que llegan mientras una
+ * escritura espera su turno comparten esa escritura y su futuro.
+ */
+public class JsonUserStore implements UserStore {
+    private final JsonDataStore store;
+    private final Map<String, Usuario> porId = new LinkedHashMap<>();
+    private final ExecutorService escritor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "users-json");
+        t.setDaemon(true);
+        return t;
+    });
+    /** Escritura programada que todavía no tomó su copia de los usuarios */
+    private CompletableFuture<Void> pendiente;
+    private long escrituras;
+    private long cambios;
+
+    public JsonUserStore(Path base){ this.store = new JsonDataStore(base); }
+
+    @Override
+    public void cargar(Consumer<Usuario> destino) throws IOException {
+        List<Usuario> cargados;
+        synchronized (this) {
+            porId.clear();
+            store.forEachUser(m -> { Usuario u = FragmentoUsuarios.desdeMapa(m); if (u != null) porId.put(u.getId(), u); });
+            cargados = new ArrayList<>(porId.values());
+        }
+        cargados.forEach(destino);
+    }
+
+    @Override public synchronized Usuario get(String id){ return porId.get(id); }
+    @Override public synchronized int size(){ return porId.size(); }
+    @Override public synchronized List<Usuario> listar(String despuesDe, int limite){ return FragmentoUsuarios.pagina(porId.values(), despuesDe, limite); }
+    @Override public synchronized int contar(Predicate<Usuario> filtro){ return (int) porId.values().stream().filter(filtro).count(); }
+
+    @Override
+    public synchronized CompletableFuture<Void> guardar(Usuario u){
+        porId.put(u.getId(), u);
+        return programarEscritura();
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> modificar(String id, Consumer<Usuario> cambio){
+        Usuario u = porId.get(id);
+        if (u == null) return null;
+        cambio.accept(u);
+        return programarEscritura();
+    }
+
+    private CompletableFuture<Void> programarEscritura(){
+        cambios++;
+        if (pendiente != null) return pendiente;
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        pendiente = f;
+        try {
+            escritor.execute(() -> {
+                List<Map<String,Object>> copia = new ArrayList<>();
+                synchronized (this) {
+                    // Desde aquí, un cambio nuevo programa otra escritura
+                    pendiente = null;
+                    for (Usuario u : porId.values()) copia.add(FragmentoUsuarios.toMap(u));
+                    escrituras++;
+                }
+                try { store.saveUsers(copia); f.complete(null); }
+                catch (IOException e) { f.completeExceptionally(e); }
+            });
+        } catch (RejectedExecutionException e) {
+            // Motor cerrado: el cambio quedó en memoria y el fallo va por el futuro
+            pendiente = null;
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> sincronizar(){
+        if (pendiente != null) return pendiente;
+        // El hilo escritor es único: esta tarea termina después de la escritura en curso
+        return CompletableFuture.runAsync(() -> { }, escritor);
+    }
+
+    @Override
+    public synchronized String getEstadisticas(){
+        return String.format("users.json: %d cambios en %d reescrituras", cambios, escrituras);
+    }
+
+    @Override
+    public void close(){
+        if (escritor.isShutdown()) return;
+        sincronizar().join();
+        escritor.shutdown();
+    }
+}
@@ -0,0 +1,357 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Usuario;
+import com.syncup.structures.CacheLRU;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Motor de usuarios sobre un {@link ArbolBMas} en data/users.kv, pensado para millones de
+ * usuarios: no los mantiene en memoria (solo una cache LRU de los recientes) y cada cambio
+ * escribe únicamente las páginas del árbol que toca.
+ * <p>
+ * Claves: "u/{id}" con el registro del usuario y "f/{id}/{idCancion}" por cada favorita,
+ * con su posición como valor, así que las favoritas de un usuario son un recorrido por
+ * prefijo y añadir una no reescribe las demás. Los índices por username y email son
+ * claves "n/{username}" y "e/{email}" (en minúsculas) con el ID como valor, y "m/usuarios"
+ * y "m/ultimo" guardan el total y el último alta: al arrancar no se recorre ningún
+ * usuario. Los cambios se aplican al árbol en el acto y se confirman en un hilo propio:
+ * los que llegan mientras una confirmación espera su turno comparten su fsync.
+ * <p>
+ * Si el árbol está vacío al cargar, se importan los usuarios de {@link SnapshotUserStore}
+ * (que a su vez migra los formatos anteriores).
+ */
+public class KvUserStore implements UserStore {
+    private static final String USUARIOS = "u/";
+    private static final String FAVORITAS = "f/";
+    private static final String USERNAMES = "n/";
+    private static final String EMAILS = "e/";
+    private static final String TOTAL = "m/usuarios";
+    private static final String ULTIMA_ALTA = "m/ultimo";
+
+    private final Path base;
+    private final Path archivo;
+    private ArbolBMas arbol;
+    private final CacheLRU<String, Usuario> cache = new CacheLRU<>(10_000, TimeUnit.MINUTES.toMillis(10));
+    private final ExecutorService escritor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "users-kv");
+        t.setDaemon(true);
+        return t;
+    });
+    /** Confirmación programada que todavía no empezó */
+    private CompletableFuture<Void> pendiente;
+    private int usuarios;
+    private long cambios;
+    private long confirmaciones;
+
+    /**
+     * @param base Directorio que contiene data/
+     */
+    public KvUserStore(Path base){
+        this.base = base;
+        this.archivo = base.resolve("data").resolve("users.kv");
+    }
+
+    /**
+     * Abre el árbol y entrega solo el último usuario dado de alta, para que el repositorio
+     * retome su contador de IDs: los índices por username y email ya están en el árbol.
+     */
+    @Override
+    public void cargar(Consumer<Usuario> destino) throws IOException {
+        String ultimo;
+        synchronized (this) {
+            if (arbol == null) arbol = ArbolBMas.abrir(archivo);
+            if (arbol.size() == 0) importar();
+            else if (arbol.get(TOTAL) == null) reindexar();
+            byte[] total = arbol.get(TOTAL);
+            usuarios = total == null ? 0 : (int) ByteBuffer.wrap(total).getLong();
+            byte[] v = arbol.get(ULTIMA_ALTA);
+            ultimo = v == null ? null : new String(v, StandardCharsets.UTF_8);
+        }
+        Usuario u = ultimo == null ? null : get(ultimo);
+        if (u != null) destino.accept(u);
+    }
+
+    @Override public boolean guardaIndices(){ return true; }
+
+    @Override
+    public String idPorUsername(String username){ return buscarId(USERNAMES, username); }
+
+    @Override
+    public String idPorEmail(String email){ return buscarId(EMAILS, email); }
+
+    private String buscarId(String prefijo, String clave){
+        if (clave == null || clave.isBlank()) return null;
+        try {
+            byte[] v = arbol.get(prefijo + clave.toLowerCase(Locale.ROOT));
+            return v == null ? null : new String(v, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void importar() throws IOException {
+        List<Usuario> anteriores = new ArrayList<>();
+        try (SnapshotUserStore anterior = new SnapshotUserStore(base)) {
+            anterior.cargar(anteriores::add);
+        }
+        if (anteriores.isEmpty()) return;
+        ArbolBMas.Lote lote = new ArbolBMas.Lote();
+        String ultimo = null;
+        for (Usuario u : anteriores) {
+            lote.poner(USUARIOS + u.getId(), RegistrosKv.usuario(u));
+            indexar(lote, u);
+            List<String> favoritas = u.getCancionesFavoritas();
+            for (int i = 0; i < favoritas.size(); i++) lote.poner(claveFavorita(u.getId(), favoritas.get(i)), posicion(i));
+            if (ultimo == null || posterior(u.getId(), ultimo)) ultimo = u.getId();
+        }
+        lote.poner(TOTAL, posicion(anteriores.size())).poner(ULTIMA_ALTA, ultimo.getBytes(StandardCharsets.UTF_8));
+        arbol.escribir(lote);
+        System.out.println("Usuarios importados a " + archivo.getFileName() + ": " + anteriores.size());
+    }
+
+    /** Añade los índices y contadores a un árbol escrito antes de que existieran (una sola vez). */
+    private void reindexar() throws IOException {
+        ArbolBMas.Lote lote = new ArbolBMas.Lote();
+        String[] ultimo = {null};
+        long[] n = {0};
+        arbol.recorrerPrefijo(USUARIOS, (k, v) -> {
+            Usuario u = RegistrosKv.usuario(v);
+            indexar(lote, u);
+            if (ultimo[0] == null || posterior(u.getId(), ultimo[0])) ultimo[0] = u.getId();
+            n[0]++;
+            return true;
+        });
+        lote.poner(TOTAL, posicion(n[0]));
+        if (ultimo[0] != null) lote.poner(ULTIMA_ALTA, ultimo[0].getBytes(StandardCharsets.UTF_8));
+        arbol.escribir(lote);
+    }
+
+    /** Los IDs del repositorio ("u_0042") crecen en longitud y, a igual longitud, en orden. */
+    private static boolean posterior(String a, String b){
+        return a.length() != b.length() ? a.length() > b.length() : a.compareTo(b) > 0;
+    }
+
+    private static void indexar(ArbolBMas.Lote lote, Usuario u){
+        byte[] id = u.getId().getBytes(StandardCharsets.UTF_8);
+        lote.poner(USERNAMES + u.getUsername().toLowerCase(Locale.ROOT), id);
+        String email = u.getEmail();
+        if (email != null && !email.isBlank()) lote.poner(EMAILS + email.toLowerCase(Locale.ROOT), id);
+    }
+
+    private static String claveFavorita(String id, String cancion){ return FAVORITAS + id + "/" + cancion; }
+    private static byte[] posicion(long p){ return ByteBuffer.allocate(8).putLong(p).array(); }
+
+    @Override
+    public Usuario get(String id){
+        Usuario u = cache.get(id);
+        if (u != null) return u;
+        try {
+            byte[] v = arbol.get(USUARIOS + id);
+            if (v == null) return null;
+            u = RegistrosKv.usuario(v);
+            u.setCancionesFavoritas(new ArrayList<>(favoritas(id).keySet()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        cache.put(id, u);
+        return u;
+    }
+
+    /** @return Favoritas guardadas del usuario con su posición, en orden de posición */
+    private LinkedHashMap<String, Long> favoritas(String id) throws IOException {
+        String prefijo = FAVORITAS + id + "/";
+        List<Map.Entry<String, Long>> l = new ArrayList<>();
+        arbol.recorrerPrefijo(prefijo, (k, v) -> l.add(Map.entry(k.substring(prefijo.length()), ByteBuffer.wrap(v).getLong())));
+        l.sort(Map.Entry.comparingByValue());
+        LinkedHashMap<String, Long> m = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : l) m.put(e.getKey(), e.getValue());
+        return m;
+    }
+
+    @Override public synchronized int size(){ return usuarios; }
+
+    /** Recorre el rango de claves "u/" a partir del ID, sin leer el resto del árbol. */
+    @Override
+    public List<Usuario> listar(String despuesDe, int limite){
+        List<Usuario> l = new ArrayList<>();
+        if (limite <= 0) return l;
+        String desde = despuesDe == null ? USUARIOS : USUARIOS + despuesDe + Character.MIN_VALUE;
+        try {
+            arbol.recorrer(desde, USUARIOS + Character.MAX_VALUE, (k, v) -> {
+                Usuario u = cache.get(k.substring(USUARIOS.length()));
+                l.add(u != null ? u : RegistrosKv.usuario(v));
+                return l.size() < limite;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return l;
+    }
+
+    /** Recorre el rango "u/" una sola vez; los usuarios en caché se miran sin decodificar. */
+    @Override
+    public int contar(Predicate<Usuario> filtro){
+        int[] n = {0};
+        try {
+            arbol.recorrerPrefijo(USUARIOS, (k, v) -> {
+                Usuario u = cache.get(k.substring(USUARIOS.length()));
+                if (filtro.test(u != null ? u : RegistrosKv.usuario(v))) n[0]++;
+                return true;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return n[0];
+    }
+
+    /**
+     * Escribe el registro del usuario, sus índices y solo las favoritas que cambiaron: las
+     * nuevas van después de la última posición guardada y las que ya estaban conservan la
+     * suya.
+     *
+     * @throws IllegalStateException Si el username o el email ya son de otro usuario
+     */
+    @Override
+    public synchronized CompletableFuture<Void> guardar(Usuario u){
+        String id = u.getId();
+        try {
+            byte[] anterior = arbol.get(USUARIOS + id);
+            boolean nuevo = anterior == null;
+            ArbolBMas.Lote lote = new ArbolBMas.Lote().poner(USUARIOS + id, RegistrosKv.usuario(u));
+            reindexarCambios(lote, anterior == null ? null : RegistrosKv.usuario(anterior), u);
+            if (nuevo) {
+                lote.poner(TOTAL, posicion(usuarios + 1L)).poner(ULTIMA_ALTA, id.getBytes(StandardCharsets.UTF_8));
+            }
+            LinkedHashMap<String, Long> guardadas = favoritas(id);
+            long siguiente = guardadas.values().stream().mapToLong(Long::longValue).max().orElse(-1) + 1;
+            Set<String> actuales = new HashSet<>();
+            for (String c : u.getVistaCancionesFavoritas()) {
+                actuales.add(c);
+                if (!guardadas.containsKey(c)) lote.poner(claveFavorita(id, c), posicion(siguiente++));
+            }
+            for (String c : guardadas.keySet()) if (!actuales.contains(c)) lote.quitar(claveFavorita(id, c));
+            arbol.aplicar(lote);
+            if (nuevo) usuarios++;
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        cache.put(id, u);
+        return programarConfirmacion();
+    }
+
+    /**
+     * Pone en el lote los índices del usuario y quita los que dejaron de ser suyos; el
+     * lote entero se descarta si el username o el email nuevos son de otro usuario.
+     */
+    private void reindexarCambios(ArbolBMas.Lote lote, Usuario anterior, Usuario u) throws IOException {
+        String id = u.getId();
+        String username = u.getUsername().toLowerCase(Locale.ROOT);
+        String email = u.getEmail() == null || u.getEmail().isBlank() ? null : u.getEmail().toLowerCase(Locale.ROOT);
+        String duenoUsername = buscarId(USERNAMES, username), duenoEmail = email == null ? null : buscarId(EMAILS, email);
+        if (duenoUsername != null && !duenoUsername.equals(id)) throw new IllegalStateException("Ya existe un usuario con ese username");
+        if (duenoEmail != null && !duenoEmail.equals(id)) throw new IllegalStateException("Ya existe un usuario con ese email");
+        if (anterior != null) {
+            String antes = anterior.getUsername().toLowerCase(Locale.ROOT);
+            if (!antes.equals(username)) lote.quitar(USERNAMES + antes);
+            String emailAntes = anterior.getEmail();
+            if (emailAntes != null && !emailAntes.isBlank() && !emailAntes.toLowerCase(Locale.ROOT).equals(email)) {
+                lote.quitar(EMAILS + emailAntes.toLowerCase(Locale.ROOT));
+            }
+        }
+        indexar(lote, u);
+    }
+
+    /** Añade una favorita con una sola clave nueva, detrás de las que ya tiene el usuario. */
+    @Override
+    public synchronized CompletableFuture<Void> agregarFavorita(String id, String cancion){
+        try {
+            if (arbol.get(USUARIOS + id) == null || arbol.get(claveFavorita(id, cancion)) != null) return CompletableFuture.completedFuture(null);
+            long siguiente = favoritas(id).values().stream().mapToLong(Long::longValue).max().orElse(-1) + 1;
+            arbol.aplicar(new ArbolBMas.Lote().poner(claveFavorita(id, cancion), posicion(siguiente)));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Usuario u = cache.get(id);
+        if (u != null) u.agregarCancionFavorita(cancion);
+        return programarConfirmacion();
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> quitarFavorita(String id, String cancion){
+        try {
+            if (arbol.get(claveFavorita(id, cancion)) == null) return CompletableFuture.completedFuture(null);
+            arbol.aplicar(new ArbolBMas.Lote().quitar(claveFavorita(id, cancion)));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Usuario u = cache.get(id);
+        if (u != null) u.removerCancionFavorita(cancion);
+        return programarConfirmacion();
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> modificar(String id, Consumer<Usuario> cambio){
+        Usuario u = get(id);
+        if (u == null) return null;
+        cambio.accept(u);
+        return guardar(u);
+    }
+
+    private CompletableFuture<Void> programarConfirmacion(){
+        cambios++;
+        if (pendiente != null) return pendiente;
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        pendiente = f;
+        try {
+            escritor.execute(() -> {
+                synchronized (this) {
+                    // Desde aquí, un cambio nuevo programa otra confirmación
+                    pendiente = null;
+                    confirmaciones++;
+                }
+                try { arbol.confirmar(); f.complete(null); }
+                catch (IOException e) { f.completeExceptionally(e); }
+            });
+        } catch (RejectedExecutionException e) {
+            // Motor cerrado: el cambio está aplicado al árbol y el fallo va por el futuro
+            pendiente = null;
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> sincronizar(){
+        if (pendiente != null) return pendiente;
+        // El hilo escritor es único: esta tarea termina después de la confirmación en curso
+        return CompletableFuture.runAsync(() -> { }, escritor);
+    }
+
+    @Override
+    public synchronized String getEstadisticas(){
+        String arbolStats = arbol == null ? archivo.getFileName() + " sin abrir" : arbol.getEstadisticas();
+        return String.format("%s%n%d cambios en %d confirmaciones", arbolStats, cambios, confirmaciones);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (escritor.isShutdown()) return;
+        sincronizar().join();
+        escritor.shutdown();
+        cache.cerrar();
+        if (arbol != null) arbol.close();
+    }
+}
@@ -0,0 +1,361 @@
+package com.syncup.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lector JSON por tokens sobre un {@link Reader}.
+ * <p>
+ * Lee el documento con un búfer fijo, sin cargarlo entero en memoria: quien lo usa pide
+ * tokens con {@link #siguiente()} o valores completos con {@link #leerValor()}, así que
+ * recorrer un arreglo de un millón de objetos solo retiene el objeto actual. Valida la
+ * sintaxis (comas, dos puntos, anidamiento) e interpreta todos los escapes de cadena,
+ * incluidos los escapes Unicode de cuatro dígitos y los pares sustitutos.
+ */
+public final class LectorJson implements Closeable {
+
+    /**
+     * Tipos de token.
+     */
+    public enum Token {
+        INICIO_OBJETO, FIN_OBJETO, INICIO_ARREGLO, FIN_ARREGLO,
+        NOMBRE, CADENA, NUMERO, BOOLEANO, NULO, FIN_DOCUMENTO
+    }
+
+    /**
+     * Documento que no es JSON válido (distinto de un fallo de lectura).
+     */
+    public static final class ErrorFormato extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public ErrorFormato(String mensaje) {
+            super(mensaje);
+        }
+    }
+
+    // Estado de cada nivel de anidamiento
+    private static final byte ARREGLO_VACIO = 1;
+    private static final byte ARREGLO = 2;
+    private static final byte OBJETO_VACIO = 3;
+    private static final byte OBJETO_NOMBRE = 4;
+    private static final byte OBJETO = 5;
+
+    private final Reader reader;
+    private final char[] buf = new char[8192];
+    private int pos;
+    private int lim;
+    private long consumidos;
+
+    private byte[] pila = new byte[16];
+    private int profundidad;
+    private boolean raizLeida;
+
+    private final StringBuilder texto = new StringBuilder();
+    private boolean booleano;
+    /** El último número no tiene parte fraccionaria ni exponente */
+    private boolean entero;
+
+    /**
+     * @param reader Fuente del documento (no hace falta envolverla en un BufferedReader)
+     */
+    public LectorJson(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Avanza al siguiente token.
+     *
+     * @return Token leído; {@link Token#FIN_DOCUMENTO} tras el valor raíz
+     * @throws IOException si falla la lectura ({@link ErrorFormato} si el documento no es JSON válido)
+     */
+    public Token siguiente() throws IOException {
+        int c = saltarEspacios();
+        if (profundidad == 0) {
+            if (raizLeida) {
+                if (c != -1) throw error("contenido después del final del documento");
+                return Token.FIN_DOCUMENTO;
+            }
+            raizLeida = true;
+            return valor(c);
+        }
+        switch (pila[profundidad - 1]) {
+            case ARREGLO_VACIO:
+                if (c == ']') return cerrar(Token.FIN_ARREGLO);
+                pila[profundidad - 1] = ARREGLO;
+                return valor(c);
+            case ARREGLO:
+                if (c == ']') return cerrar(Token.FIN_ARREGLO);
+                if (c != ',') throw error("se esperaba ',' o ']'");
+                return valor(saltarEspacios());
+            case OBJETO_VACIO:
+                if (c == '}') return cerrar(Token.FIN_OBJETO);
+                return nombre(c);
+            case OBJETO:
+                if (c == '}') return cerrar(Token.FIN_OBJETO);
+                if (c != ',') throw error("se esperaba ',' o '}'");
+                return nombre(saltarEspacios());
+            default: // OBJETO_NOMBRE
+                if (c != ':') throw error("se esperaba ':'");
+                pila[profundidad - 1] = OBJETO;
+                return valor(saltarEspacios());
+        }
+    }
+
+    /**
+     * @return Texto del último token {@code NOMBRE}, {@code CADENA} o {@code NUMERO}
+     */
+    public String getTexto() {
+        return texto.toString();
+    }
+
+    /**
+     * @return Valor del último token {@code BOOLEANO}
+     */
+    public boolean getBooleano() {
+        return booleano;
+    }
+
+    /**
+     * @return Valor del último token {@code NUMERO}: {@link Long} si es entero y cabe, si no {@link Double}
+     * @throws ErrorFormato Si el último token no fue un número
+     */
+    public Number getNumero() throws ErrorFormato {
+        String s = texto.toString();
+        try {
+            if (entero) {
+                try {
+                    return Long.parseLong(s);
+                } catch (NumberFormatException desborde) {
+                    // Entero fuera de rango de long: se conserva como double
+                }
+            }
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw error("número inválido '" + s + "'");
+        }
+    }
+
+    /**
+     * Lee el siguiente valor completo.
+     *
+     * @return {@link Map} (con el orden de las claves), {@link List}, {@link String},
+     *         {@link Number}, {@link Boolean} o null
+     * @throws IOException si el siguiente token no inicia un valor o el JSON no es válido
+     */
+    public Object leerValor() throws IOException {
+        return construir(siguiente());
+    }
+
+    /**
+     * Construye el valor que empieza en un token ya leído.
+     *
+     * @param token Token actual (devuelto por {@link #siguiente()})
+     * @return Valor completo, como en {@link #leerValor()}
+     */
+    public Object construir(Token token) throws IOException {
+        switch (token) {
+            case INICIO_OBJETO: {
+                Map<String, Object> m = new LinkedHashMap<>();
+                for (Token t = siguiente(); t != Token.FIN_OBJETO; t = siguiente()) {
+                    String clave = getTexto();
+                    m.put(clave, leerValor());
+                }
+                return m;
+            }
+            case INICIO_ARREGLO: {
+                List<Object> l = new ArrayList<>();
+                for (Token t = siguiente(); t != Token.FIN_ARREGLO; t = siguiente()) l.add(construir(t));
+                return l;
+            }
+            case CADENA: return getTexto();
+            case NUMERO: return getNumero();
+            case BOOLEANO: return booleano;
+            case NULO: return null;
+            default: throw error("se esperaba un valor y se encontró " + token);
+        }
+    }
+
+    /**
+     * Descarta el valor que empieza en un token ya leído sin construirlo.
+     */
+    public void omitir(Token token) throws IOException {
+        if (token != Token.INICIO_OBJETO && token != Token.INICIO_ARREGLO) return;
+        int nivel = profundidad - 1;
+        while (profundidad > nivel) siguiente();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // ---- Tokenización ----
+
+    private Token valor(int c) throws IOException {
+        switch (c) {
+            case '{': apilar(OBJETO_VACIO); return Token.INICIO_OBJETO;
+            case '[': apilar(ARREGLO_VACIO); return Token.INICIO_ARREGLO;
+            case '"': leerCadena(); return Token.CADENA;
+            case 't': literal("rue"); booleano = true; return Token.BOOLEANO;
+            case 'f': literal("alse"); booleano = false; return Token.BOOLEANO;
+            case 'n': literal("ull"); return Token.NULO;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) { leerNumero((char) c); return Token.NUMERO; }
+                throw error(c == -1 ? "fin inesperado del documento" : "carácter inesperado '" + (char) c + "'");
+        }
+    }
+
+    private Token nombre(int c) throws IOException {
+        if (c != '"') throw error("se esperaba el nombre de un campo");
+        leerCadena();
+        pila[profundidad - 1] = OBJETO_NOMBRE;
+        return Token.NOMBRE;
+    }
+
+    private Token cerrar(Token fin) {
+        profundidad--;
+        return fin;
+    }
+
+    private void apilar(byte estado) {
+        if (profundidad == pila.length) pila = Arrays.copyOf(pila, profundidad * 2);
+        pila[profundidad++] = estado;
+    }
+
+    private void literal(String resto) throws IOException {
+        for (int i = 0; i < resto.length(); i++) {
+            if (leer() != resto.charAt(i)) throw error("literal inválido");
+        }
+    }
+
+    /**
+     * Lee un número con la gramática de JSON:
+     * {@code -? (0 | [1-9][0-9]*) (. [0-9]+)? ([eE] [+-]? [0-9]+)?}. El carácter que lo
+     * termina no se consume.
+     */
+    private void leerNumero(char primero) throws IOException {
+        texto.setLength(0);
+        texto.append(primero);
+        entero = true;
+        char inicio = primero == '-' ? tomarDigito() : primero;
+        if (inicio != '0') masDigitos();
+        else if (esDigito(mirar())) throw error("número con ceros a la izquierda");
+        if (mirar() == '.') {
+            entero = false;
+            tomar();
+            tomarDigito();
+            masDigitos();
+        }
+        int c = mirar();
+        if (c == 'e' || c == 'E') {
+            entero = false;
+            tomar();
+            c = mirar();
+            if (c == '+' || c == '-') tomar();
+            tomarDigito();
+            masDigitos();
+        }
+    }
+
+    private char tomarDigito() throws IOException {
+        int c = mirar();
+        if (!esDigito(c)) throw error("se esperaba un dígito en el número");
+        tomar();
+        return (char) c;
+    }
+
+    private void masDigitos() throws IOException {
+        while (esDigito(mirar())) tomar();
+    }
+
+    /** @return Siguiente carácter sin consumirlo, o -1 al final del documento */
+    private int mirar() throws IOException {
+        if (pos == lim && !llenar()) return -1;
+        return buf[pos];
+    }
+
+    /** Añade al texto el carácter devuelto por {@link #mirar()} y lo consume. */
+    private void tomar() {
+        texto.append(buf[pos++]);
+    }
+
+    private static boolean esDigito(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void leerCadena() throws IOException {
+        texto.setLength(0);
+        while (true) {
+            if (pos == lim && !llenar()) throw error("cadena sin cerrar");
+            // Copia en bloque los tramos sin comillas ni escapes
+            int inicio = pos;
+            while (pos < lim) {
+                char ch = buf[pos];
+                if (ch == '"' || ch == '\\' || ch < 0x20) break;
+                pos++;
+            }
+            texto.append(buf, inicio, pos - inicio);
+            if (pos == lim) continue;
+            char ch = buf[pos++];
+            if (ch == '"') return;
+            if (ch != '\\') throw error("carácter de control sin escapar en una cadena");
+            int e = leer();
+            switch (e) {
+                case '"': texto.append('"'); break;
+                case '\\': texto.append('\\'); break;
+                case '/': texto.append('/'); break;
+                case 'b': texto.append('\b'); break;
+                case 'f': texto.append('\f'); break;
+                case 'n': texto.append('\n'); break;
+                case 'r': texto.append('\r'); break;
+                case 't': texto.append('\t'); break;
+                case 'u': texto.append(leerHex4()); break;
+                default: throw error("escape inválido");
+            }
+        }
+    }
+
+    private char leerHex4() throws IOException {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            int d = Character.digit(leer(), 16);
+            if (d < 0) throw error("escape \\u inválido");
+            v = (v << 4) | d;
+        }
+        // Los pares sustitutos llegan como dos escapes consecutivos y se concatenan tal cual
+        return (char) v;
+    }
+
+    private int saltarEspacios() throws IOException {
+        while (true) {
+            if (pos == lim && !llenar()) return -1;
+            char ch = buf[pos++];
+            if (ch != ' ' && ch != '\n' && ch != '\r' && ch != '\t' && ch != '\uFEFF') return ch;
+        }
+    }
+
+    private int leer() throws IOException {
+        if (pos == lim && !llenar()) return -1;
+        return buf[pos++];
+    }
+
+    private boolean llenar() throws IOException {
+        consumidos += lim;
+        pos = 0;
+        lim = 0;
+        int n = reader.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        lim = n;
+        return true;
+    }
+
+    private ErrorFormato error(String detalle) {
+        return new ErrorFormato("JSON inválido en el carácter " + (consumidos + pos) + ": " + detalle);
+    }
+}
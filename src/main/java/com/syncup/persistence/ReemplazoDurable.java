@@ -0,0 +1,60 @@
+package com.syncup.persistence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reemplazo de un archivo por un temporal que sobrevive a un corte de luz: el temporal se
+ * fuerza al disco antes de renombrarlo y el directorio después, así que al volver el
+ * destino tiene el contenido anterior o el nuevo completo. Solo cuando {@link #reemplazar}
+ * termina se puede vaciar un diario cuyo contenido ya está en el archivo nuevo.
+ */
+final class ReemplazoDurable {
+    /** En Windows un directorio no se puede abrir como canal; allí se omite su fsync */
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private ReemplazoDurable() {
+    }
+
+    /**
+     * Fuerza al disco el temporal, lo renombra sobre el destino de forma atómica y fuerza
+     * el directorio que contiene la nueva entrada.
+     *
+     * @param tmp Archivo temporal ya escrito y cerrado
+     * @param destino Archivo a reemplazar
+     * @throws IOException Si falla el fsync o el renombrado
+     */
+    static void reemplazar(Path tmp, Path destino) throws IOException {
+        try (FileChannel canal = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            canal.force(true);
+        }
+        Files.move(tmp, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forzarDirectorio(destino);
+    }
+
+    /**
+     * Escribe un texto corto (un manifiesto) mediante {@link #reemplazar}.
+     */
+    static void escribirTexto(Path destino, String texto) throws IOException {
+        Path tmp = destino.resolveSibling(destino.getFileName().toString() + ".tmp");
+        Files.writeString(tmp, texto, StandardCharsets.UTF_8);
+        reemplazar(tmp, destino);
+    }
+
+    /**
+     * Fuerza al disco el directorio de un archivo, para que un renombrado o una creación
+     * dentro de él no se pierda.
+     */
+    static void forzarDirectorio(Path archivo) throws IOException {
+        Path dir = archivo.toAbsolutePath().getParent();
+        if (dir == null || WINDOWS) return;
+        try (FileChannel canal = FileChannel.open(dir, StandardOpenOption.READ)) {
+            canal.force(true);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Cancion;
+import com.syncup.models.CatalogoColumnar;
+import com.syncup.models.Usuario;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Codificación binaria de usuarios y canciones como valores de {@link ArbolBMas}: un
+ * registro autocontenido por clave (sin la tabla de cadenas de {@link InstantaneaBinaria}).
+ * <p>
+ * Cadena: int longitud en bytes UTF-8 (-1 para null) y los bytes. Los campos siguen el
+ * mismo orden que en la instantánea binaria.
+ */
+public final class RegistrosKv {
+    private static final long SIN_FECHA = Long.MIN_VALUE;
+
+    private RegistrosKv() {
+    }
+
+    /** @return El usuario sin sus favoritas, que el almacén guarda en claves propias */
+    public static byte[] usuario(Usuario u) {
+        return codificar(out -> {
+            cadena(out, u.getId());
+            cadena(out, u.getUsername());
+            cadena(out, u.getPasswordHash());
+            cadena(out, u.getNombreCompleto());
+            cadena(out, u.getEmail());
+            out.writeByte((u.isEsAdmin() ? 1 : 0) | (u.isActivo() ? 2 : 0));
+            cadenas(out, u.getVistaUsuariosSeguidos());
+        });
+    }
+
+    public static Usuario usuario(byte[] registro) {
+        ByteBuffer b = ByteBuffer.wrap(registro);
+        String id = cadena(b), username = cadena(b), hash = cadena(b), nombre = cadena(b), email = cadena(b);
+        int flags = b.get();
+        Usuario u = new Usuario(id, username, hash, nombre, email);
+        u.setPasswordHash(hash);
+        u.setEsAdmin((flags & 1) != 0);
+        u.setActivo((flags & 2) != 0);
+        u.setUsuariosSeguidos(cadenas(b));
+        return u;
+    }
+
+    public static byte[] cancion(Cancion c) {
+        return codificar(out -> {
+            cadena(out, c.getId());
+            cadena(out, c.getTitulo());
+            cadena(out, c.getArtista());
+            cadena(out, c.getAlbum());
+            cadena(out, c.getGenero());
+            cadena(out, c.getRutaArchivo());
+            cadena(out, c.getUrlImagenAlbum());
+            cadena(out, c.getCoverUrl());
+            cadena(out, c.getDescripcion());
+            out.writeInt(c.getAnio());
+            out.writeInt(c.getDuracionSegundos());
+            LocalDate fecha = c.getFechaAgregado();
+            out.writeLong(fecha == null ? SIN_FECHA : fecha.toEpochDay());
+            Cancion.Contadores k = c.getContadores();
+            out.writeLong(k.getReproducciones());
+            out.writeLong(k.getFavoritos());
+            out.writeDouble(k.getCalificacionPromedio());
+            out.writeInt(k.getNumeroCalificaciones());
+            out.writeByte((c.isDisponible() ? 1 : 0) | (c.isContenidoExplicito() ? 2 : 0));
+            cadenas(out, c.getArtistasColaboradores());
+        });
+    }
+
+    /**
+     * @param destino Catálogo columnar donde reservar la fila de la canción (null: almacén privado)
+     */
+    public static Cancion cancion(byte[] registro, CatalogoColumnar destino) {
+        ByteBuffer b = ByteBuffer.wrap(registro);
+        String id = cadena(b), titulo = cadena(b), artista = cadena(b), album = cadena(b);
+        String genero = cadena(b), ruta = cadena(b), imagen = cadena(b), cover = cadena(b);
+        String descripcion = cadena(b);
+        int anio = b.getInt(), duracion = b.getInt();
+        Cancion c = destino == null ? new Cancion(id, titulo, artista, album, genero, anio, duracion)
+            : new Cancion(destino, id, titulo, artista, album, genero, anio, duracion);
+        c.setRutaArchivo(ruta);
+        c.setUrlImagenAlbum(imagen);
+        c.setCoverUrl(cover);
+        c.setDescripcion(descripcion);
+        long dia = b.getLong();
+        c.setFechaAgregado(dia == SIN_FECHA ? null : LocalDate.ofEpochDay(dia));
+        c.setReproducciones(b.getLong());
+        c.setNumeroFavoritos(b.getLong());
+        double promedio = b.getDouble();
+        c.setCalificaciones(promedio, b.getInt());
+        int flags = b.get();
+        c.setDisponible((flags & 1) != 0);
+        c.setContenidoExplicito((flags & 2) != 0);
+        List<String> colaboradores = cadenas(b);
+        if (!colaboradores.isEmpty()) c.setArtistasColaboradores(colaboradores);
+        return c;
+    }
+
+    /** Escritura de un registro sobre un {@link DataOutputStream}. */
+    private interface Contenido {
+        void escribir(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] codificar(Contenido contenido) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            contenido.escribir(out);
+        } catch (IOException e) {
+            // Un ByteArrayOutputStream no falla
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void cadena(DataOutputStream out, String s) throws IOException {
+        if (s == null) { out.writeInt(-1); return; }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String cadena(ByteBuffer b) {
+        int n = b.getInt();
+        if (n < 0) return null;
+        String s = new String(b.array(), b.position(), n, StandardCharsets.UTF_8);
+        b.position(b.position() + n);
+        return s;
+    }
+
+    private static void cadenas(DataOutputStream out, Collection<String> valores) throws IOException {
+        out.writeInt(valores.size());
+        for (String v : valores) cadena(out, v);
+    }
+
+    private static List<String> cadenas(ByteBuffer b) {
+        int n = b.getInt();
+        if (n == 0) return Collections.emptyList();
+        List<String> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) l.add(cadena(b));
+        return l;
+    }
+}
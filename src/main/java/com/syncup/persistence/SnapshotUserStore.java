@@ -0,0 +1,177 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Usuario;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Motor de usuarios con instantánea binaria y diario de cambios, repartido en fragmentos
+ * por hash del ID.
+ * <p>
+ * Cada {@link FragmentoUsuarios} tiene su propio candado, su índice por ID y sus archivos en
+ * data/users/ (instantánea binaria y diario con fsync agrupado), así que las operaciones de
+ * fragmentos distintos avanzan en paralelo y al arrancar los fragmentos se cargan a la vez.
+ * <p>
+ * El archivo data/users/fragmentos guarda el número de fragmentos y se escribe al final de
+ * la migración: si falta, se parte del formato anterior (users.bin o users.json más
+ * users.journal) y se reparte en fragmentos.
+ */
+public class SnapshotUserStore implements UserStore {
+    /** Número de fragmentos de un almacén nuevo */
+    private static final int NUMERO_FRAGMENTOS = 16;
+
+    private final JsonDataStore store;
+    private final Path instantaneaAnterior;
+    private final Path dirFragmentos;
+    private final ExecutorService compactador = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "users-compactacion");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile FragmentoUsuarios[] fragmentos = new FragmentoUsuarios[0];
+
+    /**
+     * @param base Directorio que contiene data/ (el de recursos en la aplicación, uno temporal en pruebas)
+     */
+    public SnapshotUserStore(Path base){
+        this.store = new JsonDataStore(base);
+        this.instantaneaAnterior = base.resolve("data").resolve("users.bin");
+        this.dirFragmentos = base.resolve("data").resolve("users");
+    }
+
+    @Override
+    public void cargar(Consumer<Usuario> destino) throws IOException {
+        Files.createDirectories(dirFragmentos);
+        Path manifiesto = dirFragmentos.resolve("fragmentos");
+        if (!Files.exists(manifiesto)) { migrar(manifiesto, destino); return; }
+
+        int n = Integer.parseInt(Files.readString(manifiesto, StandardCharsets.UTF_8).trim());
+        FragmentoUsuarios[] cargados = crearFragmentos(n);
+        try {
+            // Cada fragmento lee su instantánea y reproduce su diario a la vez que los demás
+            IntStream.range(0, n).parallel().forEach(i -> {
+                try { cargados[i].cargar(); } catch (IOException e) { throw new UncheckedIOException(e); }
+                cargados[i].usuarios().forEach(destino);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        fragmentos = cargados;
+    }
+
+    private FragmentoUsuarios[] crearFragmentos(int n){
+        FragmentoUsuarios[] f = new FragmentoUsuarios[n];
+        for (int i = 0; i < n; i++) f[i] = new FragmentoUsuarios(i, dirFragmentos, compactador);
+        return f;
+    }
+
+    /**
+     * Reparte en fragmentos los usuarios del formato anterior. El manifiesto se escribe al
+     * final, así que una migración interrumpida se repite entera en el siguiente arranque.
+     */
+    private void migrar(Path manifiesto, Consumer<Usuario> destino) throws IOException {
+        Map<String, Usuario> anteriores = new LinkedHashMap<>();
+        InstantaneaBinaria.Contenido contenido = null;
+        try{ contenido = InstantaneaBinaria.leer(instantaneaAnterior); }
+        catch(IOException e){ System.err.println("Instantánea de usuarios inválida, se parte de users.json: "+e.getMessage()); }
+        if (contenido != null) for (Usuario u : contenido.getUsuarios()) anteriores.put(u.getId(), u);
+        else store.forEachUser(m -> { Usuario u = FragmentoUsuarios.desdeMapa(m); if (u != null) anteriores.put(u.getId(), u); });
+        try (DiarioCambios diarioAnterior = store.openUsersJournal()) {
+            diarioAnterior.reproducir(r -> FragmentoUsuarios.aplicar(anteriores, r));
+        }
+
+        FragmentoUsuarios[] nuevos = crearFragmentos(NUMERO_FRAGMENTOS);
+        List<List<Usuario>> reparto = new ArrayList<>();
+        for (int i = 0; i < nuevos.length; i++) reparto.add(new ArrayList<>());
+        for (Usuario u : anteriores.values()) reparto.get(indiceFragmento(u.getId(), nuevos.length)).add(u);
+        try {
+            IntStream.range(0, nuevos.length).parallel().forEach(i -> {
+                try { nuevos[i].inicializar(reparto.get(i)); } catch (IOException e) { throw new UncheckedIOException(e); }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        anteriores.values().forEach(destino);
+        fragmentos = nuevos;
+        ReemplazoDurable.escribirTexto(manifiesto, String.valueOf(nuevos.length));
+        System.out.println("Usuarios repartidos en " + nuevos.length + " fragmentos (" + anteriores.size() + " usuarios)");
+    }
+
+    private static int indiceFragmento(String id, int n){
+        int h = id.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), n);
+    }
+
+    /** @return El fragmento del ID; falla si el almacén no se cargó */
+    private FragmentoUsuarios fragmento(String id){
+        FragmentoUsuarios[] f = fragmentos;
+        if (f.length == 0) throw new IllegalStateException("Almacén de usuarios no cargado");
+        return f[indiceFragmento(id, f.length)];
+    }
+
+    /** @return Número de fragmentos en los que se reparten los usuarios */
+    public int getNumeroFragmentos(){ return fragmentos.length; }
+
+    @Override
+    public Usuario get(String id){
+        return fragmentos.length == 0 ? null : fragmento(id).get(id);
+    }
+
+    @Override
+    public int size(){
+        int n = 0;
+        for (FragmentoUsuarios f : fragmentos) n += f.size();
+        return n;
+    }
+
+    /** Cada fragmento aporta su propia página; se mezclan y se recorta al límite. */
+    @Override
+    public List<Usuario> listar(String despuesDe, int limite){
+        List<Usuario> candidatos = new ArrayList<>();
+        for (FragmentoUsuarios f : fragmentos) candidatos.addAll(f.listar(despuesDe, limite));
+        return FragmentoUsuarios.pagina(candidatos, despuesDe, limite);
+    }
+
+    @Override
+    public int contar(Predicate<Usuario> filtro){
+        int n = 0;
+        for (FragmentoUsuarios f : fragmentos) n += f.contar(filtro);
+        return n;
+    }
+
+    @Override public CompletableFuture<Void> guardar(Usuario u){ return fragmento(u.getId()).guardar(u); }
+
+    @Override
+    public CompletableFuture<Void> modificar(String id, Consumer<Usuario> cambio){
+        return fragmentos.length == 0 ? null : fragmento(id).modificar(id, cambio);
+    }
+
+    @Override
+    public CompletableFuture<Void> sincronizar(){
+        return CompletableFuture.allOf(Arrays.stream(fragmentos).map(FragmentoUsuarios::sincronizar).toArray(CompletableFuture[]::new));
+    }
+
+    @Override
+    public String getEstadisticas(){
+        if (fragmentos.length == 0) return "Diario de usuarios no disponible";
+        return Arrays.stream(fragmentos).map(FragmentoUsuarios::getEstadisticas).collect(Collectors.joining("\n"));
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FragmentoUsuarios f : fragmentos) f.close();
+        compactador.shutdown();
+    }
+}
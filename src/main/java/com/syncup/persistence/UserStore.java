@@ -0,0 +1,101 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Usuario;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Motor de almacenamiento de usuarios detrás de {@code UserRepository}.
+ * <p>
+ * El repositorio se queda con la validación, las contraseñas y los índices por username y
+ * email, salvo que el motor los guarde él mismo ({@link #guardaIndices()}); el motor
+ * guarda los usuarios por ID y decide cómo llegan al disco. Hay tres:
+ * {@link SnapshotUserStore} (instantánea binaria y diario, el de la aplicación),
+ * {@link JsonUserStore} (users.json legible), {@link KvUserStore} (árbol B+ en archivo,
+ * sin cargar los usuarios en memoria) e {@link InMemoryUserStore} (sin disco, para
+ * pruebas y mediciones). Las escrituras devuelven un futuro que se completa cuando el
+ * cambio es durable, para que el repositorio espere fuera de sus candados.
+ */
+public interface UserStore extends AutoCloseable {
+
+    /**
+     * Carga los usuarios persistidos y entrega cada uno al destino. Un motor puede llamar
+     * al destino desde varios hilos a la vez. Si el motor guarda sus índices, solo entrega
+     * el último usuario dado de alta, del que el repositorio retoma su contador de IDs.
+     */
+    void cargar(Consumer<Usuario> destino) throws IOException;
+
+    /**
+     * @return true si el motor guarda los índices por username y email y rechaza en
+     *         {@link #guardar(Usuario)} los repetidos con {@link IllegalStateException}
+     */
+    default boolean guardaIndices(){ return false; }
+
+    /** @return ID del usuario con ese username (sin distinguir mayúsculas), si {@link #guardaIndices()} */
+    default String idPorUsername(String username){ return null; }
+
+    /** @return ID del usuario con ese email (sin distinguir mayúsculas), si {@link #guardaIndices()} */
+    default String idPorEmail(String email){ return null; }
+
+    /** @return El usuario con ese ID, o null si no existe */
+    Usuario get(String id);
+
+    /** @return Número de usuarios guardados */
+    int size();
+
+    /**
+     * Página de usuarios en orden de ID, para los listados de administración.
+     *
+     * @param despuesDe ID a partir del cual listar, excluido (null: desde el primero)
+     * @param limite Máximo de usuarios de la página
+     */
+    List<Usuario> listar(String despuesDe, int limite);
+
+    /**
+     * Cuenta los usuarios que cumplen el filtro en una sola pasada, para las métricas.
+     *
+     * @return Número de usuarios guardados que cumplen el filtro
+     */
+    int contar(Predicate<Usuario> filtro);
+
+    /**
+     * Guarda un usuario (alta o reemplazo). Solo lanza si rechaza el usuario sin guardarlo;
+     * una vez aceptado, cualquier fallo llega por el futuro.
+     *
+     * @return Futuro que se completa cuando el cambio está en el disco
+     */
+    CompletableFuture<Void> guardar(Usuario u);
+
+    /**
+     * Aplica un cambio a un usuario guardado, con exclusión frente a otros cambios sobre él.
+     *
+     * @return Futuro de la escritura, o null si el usuario no existe
+     */
+    CompletableFuture<Void> modificar(String id, Consumer<Usuario> cambio);
+
+    /**
+     * Anota una favorita añadida a un usuario ya guardado. Los motores que guardan las
+     * favoritas dentro del usuario no escriben nada: DataManager las lleva en su diario de
+     * relaciones y llegan con el siguiente {@link #guardar(Usuario)}.
+     *
+     * @return Futuro que se completa cuando el cambio está en el disco
+     */
+    default CompletableFuture<Void> agregarFavorita(String id, String cancion){ return CompletableFuture.completedFuture(null); }
+
+    /** Anota una favorita quitada; como {@link #agregarFavorita(String, String)}. */
+    default CompletableFuture<Void> quitarFavorita(String id, String cancion){ return CompletableFuture.completedFuture(null); }
+
+    /** @return Futuro que se completa cuando todo lo guardado hasta ahora está en el disco */
+    CompletableFuture<Void> sincronizar();
+
+    /** @return Resumen de las escrituras del motor */
+    String getEstadisticas();
+
+    /** Escribe lo pendiente y libera archivos e hilos. */
+    @Override
+    void close() throws IOException;
+}
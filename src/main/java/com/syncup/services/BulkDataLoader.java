@@ -5,8 +5,11 @@ import com.syncup.models.Cancion;
 import com.syncup.data.DataManager;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.DoubleConsumer;
 
 /**
  * Servicio para carga masiva de canciones desde archivos de texto.
@@ -16,6 +19,10 @@ public class BulkDataLoader {
     
     private DataManager dataManager;
     private static final String DEFAULT_SONGS_FILE = "bulk-data/sample-songs.txt";
+    /** Líneas por bloque de parseo e inserción */
+    static final int LINEAS_POR_BLOQUE = 1000;
+    /** Marca de fin de archivo en la cola de bloques */
+    private static final Bloque FIN = new Bloque(0);
     
     public BulkDataLoader() {
         dataManager = DataManager.getInstance();
@@ -73,6 +80,23 @@ public class BulkDataLoader {
      * RF-012: Realiza carga masiva de canciones desde archivo.
      */
     public ResultadoCargaMasiva cargarCancionesMasivas(String rutaArchivo, String adminId) {
+        return cargarCancionesMasivas(rutaArchivo, adminId, null);
+    }
+
+    /**
+     * RF-012: Realiza carga masiva de canciones desde archivo, en tres etapas encadenadas:
+     * <ol>
+     *   <li>un hilo lector recorre el archivo con un {@link BufferedReader} y lo corta en
+     *       bloques de {@value #LINEAS_POR_BLOQUE} líneas;</li>
+     *   <li>cada bloque se parsea en un pool de hilos;</li>
+     *   <li>este hilo inserta los bloques en orden con {@link DataManager#addCanciones(List)}.</li>
+     * </ol>
+     * Entre el lector y la inserción hay una cola acotada de bloques en curso: si la inserción
+     * se retrasa, el lector espera, así que la memoria no depende del tamaño del archivo.
+     *
+     * @param progreso Recibe la fracción del archivo cargada (0 a 1) tras cada bloque; puede ser null
+     */
+    public ResultadoCargaMasiva cargarCancionesMasivas(String rutaArchivo, String adminId, DoubleConsumer progreso) {
         // Verificar permisos de administrador
         Usuario usuario = dataManager.getUsuarioById(adminId);
         if (usuario == null || !usuario.isEsAdmin()) {
@@ -83,47 +107,147 @@ public class BulkDataLoader {
         // Si no se especifica archivo, usar archivo de ejemplo
         String archivo = (rutaArchivo == null || rutaArchivo.trim().isEmpty()) ? 
                         DEFAULT_SONGS_FILE : rutaArchivo;
+        Path ruta = Paths.get(archivo);
+        long tamano;
+        try {
+            tamano = Math.max(1, Files.size(ruta));
+        } catch (IOException e) {
+            return new ResultadoCargaMasiva(false, "Error leyendo archivo: " + e.getMessage(), 0, 0);
+        }
+
+        int hilos = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ExecutorService parseadores = Executors.newFixedThreadPool(hilos, r -> {
+            Thread t = new Thread(r, "carga-masiva-parseo");
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<Future<Bloque>> enCurso = new ArrayBlockingQueue<>(2 * hilos);
+        Thread lector = new Thread(() -> leerBloques(ruta, parseadores, enCurso), "carga-masiva-lector");
+        lector.setDaemon(true);
+        lector.start();
+
+        int lineasProcesadas = 0;
+        int cancionesAgregadas = 0;
+        int errores = 0;
+        try {
+            while (true) {
+                Bloque bloque = enCurso.take().get();
+                if (bloque == FIN) break;
+                cancionesAgregadas += dataManager.addCanciones(bloque.canciones);
+                lineasProcesadas += bloque.lineasProcesadas;
+                errores += bloque.errores.size();
+                if (progreso != null) progreso.accept(Math.min(1.0, (double) bloque.finBytes / tamano));
+            }
+        } catch (ExecutionException e) {
+            // El lector falló; lo insertado hasta aquí se conserva
+            return new ResultadoCargaMasiva(false, "Error leyendo archivo: " + e.getCause().getMessage(),
+                                            lineasProcesadas, cancionesAgregadas);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResultadoCargaMasiva(false, "Carga interrumpida", lineasProcesadas, cancionesAgregadas);
+        } finally {
+            lector.interrupt();
+            parseadores.shutdownNow();
+        }
+        if (progreso != null) progreso.accept(1.0);
+
+        String mensaje = String.format("Carga completada: %d canciones agregadas de %d líneas procesadas",
+                                      cancionesAgregadas, lineasProcesadas);
         
+        if (errores > 0) {
+            mensaje += "\nErrores: " + errores;
+        }
+        
+        return new ResultadoCargaMasiva(true, mensaje, lineasProcesadas, cancionesAgregadas);
+    }
+
+    /**
+     * Etapa de lectura: corta el archivo en bloques, encarga el parseo de cada uno al pool y
+     * encola su futuro en orden; termina con {@link #FIN} (o con un futuro fallido si la
+     * lectura falla).
+     */
+    private void leerBloques(Path ruta, ExecutorService parseadores, BlockingQueue<Future<Bloque>> enCurso) {
         try {
-            List<String> lineas = Files.readAllLines(Paths.get(archivo));
-            
-            int lineasProcesadas = 0;
-            int cancionesAgregadas = 0;
-            List<String> errores = new ArrayList<>();
-            
-            for (int i = 0; i < lineas.size(); i++) {
-                String linea = lineas.get(i).trim();
-                if (linea.isEmpty()) continue;
-                
-                try {
-                    Cancion cancion = parsearLineaCancion(linea);
-                    if (cancion != null) {
-                        boolean agregada = dataManager.addCancion(cancion);
-                        if (agregada) {
-                            cancionesAgregadas++;
-                        }
+            try (BufferedReader in = Files.newBufferedReader(ruta, StandardCharsets.UTF_8)) {
+                List<String> lineas = new ArrayList<>(LINEAS_POR_BLOQUE);
+                int primeraLinea = 1;
+                // Bytes leídos, en la misma unidad que Files.size (se supone un '\n' por línea)
+                long bytes = 0;
+                String linea;
+                while ((linea = in.readLine()) != null) {
+                    lineas.add(linea);
+                    bytes += bytesUtf8(linea) + 1;
+                    if (lineas.size() == LINEAS_POR_BLOQUE) {
+                        encolarParseo(lineas, primeraLinea, bytes, parseadores, enCurso);
+                        primeraLinea += lineas.size();
+                        lineas = new ArrayList<>(LINEAS_POR_BLOQUE);
                     }
-                    lineasProcesadas++;
-                    
-                } catch (Exception e) {
-                    errores.add("Línea " + (i+1) + ": " + e.getMessage());
                 }
+                if (!lineas.isEmpty()) encolarParseo(lineas, primeraLinea, bytes, parseadores, enCurso);
+                enCurso.put(CompletableFuture.completedFuture(FIN));
+            } catch (IOException | RuntimeException e) {
+                enCurso.put(CompletableFuture.failedFuture(e));
             }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // La inserción terminó antes (interrupción o fallo): no queda nadie esperando
+        }
+    }
+
+    private void encolarParseo(List<String> lineas, int primeraLinea, long finBytes,
+                               ExecutorService parseadores, BlockingQueue<Future<Bloque>> enCurso) throws InterruptedException {
+        enCurso.put(parseadores.submit(() -> parsearBloque(lineas, primeraLinea, finBytes)));
+    }
+
+    /** @return Longitud de la línea en UTF-8, sin codificarla */
+    static int bytesUtf8(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n++;
+            else if (c < 0x800) n += 2;
+            else if (Character.isSurrogate(c)) n += 2; // cada mitad de un par: 4 bytes en total
+            else n += 3;
+        }
+        return n;
+    }
+
+    /**
+     * Etapa de parseo: convierte las líneas de un bloque en canciones. Se saltan las líneas
+     * vacías y los comentarios ("#").
+     */
+    private Bloque parsearBloque(List<String> lineas, int primeraLinea, long finBytes) {
+        Bloque bloque = new Bloque(finBytes);
+        for (int i = 0; i < lineas.size(); i++) {
+            String linea = lineas.get(i).trim();
+            if (linea.isEmpty() || linea.startsWith("#")) continue;
             
-            String mensaje = String.format("Carga completada: %d canciones agregadas de %d líneas procesadas",
-                                          cancionesAgregadas, lineasProcesadas);
-            
-            if (!errores.isEmpty()) {
-                mensaje += "\nErrores: " + errores.size();
+            try {
+                Cancion cancion = parsearLineaCancion(linea);
+                if (cancion != null) bloque.canciones.add(cancion);
+                bloque.lineasProcesadas++;
+                
+            } catch (Exception e) {
+                bloque.errores.add("Línea " + (primeraLinea + i) + ": " + e.getMessage());
             }
-            
-            return new ResultadoCargaMasiva(true, mensaje, lineasProcesadas, cancionesAgregadas);
-            
-        } catch (IOException e) {
-            return new ResultadoCargaMasiva(false, "Error leyendo archivo: " + e.getMessage(), 0, 0);
         }
+        return bloque;
     }
-    
+
+    /**
+     * Canciones parseadas de un bloque de líneas y posición en bytes en el archivo al final
+     * del bloque.
+     */
+    private static final class Bloque {
+        final List<Cancion> canciones = new ArrayList<>();
+        final List<String> errores = new ArrayList<>();
+        final long finBytes;
+        int lineasProcesadas;
+
+        Bloque(long finBytes) {
+            this.finBytes = finBytes;
+        }
+    }
+
     /**
      * Parsea una línea del archivo y crea una canción.
      * Formato esperado: titulo\tartista\talbum\tgenero\taño[\tduracion]
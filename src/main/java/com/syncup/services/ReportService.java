@@ -43,7 +43,7 @@ public class ReportService {
         try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
             writer.println("Titulo,Artista,Genero,Año,Album,Duracion");
             
-            for (String cancionId : usuario.getCancionesFavoritas()) {
+            for (String cancionId : usuario.getVistaCancionesFavoritas()) {
                 Cancion cancion = dataManager.getCancionById(cancionId);
                 if (cancion != null) {
                     writer.println(String.format("%s,%s,%s,%d,%s,%d",
@@ -72,7 +72,8 @@ public class ReportService {
         try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
             writer.println("ID,Titulo,Artista,Genero,Año,Album,Duracion,Reproducciones,Favoritos");
             
-            for (Cancion cancion : dataManager.getAllCanciones()) {
+            // Recorrido sin copiar el catálogo: en el modo mapeado cada canción se decodifica al escribirla
+            for (Cancion cancion : (Iterable<Cancion>) dataManager.streamCanciones()::iterator) {
                 writer.println(String.format("%s,%s,%s,%s,%d,%s,%d,%d,%d",
                     cancion.getId(),
                     escapeCsv(cancion.getTitulo()),
@@ -95,12 +96,7 @@ public class ReportService {
      * Genera análisis de géneros más populares - Java 11 compatible.
      */
     public Map<String, Integer> analizarGeneros() {
-        Map<String, Integer> generos = new java.util.HashMap<>();
-        
-        for (Cancion cancion : dataManager.getAllCanciones()) {
-            String genero = cancion.getGenero();
-            generos.put(genero, generos.getOrDefault(genero, 0) + 1);
-        }
+        Map<String, Integer> generos = dataManager.getCatalogoColumnar().contarPorGenero();
         
         // Java 11 compatible - usar LinkedHashMap constructor
         Map<String, Integer> resultado = new LinkedHashMap<>();
@@ -115,12 +111,7 @@ public class ReportService {
      * Analiza los artistas más populares por número de canciones - Java 11 compatible.
      */
     public Map<String, Integer> analizarArtistasPopulares(int limite) {
-        Map<String, Integer> artistas = new java.util.HashMap<>();
-        
-        for (Cancion cancion : dataManager.getAllCanciones()) {
-            String artista = cancion.getArtista();
-            artistas.put(artista, artistas.getOrDefault(artista, 0) + 1);
-        }
+        Map<String, Integer> artistas = dataManager.getCatalogoColumnar().contarPorArtista();
         
         // Java 11 compatible - usar LinkedHashMap constructor  
         Map<String, Integer> resultado = new LinkedHashMap<>();
@@ -1,7 +1,9 @@
 package com.syncup.services;
 
 import com.syncup.models.Cancion;
+import com.syncup.data.BusEventosCatalogo;
 import com.syncup.data.DataManager;
+import com.syncup.data.EventoCatalogo;
 import com.syncup.structures.TrieAutocompletado;
 
 import java.util.*;
@@ -31,12 +33,27 @@ public class SearchService {
     /** Timeout para búsquedas en millisegundos */
     private static final long SEARCH_TIMEOUT_MS = 5000;
     
+    /**
+     * Catálogo buscable, mantenido con los eventos del DataManager en lugar de copiarlo en
+     * cada búsqueda. Queda vacío en el modo mapeado, donde se recorre el archivo.
+     */
+    private final ConcurrentHashMap<String, Cancion> catalogo = new ConcurrentHashMap<>();
+    
+    /** Oyente registrado en el bus de eventos del catálogo */
+    private final BusEventosCatalogo.OyenteCatalogo oyenteCatalogo;
+    
     /**
      * Constructor del servicio de búsqueda.
      */
     public SearchService() {
         this.dataManager = DataManager.getInstance();
         this.threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+        this.oyenteCatalogo = dataManager.getEventos().suscribir(this::alCambiarCatalogo);
+        if (!dataManager.isCatalogoMapeado()) {
+            for (Cancion cancion : dataManager.getAllCanciones()) {
+                catalogo.putIfAbsent(cancion.getId(), cancion);
+            }
+        }
         
         System.out.println("SearchService inicializado con " + THREAD_POOL_SIZE + " hilos");
     }
@@ -165,15 +182,43 @@ public class SearchService {
      */
     public List<Cancion> busquedaSimple(String termino) {
         if (termino == null || termino.trim().isEmpty()) {
-            return dataManager.getAllCanciones();
+            return canciones().collect(Collectors.toList());
         }
         
-        return dataManager.getAllCanciones().stream()
+        return canciones()
             .filter(cancion -> cancion.coincideConBusqueda(termino))
             .sorted((a, b) -> Double.compare(b.calcularPuntajePopularidad(), a.calcularPuntajePopularidad()))
             .collect(Collectors.toList());
     }
     
+    /**
+     * @return Canciones donde buscar: la copia mantenida por eventos o, en el modo mapeado,
+     *         un recorrido que decodifica el archivo sin retener lo que no coincide
+     */
+    private java.util.stream.Stream<Cancion> canciones() {
+        return dataManager.isCatalogoMapeado() ? dataManager.streamCanciones() : catalogo.values().stream();
+    }
+    
+    /**
+     * Aplica al catálogo buscable un alta, baja o actualización de canción.
+     * 
+     * @param evento Evento publicado por el DataManager
+     */
+    private void alCambiarCatalogo(EventoCatalogo evento) {
+        if (dataManager.isCatalogoMapeado()) return;
+        switch (evento.getTipo()) {
+            case CANCION_AGREGADA:
+            case CANCION_ACTUALIZADA:
+                catalogo.put(evento.getCancion().getId(), evento.getCancion());
+                break;
+            case CANCION_ELIMINADA:
+                catalogo.remove(evento.getCancion().getId());
+                break;
+            default:
+                break;
+        }
+    }
+    
     /**
      * Combina los resultados de las búsquedas paralelas según la lógica especificada.
      * 
@@ -266,6 +311,7 @@ public class SearchService {
      * Cierra el servicio de búsqueda y libera recursos.
      */
     public void cerrarServicio() {
+        dataManager.getEventos().desuscribir(oyenteCatalogo);
         if (threadPool != null && !threadPool.isShutdown()) {
             threadPool.shutdown();
             try {
@@ -294,7 +340,7 @@ public class SearchService {
         
         @Override
         public List<Cancion> call() {
-            return dataManager.getAllCanciones().stream()
+            return canciones()
                 .filter(cancion -> cancion.getTitulo().toLowerCase().contains(titulo))
                 .collect(Collectors.toList());
         }
@@ -312,7 +358,7 @@ public class SearchService {
         
         @Override
         public List<Cancion> call() {
-            return dataManager.getAllCanciones().stream()
+            return canciones()
                 .filter(cancion -> 
                     cancion.getArtista().toLowerCase().contains(artista) ||
                     cancion.getArtistasColaboradores().stream()
@@ -334,7 +380,7 @@ public class SearchService {
         
         @Override
         public List<Cancion> call() {
-            return dataManager.getAllCanciones().stream()
+            return canciones()
                 .filter(cancion -> cancion.getGenero().toLowerCase().contains(genero))
                 .collect(Collectors.toList());
         }
@@ -354,9 +400,11 @@ public class SearchService {
         
         @Override
         public List<Cancion> call() {
-            return dataManager.getAllCanciones().stream()
-                .filter(cancion -> cancion.getAnio() >= anioInicio && cancion.getAnio() <= anioFin)
-                .collect(Collectors.toList());
+            // El catálogo columnar solo cubre la capa en memoria en el modo mapeado
+            if (dataManager.isCatalogoMapeado()) {
+                return canciones().filter(c -> c.getAnio() >= anioInicio && c.getAnio() <= anioFin).collect(Collectors.toList());
+            }
+            return dataManager.getCatalogoColumnar().filtrarPorAnio(anioInicio, anioFin);
         }
     }
     
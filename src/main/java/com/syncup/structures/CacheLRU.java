@@ -0,0 +1,273 @@
+package com.syncup.structures;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache concurrente con tamaño máximo, desalojo LRU y expiración por tiempo de vida.
+ * <p>
+ * Las entradas viven en un {@link LinkedHashMap} en orden de acceso protegido por el
+ * monitor de la cache; el monitor solo se mantiene durante operaciones en memoria, nunca
+ * mientras se calcula un valor. Los fallos concurrentes sobre la misma clave se
+ * coalescen: el primer hilo calcula y el resto espera el mismo {@link CompletableFuture}.
+ * Ese futuro hace de generación de su clave: invalidar la clave lo retira, y un cálculo
+ * cuyo futuro ya no es el vigente no guarda su valor; las demás claves no se ven afectadas.
+ * Un hilo demonio compartido purga periódicamente las entradas expiradas; la tarea solo
+ * guarda una referencia débil a la cache, así que una cache sin {@link #cerrar()} puede
+ * recolectarse y su tarea se cancela sola.
+ *
+ * @param <K> Tipo de la clave
+ * @param <V> Tipo del valor (debería ser inmutable, pues se comparte entre hilos)
+ */
+public class CacheLRU<K, V> {
+
+    /** Planificador compartido por todas las caches para purgar expirados */
+    private static final ScheduledExecutorService PURGADOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "syncup-cache-purga");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Número máximo de entradas */
+    private final int maxEntradas;
+
+    /** Tiempo de vida de cada entrada en milisegundos */
+    private final long ttlMillis;
+
+    /** Entradas en orden de acceso (la primera es la menos usada recientemente) */
+    private final LinkedHashMap<K, Entrada<V>> entradas;
+
+    /**
+     * Cálculos en curso, para coalescer fallos concurrentes de la misma clave. Solo se
+     * modifican junto con {@link #entradas} bajo el monitor, salvo la retirada del propio
+     * futuro al terminar.
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> enCurso = new ConcurrentHashMap<>();
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong coalescidos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+    private final AtomicLong expiraciones = new AtomicLong();
+
+    /** Tarea periódica de purga */
+    private final ScheduledFuture<?> tareaPurga;
+
+    /**
+     * Purga periódica que no retiene la cache: si se recolectó sin cerrarla, la tarea se
+     * cancela en su siguiente ejecución.
+     */
+    private static final class Purga implements Runnable {
+        private final WeakReference<CacheLRU<?, ?>> cache;
+        private volatile ScheduledFuture<?> tarea;
+
+        Purga(CacheLRU<?, ?> cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void run() {
+            CacheLRU<?, ?> c = cache.get();
+            if (c != null) {
+                c.purgarExpiradas();
+            } else if (tarea != null) {
+                tarea.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Valor cacheado con su instante de creación.
+     */
+    private static final class Entrada<V> {
+        final V valor;
+        final long creadoEn;
+
+        Entrada(V valor, long creadoEn) {
+            this.valor = valor;
+            this.creadoEn = creadoEn;
+        }
+    }
+
+    /**
+     * Crea una cache con purga periódica cada mitad del tiempo de vida.
+     *
+     * @param maxEntradas Número máximo de entradas (mayor que cero)
+     * @param ttlMillis Tiempo de vida de cada entrada en milisegundos (mayor que cero)
+     */
+    public CacheLRU(int maxEntradas, long ttlMillis) {
+        if (maxEntradas <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Tamaño y tiempo de vida deben ser positivos");
+        }
+        this.maxEntradas = maxEntradas;
+        this.ttlMillis = ttlMillis;
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true);
+        long periodo = Math.max(1, ttlMillis / 2);
+        Purga purga = new Purga(this);
+        this.tareaPurga = PURGADOR.scheduleAtFixedRate(purga, periodo, periodo, TimeUnit.MILLISECONDS);
+        purga.tarea = tareaPurga;
+    }
+
+    /**
+     * Obtiene el valor de una clave sin calcularlo.
+     *
+     * @param clave Clave a buscar
+     * @return Valor vigente o null si no existe o expiró
+     */
+    public V get(K clave) {
+        synchronized (this) {
+            Entrada<V> e = entradas.get(clave);
+            if (e != null && !expirada(e, System.currentTimeMillis())) {
+                aciertos.incrementAndGet();
+                return e.valor;
+            }
+            if (e != null) {
+                entradas.remove(clave);
+                expiraciones.incrementAndGet();
+            }
+        }
+        fallos.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Obtiene el valor de una clave o lo calcula si falta. Si otro hilo ya está
+     * calculando la misma clave, espera ese resultado en lugar de repetir el cálculo.
+     *
+     * @param clave Clave a buscar
+     * @param calculo Función que produce el valor (se ejecuta fuera del monitor)
+     * @return Valor cacheado o recién calculado
+     */
+    public V obtener(K clave, Supplier<V> calculo) {
+        V valor = get(clave);
+        if (valor != null) return valor;
+
+        CompletableFuture<V> propio = new CompletableFuture<>();
+        CompletableFuture<V> existente = enCurso.putIfAbsent(clave, propio);
+        if (existente != null) {
+            coalescidos.incrementAndGet();
+            return esperar(existente);
+        }
+        try {
+            valor = calculo.get();
+            if (valor != null) {
+                synchronized (this) {
+                    // Si la clave se invalidó durante el cálculo, su futuro ya no es el vigente
+                    if (enCurso.get(clave) == propio) put(clave, valor);
+                }
+            }
+            propio.complete(valor);
+            return valor;
+        } catch (RuntimeException | Error ex) {
+            propio.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            enCurso.remove(clave, propio);
+        }
+    }
+
+    private V esperar(CompletableFuture<V> futuro) {
+        try {
+            return futuro.join();
+        } catch (CompletionException ex) {
+            Throwable causa = ex.getCause();
+            if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+            if (causa instanceof Error) throw (Error) causa;
+            throw ex;
+        }
+    }
+
+    /**
+     * Inserta o reemplaza un valor, desalojando la entrada menos usada si se supera
+     * el tamaño máximo.
+     *
+     * @param clave Clave
+     * @param valor Valor (no nulo)
+     */
+    public synchronized void put(K clave, V valor) {
+        entradas.put(clave, new Entrada<>(valor, System.currentTimeMillis()));
+        while (entradas.size() > maxEntradas) {
+            Iterator<Map.Entry<K, Entrada<V>>> it = entradas.entrySet().iterator();
+            it.next();
+            it.remove();
+            desalojos.incrementAndGet();
+        }
+    }
+
+    /**
+     * Elimina una clave de la cache. Un cálculo en curso de esa clave no guardará su valor;
+     * los de otras claves no se ven afectados.
+     *
+     * @param clave Clave a invalidar
+     */
+    public synchronized void invalidar(K clave) {
+        enCurso.remove(clave);
+        entradas.remove(clave);
+    }
+
+    /**
+     * Elimina todas las entradas de la cache y descarta los cálculos en curso.
+     */
+    public synchronized void invalidarTodo() {
+        enCurso.clear();
+        entradas.clear();
+    }
+
+    /**
+     * Elimina las entradas cuyo tiempo de vida ya pasó. Se ejecuta periódicamente en
+     * segundo plano, pero también puede invocarse manualmente.
+     */
+    public synchronized void purgarExpiradas() {
+        long ahora = System.currentTimeMillis();
+        Iterator<Entrada<V>> it = entradas.values().iterator();
+        while (it.hasNext()) {
+            if (expirada(it.next(), ahora)) {
+                it.remove();
+                expiraciones.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean expirada(Entrada<V> e, long ahora) {
+        return ahora - e.creadoEn > ttlMillis;
+    }
+
+    /**
+     * Detiene la purga periódica. La cache sigue funcionando, pero los expirados solo
+     * se eliminan al consultarlos.
+     */
+    public void cerrar() {
+        tareaPurga.cancel(false);
+    }
+
+    /**
+     * @return Número de entradas actuales
+     */
+    public synchronized int size() {
+        return entradas.size();
+    }
+
+    public long getAciertos() { return aciertos.get(); }
+    public long getFallos() { return fallos.get(); }
+    public long getCoalescidos() { return coalescidos.get(); }
+    public long getDesalojos() { return desalojos.get(); }
+    public long getExpiraciones() { return expiraciones.get(); }
+
+    /**
+     * Obtiene las métricas de la cache en texto.
+     *
+     * @return String con tamaño, aciertos, fallos, coalescidos, desalojos y expiraciones
+     */
+    public String getEstadisticas() {
+        long a = aciertos.get(), f = fallos.get();
+        double tasa = a + f > 0 ? (double) a / (a + f) : 0.0;
+        return String.format(
+            "Cache: %d/%d entradas, aciertos=%d, fallos=%d (tasa %.1f%%), coalescidos=%d, desalojos=%d, expiraciones=%d",
+            size(), maxEntradas, a, f, tasa * 100, coalescidos.get(), desalojos.get(), expiraciones.get());
+    }
+}
@@ -0,0 +1,330 @@
+package com.syncup.structures;
+
+import java.util.Arrays;
+
+/**
+ * Lista de adyacencia comprimida (Compressed Sparse Row) para grafos no dirigidos
+ * con pesos.
+ * <p>
+ * La parte congelada guarda todas las aristas en tres arreglos planos:
+ * {@code offsets[n]..offsets[n+1]} delimita la fila del nodo {@code n}, y
+ * {@code vecinos}/{@code pesos} contienen el ordinal del vecino y el peso de cada
+ * arista dirigida. Cada arista ocupa 8 bytes (int + float) frente a los ~40 bytes
+ * de un objeto por arista. Las filas se ordenan por ordinal de vecino para poder
+ * localizar una arista con búsqueda binaria.
+ * <p>
+ * Los cambios recientes se registran en un overlay mutable: las aristas nuevas van
+ * a filas pequeñas por nodo y las eliminadas de la parte congelada se marcan con
+ * peso 0 (lápida). {@link #compactar()} vuelve a fusionar todo en arreglos planos.
+ */
+public class GrafoCSR {
+
+    /** Número de aristas en overlay a partir del cual conviene compactar */
+    private static final int UMBRAL_COMPACTACION = 4096;
+
+    /** Inicio de la fila de cada nodo congelado (longitud nodosCongelados + 1) */
+    private int[] offsets;
+
+    /** Ordinal del vecino de cada arista dirigida congelada */
+    private int[] vecinos;
+
+    /** Peso de cada arista dirigida congelada (0 indica arista eliminada) */
+    private float[] pesos;
+
+    /** Número de nodos cubiertos por la parte congelada */
+    private int nodosCongelados;
+
+    /** Número total de nodos conocidos (congelados + agregados después) */
+    private int numeroNodos;
+
+    /** Aristas agregadas después de congelar, indexadas por nodo origen */
+    private FilaOverlay[] overlay;
+
+    /** Número de aristas dirigidas vivas en el overlay */
+    private int aristasOverlay;
+
+    /** Número de aristas dirigidas congeladas marcadas como eliminadas */
+    private int lapidas;
+
+    /**
+     * Visitante de aristas sin boxing, usado para recorrer la fila de un nodo.
+     */
+    @FunctionalInterface
+    public interface VisitanteArista {
+        /**
+         * @param vecino Ordinal del nodo vecino
+         * @param peso Peso de la arista
+         */
+        void visitar(int vecino, float peso);
+    }
+
+    /**
+     * Fila mutable de aristas recientes de un nodo.
+     */
+    private static final class FilaOverlay {
+        int[] vecinos = new int[4];
+        float[] pesos = new float[4];
+        int size;
+
+        void agregar(int v, float p) {
+            for (int i = 0; i < size; i++) {
+                if (vecinos[i] == v) { pesos[i] = p; return; }
+            }
+            if (size == vecinos.length) {
+                vecinos = Arrays.copyOf(vecinos, size * 2);
+                pesos = Arrays.copyOf(pesos, size * 2);
+            }
+            vecinos[size] = v;
+            pesos[size] = p;
+            size++;
+        }
+
+        boolean remover(int v) {
+            for (int i = 0; i < size; i++) {
+                if (vecinos[i] == v) {
+                    size--;
+                    vecinos[i] = vecinos[size];
+                    pesos[i] = pesos[size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Crea un grafo vacío con el número de nodos indicado.
+     *
+     * @param numeroNodos Número inicial de nodos
+     */
+    public GrafoCSR(int numeroNodos) {
+        this.offsets = new int[numeroNodos + 1];
+        this.vecinos = new int[0];
+        this.pesos = new float[0];
+        this.nodosCongelados = numeroNodos;
+        this.numeroNodos = numeroNodos;
+        this.overlay = new FilaOverlay[Math.max(1, numeroNodos)];
+    }
+
+    /**
+     * Construye la parte congelada a partir de una lista de aristas no dirigidas.
+     * Cada arista (a, b, p) se almacena en ambas direcciones.
+     * Complejidad: O(n + m log d) donde d es el grado máximo.
+     *
+     * @param numeroNodos Número de nodos
+     * @param origen Ordinal de origen de cada arista
+     * @param destino Ordinal de destino de cada arista
+     * @param peso Peso de cada arista
+     * @param numeroAristas Número de aristas válidas en los arreglos
+     * @return Grafo congelado sin overlay
+     */
+    public static GrafoCSR construir(int numeroNodos, int[] origen, int[] destino, float[] peso, int numeroAristas) {
+        GrafoCSR g = new GrafoCSR(numeroNodos);
+        int[] grado = new int[numeroNodos + 1];
+        for (int i = 0; i < numeroAristas; i++) {
+            grado[origen[i] + 1]++;
+            grado[destino[i] + 1]++;
+        }
+        for (int i = 0; i < numeroNodos; i++) grado[i + 1] += grado[i];
+        int[] cursor = Arrays.copyOf(grado, numeroNodos);
+        int[] vec = new int[numeroAristas * 2];
+        float[] pes = new float[numeroAristas * 2];
+        for (int i = 0; i < numeroAristas; i++) {
+            int a = origen[i], b = destino[i];
+            vec[cursor[a]] = b; pes[cursor[a]++] = peso[i];
+            vec[cursor[b]] = a; pes[cursor[b]++] = peso[i];
+        }
+        for (int n = 0; n < numeroNodos; n++) ordenarFila(vec, pes, grado[n], grado[n + 1]);
+        g.offsets = grado;
+        g.vecinos = vec;
+        g.pesos = pes;
+        return g;
+    }
+
+    /** Ordena una fila por ordinal de vecino (inserción; las filas suelen ser cortas). */
+    private static void ordenarFila(int[] vec, float[] pes, int desde, int hasta) {
+        for (int i = desde + 1; i < hasta; i++) {
+            int v = vec[i]; float p = pes[i]; int j = i - 1;
+            while (j >= desde && vec[j] > v) { vec[j + 1] = vec[j]; pes[j + 1] = pes[j]; j--; }
+            vec[j + 1] = v; pes[j + 1] = p;
+        }
+    }
+
+    /**
+     * Registra un nodo nuevo sin aristas. Los nodos posteriores a la congelación
+     * solo tienen aristas en el overlay hasta la siguiente compactación.
+     *
+     * @return Ordinal asignado al nodo
+     */
+    public int agregarNodo() {
+        if (numeroNodos == overlay.length) overlay = Arrays.copyOf(overlay, numeroNodos * 2);
+        return numeroNodos++;
+    }
+
+    /**
+     * Agrega o actualiza una arista no dirigida en el overlay.
+     *
+     * @param a Ordinal de un extremo
+     * @param b Ordinal del otro extremo
+     * @param peso Peso de la arista (debe ser positivo)
+     */
+    public void agregarArista(int a, int b, float peso) {
+        if (a == b || peso <= 0f) return;
+        removerArista(a, b);
+        filaOverlay(a).agregar(b, peso);
+        filaOverlay(b).agregar(a, peso);
+        aristasOverlay += 2;
+    }
+
+    /**
+     * Elimina una arista no dirigida, ya sea del overlay o de la parte congelada.
+     *
+     * @param a Ordinal de un extremo
+     * @param b Ordinal del otro extremo
+     * @return true si la arista existía
+     */
+    public boolean removerArista(int a, int b) {
+        boolean existia = false;
+        if (marcarLapida(a, b)) { marcarLapida(b, a); existia = true; }
+        if (overlay[a] != null && overlay[a].remover(b)) {
+            if (overlay[b] != null) overlay[b].remover(a);
+            aristasOverlay -= 2;
+            existia = true;
+        }
+        return existia;
+    }
+
+    /**
+     * Elimina todas las aristas de un nodo.
+     *
+     * @param n Ordinal del nodo
+     */
+    public void removerAristasDe(int n) {
+        if (n < nodosCongelados) {
+            for (int i = offsets[n]; i < offsets[n + 1]; i++) {
+                if (pesos[i] > 0f) { marcarLapida(vecinos[i], n); pesos[i] = 0f; lapidas++; }
+            }
+        }
+        FilaOverlay fila = overlay[n];
+        if (fila != null) {
+            for (int i = 0; i < fila.size; i++) {
+                FilaOverlay otra = overlay[fila.vecinos[i]];
+                if (otra != null) otra.remover(n);
+            }
+            aristasOverlay -= 2 * fila.size;
+            overlay[n] = null;
+        }
+    }
+
+    private boolean marcarLapida(int a, int b) {
+        if (a >= nodosCongelados) return false;
+        int i = Arrays.binarySearch(vecinos, offsets[a], offsets[a + 1], b);
+        if (i < 0 || pesos[i] <= 0f) return false;
+        pesos[i] = 0f;
+        lapidas++;
+        return true;
+    }
+
+    private FilaOverlay filaOverlay(int n) {
+        FilaOverlay f = overlay[n];
+        if (f == null) { f = new FilaOverlay(); overlay[n] = f; }
+        return f;
+    }
+
+    /**
+     * Recorre las aristas vivas de un nodo: primero la fila congelada (contigua
+     * en memoria) y después el overlay.
+     *
+     * @param n Ordinal del nodo
+     * @param visitante Receptor de cada arista
+     */
+    public void recorrerVecinos(int n, VisitanteArista visitante) {
+        if (n < nodosCongelados) {
+            final int[] vec = vecinos; final float[] pes = pesos;
+            for (int i = offsets[n], fin = offsets[n + 1]; i < fin; i++) {
+                if (pes[i] > 0f) visitante.visitar(vec[i], pes[i]);
+            }
+        }
+        FilaOverlay fila = n < overlay.length ? overlay[n] : null;
+        if (fila != null) {
+            for (int i = 0; i < fila.size; i++) visitante.visitar(fila.vecinos[i], fila.pesos[i]);
+        }
+    }
+
+    /**
+     * Indica si el overlay ha crecido lo suficiente como para compactar.
+     *
+     * @return true si conviene llamar a {@link #compactar()}
+     */
+    public boolean requiereCompactacion() {
+        return aristasOverlay + lapidas > Math.max(UMBRAL_COMPACTACION, vecinos.length / 4);
+    }
+
+    /**
+     * Fusiona el overlay y elimina las lápidas, dejando todas las aristas en la
+     * parte congelada.
+     */
+    public void compactar() {
+        int[] nuevosOffsets = new int[numeroNodos + 1];
+        for (int n = 0; n < numeroNodos; n++) {
+            int grado = 0;
+            if (n < nodosCongelados) {
+                for (int i = offsets[n]; i < offsets[n + 1]; i++) if (pesos[i] > 0f) grado++;
+            }
+            if (overlay[n] != null) grado += overlay[n].size;
+            nuevosOffsets[n + 1] = nuevosOffsets[n] + grado;
+        }
+        int[] vec = new int[nuevosOffsets[numeroNodos]];
+        float[] pes = new float[vec.length];
+        for (int n = 0; n < numeroNodos; n++) {
+            int k = nuevosOffsets[n];
+            if (n < nodosCongelados) {
+                for (int i = offsets[n]; i < offsets[n + 1]; i++) {
+                    if (pesos[i] > 0f) { vec[k] = vecinos[i]; pes[k++] = pesos[i]; }
+                }
+            }
+            FilaOverlay fila = overlay[n];
+            if (fila != null) {
+                for (int i = 0; i < fila.size; i++) { vec[k] = fila.vecinos[i]; pes[k++] = fila.pesos[i]; }
+            }
+            ordenarFila(vec, pes, nuevosOffsets[n], nuevosOffsets[n + 1]);
+        }
+        offsets = nuevosOffsets;
+        vecinos = vec;
+        pesos = pes;
+        nodosCongelados = numeroNodos;
+        overlay = new FilaOverlay[Math.max(1, numeroNodos)];
+        aristasOverlay = 0;
+        lapidas = 0;
+    }
+
+    /**
+     * @return Número de nodos del grafo
+     */
+    public int getNumeroNodos() {
+        return numeroNodos;
+    }
+
+    /**
+     * @return Número de aristas dirigidas vivas (cada arista no dirigida cuenta dos veces)
+     */
+    public int getNumeroAristasDirigidas() {
+        return vecinos.length - lapidas + aristasOverlay;
+    }
+
+    /**
+     * @return Número de aristas dirigidas pendientes en el overlay
+     */
+    public int getAristasOverlay() {
+        return aristasOverlay;
+    }
+
+    /**
+     * Estima los bytes ocupados por los arreglos de la parte congelada.
+     *
+     * @return Bytes aproximados de offsets, vecinos y pesos
+     */
+    public long getBytesCongelados() {
+        return 4L * offsets.length + 4L * vecinos.length + 4L * pesos.length;
+    }
+}
@@ -1,89 +1,265 @@
 package com.syncup.structures;
 
 import com.syncup.models.Cancion;
+import com.syncup.models.Ordinales;
 import com.syncup.models.Usuario;
 import java.util.*;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Grafo ponderado de similitud entre usuarios. Las aristas viven en un {@link GrafoCSR}
+ * indexado por ordinales densos; los cambios posteriores a {@link #calcularSimilitudes()}
+ * van al overlay mutable del CSR hasta la siguiente compactación.
+ * <p>
+ * Un cambio de favoritos solo descarta los vecinos cacheados y las filas de la tabla KNN
+ * del usuario y de sus vecinos directos (antes y después del cambio); esas filas se
+ * resuelven con la búsqueda hasta que el CSR pide compactarse, y entonces la tabla se
+ * reconstruye entera. Hasta ese momento los vecinos a varios saltos de otros usuarios
+ * pueden no reflejar el cambio.
+ */
 public class GrafoDeSimilitud {
-    private final Map<String, List<Arista>> grafo = new java.util.HashMap<String, List<Arista>>();
-    private final Map<String, Usuario> usuarios = new java.util.HashMap<String, Usuario>();
-    private final Map<String, Cancion> canciones = new java.util.HashMap<String, Cancion>();
+    /** Valor de {@code maxSaltos} que desactiva el límite de profundidad */
+    public static final int SIN_LIMITE_SALTOS = -1;
+    private static final float UMBRAL_SIMILITUD = 0.1f;
+    private final Map<String, Integer> ordinales = new HashMap<String, Integer>();
+    private final List<Usuario> usuariosPorOrdinal = new ArrayList<Usuario>();
+    /** Canciones indexadas por su ordinal global ({@link Ordinales#CANCIONES}) */
+    private Cancion[] cancionesPorOrdinal = new Cancion[64];
+    private int numeroCanciones = 0;
+    /** Características de cada nodo como ordinales ordenados: favoritas, géneros y artistas */
+    private final List<int[]> favoritasPorNodo = new ArrayList<>(), generosPorNodo = new ArrayList<>(), artistasPorNodo = new ArrayList<>();
+    private GrafoCSR grafo = new GrafoCSR(0);
     private int numeroNodos = 0;
-    private int numeroAristas = 0;
+    /** Tabla KNN precalculada; null si no existe o quedó obsoleta */
+    private volatile TablaVecinos tablaVecinos;
+    /** Ordinales cuya fila de la tabla KNN no refleja un cambio posterior a su construcción */
+    private final BitSet filasObsoletas = new BitSet();
+    /**
+     * Vecinos ya calculados por ordinal de usuario, sellados con la versión de las aristas:
+     * un camino de máxima similitud puede pasar por cualquier nodo cambiado, así que toda
+     * entrada anterior al último cambio se recalcula.
+     */
+    private final Map<Integer, VecinosCacheados> cacheVecinos = new java.util.concurrent.ConcurrentHashMap<>();
+    /** Cambios de aristas aplicados; sella las entradas de {@link #cacheVecinos} */
+    private volatile long versionAristas;
 
-    public void agregarUsuario(Usuario u){ if(u==null||usuarios.containsKey(u.getId())) return; usuarios.put(u.getId(),u); grafo.put(u.getId(), new ArrayList<>()); numeroNodos++; }
-    public void agregarCancion(Cancion c){ if(c!=null) canciones.putIfAbsent(c.getId(), c); }
+    public void agregarUsuario(Usuario u){ if(u==null||ordinales.containsKey(u.getId())) return; ordinales.put(u.getId(), numeroNodos); usuariosPorOrdinal.add(u); favoritasPorNodo.add(null); generosPorNodo.add(null); artistasPorNodo.add(null); grafo.agregarNodo(); numeroNodos++; }
+    public void agregarCancion(Cancion c){ if(c==null) return; int o=c.getOrdinal(); if(o>=cancionesPorOrdinal.length) cancionesPorOrdinal=Arrays.copyOf(cancionesPorOrdinal, Math.max(o+1, cancionesPorOrdinal.length*2)); if(cancionesPorOrdinal[o]==null) numeroCanciones++; cancionesPorOrdinal[o]=c; }
+    private Cancion cancion(int ordinal){ return ordinal>=0 && ordinal<cancionesPorOrdinal.length ? cancionesPorOrdinal[ordinal] : null; }
 
-    public void calcularSimilitudes(){
-        for (List<Arista> l: grafo.values()) l.clear();
-        numeroAristas = 0;
-        List<String> ids = new ArrayList<>(usuarios.keySet());
-        for (int i=0;i<ids.size();i++) for (int j=i+1;j<ids.size();j++){
-            String a = ids.get(i), b = ids.get(j);
-            double s = calcularSimilitud(usuarios.get(a), usuarios.get(b));
-            if (s>0.1) agregarArista(a,b,s);
-        }
+    /** Recalcula las características de un nodo a partir de los favoritos actuales del usuario */
+    private void actualizarCaracteristicas(int nodo){
+        Usuario u=usuariosPorOrdinal.get(nodo); int[] fav=u.getOrdinalesFavoritos();
+        int[] art=new int[fav.length*2]; int n=0;
+        for(int cid:fav){ Cancion c=cancion(cid); if(c==null) continue;
+            if(n+1+c.getArtistasColaboradores().size()>art.length) art=Arrays.copyOf(art, (n+1+c.getArtistasColaboradores().size())*2);
+            art[n++]=c.getOrdinalArtista(); for(String col:c.getArtistasColaboradores()) art[n++]=Ordinales.ARTISTAS.ordinal(col); }
+        Arrays.sort(art,0,n); int unicos=0; for(int i=0;i<n;i++) if(art[i]>=0 && (unicos==0||art[unicos-1]!=art[i])) art[unicos++]=art[i];
+        favoritasPorNodo.set(nodo, fav); generosPorNodo.set(nodo, u.getOrdinalesGenerosFavoritos()); artistasPorNodo.set(nodo, Arrays.copyOf(art, unicos));
     }
 
-    private double calcularSimilitud(Usuario a, Usuario b){
-        if (a==null||b==null) return 0.0;
-        return Math.min(1.0,
-            0.5*coefJaccard(a.getCancionesFavoritas(), b.getCancionesFavoritas())+
-            0.3*coefJaccard(a.getGenerosFavoritos(), b.getGenerosFavoritos())+
-            0.2*similitudArtistas(a.getCancionesFavoritas(), b.getCancionesFavoritas()));
+    /**
+     * Recalcula todas las similitudes y congela el resultado en formato CSR.
+     * Las aristas se acumulan en arreglos primitivos antes de construir el grafo.
+     */
+    public void calcularSimilitudes(){
+        int cap = 16, m = 0;
+        int[] origen = new int[cap], destino = new int[cap]; float[] peso = new float[cap];
+        for (int i=0;i<numeroNodos;i++) actualizarCaracteristicas(i);
+        for (int i=0;i<numeroNodos;i++) for (int j=i+1;j<numeroNodos;j++){
+            float s = (float) calcularSimilitud(i, j);
+            if (s>UMBRAL_SIMILITUD){
+                if (m==cap){ cap*=2; origen=Arrays.copyOf(origen,cap); destino=Arrays.copyOf(destino,cap); peso=Arrays.copyOf(peso,cap); }
+                origen[m]=i; destino[m]=j; peso[m]=s; m++;
+            }
+        }
+        grafo = GrafoCSR.construir(numeroNodos, origen, destino, peso, m);
+        invalidarCacheVecinos();
     }
 
-    private double coefJaccard(List<String> x, List<String> y){
-        if (x.isEmpty() && y.isEmpty()) return 0.0;
-        Set<String> a=new HashSet<>(x), b=new HashSet<>(y), inter=new HashSet<>(a); inter.retainAll(b); a.addAll(b); if(a.isEmpty()) return 0.0; return (double)inter.size()/a.size();
+    /**
+     * Recalcula las aristas de un único usuario (por ejemplo tras cambiar sus favoritos)
+     * sin reconstruir el grafo. Los cambios quedan en el overlay y se compactan cuando
+     * el overlay supera el umbral del CSR; en ese momento también se reconstruye la
+     * tabla KNN, si había una.
+     *
+     * @param usuarioId ID del usuario modificado
+     */
+    public void actualizarUsuario(String usuarioId){
+        Integer o = ordinales.get(usuarioId); if (o==null) return;
+        actualizarCaracteristicas(o);
+        invalidarVecinosDe(o);
+        grafo.removerAristasDe(o);
+        for (int j=0;j<numeroNodos;j++){ if (j==o) continue; if (favoritasPorNodo.get(j)==null) actualizarCaracteristicas(j); float s=(float) calcularSimilitud(o, j); if (s>UMBRAL_SIMILITUD) grafo.agregarArista(o, j, s); }
+        invalidarVecinosDe(o);
+        if (grafo.requiereCompactacion()){
+            grafo.compactar();
+            TablaVecinos t = tablaVecinos;
+            if (t!=null) construirTablaVecinos(t.getK()); else invalidarCacheVecinos();
+        }
     }
 
-    private double similitudArtistas(List<String> x, List<String> y){
-        Set<String> a=new HashSet<>(), b=new HashSet<>();
-        for(String id:x){ Cancion c=canciones.get(id); if(c!=null){ a.add(c.getArtista()); a.addAll(c.getArtistasColaboradores()); }}
-        for(String id:y){ Cancion c=canciones.get(id); if(c!=null){ b.add(c.getArtista()); b.addAll(c.getArtistasColaboradores()); }}
-        return coefJaccard(new ArrayList<>(a), new ArrayList<>(b));
+    /** Similitud entre dos nodos: Jaccard por mezcla de arreglos ordenados de ordinales, sin colecciones intermedias */
+    private double calcularSimilitud(int a, int b){
+        return Math.min(1.0,
+            0.5*RegistroOrdinales.jaccard(favoritasPorNodo.get(a), favoritasPorNodo.get(b))+
+            0.3*RegistroOrdinales.jaccard(generosPorNodo.get(a), generosPorNodo.get(b))+
+            0.2*RegistroOrdinales.jaccard(artistasPorNodo.get(a), artistasPorNodo.get(b)));
     }
 
-    private void agregarArista(String a,String b,double p){ if(!grafo.containsKey(a)||!grafo.containsKey(b)) return; grafo.get(a).add(new Arista(b,p)); grafo.get(b).add(new Arista(a,p)); numeroAristas+=2; }
-
     // NUEVO: método usado por RecommendationEngine
     public List<Cancion> obtenerRecomendaciones(String usuarioId, int limite){
-        Usuario u = usuarios.get(usuarioId);
-        if (u==null) return new ArrayList<>();
+        Integer o = ordinales.get(usuarioId);
+        if (o==null) return new ArrayList<>();
+        Usuario u = usuariosPorOrdinal.get(o);
         List<UsuarioSimilar> similares = encontrarUsuariosSimilares(usuarioId, 10);
-        Set<String> propias = new HashSet<>(u.getCancionesFavoritas());
-        Map<String, Double> score = new HashMap<>();
+        int[] propias = u.getOrdinalesFavoritos();
+        MapaIntFloat score = new MapaIntFloat(64);
         for (UsuarioSimilar s: similares){
-            for (String cid: s.usuario.getCancionesFavoritas()){
-                if (!propias.contains(cid)) score.put(cid, score.getOrDefault(cid,0.0)+s.similitud);
+            for (int cid: s.usuario.getOrdinalesFavoritos()){
+                if (Arrays.binarySearch(propias, cid)<0 && cancion(cid)!=null) score.sumar(cid, (float) s.similitud);
             }
         }
-        List<Map.Entry<String,Double>> orden = new ArrayList<>(score.entrySet());
-        orden.sort((x,y)->Double.compare(y.getValue(), x.getValue()));
+        SeleccionTopK top = new SeleccionTopK(limite);
+        score.forEach(top::ofrecer);
         List<Cancion> res = new ArrayList<>();
-        for (int i=0;i<Math.min(limite, orden.size()); i++){
-            Cancion c = canciones.get(orden.get(i).getKey()); if(c!=null) res.add(c);
-        }
+        for (int cid: top.extraerOrdenados()) res.add(cancion(cid));
         return res;
     }
 
+    /**
+     * Dijkstra de cuello de botella (max-min) sobre el CSR: la similitud con un usuario
+     * lejano es la arista más débil del mejor camino hasta él.
+     */
     public List<UsuarioSimilar> encontrarUsuariosSimilares(String id, int limite){
-        if(!grafo.containsKey(id)) return new ArrayList<>();
-        Map<String, Double> dist=new HashMap<>(); Set<String> vis=new HashSet<>(); PriorityQueue<Nodo> pq=new PriorityQueue<>();
-        for(String n: grafo.keySet()) dist.put(n, n.equals(id)?1.0:0.0); pq.offer(new Nodo(id,1.0));
-        while(!pq.isEmpty()){ Nodo cur=pq.poll(); if(!vis.add(cur.id)) continue; for(Arista ar: grafo.get(cur.id)){ double ns=Math.min(cur.s, ar.p); if(ns>dist.get(ar.d)){ dist.put(ar.d, ns); pq.offer(new Nodo(ar.d, ns)); } } }
-        List<UsuarioSimilar> out=new ArrayList<>();
-        for(Map.Entry<String,Double> e: dist.entrySet()) if(!e.getKey().equals(id)&&e.getValue()>0.1){ Usuario uu=usuarios.get(e.getKey()); if(uu!=null) out.add(new UsuarioSimilar(uu,e.getValue())); }
-        out.sort((x,y)->Double.compare(y.similitud,x.similitud));
-        return out.subList(0, Math.min(limite, out.size()));
+        return encontrarUsuariosSimilares(id, limite, SIN_LIMITE_SALTOS);
+    }
+
+    /**
+     * Búsqueda top-K acotada. Como el Dijkstra max-min extrae los nodos en orden no
+     * creciente de similitud, los primeros {@code limite} nodos finalizados son ya el
+     * resultado y la búsqueda se detiene ahí. Distancias y visitados se guardan en mapas
+     * dispersos, así que el coste depende de la zona explorada y no del tamaño del grafo.
+     * Con {@code maxSaltos} la exploración no se expande más allá de esa profundidad.
+     * Los resultados se cachean por usuario hasta que cambian él o un vecino directo.
+     *
+     * @param id ID del usuario origen
+     * @param limite Número máximo de usuarios similares (K)
+     * @param maxSaltos Profundidad máxima de exploración, o {@link #SIN_LIMITE_SALTOS}
+     * @return Usuarios similares ordenados de mayor a menor similitud (lista inmutable)
+     */
+    public List<UsuarioSimilar> encontrarUsuariosSimilares(String id, int limite, int maxSaltos){
+        Integer origen = ordinales.get(id);
+        if(origen==null || limite<=0) return new ArrayList<>();
+        TablaVecinos t = tablaVecinos;
+        if(t!=null && maxSaltos==SIN_LIMITE_SALTOS && limite<=t.getK() && origen<t.getNumeroUsuarios() && !filasObsoletas.get(origen)){
+            List<UsuarioSimilar> fila = new ArrayList<>(limite);
+            for(int i=0, n=Math.min(limite, t.tamanoFila(origen)); i<n; i++) fila.add(new UsuarioSimilar(usuariosPorOrdinal.get(t.vecino(origen,i)), t.similitud(origen,i)));
+            return Collections.unmodifiableList(fila);
+        }
+        long version = versionAristas;
+        VecinosCacheados cacheado = cacheVecinos.get(origen);
+        if(cacheado!=null && cacheado.version==version && cacheado.maxSaltos==maxSaltos && (cacheado.limite>=limite || cacheado.vecinos.size()<cacheado.limite)){
+            return cacheado.vecinos.subList(0, Math.min(limite, cacheado.vecinos.size()));
+        }
+        int[] ords = new int[limite]; float[] sims = new float[limite];
+        int n = buscarTopK(origen, limite, maxSaltos, ords, sims);
+        List<UsuarioSimilar> out = new ArrayList<>(n);
+        for(int i=0;i<n;i++) out.add(new UsuarioSimilar(usuariosPorOrdinal.get(ords[i]), sims[i]));
+        List<UsuarioSimilar> resultado = Collections.unmodifiableList(out);
+        cacheVecinos.put(origen, new VecinosCacheados(resultado, limite, maxSaltos, version));
+        return resultado;
+    }
+
+    /**
+     * Núcleo de la búsqueda top-K. Solo lee el grafo, por lo que puede ejecutarse en
+     * paralelo para orígenes distintos mientras nadie lo modifique.
+     *
+     * @return Número de vecinos escritos en {@code ords}/{@code sims}
+     */
+    private int buscarTopK(int origen, int limite, int maxSaltos, int[] ords, float[] sims){
+        MapaIntFloat dist = new MapaIntFloat(limite*4); MapaIntFloat finalizados = new MapaIntFloat(limite*2);
+        PriorityQueue<Nodo> pq = new PriorityQueue<>();
+        int n = 0;
+        dist.put(origen,1f); pq.offer(new Nodo(origen,1f,0));
+        while(!pq.isEmpty() && n<limite){
+            Nodo cur=pq.poll(); if(finalizados.containsKey(cur.ord)) continue; finalizados.put(cur.ord,cur.s);
+            if(cur.ord!=origen){ ords[n]=cur.ord; sims[n]=cur.s; n++; }
+            if(maxSaltos!=SIN_LIMITE_SALTOS && cur.saltos>=maxSaltos) continue;
+            grafo.recorrerVecinos(cur.ord, (v,p)->{ float ns=Math.min(cur.s,p); if(ns>UMBRAL_SIMILITUD && ns>dist.get(v,0f) && !finalizados.containsKey(v)){ dist.put(v,ns); pq.offer(new Nodo(v,ns,cur.saltos+1)); } });
+        }
+        return n;
+    }
+
+    /**
+     * Precalcula en paralelo los K vecinos de todos los usuarios. Cada fila es
+     * independiente, así que el trabajo se reparte por ordinal entre los núcleos.
+     * La tabla resultante se usa en {@link #encontrarUsuariosSimilares(String, int)}
+     * salvo en las filas de los usuarios afectados por un cambio posterior.
+     *
+     * @param k Número de vecinos por usuario
+     * @return Tabla construida (ya instalada en el grafo)
+     */
+    public TablaVecinos construirTablaVecinos(int k){
+        String[] ids = new String[numeroNodos];
+        for(int i=0;i<numeroNodos;i++) ids[i]=usuariosPorOrdinal.get(i).getId();
+        TablaVecinos t = TablaVecinos.vacia(ids, k, calcularHuella());
+        java.util.stream.IntStream.range(0, numeroNodos).parallel().forEach(o->{
+            int[] ords=new int[k]; float[] sims=new float[k];
+            int n=buscarTopK(o, k, SIN_LIMITE_SALTOS, ords, sims);
+            t.escribirFila(o, ords, sims, n);
+        });
+        filasObsoletas.clear();
+        cacheVecinos.clear();
+        tablaVecinos = t;
+        return t;
+    }
+
+    /**
+     * Instala una tabla persistida si corresponde exactamente a los datos actuales
+     * (mismos usuarios en el mismo orden y misma huella de favoritos y géneros).
+     *
+     * @param t Tabla cargada de disco
+     * @return true si la tabla se adoptó
+     */
+    public boolean adoptarTablaVecinos(TablaVecinos t){
+        if(t==null || t.getNumeroUsuarios()!=numeroNodos || t.getHuella()!=calcularHuella()) return false;
+        for(int i=0;i<numeroNodos;i++) if(!t.getId(i).equals(usuariosPorOrdinal.get(i).getId())) return false;
+        filasObsoletas.clear();
+        tablaVecinos = t;
+        return true;
+    }
+
+    /** Huella de los datos que determinan las similitudes (ids, favoritos y géneros por ordinal). */
+    private long calcularHuella(){
+        long h = 1125899906842597L;
+        for(Usuario u: usuariosPorOrdinal){
+            h = 31*h + u.getId().hashCode();
+            for(String c: u.getVistaCancionesFavoritas()) h = 31*h + c.hashCode();
+            h = 31*h + 7;
+            for(String g: u.getGenerosFavoritos()) h = 31*h + g.hashCode();
+            h = 31*h + 11;
+        }
+        return h;
+    }
+
+    /** Descarta los vecinos cacheados y la tabla precalculada; se llama al recalcular todo el grafo. */
+    private void invalidarCacheVecinos(){ versionAristas++; cacheVecinos.clear(); tablaVecinos = null; filasObsoletas.clear(); }
+
+    /**
+     * Tras un cambio en las aristas de un nodo: deja obsoletas todas las entradas de la cache
+     * (nueva versión) y marca en la tabla KNN la fila del nodo y las de sus vecinos directos.
+     */
+    private void invalidarVecinosDe(int nodo){
+        versionAristas++;
+        filasObsoletas.set(nodo);
+        grafo.recorrerVecinos(nodo, (v,p)->filasObsoletas.set(v));
     }
 
-    public String getEstadisticas(){ double dens = numeroNodos>1 ? (double)numeroAristas/(numeroNodos*(numeroNodos-1)) : 0.0; return String.format("=== Grafo de Similitud ===\nUsuarios: %d\nConexiones: %d\nDensidad: %.3f\nCanciones indexadas: %d", numeroNodos, numeroAristas/2, dens, canciones.size()); }
+    public String getEstadisticas(){ int aristas=grafo.getNumeroAristasDirigidas(); double dens = numeroNodos>1 ? (double)aristas/((double)numeroNodos*(numeroNodos-1)) : 0.0; return String.format("=== Grafo de Similitud ===\nUsuarios: %d\nConexiones: %d\nDensidad: %.3f\nCanciones indexadas: %d\nMemoria CSR: %d bytes (overlay: %d aristas)", numeroNodos, aristas/2, dens, numeroCanciones, grafo.getBytesCongelados(), grafo.getAristasOverlay()/2); }
 
     public static class UsuarioSimilar{ public final Usuario usuario; public final double similitud; public UsuarioSimilar(Usuario u,double s){usuario=u;similitud=s;} }
-    private static class Arista{ String d; double p; Arista(String d,double p){this.d=d;this.p=p;} }
-    private static class Nodo implements Comparable<Nodo>{ String id; double s; Nodo(String i,double s){id=i;this.s=s;} public int compareTo(Nodo o){ return Double.compare(o.s, this.s);} }
+    private static class VecinosCacheados{ final List<UsuarioSimilar> vecinos; final int limite; final int maxSaltos; final long version; VecinosCacheados(List<UsuarioSimilar> v,int l,int m,long ver){vecinos=v;limite=l;maxSaltos=m;version=ver;} }
+    private static class Nodo implements Comparable<Nodo>{ final int ord; final float s; final int saltos; Nodo(int o,float s,int saltos){ord=o;this.s=s;this.saltos=saltos;} public int compareTo(Nodo o){ return Float.compare(o.s, this.s);} }
 }
@@ -278,16 +278,33 @@ public class HashMap<K, V> {
         size = 0;
     }
     
+    /**
+     * Prepara la tabla para alojar el número de elementos indicado sin redimensionar más
+     * (por ejemplo, antes de insertar un lote): a lo sumo un redimensionado.
+     *
+     * @param elementos Número total de elementos esperado
+     */
+    public void asegurarCapacidad(int elementos) {
+        int necesaria = (int) Math.ceil(elementos / LOAD_FACTOR) + 1;
+        if (necesaria > capacity) {
+            resize(Math.max(capacity * 2, necesaria));
+        }
+    }
+
     /**
      * Redimensiona el HashMap cuando el factor de carga es excedido.
      */
-    @SuppressWarnings("unchecked")
     private void resize() {
+        // Duplicar la capacidad
+        resize(capacity * 2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int nuevaCapacidad) {
         Node<K, V>[] oldBuckets = buckets;
         int oldCapacity = capacity;
         
-        // Duplicar la capacidad
-        capacity *= 2;
+        capacity = nuevaCapacidad;
         size = 0;
         buckets = new Node[capacity];
         
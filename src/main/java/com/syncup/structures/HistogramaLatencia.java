@@ -0,0 +1,102 @@
+package com.syncup.structures;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma concurrente de latencias con cubetas en potencias de dos de microsegundos.
+ * <p>
+ * La cubeta {@code i} cuenta las mediciones de menos de {@code 2^i} µs, así que registrar
+ * es un cálculo de bits más un incremento atómico, sin bloqueos ni objetos. Los
+ * percentiles se informan como la cota superior de su cubeta (error máximo ×2), que
+ * basta para ver qué etapa domina y cómo evoluciona.
+ */
+public class HistogramaLatencia {
+
+    /** Cubetas hasta 2^31 µs (unos 36 minutos); lo más lento cae en la última */
+    private static final int CUBETAS = 32;
+
+    private final String nombre;
+    private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+    private final LongAdder conteo = new LongAdder();
+    private final LongAdder sumaNanos = new LongAdder();
+
+    /**
+     * @param nombre Nombre de la etapa medida
+     */
+    public HistogramaLatencia(String nombre) {
+        this.nombre = nombre;
+    }
+
+    /**
+     * Registra una medición.
+     *
+     * @param nanos Duración en nanosegundos
+     */
+    public void registrar(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int cubeta = Math.min(CUBETAS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        cubetas.incrementAndGet(cubeta);
+        conteo.increment();
+        sumaNanos.add(nanos);
+    }
+
+    /**
+     * Registra el tiempo transcurrido desde un instante tomado con {@link System#nanoTime()}.
+     *
+     * @param inicioNanos Instante de inicio
+     * @return Instante actual, para encadenar mediciones consecutivas
+     */
+    public long registrarDesde(long inicioNanos) {
+        long ahora = System.nanoTime();
+        registrar(ahora - inicioNanos);
+        return ahora;
+    }
+
+    /**
+     * @param p Percentil entre 0 y 1
+     * @return Cota superior en microsegundos de la cubeta que contiene el percentil, o 0 sin datos
+     */
+    public long percentilMicros(double p) {
+        long total = 0;
+        long[] copia = new long[CUBETAS];
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cubetas.get(i);
+            total += copia[i];
+        }
+        if (total == 0) return 0;
+        long objetivo = (long) Math.ceil(p * total);
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= objetivo) return 1L << i;
+        }
+        return 1L << (CUBETAS - 1);
+    }
+
+    /**
+     * @return Latencia media en microsegundos
+     */
+    public double mediaMicros() {
+        long n = conteo.sum();
+        return n == 0 ? 0.0 : sumaNanos.sum() / 1000.0 / n;
+    }
+
+    public String getNombre() { return nombre; }
+    public long getConteo() { return conteo.sum(); }
+
+    /**
+     * Reinicia todas las cubetas.
+     */
+    public void reiniciar() {
+        for (int i = 0; i < CUBETAS; i++) cubetas.set(i, 0);
+        conteo.reset();
+        sumaNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d, media=%.1f µs, p50≤%d µs, p99≤%d µs",
+            nombre, getConteo(), mediaMicros(), percentilMicros(0.5), percentilMicros(0.99));
+    }
+}
@@ -0,0 +1,140 @@
+package com.syncup.structures;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de claves int a valores float con direccionamiento abierto (sondeo lineal).
+ * Evita el boxing de {@code Map<Integer, Float>} en búsquedas sobre ordinales, y su
+ * tamaño depende de las claves insertadas y no del rango de ordinales posibles.
+ * No admite eliminaciones individuales; {@link #clear()} lo reinicia.
+ */
+public class MapaIntFloat {
+
+    /** Marca de celda vacía (los ordinales son siempre no negativos) */
+    private static final int VACIA = -1;
+
+    /** Factor de carga máximo antes de redimensionar */
+    private static final double LOAD_FACTOR = 0.5;
+
+    /**
+     * Receptor de entradas sin boxing.
+     */
+    @FunctionalInterface
+    public interface VisitanteEntrada {
+        void visitar(int clave, float valor);
+    }
+
+    private int[] claves;
+    private float[] valores;
+    private int size;
+    private int mascara;
+
+    /**
+     * Crea un mapa con capacidad para el número de claves indicado sin redimensionar.
+     *
+     * @param capacidadEsperada Número de claves esperado
+     */
+    public MapaIntFloat(int capacidadEsperada) {
+        int cap = Integer.highestOneBit(Math.max(4, (int) (capacidadEsperada / LOAD_FACTOR)) * 2 - 1);
+        claves = new int[cap];
+        valores = new float[cap];
+        Arrays.fill(claves, VACIA);
+        mascara = cap - 1;
+    }
+
+    private int indice(int clave) {
+        int h = clave * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    /**
+     * Obtiene el valor de una clave.
+     *
+     * @param clave Clave no negativa
+     * @param porDefecto Valor devuelto si la clave no existe
+     * @return Valor asociado o el valor por defecto
+     */
+    public float get(int clave, float porDefecto) {
+        for (int i = indice(clave); ; i = (i + 1) & mascara) {
+            int k = claves[i];
+            if (k == clave) return valores[i];
+            if (k == VACIA) return porDefecto;
+        }
+    }
+
+    /**
+     * @param clave Clave no negativa
+     * @return true si la clave existe en el mapa
+     */
+    public boolean containsKey(int clave) {
+        for (int i = indice(clave); ; i = (i + 1) & mascara) {
+            int k = claves[i];
+            if (k == clave) return true;
+            if (k == VACIA) return false;
+        }
+    }
+
+    /**
+     * Inserta o actualiza el valor de una clave.
+     *
+     * @param clave Clave no negativa
+     * @param valor Valor a asociar
+     */
+    public void put(int clave, float valor) {
+        if (size + 1 > claves.length * LOAD_FACTOR) resize();
+        for (int i = indice(clave); ; i = (i + 1) & mascara) {
+            int k = claves[i];
+            if (k == clave) { valores[i] = valor; return; }
+            if (k == VACIA) { claves[i] = clave; valores[i] = valor; size++; return; }
+        }
+    }
+
+    /**
+     * Suma un incremento al valor de una clave (0 si no existía).
+     *
+     * @param clave Clave no negativa
+     * @param incremento Cantidad a sumar
+     */
+    public void sumar(int clave, float incremento) {
+        put(clave, get(clave, 0f) + incremento);
+    }
+
+    private void resize() {
+        int[] viejasClaves = claves;
+        float[] viejosValores = valores;
+        claves = new int[viejasClaves.length * 2];
+        valores = new float[claves.length];
+        Arrays.fill(claves, VACIA);
+        mascara = claves.length - 1;
+        size = 0;
+        for (int i = 0; i < viejasClaves.length; i++) {
+            if (viejasClaves[i] != VACIA) put(viejasClaves[i], viejosValores[i]);
+        }
+    }
+
+    /**
+     * Recorre todas las entradas del mapa.
+     *
+     * @param visitante Receptor de cada par clave-valor
+     */
+    public void forEach(VisitanteEntrada visitante) {
+        for (int i = 0; i < claves.length; i++) {
+            if (claves[i] != VACIA) visitante.visitar(claves[i], valores[i]);
+        }
+    }
+
+    /**
+     * @return Número de claves almacenadas
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Elimina todas las entradas conservando la capacidad actual.
+     */
+    public void clear() {
+        Arrays.fill(claves, VACIA);
+        size = 0;
+    }
+}
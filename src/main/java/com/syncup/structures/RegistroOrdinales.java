@@ -0,0 +1,157 @@
+package com.syncup.structures;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de internado que asigna a cada cadena distinta un ordinal entero denso
+ * (0, 1, 2...) y guarda una única instancia canónica de la cadena.
+ * <p>
+ * Las estructuras internas pueden así indexar arreglos por ordinal y comparar enteros en
+ * lugar de calcular el hash de identificadores largos en cada consulta. Los ordinales
+ * nunca se reutilizan ni cambian durante la vida del proceso, pero no son estables entre
+ * ejecuciones: no deben persistirse.
+ * <p>
+ * Las consultas de cadenas ya registradas no bloquean; asignar un ordinal nuevo toma el
+ * monitor del registro.
+ */
+public class RegistroOrdinales {
+
+    private final String nombre;
+    private final ConcurrentHashMap<String, Integer> ordinales = new ConcurrentHashMap<>();
+    private volatile String[] valores = new String[64];
+    private volatile int tamano;
+
+    /**
+     * @param nombre Nombre descriptivo del registro (para estadísticas)
+     */
+    public RegistroOrdinales(String nombre) {
+        this.nombre = nombre;
+    }
+
+    /**
+     * Obtiene el ordinal de una cadena, asignándole uno nuevo si no lo tenía.
+     *
+     * @param valor Cadena a internar
+     * @return Ordinal de la cadena, o -1 si es null
+     */
+    public int ordinal(String valor) {
+        if (valor == null) return -1;
+        Integer o = ordinales.get(valor);
+        return o != null ? o : registrar(valor);
+    }
+
+    private synchronized int registrar(String valor) {
+        Integer o = ordinales.get(valor);
+        if (o != null) return o;
+        int nuevo = tamano;
+        String[] v = valores;
+        if (nuevo == v.length) {
+            v = Arrays.copyOf(v, v.length * 2);
+        }
+        v[nuevo] = valor;
+        valores = v;
+        tamano = nuevo + 1;
+        // Se publica en el mapa después de escribir el arreglo: quien vea el ordinal ve su valor
+        ordinales.put(valor, nuevo);
+        return nuevo;
+    }
+
+    /**
+     * Busca el ordinal de una cadena sin registrarla.
+     *
+     * @param valor Cadena a buscar
+     * @return Ordinal, o -1 si nunca se registró
+     */
+    public int buscar(String valor) {
+        if (valor == null) return -1;
+        Integer o = ordinales.get(valor);
+        return o == null ? -1 : o;
+    }
+
+    /**
+     * @param ordinal Ordinal asignado por este registro
+     * @return Cadena canónica del ordinal
+     */
+    public String valor(int ordinal) {
+        if (ordinal < 0 || ordinal >= tamano) {
+            throw new IndexOutOfBoundsException("Ordinal fuera de rango en " + nombre + ": " + ordinal);
+        }
+        return valores[ordinal];
+    }
+
+    /**
+     * Devuelve la instancia canónica de una cadena (la registra si hace falta), para que
+     * los valores repetidos compartan memoria.
+     *
+     * @param valor Cadena a internar
+     * @return Instancia canónica igual a {@code valor}, o null si es null
+     */
+    public String canonico(String valor) {
+        return valor == null ? null : valor(ordinal(valor));
+    }
+
+    /**
+     * Convierte una colección de cadenas en un arreglo ordenado de ordinales sin repetidos.
+     *
+     * @param valoresEntrada Cadenas a convertir (los null se ignoran)
+     * @return Ordinales en orden ascendente
+     */
+    public int[] ordinalesOrdenados(Iterable<String> valoresEntrada) {
+        int[] res = new int[8];
+        int n = 0;
+        for (String v : valoresEntrada) {
+            int o = ordinal(v);
+            if (o < 0) continue;
+            if (n == res.length) res = Arrays.copyOf(res, n * 2);
+            res[n++] = o;
+        }
+        Arrays.sort(res, 0, n);
+        int unicos = 0;
+        for (int i = 0; i < n; i++) {
+            if (unicos == 0 || res[unicos - 1] != res[i]) res[unicos++] = res[i];
+        }
+        return Arrays.copyOf(res, unicos);
+    }
+
+    /**
+     * @return Número de cadenas registradas (y cota superior exclusiva de los ordinales)
+     */
+    public int size() {
+        return tamano;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Tamaño de la intersección de dos arreglos ordenados de ordinales sin repetidos.
+     *
+     * @param a Primer arreglo ordenado
+     * @param b Segundo arreglo ordenado
+     * @return Número de ordinales comunes
+     */
+    public static int interseccion(int[] a, int[] b) {
+        int i = 0, j = 0, comunes = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { comunes++; i++; j++; }
+        }
+        return comunes;
+    }
+
+    /**
+     * Coeficiente de Jaccard entre dos arreglos ordenados de ordinales sin repetidos.
+     *
+     * @param a Primer arreglo ordenado
+     * @param b Segundo arreglo ordenado
+     * @return |a ∩ b| / |a ∪ b|, o 0 si ambos están vacíos
+     */
+    public static double jaccard(int[] a, int[] b) {
+        if (a.length == 0 && b.length == 0) return 0.0;
+        int comunes = interseccion(a, b);
+        return (double) comunes / (a.length + b.length - comunes);
+    }
+}
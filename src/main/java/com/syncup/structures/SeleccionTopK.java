@@ -0,0 +1,108 @@
+package com.syncup.structures;
+
+import java.util.Arrays;
+
+/**
+ * Selección de los K elementos de mayor puntaje sobre arreglos primitivos.
+ * <p>
+ * Mantiene un montículo mínimo de tamaño K con los identificadores (enteros) y
+ * puntajes de los mejores candidatos vistos hasta el momento: cada oferta cuesta
+ * O(log K) en el peor caso y O(1) si no supera al peor del montículo, sin crear
+ * objetos por candidato. Una instancia puede reutilizarse con {@link #reiniciar}.
+ * No es segura para hilos.
+ */
+public class SeleccionTopK {
+
+    private final int[] ids;
+    private final double[] puntajes;
+    private int k;
+    private int tamano;
+
+    /**
+     * @param capacidad Valor máximo de K que admitirá la instancia
+     */
+    public SeleccionTopK(int capacidad) {
+        this.ids = new int[Math.max(0, capacidad)];
+        this.puntajes = new double[ids.length];
+        this.k = ids.length;
+    }
+
+    /**
+     * Vacía la selección y fija un nuevo K (no mayor que la capacidad).
+     *
+     * @param k Número de elementos a conservar
+     */
+    public void reiniciar(int k) {
+        this.k = Math.max(0, Math.min(k, ids.length));
+        this.tamano = 0;
+    }
+
+    /**
+     * Ofrece un candidato. A igual puntaje se conserva el que llegó primero.
+     *
+     * @param id Identificador del candidato
+     * @param puntaje Puntaje del candidato
+     */
+    public void ofrecer(int id, double puntaje) {
+        if (tamano < k) {
+            int i = tamano++;
+            while (i > 0) {
+                int padre = (i - 1) >>> 1;
+                if (puntajes[padre] <= puntaje) break;
+                ids[i] = ids[padre]; puntajes[i] = puntajes[padre]; i = padre;
+            }
+            ids[i] = id; puntajes[i] = puntaje;
+        } else if (k > 0 && puntaje > puntajes[0]) {
+            hundir(id, puntaje);
+        }
+    }
+
+    private void hundir(int id, double puntaje) {
+        int i = 0;
+        while (true) {
+            int h = 2 * i + 1;
+            if (h >= tamano) break;
+            if (h + 1 < tamano && puntajes[h + 1] < puntajes[h]) h++;
+            if (puntajes[h] >= puntaje) break;
+            ids[i] = ids[h]; puntajes[i] = puntajes[h]; i = h;
+        }
+        ids[i] = id; puntajes[i] = puntaje;
+    }
+
+    /**
+     * @return Número de elementos seleccionados (como máximo K)
+     */
+    public int tamano() {
+        return tamano;
+    }
+
+    /**
+     * Vacía el montículo escribiendo los identificadores en orden de puntaje descendente.
+     *
+     * @param destino Arreglo con al menos {@link #tamano()} posiciones
+     * @return Número de identificadores escritos
+     */
+    public int extraerOrdenados(int[] destino) {
+        int n = tamano;
+        for (int pos = n - 1; pos >= 0; pos--) {
+            destino[pos] = ids[0];
+            int ultimo = --tamano;
+            if (ultimo > 0) hundir(ids[ultimo], puntajes[ultimo]);
+        }
+        return n;
+    }
+
+    /**
+     * @return Identificadores seleccionados en orden de puntaje descendente (vacía la selección)
+     */
+    public int[] extraerOrdenados() {
+        int[] res = new int[tamano];
+        extraerOrdenados(res);
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return "SeleccionTopK{k=" + k + ", ids=" + Arrays.toString(Arrays.copyOf(ids, tamano)) + "}";
+    }
+}
@@ -0,0 +1,150 @@
+package com.syncup.structures;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Tabla precalculada de los K vecinos más similares de cada usuario.
+ * <p>
+ * Se guarda en dos arreglos planos de {@code numeroUsuarios * k} posiciones: el ordinal
+ * de cada vecino (-1 si la fila tiene menos de K) y su similitud. Consultar la fila de un
+ * usuario es O(K) y no toca el grafo. La tabla lleva la huella del grafo con el que se
+ * construyó, de modo que una copia persistida solo se reutiliza si los datos no cambiaron.
+ */
+public class TablaVecinos {
+
+    /** Identificador del formato binario ("KNN1") */
+    private static final int MAGIC = 0x4B4E4E31;
+
+    private final String[] ids;
+    private final int k;
+    private final int[] vecinos;
+    private final float[] similitudes;
+    private final long huella;
+
+    /**
+     * @param ids ID de usuario por ordinal
+     * @param k Número de vecinos por fila
+     * @param vecinos Ordinales de vecinos ({@code ids.length * k}, -1 = vacío)
+     * @param similitudes Similitudes alineadas con {@code vecinos}
+     * @param huella Huella de los datos de origen
+     */
+    public TablaVecinos(String[] ids, int k, int[] vecinos, float[] similitudes, long huella) {
+        if (vecinos.length != ids.length * k || similitudes.length != vecinos.length) {
+            throw new IllegalArgumentException("Dimensiones de la tabla de vecinos inconsistentes");
+        }
+        this.ids = ids;
+        this.k = k;
+        this.vecinos = vecinos;
+        this.similitudes = similitudes;
+        this.huella = huella;
+    }
+
+    /**
+     * Número de vecinos válidos en la fila de un usuario.
+     *
+     * @param ordinal Ordinal del usuario
+     * @return Número de vecinos (como máximo K)
+     */
+    public int tamanoFila(int ordinal) {
+        int base = ordinal * k, n = 0;
+        while (n < k && vecinos[base + n] >= 0) n++;
+        return n;
+    }
+
+    /**
+     * @param ordinal Ordinal del usuario
+     * @param i Posición dentro de la fila
+     * @return Ordinal del i-ésimo vecino
+     */
+    public int vecino(int ordinal, int i) {
+        return vecinos[ordinal * k + i];
+    }
+
+    /**
+     * @param ordinal Ordinal del usuario
+     * @param i Posición dentro de la fila
+     * @return Similitud con el i-ésimo vecino
+     */
+    public float similitud(int ordinal, int i) {
+        return similitudes[ordinal * k + i];
+    }
+
+    public int getK() { return k; }
+    public int getNumeroUsuarios() { return ids.length; }
+    public String getId(int ordinal) { return ids[ordinal]; }
+    public long getHuella() { return huella; }
+
+    /**
+     * Guarda la tabla en formato binario compacto mediante escritura atómica.
+     *
+     * @param archivo Archivo destino
+     * @throws IOException Si falla la escritura
+     */
+    public void guardar(Path archivo) throws IOException {
+        if (archivo.getParent() != null) Files.createDirectories(archivo.getParent());
+        Path tmp = archivo.resolveSibling(archivo.getFileName().toString() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(huella);
+            out.writeInt(ids.length);
+            out.writeInt(k);
+            for (String id : ids) out.writeUTF(id);
+            for (int v : vecinos) out.writeInt(v);
+            for (float s : similitudes) out.writeFloat(s);
+        }
+        Files.move(tmp, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Carga una tabla persistida.
+     *
+     * @param archivo Archivo origen
+     * @return La tabla, o null si el archivo no existe o no tiene un formato válido
+     */
+    public static TablaVecinos cargar(Path archivo) {
+        if (!Files.exists(archivo)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo)))) {
+            if (in.readInt() != MAGIC) return null;
+            long huella = in.readLong();
+            int n = in.readInt();
+            int k = in.readInt();
+            String[] ids = new String[n];
+            for (int i = 0; i < n; i++) ids[i] = in.readUTF();
+            int[] vecinos = new int[n * k];
+            for (int i = 0; i < vecinos.length; i++) vecinos[i] = in.readInt();
+            float[] similitudes = new float[n * k];
+            for (int i = 0; i < similitudes.length; i++) similitudes[i] = in.readFloat();
+            return new TablaVecinos(ids, k, vecinos, similitudes, huella);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Tabla de vecinos inválida, se recalculará: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Crea una tabla vacía (todas las filas sin vecinos) lista para rellenarse.
+     *
+     * @param ids ID de usuario por ordinal
+     * @param k Número de vecinos por fila
+     * @param huella Huella de los datos de origen
+     * @return Tabla con todos los vecinos a -1
+     */
+    static TablaVecinos vacia(String[] ids, int k, long huella) {
+        int[] vecinos = new int[ids.length * k];
+        Arrays.fill(vecinos, -1);
+        return new TablaVecinos(ids, k, vecinos, new float[vecinos.length], huella);
+    }
+
+    /** Escribe la fila de un usuario; usado al construir la tabla en paralelo (filas disjuntas). */
+    void escribirFila(int ordinal, int[] ordinalesVecinos, float[] sims, int n) {
+        int base = ordinal * k;
+        for (int i = 0; i < n && i < k; i++) {
+            vecinos[base + i] = ordinalesVecinos[i];
+            similitudes[base + i] = sims[i];
+        }
+    }
+}
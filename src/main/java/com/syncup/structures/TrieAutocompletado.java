@@ -27,7 +27,15 @@ public class TrieAutocompletado {
      * Inserta una palabra en el Trie.
      */
     public void insert(String palabra) {
-        if (palabra == null || palabra.trim().isEmpty()) return;
+        insert(palabra, 1);
+    }
+
+    /**
+     * Inserta varias apariciones de una palabra con un solo recorrido (equivale a llamar
+     * {@link #insert(String)} {@code veces} veces).
+     */
+    public void insert(String palabra, int veces) {
+        if (palabra == null || palabra.trim().isEmpty() || veces <= 0) return;
         
         palabra = palabra.toLowerCase().trim();
         NodoTrie actual = raiz;
@@ -44,9 +52,28 @@ public class TrieAutocompletado {
             actual.palabra = palabra;
             size++;
         }
-        actual.frecuencia++;
+        actual.frecuencia += veces;
     }
     
+    /**
+     * Retira una aparición de una palabra. La palabra deja de sugerirse cuando su
+     * frecuencia llega a cero (es decir, cuando se retiró tantas veces como se insertó).
+     */
+    public void remove(String palabra) {
+        if (palabra == null || palabra.trim().isEmpty()) return;
+
+        NodoTrie nodo = buscarNodoPrefijo(palabra.toLowerCase().trim());
+        if (nodo == null || !nodo.esFinal) return;
+
+        nodo.frecuencia--;
+        if (nodo.frecuencia <= 0) {
+            nodo.frecuencia = 0;
+            nodo.esFinal = false;
+            nodo.palabra = null;
+            size--;
+        }
+    }
+
     /**
      * Busca palabras que empiecen con el prefijo dado.
      */
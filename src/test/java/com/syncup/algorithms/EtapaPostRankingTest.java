@@ -0,0 +1,86 @@
+package com.syncup.algorithms;
+
+import com.syncup.models.Cancion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pruebas unitarias para las etapas de post-ranking {@link MezclaSemanal} y
+ * {@link DiversificacionMMR}.
+ */
+class EtapaPostRankingTest {
+
+    private static Clock reloj(String instante) {
+        return Clock.fixed(Instant.parse(instante), ZoneOffset.UTC);
+    }
+
+    private static List<Cancion> canciones(int n) {
+        List<Cancion> lista = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            lista.add(new Cancion("c" + i, "Canción " + i, "Artista " + (i % 4), "", "Género " + (i % 2), 2020, 180));
+        }
+        return lista;
+    }
+
+    @Test
+    @DisplayName("La mezcla debe repetirse dentro de la misma semana y cambiar la siguiente")
+    void testMezclaReproducible() {
+        List<Cancion> entrada = canciones(20);
+        // Lunes y domingo de la misma semana ISO, y el lunes siguiente
+        List<Cancion> lunes = new MezclaSemanal(reloj("2024-03-04T10:00:00Z")).aplicar("u1", "weekly", entrada, 20);
+        List<Cancion> domingo = new MezclaSemanal(reloj("2024-03-10T22:00:00Z")).aplicar("u1", "weekly", entrada, 20);
+        List<Cancion> siguiente = new MezclaSemanal(reloj("2024-03-11T10:00:00Z")).aplicar("u1", "weekly", entrada, 20);
+
+        assertEquals(lunes, domingo);
+        assertNotEquals(lunes, siguiente);
+        assertEquals(new HashSet<>(entrada), new HashSet<>(lunes));
+    }
+
+    @Test
+    @DisplayName("La mezcla debe depender del usuario y del contexto")
+    void testMezclaPorUsuario() {
+        MezclaSemanal mezcla = new MezclaSemanal(reloj("2024-03-04T10:00:00Z"));
+        List<Cancion> entrada = canciones(20);
+
+        assertNotEquals(mezcla.aplicar("u1", "weekly", entrada, 20), mezcla.aplicar("u2", "weekly", entrada, 20));
+        assertNotEquals(mezcla.aplicar("u1", "weekly", entrada, 20), mezcla.aplicar("u1", "radio:c0", entrada, 20));
+        assertEquals(5, mezcla.aplicar("u1", "weekly", entrada, 5).size());
+    }
+
+    @Test
+    @DisplayName("La diversificación debe evitar repetir artista mientras haya alternativas")
+    void testDiversidadArtistas() {
+        // Las ocho primeras son del mismo artista; detrás hay otros tres artistas de otros géneros
+        List<Cancion> entrada = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            entrada.add(new Cancion("a" + i, "A" + i, "Solista", "", "Pop", 2020, 180));
+        }
+        for (int i = 0; i < 3; i++) {
+            entrada.add(new Cancion("b" + i, "B" + i, "Banda " + i, "", "Género " + i, 2020, 180));
+        }
+
+        List<Cancion> salida = new DiversificacionMMR().aplicar("u1", "weekly", entrada, 4);
+
+        assertEquals(4, salida.size());
+        assertEquals("a0", salida.get(0).getId());
+        Set<String> artistas = new HashSet<>();
+        for (Cancion c : salida) artistas.add(c.getArtista());
+        assertEquals(4, artistas.size());
+    }
+
+    @Test
+    @DisplayName("Con lambda 1 la diversificación conserva el orden de relevancia")
+    void testSinDiversidad() {
+        List<Cancion> entrada = canciones(10);
+        assertEquals(entrada.subList(0, 6), new DiversificacionMMR(1.0, 1.0, 0.5).aplicar("u1", "weekly", entrada, 6));
+    }
+}
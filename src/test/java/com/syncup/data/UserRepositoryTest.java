@@ -0,0 +1,173 @@
+package com.syncup.data;
+
+import com.syncup.models.Usuario;
+import com.syncup.persistence.InMemoryUserStore;
+import com.syncup.persistence.JsonUserStore;
+import com.syncup.persistence.KvUserStore;
+import com.syncup.persistence.SnapshotUserStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del repositorio de usuarios y de sus motores de almacenamiento.
+ */
+class UserRepositoryTest {
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("syncup-usuarios");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    @DisplayName("Debe aceptar un solo alta por username aunque lleguen a la vez")
+    void testAltasConcurrentes() throws InterruptedException {
+        UserRepository repo = new UserRepository(new SnapshotUserStore(dir));
+        AtomicInteger creados = new AtomicInteger(), rechazados = new AtomicInteger();
+        List<Thread> hilos = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int hilo = t;
+            Thread th = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    try {
+                        // Los usuarios "comun_i" se intentan crear desde todos los hilos
+                        repo.create("U", "comun_" + i, "", "secreto1");
+                        creados.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        rechazados.incrementAndGet();
+                    }
+                    repo.create("U", "propio_" + hilo + "_" + i, "p" + hilo + "_" + i + "@x.com", "secreto1");
+                }
+            });
+            hilos.add(th);
+            th.start();
+        }
+        for (Thread th : hilos) th.join();
+
+        assertEquals(50, creados.get());
+        assertEquals(350, rechazados.get());
+        assertTrue(repo.authenticate("propio_3_7", "secreto1"));
+        assertTrue(repo.authenticate("p5_9@x.com", "secreto1"));
+        assertFalse(repo.authenticate("comun_1", "otra-clave"));
+        assertThrows(IllegalStateException.class, () -> repo.create("U", "otro", "P0_0@x.com", "secreto1"));
+    }
+
+    @Test
+    @DisplayName("Debe recuperar todos los fragmentos al reabrir")
+    void testRecuperacion() {
+        SnapshotUserStore almacen = new SnapshotUserStore(dir);
+        UserRepository repo = new UserRepository(almacen);
+        for (int i = 0; i < 200; i++) repo.create("Nombre " + i, "user" + i, "user" + i + "@x.com", "secreto1");
+        assertTrue(repo.updateAdminRole("user42", true));
+        assertFalse(repo.updateAdminRole("no-existe", true));
+        Usuario inactivo = repo.findByUsername("user7").orElseThrow();
+        inactivo.setActivo(false);
+        repo.getStore().guardar(inactivo).join();
+        repo.cerrar();
+
+        SnapshotUserStore otro = new SnapshotUserStore(dir);
+        UserRepository reabierto = new UserRepository(otro);
+        assertEquals(almacen.getNumeroFragmentos(), otro.getNumeroFragmentos());
+        assertEquals(200, reabierto.count());
+        for (int i = 0; i < 200; i += 13) {
+            Usuario u = reabierto.findByUsername("USER" + i).orElseThrow();
+            assertEquals("Nombre " + i, u.getNombreCompleto());
+        }
+        assertTrue(reabierto.findByUsername("user42").orElseThrow().isEsAdmin());
+        assertFalse(reabierto.findByUsername("user7").orElseThrow().isActivo());
+        assertTrue(reabierto.findByUsername("user8").orElseThrow().isActivo());
+        assertTrue(reabierto.authenticate("user199@x.com", "secreto1"));
+        // El contador continúa tras el último ID recuperado
+        Usuario nuevo = reabierto.create("N", "nuevo", "", "secreto1");
+        assertEquals("u_0201", nuevo.getId());
+    }
+
+    @Test
+    @DisplayName("Debe comportarse igual con el motor JSON y con el de memoria")
+    void testOtrosMotores() {
+        UserRepository json = new UserRepository(new JsonUserStore(dir));
+        json.create("Ana", "ana", "ana@x.com", "secreto1");
+        assertTrue(json.updateAdminRole("ana", true));
+        Usuario ana = json.findByUsername("ana").orElseThrow();
+        ana.setActivo(false);
+        json.getStore().guardar(ana).join();
+        json.cerrar();
+        UserRepository releido = new UserRepository(new JsonUserStore(dir));
+        assertTrue(releido.findByEmail("ANA@x.com").orElseThrow().isEsAdmin());
+        assertFalse(releido.findByEmail("ANA@x.com").orElseThrow().isActivo());
+        assertTrue(Files.exists(dir.resolve("data").resolve("users.json")));
+
+        UserRepository memoria = new UserRepository(new InMemoryUserStore(List.of(new Usuario("u_0041", "eva", "h", "Eva", ""))));
+        assertTrue(memoria.findByUsername("eva").isPresent());
+        assertEquals("u_0042", memoria.create("B", "bob", "", "secreto1").getId());
+        assertEquals(2, memoria.count());
+        assertThrows(IllegalStateException.class, () -> memoria.create("B", "BOB", "", "secreto1"));
+    }
+
+    @Test
+    @DisplayName("Debe guardar usuarios y favoritas en el árbol y listarlos por rangos")
+    void testMotorKv() {
+        // Usuarios previos en el motor binario: el árbol vacío los importa
+        UserRepository binario = new UserRepository(new SnapshotUserStore(dir));
+        binario.create("Previo", "previo", "", "secreto1");
+        binario.cerrar();
+
+        UserRepository kv = new UserRepository(new KvUserStore(dir));
+        assertTrue(kv.findByUsername("previo").isPresent());
+        for (int i = 0; i < 30; i++) kv.create("N" + i, "kv" + i, "kv" + i + "@x.com", "secreto1");
+        assertThrows(IllegalStateException.class, () -> kv.create("N", "KV4", "", "secreto1"));
+        assertThrows(IllegalStateException.class, () -> kv.create("N", "otro", "kv5@X.com", "secreto1"));
+        Usuario u = kv.findByUsername("kv3").orElseThrow();
+        u.agregarCancionFavorita("s9");
+        u.agregarCancionFavorita("s1");
+        kv.getStore().guardar(u).join();
+        // Las favoritas sueltas llegan al árbol sin reescribir el usuario
+        kv.agregarFavorita(u.getId(), "s5");
+        kv.quitarFavorita(u.getId(), "s9");
+        kv.cerrar();
+
+        UserRepository reabierto = new UserRepository(new KvUserStore(dir));
+        assertEquals(31, reabierto.count());
+        assertEquals(List.of("s1", "s5"), reabierto.findByUsername("kv3").orElseThrow().getCancionesFavoritas());
+        assertTrue(reabierto.authenticate("kv29", "secreto1"));
+        assertTrue(reabierto.authenticate("KV7@x.com", "secreto1"));
+        assertTrue(reabierto.findByUsername("no-existe").isEmpty());
+        // El contador continúa tras el último alta sin recorrer los usuarios
+        assertEquals("u_0032", reabierto.create("N", "nuevo", "", "secreto1").getId());
+        assertEquals(32, reabierto.count());
+
+        List<String> ids = new ArrayList<>();
+        String ultimo = null;
+        for (List<Usuario> pagina = reabierto.listar(null, 7); !pagina.isEmpty(); pagina = reabierto.listar(ultimo, 7)) {
+            pagina.forEach(x -> ids.add(x.getId()));
+            ultimo = pagina.get(pagina.size() - 1).getId();
+        }
+        assertEquals(32, ids.size());
+        List<String> ordenados = new ArrayList<>(ids);
+        Collections.sort(ordenados);
+        assertEquals(ordenados, ids);
+        reabierto.cerrar();
+    }
+}
@@ -0,0 +1,145 @@
+package com.syncup.models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del almacén columnar de canciones y de Cancion como vista sobre sus filas.
+ */
+class CatalogoColumnarTest {
+
+    private CatalogoColumnar catalogo;
+
+    @BeforeEach
+    void setUp() {
+        catalogo = new CatalogoColumnar();
+    }
+
+    private Cancion cancion(String id, String artista, String genero, int anio, long reproducciones) {
+        Cancion c = new Cancion(id, "Titulo " + id, artista, "Album", genero, anio, 200);
+        c.setReproducciones(reproducciones);
+        return c;
+    }
+
+    @Test
+    @DisplayName("Debe conservar los valores al entrar y salir del catálogo")
+    void testVincularYDesvincular() {
+        Cancion c = cancion("col_1", "Artista", "Rock", 1999, 10);
+        assertNull(c.getCatalogo());
+        c.agregarCalificacion(4);
+        c.setFechaAgregado(LocalDate.of(2024, 5, 1));
+
+        catalogo.vincular(c);
+        assertSame(catalogo, c.getCatalogo());
+        assertEquals(1, catalogo.size());
+        c.reproducir();
+
+        assertTrue(catalogo.desvincular(c));
+        assertNull(c.getCatalogo());
+        assertEquals(0, catalogo.size());
+        assertEquals(1999, c.getAnio());
+        assertEquals(11, c.getReproducciones());
+        assertEquals(4.0, c.getCalificacionPromedio(), 1e-9);
+        assertEquals(LocalDate.of(2024, 5, 1), c.getFechaAgregado());
+        assertEquals("Rock", c.getGenero());
+        assertEquals("Artista", c.getArtista());
+        assertFalse(catalogo.desvincular(c));
+    }
+
+    @Test
+    @DisplayName("Debe recorrer solo las canciones vinculadas")
+    void testRecorridos() {
+        Cancion a = cancion("col_a", "Uno", "Pop", 2001, 5);
+        Cancion b = cancion("col_b", "Dos", "Pop", 2010, 50);
+        Cancion c = cancion("col_c", "Uno", "Jazz", 1980, 500);
+        catalogo.vincular(a);
+        catalogo.vincular(b);
+        catalogo.vincular(c);
+        catalogo.desvincular(c);
+
+        Map<String, Integer> generos = catalogo.contarPorGenero();
+        assertEquals(Integer.valueOf(2), generos.get("Pop"));
+        assertNull(generos.get("Jazz"));
+        assertEquals(Integer.valueOf(1), catalogo.contarPorArtista().get("Uno"));
+
+        assertEquals(List.of(a), catalogo.filtrarPorAnio(2000, 2005));
+        assertEquals(List.of(b, a), catalogo.masPopulares(5));
+        assertEquals(55, catalogo.totalReproducciones());
+
+        // La fila liberada se reutiliza
+        Cancion d = cancion("col_d", "Tres", "Pop", 2003, 0);
+        catalogo.vincular(d);
+        assertEquals(3, catalogo.contarPorGenero().get("Pop").intValue());
+    }
+
+    @Test
+    @DisplayName("No debe aceptar canciones de otro catálogo compartido")
+    void testOtroCatalogo() {
+        Cancion c = cancion("col_x", "Artista", "Rock", 2000, 0);
+        catalogo.vincular(c);
+        catalogo.vincular(c);
+        assertEquals(1, catalogo.size());
+        assertThrows(IllegalStateException.class, () -> new CatalogoColumnar().vincular(c));
+    }
+
+    @Test
+    @DisplayName("No debe perder reproducciones ni calificaciones concurrentes")
+    void testContadoresConcurrentes() throws InterruptedException {
+        Cancion c = cancion("col_hilos", "Artista", "Rock", 2000, 0);
+        catalogo.vincular(c);
+        int hilos = 8, porHilo = 20_000;
+        Thread[] ts = new Thread[hilos];
+        for (int t = 0; t < hilos; t++) {
+            int calificacion = t % 2 == 0 ? 5 : 3;
+            ts[t] = new Thread(() -> {
+                for (int i = 0; i < porHilo; i++) {
+                    c.reproducir();
+                    c.marcarComoFavorita();
+                    if (i % 10 == 0) c.agregarCalificacion(calificacion);
+                }
+            });
+            ts[t].start();
+        }
+        for (Thread t : ts) t.join();
+
+        Cancion.Contadores k = c.getContadores();
+        assertEquals((long) hilos * porHilo, k.getReproducciones());
+        assertEquals((long) hilos * porHilo, k.getFavoritos());
+        assertEquals(hilos * porHilo / 10, k.getNumeroCalificaciones());
+        assertEquals(4.0, k.getCalificacionPromedio(), 1e-9);
+        assertEquals(k.getPuntajePopularidad(), c.calcularPuntajePopularidad(), 1e-9);
+
+        // Al salir del catálogo los contadores se conservan
+        catalogo.desvincular(c);
+        assertEquals((long) hilos * porHilo, c.getReproducciones());
+        c.setCalificaciones(4.5, 2);
+        c.agregarCalificacion(3);
+        assertEquals(4.0, c.getCalificacionPromedio(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Debe conservar el promedio fijado sin calificaciones, como el setter anterior")
+    void testPromedioSinCalificaciones() {
+        Cancion c = new Cancion("c1", "Titulo", "Artista", "Album", "Rock", 2020, 180);
+        c.setCalificacionPromedio(4.5);
+        assertEquals(4.5, c.getCalificacionPromedio(), 1e-9);
+        assertEquals(0, c.getNumeroCalificaciones());
+
+        c.setNumeroCalificaciones(2);
+        assertEquals(4.5, c.getCalificacionPromedio(), 1e-9);
+
+        // Sin calificaciones previas, la primera reemplaza el promedio fijado
+        c.setCalificaciones(3.5, 0);
+        assertEquals(3.5, c.getCalificacionPromedio(), 1e-9);
+        c.agregarCalificacion(2);
+        assertEquals(2.0, c.getCalificacionPromedio(), 1e-9);
+        assertEquals(1, c.getNumeroCalificaciones());
+    }
+}
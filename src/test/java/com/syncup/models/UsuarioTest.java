@@ -216,4 +216,41 @@ class UsuarioTest {
         usuario.setFechaRegistro(fechaPersonalizada);
         assertEquals(fechaPersonalizada, usuario.getFechaRegistro());
     }
-}
\ No newline at end of file
+    
+    @Test
+    @DisplayName("Debe exponer vistas de solo lectura que reflejan los cambios")
+    void testVistasFavoritas() {
+        var vista = usuario.getVistaCancionesFavoritas();
+        usuario.agregarCancionFavorita("cancion_b");
+        usuario.agregarCancionFavorita("cancion_a");
+        
+        // La vista refleja los cambios y conserva el orden de inserción
+        assertEquals(2, vista.size());
+        assertEquals("cancion_b", vista.iterator().next());
+        assertThrows(UnsupportedOperationException.class, () -> vista.add("cancion_c"));
+        
+        usuario.setCancionesFavoritas(java.util.List.of("cancion_c", "cancion_c"));
+        assertEquals(1, vista.size());
+        assertTrue(usuario.esCancionFavorita("cancion_c"));
+        
+        usuario.seguirUsuario(otroUsuario.getId());
+        assertTrue(usuario.getVistaUsuariosSeguidos().contains(otroUsuario.getId()));
+        assertThrows(UnsupportedOperationException.class, () -> usuario.getVistaSeguidores().add("x"));
+    }
+
+    @Test
+    @DisplayName("Debe publicar los ordinales de las favoritas vigentes aunque se lean mientras cambian")
+    void testOrdinalesConcurrentes() throws InterruptedException {
+        int total = 5_000;
+        Thread escritor = new Thread(() -> {
+            for (int i = 0; i < total; i++) usuario.agregarCancionFavorita("ord_" + i);
+        });
+        escritor.start();
+        while (escritor.isAlive()) usuario.getOrdinalesFavoritos();
+        escritor.join();
+
+        int[] esperados = Ordinales.CANCIONES.ordinalesOrdenados(usuario.getVistaCancionesFavoritas());
+        assertArrayEquals(esperados, usuario.getOrdinalesFavoritos());
+        assertEquals(total, usuario.getOrdinalesFavoritos().length);
+    }
+}
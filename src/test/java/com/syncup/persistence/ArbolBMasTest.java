@@ -0,0 +1,135 @@
+package com.syncup.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del árbol B+ en archivo.
+ */
+class ArbolBMasTest {
+
+    private Path dir;
+    private Path archivo;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("syncup-arbol");
+        archivo = dir.resolve("datos.kv");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static byte[] b(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+
+    @Test
+    @DisplayName("Debe coincidir con un TreeMap tras altas, reemplazos y bajas, también al reabrir")
+    void testContraTreeMap() throws IOException {
+        TreeMap<String, String> esperado = new TreeMap<>();
+        Random r = new Random(7);
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            for (int lote = 0; lote < 40; lote++) {
+                ArbolBMas.Lote l = new ArbolBMas.Lote();
+                for (int i = 0; i < 500; i++) {
+                    String k = "k" + r.nextInt(20_000);
+                    if (r.nextInt(5) == 0) { l.quitar(k); esperado.remove(k); }
+                    else { String v = "v" + r.nextInt() + "x".repeat(r.nextInt(40)); l.poner(k, b(v)); esperado.put(k, v); }
+                }
+                a.escribir(l);
+            }
+            assertEquals(esperado.size(), a.size());
+        }
+
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            assertEquals(esperado.size(), a.size());
+            for (Map.Entry<String, String> e : esperado.entrySet()) assertArrayEquals(b(e.getValue()), a.get(e.getKey()));
+            assertNull(a.get("no-existe"));
+
+            List<String> rango = new ArrayList<>();
+            a.recorrer("k12", "k13", (k, v) -> rango.add(k));
+            assertEquals(new ArrayList<>(esperado.subMap("k12", "k13").keySet()), rango);
+
+            List<String> primeras = new ArrayList<>();
+            a.recorrer(null, null, (k, v) -> primeras.add(k) && primeras.size() < 10);
+            assertEquals(new ArrayList<>(esperado.keySet()).subList(0, 10), primeras);
+        }
+    }
+
+    @Test
+    @DisplayName("Debe guardar valores grandes fuera de la hoja y recorrer por prefijo")
+    void testValoresGrandesYPrefijo() throws IOException {
+        byte[] grande = new byte[20_000];
+        new Random(1).nextBytes(grande);
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            a.escribir(new ArbolBMas.Lote().poner("u/1", grande).poner("f/1/b", b("2")).poner("f/1/a", b("1")).poner("f/2/a", b("3")));
+        }
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            assertArrayEquals(grande, a.get("u/1"));
+            List<String> claves = new ArrayList<>();
+            a.recorrerPrefijo("f/1/", (k, v) -> claves.add(k));
+            assertEquals(List.of("f/1/a", "f/1/b"), claves);
+            assertThrows(IllegalArgumentException.class, () -> a.poner("x".repeat(300), b("v")));
+        }
+        Path vacio = dir.resolve("vacio.kv");
+        try (ArbolBMas a = ArbolBMas.abrir(vacio)) { assertEquals(0, a.size()); }
+        try (ArbolBMas a = ArbolBMas.abrir(vacio)) { assertNull(a.get("x")); }
+    }
+
+    @Test
+    @DisplayName("Debe reutilizar las páginas liberadas y compactar el archivo")
+    void testReutilizacionYCompactacion() throws IOException {
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            for (int i = 0; i < 500; i++) a.poner(String.format("k%05d", i), b("valor " + i));
+            long tamano = Files.size(archivo);
+            // Cada confirmación de una sola clave libera la ruta anterior, que la siguiente reutiliza
+            for (int i = 0; i < 3000; i++) a.poner(String.format("k%05d", i % 500), b("valor " + i));
+            assertTrue(Files.size(archivo) <= tamano + 4 * ArbolBMas.TAM_PAGINA, a.getEstadisticas());
+            assertArrayEquals(b("valor 2999"), a.get("k00499"));
+        }
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            a.compactar();
+            assertTrue(a.getEstadisticas().contains("(0 muertas)"), a.getEstadisticas());
+            assertEquals(500, a.size());
+            assertArrayEquals(b("valor 2500"), a.get("k00000"));
+        }
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            assertEquals(500, a.size());
+        }
+    }
+
+    @Test
+    @DisplayName("Debe volver a la versión anterior si la última cabecera está dañada")
+    void testCabeceraDanada() throws IOException {
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            a.poner("a", b("1"));
+            a.poner("a", b("2"));
+        }
+        // La última confirmación escribió la cabecera de la página con su paridad; se daña
+        byte[] todo = Files.readAllBytes(archivo);
+        int pagina0 = todo[8 + 7], pagina1 = todo[ArbolBMas.TAM_PAGINA + 8 + 7];
+        long desplazamiento = (pagina0 > pagina1 ? 0 : ArbolBMas.TAM_PAGINA) + 20;
+        try (FileChannel c = FileChannel.open(archivo, StandardOpenOption.WRITE)) {
+            c.write(java.nio.ByteBuffer.wrap(new byte[]{0x55}), desplazamiento);
+        }
+        try (ArbolBMas a = ArbolBMas.abrir(archivo)) {
+            assertArrayEquals(b("1"), a.get("a"));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Cancion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del catálogo mapeado en memoria.
+ */
+class CatalogoMapeadoTest {
+
+    private Path dir;
+    private Path archivo;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("syncup-mapeado");
+        archivo = dir.resolve("catalogo.map");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static List<Cancion> catalogo(int n) {
+        List<Cancion> l = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Cancion c = new Cancion("m" + i, "Título " + i, "Artista " + (i % 7), "Álbum", i % 2 == 0 ? "Rock" : "Pop", 1980 + i % 40, 120 + i);
+            c.setReproducciones(i * 10L);
+            l.add(c);
+        }
+        return l;
+    }
+
+    @Test
+    @DisplayName("Debe encontrar cada canción por ID y decodificar todos sus campos")
+    void testBusqueda() throws IOException {
+        List<Cancion> canciones = catalogo(2000);
+        Cancion especial = canciones.get(7);
+        especial.setFechaAgregado(LocalDate.of(2021, 5, 6));
+        especial.setCalificaciones(3.5, 4);
+        especial.setCoverUrl("https://x/ñ.jpg");
+        especial.setDescripcion(null);
+        especial.agregarArtistaColaborador("Uno");
+        especial.agregarArtistaColaborador("Dos");
+        especial.setContenidoExplicito(true);
+        CatalogoMapeado.escribir(archivo, canciones);
+
+        try (CatalogoMapeado m = CatalogoMapeado.abrir(archivo)) {
+            assertEquals(2000, m.size());
+            for (int i = 0; i < 2000; i += 37) {
+                Cancion c = m.obtener("m" + i);
+                assertNotNull(c, "m" + i);
+                assertEquals("Título " + i, c.getTitulo());
+                assertEquals(i * 10L, c.getReproducciones());
+                assertEquals(120 + i, c.getDuracionSegundos());
+            }
+            Cancion c = m.obtener("m7");
+            assertEquals("Artista 0", c.getArtista());
+            assertEquals("Pop", c.getGenero());
+            assertEquals(LocalDate.of(2021, 5, 6), c.getFechaAgregado());
+            assertEquals(3.5, c.getCalificacionPromedio(), 0.001);
+            assertEquals(4, c.getNumeroCalificaciones());
+            assertEquals("https://x/ñ.jpg", c.getCoverUrl());
+            assertNull(c.getDescripcion());
+            assertEquals(List.of("Uno", "Dos"), c.getArtistasColaboradores());
+            assertTrue(c.isContenidoExplicito());
+
+            assertNull(m.obtener("no-existe"));
+            assertFalse(m.contiene("no-existe"));
+            assertTrue(m.contiene("m1999"));
+            assertEquals("m5", m.getId(5));
+        }
+    }
+
+    @Test
+    @DisplayName("Debe devolver la misma instancia desde la cache y copias nuevas al recorrer")
+    void testCache() throws IOException {
+        CatalogoMapeado.escribir(archivo, catalogo(10));
+        try (CatalogoMapeado m = CatalogoMapeado.abrir(archivo)) {
+            assertSame(m.obtener("m3"), m.obtener("m3"));
+            assertNotSame(m.decodificar(3), m.decodificar(3));
+        }
+        assertNull(CatalogoMapeado.abrir(dir.resolve("no-existe.map")));
+        Files.write(archivo, new byte[]{0, 1, 2, 3});
+        assertThrows(IOException.class, () -> CatalogoMapeado.abrir(archivo));
+    }
+
+    @Test
+    @DisplayName("Debe escribir una generación nueva sin tocar la que está mapeada")
+    void testGeneraciones() throws IOException {
+        Path primera = CatalogoMapeado.escribirGeneracion(archivo, catalogo(10));
+        try (CatalogoMapeado viejo = CatalogoMapeado.abrir(archivo)) {
+            assertEquals(10, viejo.size());
+            Path segunda = CatalogoMapeado.escribirGeneracion(archivo, catalogo(20));
+            assertNotEquals(primera, segunda);
+            // El mapeo abierto sigue leyendo su generación
+            assertEquals("Título 3", viejo.obtener("m3").getTitulo());
+            assertNull(viejo.obtener("m15"));
+            try (CatalogoMapeado nuevo = CatalogoMapeado.abrir(archivo)) {
+                assertEquals(20, nuevo.size());
+                assertEquals("Título 15", nuevo.obtener("m15").getTitulo());
+            }
+            assertEquals(segunda, CatalogoMapeado.vigente(archivo));
+        }
+    }
+
+    @Test
+    @DisplayName("Debe informar un archivo truncado o un índice dañado como error de formato")
+    void testArchivoDanado() throws IOException {
+        CatalogoMapeado.escribir(archivo, catalogo(10));
+        long tamano = Files.size(archivo);
+        try (RandomAccessFile f = new RandomAccessFile(archivo.toFile(), "rw")) {
+            f.setLength(tamano - 4);
+        }
+        try (CatalogoMapeado m = CatalogoMapeado.abrir(archivo)) {
+            assertThrows(UncheckedIOException.class, () -> {
+                for (int r = 0; r < m.size(); r++) m.decodificar(r);
+            });
+        }
+
+        CatalogoMapeado.escribir(archivo, catalogo(10));
+        try (RandomAccessFile f = new RandomAccessFile(archivo.toFile(), "rw")) {
+            // Todas las entradas del índice apuntan a un registro inexistente
+            for (int i = 0; i < 32; i++) { f.seek(32 + 4L * i); f.writeInt(1000); }
+        }
+        try (CatalogoMapeado m = CatalogoMapeado.abrir(archivo)) {
+            assertThrows(UncheckedIOException.class, () -> m.obtener("m3"));
+        }
+    }
+
+    @Test
+    @DisplayName("Debe elegir las canciones más populares leyendo solo los contadores")
+    void testMasPopulares() throws IOException {
+        List<Cancion> canciones = catalogo(500);
+        canciones.get(3).setReproducciones(1_000_000);
+        canciones.get(250).setNumeroFavoritos(600_000);
+        CatalogoMapeado.escribir(archivo, canciones);
+        try (CatalogoMapeado m = CatalogoMapeado.abrir(archivo)) {
+            int[] top = m.masPopulares(4);
+            assertEquals(4, top.length);
+            assertEquals("m250", m.getId(top[0]));
+            assertEquals("m3", m.getId(top[1]));
+            assertEquals("m499", m.getId(top[2]));
+            assertEquals("m498", m.getId(top[3]));
+            assertEquals(500, m.masPopulares(10_000).length);
+            assertEquals(0, m.masPopulares(0).length);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.syncup.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del diario de cambios de solo anexado y de su escritura agrupada.
+ */
+class DiarioCambiosTest {
+
+    private Path dir;
+    private Path archivo;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("syncup-diario");
+        archivo = dir.resolve("users.journal");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private List<Object> reproducir(DiarioCambios d) throws IOException {
+        List<Object> ids = new ArrayList<>();
+        d.reproducir(r -> ids.add(r.get("id")));
+        return ids;
+    }
+
+    @Test
+    @DisplayName("Debe reproducir en orden el diario apartado y el actual")
+    void testRotarYReproducir() throws IOException {
+        try (DiarioCambios d = new DiarioCambios(archivo)) {
+            d.anotar(Map.of("id", "a"));
+            d.anotar(Map.of("id", "b"));
+            assertTrue(d.rotar().join());
+            assertFalse(d.rotar().join());
+            d.anotar(Map.of("id", "c")).join();
+            assertEquals(1, d.getEntradas());
+            assertEquals(List.of("a", "b", "c"), reproducir(d));
+
+            d.descartarAnterior();
+            assertEquals(List.of("c"), reproducir(d));
+        }
+        // Al reabrir se cuentan los registros existentes
+        try (DiarioCambios d = new DiarioCambios(archivo)) {
+            assertEquals(1, d.getEntradas());
+            d.reiniciar().join();
+            assertFalse(d.tieneRegistros());
+            assertEquals(List.of(), reproducir(d));
+        }
+    }
+
+    @Test
+    @DisplayName("Debe ignorar una última línea incompleta")
+    void testLineaIncompleta() throws IOException {
+        try (DiarioCambios d = new DiarioCambios(archivo)) {
+            d.anotar(Map.of("id", "a"));
+            d.sincronizar().join();
+        }
+        Files.writeString(archivo, "{\"id\":\"b\",\"na", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        try (DiarioCambios d = new DiarioCambios(archivo)) {
+            assertEquals(List.of("a"), reproducir(d));
+            // Lo anotado después no se pega a la línea incompleta
+            d.anotar(Map.of("id", "c")).join();
+            assertEquals(List.of("a", "c"), reproducir(d));
+        }
+    }
+
+    @Test
+    @DisplayName("Debe saltar una línea dañada en medio del diario sin perder las siguientes")
+    void testLineaDanadaEnMedio() throws IOException {
+        Files.writeString(archivo, "{\"id\":\"a\"}\n{\"id\":\"b\",\"na\n{\"id\":\"c\"}\n", StandardCharsets.UTF_8);
+        try (DiarioCambios d = new DiarioCambios(archivo)) {
+            assertEquals(List.of("a", "c"), reproducir(d));
+        }
+    }
+
+    @Test
+    @DisplayName("Debe fallar solo el registro que no se puede serializar y seguir escribiendo")
+    void testErrorAlSerializar() throws IOException {
+        Object defectuoso = new Object() {
+            @Override
+            public String toString() { throw new IllegalStateException("no serializable"); }
+        };
+        try (DiarioCambios d = new DiarioCambios(archivo)) {
+            d.anotar(Map.of("id", "a"));
+            CompletableFuture<Void> fallido = d.anotar(Map.of("id", defectuoso));
+            d.anotar(Map.of("id", "b")).join();
+            CompletionException e = assertThrows(CompletionException.class, fallido::join);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals(List.of("a", "b"), reproducir(d));
+        }
+    }
+
+    @Test
+    @DisplayName("Debe agrupar en pocos fsync los registros de varios hilos")
+    void testEscrituraAgrupada() throws Exception {
+        int hilos = 8, porHilo = 200;
+        try (DiarioCambios d = new DiarioCambios(archivo)) {
+            List<CompletableFuture<Void>> futuros = Collections.synchronizedList(new ArrayList<>());
+            ExecutorService pool = Executors.newFixedThreadPool(hilos);
+            for (int h = 0; h < hilos; h++) {
+                int base = h * porHilo;
+                pool.execute(() -> {
+                    for (int i = 0; i < porHilo; i++) futuros.add(d.anotar(Map.of("id", "u" + (base + i))));
+                });
+            }
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+            CompletableFuture.allOf(futuros.toArray(new CompletableFuture<?>[0])).join();
+            assertEquals(hilos * porHilo, reproducir(d).size());
+            assertEquals(hilos * porHilo, d.getEntradas());
+        }
+        // Tras cerrar, anotar falla en lugar de quedarse esperando
+        DiarioCambios cerrado = new DiarioCambios(archivo);
+        cerrado.close();
+        assertThrows(CompletionException.class, () -> cerrado.anotar(Map.of("id", "x")).join());
+    }
+}
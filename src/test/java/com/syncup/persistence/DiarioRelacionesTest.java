@@ -0,0 +1,124 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Usuario;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del diario de relaciones de usuarios.
+ */
+class DiarioRelacionesTest {
+
+    private Path dir;
+    private Path archivo;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("syncup-relaciones");
+        archivo = dir.resolve("relaciones.journal");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static Usuario usuario(String id) { return new Usuario(id, id, "clave", id, id + "@syncup.com"); }
+
+    @Test
+    @DisplayName("Debe reproducir favoritas, seguidos, seguidores y playlists al reabrir")
+    void testReproduccion() throws IOException {
+        try (DiarioRelaciones d = new DiarioRelaciones(archivo)) {
+            d.agregarFavorita("u1", "c1");
+            d.agregarFavorita("u1", "c2");
+            d.agregarFavorita("u1", "c3");
+            d.quitarFavorita("u1", "c2");
+            d.seguir("u1", "u2");
+            d.seguir("u3", "u2");
+            d.dejarDeSeguir("u3", "u2");
+            d.agregarPlaylist("u2", "Rock");
+            d.agregarPlaylist("u2", "Jazz");
+            d.quitarPlaylist("u2", "Rock");
+            d.sincronizar().join();
+        }
+        try (DiarioRelaciones d = new DiarioRelaciones(archivo)) {
+            assertEquals(Set.of("u1", "u2", "u3"), d.getUsuarios());
+            Usuario u1 = usuario("u1");
+            // Lo que ya traiga el almacén se conserva salvo que un delta lo quite
+            u1.agregarCancionFavorita("c0");
+            u1.agregarCancionFavorita("c2");
+            assertTrue(d.aplicar(u1));
+            assertEquals(List.of("c0", "c1", "c3"), u1.getCancionesFavoritas());
+            assertEquals(List.of("u2"), u1.getUsuariosSeguidos());
+
+            Usuario u2 = usuario("u2");
+            d.aplicar(u2);
+            assertEquals(List.of("u1"), u2.getSeguidores());
+            assertEquals(List.of("Jazz"), u2.getPlaylists());
+
+            Usuario u3 = usuario("u3");
+            d.aplicar(u3);
+            assertTrue(u3.getUsuariosSeguidos().isEmpty());
+            assertFalse(d.aplicar(usuario("u4")));
+        }
+    }
+
+    @Test
+    @DisplayName("Debe compactar el diario al estado neto sin perder lo anotado después")
+    void testCompactacion() throws IOException {
+        try (DiarioRelaciones d = new DiarioRelaciones(archivo)) {
+            for (int i = 0; i < DiarioRelaciones.UMBRAL_COMPACTACION; i++) {
+                if (i % 2 == 0) d.agregarFavorita("u1", "c" + (i % 10));
+                else d.quitarFavorita("u1", "c" + (i % 10));
+            }
+            d.agregarFavorita("u1", "nueva");
+            d.sincronizar().join();
+        }
+        assertTrue(Files.size(archivo) < 2_000, "El diario debe quedar con el estado neto");
+        assertFalse(Files.exists(dir.resolve("relaciones.journal.old")));
+        try (DiarioRelaciones d = new DiarioRelaciones(archivo)) {
+            Usuario u1 = usuario("u1");
+            d.aplicar(u1);
+            assertEquals(List.of("c0", "c2", "c4", "c6", "c8", "nueva"), u1.getCancionesFavoritas());
+        }
+    }
+
+    @Test
+    @DisplayName("Debe fundir y borrar un diario apartado que quedó de una compactación interrumpida")
+    void testApartadoPendiente() throws IOException {
+        Path apartado = dir.resolve("relaciones.journal.old");
+        Files.writeString(apartado,
+            "{\"op\":\"fav+\",\"u\":\"u1\",\"o\":\"c1\"}\n{\"op\":\"fav+\",\"u\":\"u1\",\"o\":\"c2\"}\n");
+        Files.writeString(archivo, "{\"op\":\"fav-\",\"u\":\"u1\",\"o\":\"c1\"}\n");
+        try (DiarioRelaciones d = new DiarioRelaciones(archivo)) {
+            assertFalse(Files.exists(apartado));
+            d.agregarFavorita("u1", "c3");
+            d.sincronizar().join();
+        }
+        try (DiarioRelaciones d = new DiarioRelaciones(archivo)) {
+            Usuario u1 = usuario("u1");
+            d.aplicar(u1);
+            assertEquals(List.of("c2", "c3"), u1.getCancionesFavoritas());
+
+            // Sin apartado pendiente, la compactación vuelve a dejar el diario en el estado neto
+            for (int i = 0; i < DiarioRelaciones.UMBRAL_COMPACTACION; i++) d.agregarFavorita("u1", "c2");
+            d.sincronizar().join();
+        }
+        assertTrue(Files.size(archivo) < 2_000, "El diario debe quedar con el estado neto");
+        assertFalse(Files.exists(apartado));
+    }
+}
@@ -0,0 +1,123 @@
+package com.syncup.persistence;
+
+import com.syncup.models.Cancion;
+import com.syncup.models.CatalogoColumnar;
+import com.syncup.models.Usuario;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la instantánea binaria de usuarios y canciones.
+ */
+class InstantaneaBinariaTest {
+
+    private Path dir;
+    private Path archivo;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("syncup-instantanea");
+        archivo = dir.resolve("snapshot.bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    @DisplayName("Debe conservar todos los campos de usuarios y canciones")
+    void testIdaYVuelta() throws IOException {
+        Usuario u = new Usuario("u_0001", "luz", "sha256:abc", "Luz Ñandú", "luz@syncup.com");
+        u.setEsAdmin(true);
+        u.agregarCancionFavorita("s1");
+        u.seguirUsuario("u_0002");
+
+        Cancion c = new Cancion("s1", "Tusa", "KAROL G", "Ocean", "Reggaeton", 2019, 200);
+        c.setCoverUrl("https://x/y.jpg");
+        c.setFechaAgregado(LocalDate.of(2020, 1, 2));
+        c.setReproducciones(1234);
+        c.setNumeroFavoritos(7);
+        c.setCalificaciones(4.5, 10);
+        c.setContenidoExplicito(true);
+        c.agregarArtistaColaborador("Nicki Minaj");
+
+        InstantaneaBinaria.escribir(archivo, List.of(u), List.of(c));
+        InstantaneaBinaria.Contenido leido = InstantaneaBinaria.leer(archivo);
+
+        Usuario u2 = leido.getUsuarios().get(0);
+        assertEquals("luz", u2.getUsername());
+        assertEquals("sha256:abc", u2.getPasswordHash());
+        assertEquals("Luz Ñandú", u2.getNombreCompleto());
+        assertTrue(u2.isEsAdmin());
+        assertTrue(u2.esCancionFavorita("s1"));
+        assertEquals(List.of("u_0002"), u2.getUsuariosSeguidos());
+
+        Cancion c2 = leido.getCanciones().get(0);
+        assertEquals("Tusa", c2.getTitulo());
+        assertEquals("KAROL G", c2.getArtista());
+        assertEquals("Reggaeton", c2.getGenero());
+        assertEquals(2019, c2.getAnio());
+        assertEquals(200, c2.getDuracionSegundos());
+        assertEquals(LocalDate.of(2020, 1, 2), c2.getFechaAgregado());
+        assertEquals(1234, c2.getReproducciones());
+        assertEquals(7, c2.getNumeroFavoritos());
+        assertEquals(4.5, c2.getCalificacionPromedio(), 0.001);
+        assertEquals(10, c2.getNumeroCalificaciones());
+        assertTrue(c2.isContenidoExplicito());
+        assertEquals(List.of("Nicki Minaj"), c2.getArtistasColaboradores());
+        assertEquals("", c2.getDescripcion());
+    }
+
+    @Test
+    @DisplayName("Debe guardar una sola vez las cadenas repetidas")
+    void testTablaDeCadenas() throws IOException {
+        List<Cancion> canciones = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            canciones.add(new Cancion("s" + i, "Tema " + i, "Un artista con un nombre bastante largo",
+                "Un álbum con un nombre bastante largo", "Rock", 2000, 180));
+        }
+        InstantaneaBinaria.escribir(archivo, null, canciones);
+        // Cada registro ocupa unos 90 bytes; sin deduplicar, artista y álbum sumarían 80 más
+        assertTrue(Files.size(archivo) < 1000 * 120, "tamaño " + Files.size(archivo));
+        assertEquals(1000, InstantaneaBinaria.leer(archivo).getCanciones().size());
+        assertTrue(InstantaneaBinaria.leer(archivo).getUsuarios().isEmpty());
+
+        // Leídas sobre un catálogo compartido, las canciones ya ocupan sus filas
+        CatalogoColumnar catalogo = new CatalogoColumnar();
+        List<Cancion> leidas = InstantaneaBinaria.leer(archivo, catalogo).getCanciones();
+        assertEquals(1000, catalogo.size());
+        assertSame(catalogo, leidas.get(0).getCatalogo());
+        assertEquals(Integer.valueOf(1000), catalogo.contarPorGenero().get("Rock"));
+    }
+
+    @Test
+    @DisplayName("Debe rechazar un archivo dañado o truncado")
+    void testSumaDeControl() throws IOException {
+        InstantaneaBinaria.escribir(archivo, List.of(new Usuario("u_1", "ana", "sha256:x", "Ana", "")), null);
+        byte[] b = Files.readAllBytes(archivo);
+        b[b.length / 2] ^= 0x40;
+        Files.write(archivo, b);
+        assertThrows(IOException.class, () -> InstantaneaBinaria.leer(archivo));
+
+        Files.write(archivo, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> InstantaneaBinaria.leer(archivo));
+
+        assertNull(InstantaneaBinaria.leer(dir.resolve("no-existe.bin")));
+    }
+}
@@ -0,0 +1,107 @@
+package com.syncup.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del almacén JSON y de su lector y escritor en flujo.
+ */
+class JsonDataStoreTest {
+
+    private Path dir;
+    private JsonDataStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("syncup-json");
+        store = new JsonDataStore(dir);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    @DisplayName("Debe conservar cadenas con escapes, números y listas al guardar y cargar")
+    void testIdaYVuelta() throws IOException {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", "u_0001");
+        m.put("name", "Comillas \" barra \\ salto\nlínea\ttab ñ 😀 \u0001  ");
+        m.put("isAdmin", true);
+        m.put("edad", 42L);
+        m.put("ratio", 0.5);
+        m.put("tags", List.of("a,b", "}{", "[x]"));
+        m.put("nulo", null);
+        store.saveUsers(List.of(m, Map.of("id", "u_0002")));
+
+        List<Map<String, Object>> leidos = store.loadUsers();
+        assertEquals(2, leidos.size());
+        assertEquals(m, leidos.get(0));
+        assertEquals("u_0002", leidos.get(1).get("id"));
+    }
+
+    @Test
+    @DisplayName("Debe interpretar escapes Unicode y pares sustitutos")
+    void testEscapesUnicode() throws IOException {
+        LectorJson in = new LectorJson(new StringReader(
+            "{\"a\":\"\\u00f1\\ud83d\\ude00\\/\",\"b\":[1,-2.5e1,true,null,{}]}"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> m = (Map<String, Object>) in.leerValor();
+        assertEquals("ñ😀/", m.get("a"));
+        List<Object> esperado = new ArrayList<>();
+        esperado.add(1L); esperado.add(-25.0); esperado.add(true); esperado.add(null); esperado.add(new LinkedHashMap<>());
+        assertEquals(esperado, m.get("b"));
+        assertEquals(LectorJson.Token.FIN_DOCUMENTO, in.siguiente());
+    }
+
+    @Test
+    @DisplayName("Debe rechazar JSON mal formado y conservar lo leído antes del error")
+    void testMalFormado() throws IOException {
+        assertThrows(LectorJson.ErrorFormato.class, () -> new LectorJson(new StringReader("[1 2]")).leerValor());
+        assertThrows(LectorJson.ErrorFormato.class, () -> new LectorJson(new StringReader("{\"a\" 1}")).leerValor());
+        assertThrows(LectorJson.ErrorFormato.class, () -> new LectorJson(new StringReader("\"abc")).leerValor());
+        for (String numero : new String[]{"-", "01", "1.", ".5", "1e", "1e+", "--1", "1.2.3", "+1", "1-2", "0x10"}) {
+            assertThrows(LectorJson.ErrorFormato.class, () -> new LectorJson(new StringReader("[" + numero + "]")).leerValor(), numero);
+        }
+        assertEquals(List.of(0L, -0L, 10.0, 1.5e-3, 12345678901234567890.0),
+            new LectorJson(new StringReader("[0,-0,1E1,1.5e-3,12345678901234567890]")).leerValor());
+
+        store.ensureFiles();
+        Files.writeString(dir.resolve("data").resolve("users.json"),
+            "[{\"id\":\"u_1\"},{\"id\":\"u_2\",}]", StandardCharsets.UTF_8);
+        List<Map<String, Object>> leidos = store.loadUsers();
+        assertEquals(1, leidos.size());
+        assertEquals("u_1", leidos.get(0).get("id"));
+    }
+
+    @Test
+    @DisplayName("Debe colocar comas y dos puntos según el anidamiento")
+    void testEscritor() throws IOException {
+        StringWriter sw = new StringWriter();
+        EscritorJson w = new EscritorJson(sw);
+        w.iniciarObjeto().nombre("a").valor(1L).nombre("b").iniciarArreglo().valor("x").valor(2.5).iniciarObjeto().finObjeto()
+            .finArreglo().nombre("c").valor((String) null).finObjeto();
+        w.flush();
+        assertEquals("{\"a\":1,\"b\":[\"x\",2.5,{}],\"c\":null}", sw.toString());
+    }
+}
@@ -0,0 +1,159 @@
+package com.syncup.services;
+
+import com.syncup.data.DataManager;
+import com.syncup.data.UserRepository;
+import com.syncup.models.Cancion;
+import com.syncup.models.Usuario;
+import com.syncup.persistence.InMemoryUserStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la carga masiva por bloques y de {@link DataManager#addCanciones(List)}.
+ */
+class BulkDataLoaderTest {
+
+    private static final int BLOQUE = BulkDataLoader.LINEAS_POR_BLOQUE;
+    private static final String ADMIN = "u_carga";
+
+    private static DataManager dataManager;
+
+    private Path dir;
+    private BulkDataLoader loader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        synchronized (BulkDataLoaderTest.class) {
+            if (dataManager == null) {
+                // Usuarios en memoria: la prueba no toca los archivos de datos
+                UserRepository.usarAlmacen(new InMemoryUserStore());
+                dataManager = DataManager.getInstance();
+                Usuario admin = new Usuario(ADMIN, "carga", "h", "Carga", "");
+                admin.setEsAdmin(true);
+                dataManager.addUsuario(admin);
+            }
+        }
+        dir = Files.createTempDirectory("syncup-carga");
+        loader = new BulkDataLoader();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private Path escribir(List<String> lineas) throws IOException {
+        Path archivo = dir.resolve("canciones.tsv");
+        Files.writeString(archivo, String.join("\n", lineas) + "\n", StandardCharsets.UTF_8);
+        return archivo;
+    }
+
+    private static Set<String> titulos() {
+        Set<String> t = new HashSet<>();
+        for (Cancion c : dataManager.getAllCanciones()) t.add(c.getTitulo());
+        return t;
+    }
+
+    @Test
+    @DisplayName("Debe cargar todas las líneas aunque un comentario o una línea vacía caigan en el borde de un bloque")
+    void testBordesDeBloque() throws IOException {
+        List<String> lineas = new ArrayList<>();
+        for (int i = 0; i < 2 * BLOQUE + 1; i++) lineas.add("Frontera " + i + "\tArtista\tÁlbum\tRock\t2000\t200");
+        lineas.set(BLOQUE - 1, "# comentario al final del primer bloque");
+        lineas.set(BLOQUE, "");
+        int antes = dataManager.getNumeroCanciones();
+
+        BulkDataLoader.ResultadoCargaMasiva r = loader.cargarCancionesMasivas(escribir(lineas).toString(), ADMIN);
+
+        assertTrue(r.exito, r.mensaje);
+        assertEquals(2 * BLOQUE - 1, r.cancionesAgregadas);
+        assertEquals(2 * BLOQUE - 1, r.lineasProcesadas);
+        assertEquals(antes + 2 * BLOQUE - 1, dataManager.getNumeroCanciones());
+        Set<String> t = titulos();
+        assertTrue(t.contains("Frontera " + (BLOQUE - 2)));
+        assertTrue(t.contains("Frontera " + (BLOQUE + 1)));
+        assertTrue(t.contains("Frontera " + (2 * BLOQUE)));
+        assertFalse(t.contains("Frontera " + BLOQUE));
+    }
+
+    @Test
+    @DisplayName("Debe contar los errores de parseo de cada bloque y cargar el resto de sus líneas")
+    void testErroresDentroDeBloque() throws IOException {
+        List<String> lineas = new ArrayList<>();
+        for (int i = 0; i < BLOQUE + BLOQUE / 2; i++) lineas.add("Errores " + i + "\tArtista\tÁlbum\tPop\t1999");
+        lineas.set(10, "Errores 10\tArtista\tÁlbum\tPop\tdosmil");
+        lineas.set(BLOQUE - 1, "Solo\tdos");
+        lineas.set(BLOQUE, "Errores " + BLOQUE + "\tArtista\tÁlbum\tPop\tmil");
+
+        BulkDataLoader.ResultadoCargaMasiva r = loader.cargarCancionesMasivas(escribir(lineas).toString(), ADMIN);
+
+        assertTrue(r.exito, r.mensaje);
+        assertEquals(lineas.size() - 3, r.cancionesAgregadas);
+        assertEquals(lineas.size() - 3, r.lineasProcesadas);
+        assertTrue(r.mensaje.contains("Errores: 3"), r.mensaje);
+        Set<String> t = titulos();
+        assertTrue(t.contains("Errores 11"));
+        assertTrue(t.contains("Errores " + (BLOQUE + 1)));
+        assertFalse(t.contains("Errores 10"));
+    }
+
+    @Test
+    @DisplayName("Debe rechazar los IDs repetidos entre lotes y dentro de un lote")
+    void testDuplicadosEntreBloques() {
+        List<Cancion> primero = List.of(cancion("dup_a"), cancion("dup_b"));
+        List<Cancion> segundo = List.of(cancion("dup_b"), cancion("dup_c"), cancion("dup_c"));
+
+        assertEquals(2, dataManager.addCanciones(primero));
+        assertEquals(1, dataManager.addCanciones(segundo));
+
+        assertSame(primero.get(1), dataManager.getCancionById("dup_b"));
+        assertSame(segundo.get(1), dataManager.getCancionById("dup_c"));
+        // Los repetidos no llegan a ocupar una fila del catálogo compartido
+        assertNull(segundo.get(0).getCatalogo());
+        assertNull(segundo.get(2).getCatalogo());
+        assertNotNull(primero.get(1).getCatalogo());
+        assertEquals(0, dataManager.addCanciones(new ArrayList<>()));
+    }
+
+    private static Cancion cancion(String id) {
+        return new Cancion(id, "Título " + id, "Artista", "Álbum", "Jazz", 2001, 180);
+    }
+
+    @Test
+    @DisplayName("Debe medir el progreso en bytes, también con texto no ASCII")
+    void testProgresoNoAscii() throws IOException {
+        List<String> lineas = new ArrayList<>();
+        for (int i = 0; i < 2 * BLOQUE; i++) lineas.add("Canción ñ 😀 " + i + "\tÁrtista\tÁlbum\tRock\t2010");
+        List<Double> progreso = new ArrayList<>();
+
+        BulkDataLoader.ResultadoCargaMasiva r = loader.cargarCancionesMasivas(escribir(lineas).toString(), ADMIN, progreso::add);
+
+        assertTrue(r.exito, r.mensaje);
+        assertEquals(3, progreso.size());
+        assertTrue(progreso.get(0) > 0.4 && progreso.get(0) < 0.6, "primer bloque: " + progreso.get(0));
+        // El último bloque termina exactamente en el tamaño del archivo
+        assertEquals(1.0, progreso.get(1), 0.0);
+        assertEquals(1.0, progreso.get(2), 0.0);
+
+        for (String s : new String[]{"abc", "ñandú", "😀 x", "€", ""}) {
+            assertEquals(s.getBytes(StandardCharsets.UTF_8).length, BulkDataLoader.bytesUtf8(s), s);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.syncup.structures;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pruebas unitarias para la cache concurrente {@link CacheLRU}.
+ */
+class CacheLRUTest {
+
+    private CacheLRU<String, String> cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CacheLRU<>(3, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.cerrar();
+    }
+
+    @Test
+    @DisplayName("Debe desalojar la entrada menos usada recientemente")
+    void testDesalojoLRU() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a"); // "b" pasa a ser la menos usada
+
+        cache.put("d", "4");
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("4", cache.get("d"));
+        assertEquals(1, cache.getDesalojos());
+    }
+
+    @Test
+    @DisplayName("Debe contar aciertos y fallos")
+    void testMetricas() {
+        assertEquals("x", cache.obtener("k", () -> "x"));
+        assertEquals("x", cache.obtener("k", () -> "otro"));
+
+        assertEquals(1, cache.getAciertos());
+        assertEquals(1, cache.getFallos());
+        assertTrue(cache.getEstadisticas().contains("aciertos=1"));
+    }
+
+    @Test
+    @DisplayName("Debe expirar entradas según el tiempo de vida")
+    void testExpiracion() throws Exception {
+        CacheLRU<String, String> corta = new CacheLRU<>(10, 20);
+        try {
+            corta.put("k", "v");
+            Thread.sleep(60);
+            corta.purgarExpiradas();
+
+            assertEquals(0, corta.size());
+            assertNull(corta.get("k"));
+        } finally {
+            corta.cerrar();
+        }
+    }
+
+    @Test
+    @DisplayName("Debe calcular una sola vez ante fallos concurrentes de la misma clave")
+    void testCoalescencia() throws Exception {
+        AtomicInteger calculos = new AtomicInteger();
+        CountDownLatch dentro = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> primero = pool.submit(() -> cache.obtener("k", () -> {
+                calculos.incrementAndGet();
+                dentro.countDown();
+                try { liberar.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                return "v";
+            }));
+            assertTrue(dentro.await(5, TimeUnit.SECONDS));
+            Future<String> segundo = pool.submit(() -> cache.obtener("k", () -> { calculos.incrementAndGet(); return "otro"; }));
+            Thread.sleep(50);
+            liberar.countDown();
+
+            assertEquals("v", primero.get(5, TimeUnit.SECONDS));
+            assertEquals("v", segundo.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calculos.get());
+            assertEquals(1, cache.getCoalescidos());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Debe invalidar claves individuales y toda la cache")
+    void testInvalidar() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        cache.invalidar("a");
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+
+        cache.invalidarTodo();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Debe descartar solo el cálculo en curso de la clave invalidada")
+    void testInvalidarDuranteCalculo() {
+        // Invalidar otra clave no afecta al cálculo de "a"
+        assertEquals("1", cache.obtener("a", () -> { cache.invalidar("b"); return "1"; }));
+        assertEquals("1", cache.get("a"));
+
+        // Invalidar la propia clave durante su cálculo impide guardarlo
+        assertEquals("2", cache.obtener("c", () -> { cache.invalidar("c"); return "2"; }));
+        assertNull(cache.get("c"));
+
+        assertEquals("3", cache.obtener("d", () -> { cache.invalidarTodo(); return "3"; }));
+        assertNull(cache.get("d"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.syncup.structures;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pruebas unitarias para la lista de adyacencia comprimida {@link GrafoCSR}.
+ */
+class GrafoCSRTest {
+
+    private static List<String> vecinosDe(GrafoCSR g, int n) {
+        List<String> r = new ArrayList<>();
+        g.recorrerVecinos(n, (v, p) -> r.add(v + ":" + p));
+        return r;
+    }
+
+    private static GrafoCSR trianguloMasHoja() {
+        // 0-1 (0.5), 1-2 (0.8), 0-2 (0.3), 2-3 (0.9)
+        int[] a = {0, 1, 0, 2};
+        int[] b = {1, 2, 2, 3};
+        float[] p = {0.5f, 0.8f, 0.3f, 0.9f};
+        return GrafoCSR.construir(4, a, b, p, 4);
+    }
+
+    @Test
+    @DisplayName("Debe construir filas simétricas y ordenadas por vecino")
+    void testConstruccion() {
+        GrafoCSR g = trianguloMasHoja();
+
+        assertEquals(4, g.getNumeroNodos());
+        assertEquals(8, g.getNumeroAristasDirigidas());
+        assertEquals(List.of("1:0.5", "2:0.3"), vecinosDe(g, 0));
+        assertEquals(List.of("0:0.3", "1:0.8", "3:0.9"), vecinosDe(g, 2));
+        assertEquals(List.of("2:0.9"), vecinosDe(g, 3));
+    }
+
+    @Test
+    @DisplayName("Debe registrar aristas nuevas en el overlay")
+    void testOverlay() {
+        GrafoCSR g = trianguloMasHoja();
+        int nuevo = g.agregarNodo();
+
+        g.agregarArista(nuevo, 0, 0.7f);
+
+        assertEquals(4, nuevo);
+        assertEquals(2, g.getAristasOverlay());
+        assertEquals(List.of("0:0.7"), vecinosDe(g, nuevo));
+        assertTrue(vecinosDe(g, 0).contains("4:0.7"));
+    }
+
+    @Test
+    @DisplayName("Debe eliminar aristas congeladas con lápidas")
+    void testRemoverArista() {
+        GrafoCSR g = trianguloMasHoja();
+
+        assertTrue(g.removerArista(1, 2));
+        assertFalse(g.removerArista(1, 2));
+
+        assertEquals(6, g.getNumeroAristasDirigidas());
+        assertEquals(List.of("0:0.5"), vecinosDe(g, 1));
+        assertFalse(vecinosDe(g, 2).contains("1:0.8"));
+    }
+
+    @Test
+    @DisplayName("Debe eliminar todas las aristas de un nodo")
+    void testRemoverAristasDeNodo() {
+        GrafoCSR g = trianguloMasHoja();
+        g.agregarArista(2, 1, 0.4f);
+
+        g.removerAristasDe(2);
+
+        assertTrue(vecinosDe(g, 2).isEmpty());
+        assertEquals(List.of("0:0.5"), vecinosDe(g, 1));
+        assertEquals(List.of("1:0.5"), vecinosDe(g, 0));
+        assertTrue(vecinosDe(g, 3).isEmpty());
+        assertEquals(2, g.getNumeroAristasDirigidas());
+    }
+
+    @Test
+    @DisplayName("Debe compactar overlay y lápidas sin perder aristas")
+    void testCompactar() {
+        GrafoCSR g = trianguloMasHoja();
+        int nuevo = g.agregarNodo();
+        g.agregarArista(nuevo, 3, 0.6f);
+        g.removerArista(0, 2);
+
+        g.compactar();
+
+        assertEquals(0, g.getAristasOverlay());
+        assertEquals(8, g.getNumeroAristasDirigidas());
+        assertEquals(List.of("1:0.5"), vecinosDe(g, 0));
+        assertEquals(List.of("2:0.9", "4:0.6"), vecinosDe(g, 3));
+        assertEquals(List.of("3:0.6"), vecinosDe(g, nuevo));
+    }
+}
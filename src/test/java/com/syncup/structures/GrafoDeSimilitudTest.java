@@ -0,0 +1,48 @@
+package com.syncup.structures;
+
+import com.syncup.models.Cancion;
+import com.syncup.models.Usuario;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la cache de vecinos de {@link GrafoDeSimilitud}.
+ */
+class GrafoDeSimilitudTest {
+
+    private static Usuario usuario(String id, String... favoritas) {
+        Usuario u = new Usuario(id, id, "h", id, "");
+        u.setCancionesFavoritas(List.of(favoritas));
+        return u;
+    }
+
+    private static List<String> ids(List<GrafoDeSimilitud.UsuarioSimilar> similares) {
+        List<String> r = new ArrayList<>();
+        for (GrafoDeSimilitud.UsuarioSimilar s : similares) r.add(s.usuario.getId());
+        return r;
+    }
+
+    @Test
+    @DisplayName("Debe descartar los vecinos cacheados cuyo mejor camino pasaba por un usuario cambiado")
+    void testCacheTrasCambioLejano() {
+        GrafoDeSimilitud g = new GrafoDeSimilitud();
+        for (int i = 1; i <= 9; i++) g.agregarCancion(new Cancion("gs_s" + i, "T" + i, "Artista " + i, "", "Rock", 2000, 180));
+        // Cadena a-b-c-d: cada uno comparte una favorita con el siguiente
+        Usuario a = usuario("gs_a", "gs_s1", "gs_s2"), b = usuario("gs_b", "gs_s2", "gs_s3");
+        Usuario c = usuario("gs_c", "gs_s3", "gs_s4"), d = usuario("gs_d", "gs_s4", "gs_s5");
+        for (Usuario u : List.of(a, b, c, d)) g.agregarUsuario(u);
+        g.calcularSimilitudes();
+        assertEquals(List.of("gs_b", "gs_c", "gs_d"), ids(g.encontrarUsuariosSimilares("gs_a", 5)));
+
+        // d deja de parecerse a c: ni d ni sus vecinos son a, pero el camino de a pasaba por él
+        d.setCancionesFavoritas(List.of("gs_s9"));
+        g.actualizarUsuario("gs_d");
+
+        assertEquals(List.of("gs_b", "gs_c"), ids(g.encontrarUsuariosSimilares("gs_a", 5)));
+    }
+}
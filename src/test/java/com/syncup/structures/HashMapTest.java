@@ -281,4 +281,24 @@ class HashMapTest {
             new HashMap<String, String>(-5);
         });
     }
-}
\ No newline at end of file
+    
+    @Test
+    @DisplayName("Debe conservar los elementos al asegurar capacidad para un lote")
+    void testAsegurarCapacidad() {
+        for (int i = 0; i < 10; i++) {
+            integerHashMap.put(i, "valor" + i);
+        }
+        integerHashMap.asegurarCapacidad(10_000);
+        assertEquals(10, integerHashMap.size());
+        for (int i = 10; i < 10_000; i++) {
+            integerHashMap.put(i, "valor" + i);
+        }
+        assertEquals(10_000, integerHashMap.size());
+        assertEquals("valor0", integerHashMap.get(0));
+        assertEquals("valor9999", integerHashMap.get(9999));
+        
+        // Una capacidad menor que la actual no cambia nada
+        integerHashMap.asegurarCapacidad(5);
+        assertEquals(10_000, integerHashMap.size());
+    }
+}